@@ -0,0 +1,138 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * BatchFuture -- completed by a {@link BulkJobMonitor} with the {@link BatchInfo} of a batch
+ * once it has reached a final state.
+ */
+public class BatchFuture implements Future<BatchInfo> {
+    private final BulkJobMonitor monitor;
+    private final String jobId;
+    private final String batchId;
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private BatchInfo latest;
+    private Throwable failure;
+    private boolean cancelled;
+    private boolean done;
+
+    BatchFuture(BulkJobMonitor monitor, String jobId, String batchId) {
+        this.monitor = monitor;
+        this.jobId = jobId;
+        this.batchId = batchId;
+    }
+
+    public String getJobId() {
+        return jobId;
+    }
+
+    public String getBatchId() {
+        return batchId;
+    }
+
+    /**
+     * @return the last state seen by the monitor, null before the first poll
+     */
+    public synchronized BatchInfo getLatest() {
+        return latest;
+    }
+
+    /**
+     * @return true if the state or the number of processed records changed
+     */
+    synchronized boolean update(BatchInfo batchInfo) {
+        BatchInfo previous = latest;
+        latest = batchInfo;
+        return previous == null || previous.getState() != batchInfo.getState() ||
+                previous.getNumberRecordsProcessed() != batchInfo.getNumberRecordsProcessed();
+    }
+
+    boolean complete(BatchInfo batchInfo) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            latest = batchInfo;
+            done = true;
+        }
+        latch.countDown();
+        return true;
+    }
+
+    boolean fail(Throwable e) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            failure = e;
+            done = true;
+        }
+        latch.countDown();
+        return true;
+    }
+
+    /**
+     * Stops watching the batch. The batch itself keeps running on the server.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        synchronized (this) {
+            if (done) {
+                return false;
+            }
+            cancelled = true;
+            done = true;
+        }
+        latch.countDown();
+        monitor.unwatch(this);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    @Override
+    public synchronized boolean isDone() {
+        return done;
+    }
+
+    @Override
+    public BatchInfo get() throws InterruptedException, ExecutionException {
+        latch.await();
+        return report();
+    }
+
+    @Override
+    public BatchInfo get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (!latch.await(timeout, unit)) {
+            throw new TimeoutException("Batch " + batchId + " of job " + jobId + " did not complete in time");
+        }
+        return report();
+    }
+
+    private synchronized BatchInfo report() throws ExecutionException {
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        return latest;
+    }
+
+    @Override
+    public String toString() {
+        return "BatchFuture{jobId=" + jobId + ", batchId=" + batchId + ", latest=" +
+                (getLatest() == null ? null : getLatest().getState()) + "}";
+    }
+}
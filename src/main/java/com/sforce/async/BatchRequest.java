@@ -70,11 +70,18 @@ public class BatchRequest {
         return null;
     }
 
+    /**
+     * Reads the batch info of a response and closes it.
+     */
     static BatchInfo loadBatchInfo(InputStream in) throws PullParserException, IOException, ConnectionException {
-        BatchInfo info = new BatchInfo();
-        XmlInputStream xin = new XmlInputStream();
-        xin.setInput(in, "UTF-8");
-        info.load(xin, BulkConnection.typeMapper);
-        return info;
+        try {
+            BatchInfo info = new BatchInfo();
+            XmlInputStream xin = new XmlInputStream();
+            xin.setInput(in, "UTF-8");
+            info.load(xin, BulkConnection.typeMapper);
+            return info;
+        } finally {
+            in.close();
+        }
     }
 }
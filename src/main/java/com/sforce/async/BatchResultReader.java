@@ -0,0 +1,158 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.parser.PullParserException;
+import com.sforce.ws.parser.XmlInputStream;
+
+/**
+ * BatchResultReader -- reads the results of a batch one record at a time, so that they can be processed
+ * without holding the whole {@link BatchResult} in memory. Both xml and csv results are read; the format
+ * is detected from the content.
+ */
+public class BatchResultReader implements Closeable {
+    private final InputStream input;
+    private XmlInputStream xml;
+    private CSVRecordCursor csv;
+    private int id = -1;
+    private int success = -1;
+    private int created = -1;
+    private int error = -1;
+    private boolean atEnd;
+    private int count;
+
+    public BatchResultReader(InputStream input) throws AsyncApiException {
+        this.input = input.markSupported() ? input : new BufferedInputStream(input);
+        try {
+            if (isXml(this.input)) {
+                xml = new XmlInputStream();
+                xml.setInput(this.input, "UTF-8");
+                BulkConnection.typeMapper.consumeStartTag(xml);
+            } else {
+                csv = new CSVRecordCursor(this.input);
+                if (csv.next()) {
+                    // results may not have every column, a missing column is read as empty
+                    id = indexOf("Id");
+                    success = indexOf("Success");
+                    created = indexOf("Created");
+                    error = indexOf("Error");
+                } else {
+                    atEnd = true;
+                }
+            }
+        } catch (PullParserException e) {
+            throw new AsyncApiException("Failed to parse result ", AsyncExceptionCode.ClientInputError, e);
+        } catch (IOException e) {
+            throw new AsyncApiException("Failed to read result ", AsyncExceptionCode.ClientInputError, e);
+        } catch (ConnectionException e) {
+            throw new AsyncApiException("Failed to parse result ", AsyncExceptionCode.ClientInputError, e);
+        }
+    }
+
+    /**
+     * @return the result of the next record, null after the last one
+     */
+    public Result next() throws AsyncApiException {
+        if (atEnd) {
+            return null;
+        }
+        try {
+            Result result = xml != null ? nextXml() : nextCsv();
+            if (result == null) {
+                atEnd = true;
+            } else {
+                count++;
+            }
+            return result;
+        } catch (IOException e) {
+            throw new AsyncApiException("Failed to read result " + (count + 1), AsyncExceptionCode.ClientInputError, e);
+        } catch (ConnectionException e) {
+            throw new AsyncApiException("Failed to parse result " + (count + 1), AsyncExceptionCode.ClientInputError, e);
+        }
+    }
+
+    /**
+     * @return number of results read so far
+     */
+    public int getCount() {
+        return count;
+    }
+
+    public void close() throws IOException {
+        atEnd = true;
+        input.close();
+    }
+
+    private Result nextXml() throws IOException, ConnectionException {
+        if (xml.peekTag() != XmlInputStream.START_TAG || !"result".equals(xml.getName())) {
+            return null;
+        }
+        Result result = new Result();
+        result.load(xml, BulkConnection.typeMapper);
+        return result;
+    }
+
+    private Result nextCsv() throws IOException {
+        if (!csv.next()) {
+            return null;
+        }
+        Result result = new Result();
+        result.setId(csv.getString(id));
+        result.setSuccess(Boolean.parseBoolean(csv.getString(success)));
+        result.setCreated(Boolean.parseBoolean(csv.getString(created)));
+        String message = csv.getString(error);
+        if (message != null) {
+            result.setErrors(new Error[]{toError(message)});
+        }
+        return result;
+    }
+
+    /**
+     * Csv errors read as STATUS_CODE:message:fields
+     */
+    private static Error toError(String message) {
+        Error error = new Error();
+        error.setMessage(message);
+        int colon = message.indexOf(':');
+        if (colon > 0) {
+            try {
+                error.setStatusCode(StatusCode.valueOf(message.substring(0, colon)));
+                error.setMessage(message.substring(colon + 1));
+            } catch (IllegalArgumentException e) {
+                // not a status code, keep the whole message
+            }
+        }
+        return error;
+    }
+
+    private int indexOf(String column) {
+        for (int i = 0; i < csv.getFieldCount(); i++) {
+            if (csv.fieldEquals(i, column)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean isXml(InputStream in) throws IOException {
+        in.mark(256);
+        try {
+            int c;
+            for (int i = 0; i < 256 && (c = in.read()) != -1; i++) {
+                if (!Character.isWhitespace(c) && c != 0xef && c != 0xbb && c != 0xbf) {
+                    return c == '<';
+                }
+            }
+            return false;
+        } finally {
+            in.reset();
+        }
+    }
+}
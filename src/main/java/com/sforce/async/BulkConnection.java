@@ -4,7 +4,6 @@
 package com.sforce.async;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.*;
 import java.util.zip.*;
@@ -15,6 +14,7 @@ import com.sforce.ws.*;
 import com.sforce.ws.bind.TypeMapper;
 import com.sforce.ws.parser.*;
 import com.sforce.ws.transport.JdkHttpTransport;
+import com.sforce.ws.transport.RetryHelper;
 import com.sforce.ws.util.FileUtil;
 
 /**
@@ -39,8 +39,14 @@ public class BulkConnection {
 
     private ConnectorConfig config;
     private HashMap<String, String> headers = new HashMap<String, String>();
+    private boolean compressBatches;
     public static final TypeMapper typeMapper = new TypeMapper();
 
+    static {
+        TypeMapper.prewarm(NAMESPACE, JobInfo.class, BatchInfo.class, BatchInfoList.class, BatchResult.class,
+                Result.class, Error.class, QueryResultList.class, AsyncApiException.class);
+    }
+
     public BulkConnection(ConnectorConfig config) throws AsyncApiException {
         if (config == null) {
             throw new AsyncApiException("config can not be null", AsyncExceptionCode.ClientInputError);
@@ -67,29 +73,66 @@ public class BulkConnection {
     }
 
     public JobInfo createJob(JobInfo job) throws AsyncApiException {
+        return createJob(job, null);
+    }
+
+    /**
+     * @param jobHeaders headers only sent with this request, such as Sforce-Enable-PKChunking
+     */
+    public JobInfo createJob(JobInfo job, Map<String, String> jobHeaders) throws AsyncApiException {
         String endpoint = getRestEndpoint();
         endpoint = endpoint + "job/";
-        return createOrUpdateJob(job, endpoint);
+        return createOrUpdateJob(job, endpoint, jobHeaders);
     }
 
     private JobInfo createOrUpdateJob(JobInfo job, String endpoint) throws AsyncApiException {
-        try {
-            JdkHttpTransport transport = new JdkHttpTransport(config);
-            OutputStream out = transport.connect(endpoint, getHeaders(XML_CONTENT_TYPE));
-            XmlOutputStream xout = new AsyncXmlOutputStream(out, true);
-            job.write(JOB_QNAME, xout, typeMapper);
-            xout.close();
+        return createOrUpdateJob(job, endpoint, null);
+    }
 
-            InputStream in = transport.getContent();
+    private JobInfo createOrUpdateJob(JobInfo job, String endpoint, Map<String, String> jobHeaders) throws AsyncApiException {
+        String operation = job.getId() == null ? "createJob" : "updateJob";
+        try {
+            for (int attempt = 1; ; attempt++) {
+                JdkHttpTransport transport = JdkHttpTransport.newTransport(config);
+                HashMap<String, String> httpHeaders = getHeaders(XML_CONTENT_TYPE);
+                if (jobHeaders != null) {
+                    httpHeaders.putAll(jobHeaders);
+                }
+                InputStream in;
+                boolean sent = false;
+                try {
+                    ApiGovernor governor = ApiGovernor.acquire(config);
+                    try {
+                        OutputStream out = transport.connect(endpoint, httpHeaders);
+                        XmlOutputStream xout = new AsyncXmlOutputStream(out, true);
+                        job.write(JOB_QNAME, xout, typeMapper);
+                        xout.close();
+                        sent = true;
+                        in = transport.getContent();
+                    } finally {
+                        ApiGovernor.release(governor);
+                    }
+                } catch (IOException e) {
+                    if (RetryHelper.awaitRetry(config, operation, attempt, RetryHelper.classify(e, sent), -1)) {
+                        continue;
+                    }
+                    throw e;
+                }
 
-            if (transport.isSuccessful()) {
-                XmlInputStream xin = new XmlInputStream();
-                xin.setInput(in, "UTF-8");
-                JobInfo result = new JobInfo();
-                result.load(xin, typeMapper);
-                return result;
-            } else {
-                parseAndThrowException(in);
+                if (transport.isSuccessful()) {
+                    RetryHelper.succeeded(config, operation);
+                    try {
+                        XmlInputStream xin = new XmlInputStream();
+                        xin.setInput(in, "UTF-8");
+                        JobInfo result = new JobInfo();
+                        result.load(xin, typeMapper);
+                        return result;
+                    } finally {
+                        in.close();
+                    }
+                } else if (!retryResponse(transport, in, operation, attempt)) {
+                    parseAndThrowException(in);
+                }
             }
         } catch (PullParserException e) {
             throw new AsyncApiException("Failed to create job ", AsyncExceptionCode.ClientInputError, e);
@@ -98,9 +141,28 @@ public class BulkConnection {
         } catch (ConnectionException e) {
             throw new AsyncApiException("Failed to create job ", AsyncExceptionCode.ClientInputError, e);
         }
-        return null;
     }
 
+    /**
+     * Closes the response of a failed request and waits before sending it again, if its status says it can be.
+     *
+     * @return true if the request is to be sent again
+     */
+    private boolean retryResponse(JdkHttpTransport transport, InputStream in, String operation, int attempt)
+            throws IOException {
+        long delay = RetryHelper.getRetryDelay(config, operation, attempt,
+                RetryHelper.classify(transport.getResponseCode()), RetryHelper.getRetryAfter(transport));
+        if (delay < 0) {
+            return false;
+        }
+        in.close();
+        RetryHelper.sleep(delay);
+        return true;
+    }
+
+    /**
+     * Reads the error of a failed request and closes its response.
+     */
     static void parseAndThrowException(InputStream in) throws AsyncApiException {
         try {
             XmlInputStream xin = new XmlInputStream();
@@ -114,6 +176,12 @@ public class BulkConnection {
             throw new AsyncApiException("Failed to parse exception", AsyncExceptionCode.ClientInputError, e);
         } catch (ConnectionException e) {
             throw new AsyncApiException("Failed to parse exception ", AsyncExceptionCode.ClientInputError, e);
+        } finally {
+            try {
+                in.close();
+            } catch (IOException ignored) {
+                // the error read is reported
+            }
         }
     }
 
@@ -121,6 +189,18 @@ public class BulkConnection {
         headers.put(headerName, headerValue);
     }
 
+    public boolean isCompressBatches() {
+        return compressBatches;
+    }
+
+    /**
+     * Gzip encodes the content of csv and xml batches even when compression is turned off in the config.
+     * Batch content usually compresses several times over; zip batches are never compressed again.
+     */
+    public void setCompressBatches(boolean compressBatches) {
+        this.compressBatches = compressBatches;
+    }
+
     private String getRestEndpoint() {
         String endpoint = config.getRestEndpoint();
         endpoint = endpoint.endsWith("/") ? endpoint : endpoint + "/";
@@ -139,17 +219,40 @@ public class BulkConnection {
             throws AsyncApiException {
         try {
             String endpoint = getRestEndpoint();
-            JdkHttpTransport transport = new JdkHttpTransport(config);
+            JdkHttpTransport transport = JdkHttpTransport.newTransport(config);
+            transport.setCompressRequests(compressBatches);
             endpoint = endpoint + "job/" + jobInfo.getId() + "/batch";
             String contentType = getContentTypeString(jobInfo.getContentType(), isZip);
             HashMap<String, String> httpHeaders = getHeaders(contentType);
             // TODO do we want to allow the zip content to be gzipped
             boolean allowZipToBeGzipped = false;
-            OutputStream out = transport.connect(endpoint, httpHeaders, allowZipToBeGzipped || !isZip);
+            OutputStream out;
+            ApiGovernor governor = null;
+            InputStream result;
+            try {
+                // the content can only be read once, so only failures to connect are retried
+                for (int attempt = 1; ; attempt++) {
+                    governor = ApiGovernor.acquire(config);
+                    try {
+                        out = transport.connect(endpoint, httpHeaders, allowZipToBeGzipped || !isZip);
+                        break;
+                    } catch (IOException e) {
+                        ApiGovernor.release(governor);
+                        governor = null;
+                        if (!RetryHelper.awaitRetry(config, "createBatch", attempt, RetryHelper.classify(e, false), -1)) {
+                            throw e;
+                        }
+                        transport = JdkHttpTransport.newTransport(config);
+                        transport.setCompressRequests(compressBatches);
+                    }
+                }
 
-            FileUtil.copy(input, out);
+                FileUtil.copy(input, out);
 
-            InputStream result = transport.getContent();
+                result = transport.getContent();
+            } finally {
+                ApiGovernor.release(governor);
+            }
             if (!transport.isSuccessful()) parseAndThrowException(result);
             return BatchRequest.loadBatchInfo(result);
         } catch (IOException e) {
@@ -219,24 +322,30 @@ public class BulkConnection {
         try {
             String endpoint = getRestEndpoint();
             endpoint = endpoint + "job/" + jobInfo.getId() + "/batch";
-            JdkHttpTransport transport = new JdkHttpTransport(config);
-            ZipOutputStream zipOut = new ZipOutputStream(transport.connect(endpoint, getHeaders(getContentTypeString(
-                    jobInfo.getContentType(), true)), false));
-
+            JdkHttpTransport transport = JdkHttpTransport.newTransport(config);
+            InputStream result;
+            ApiGovernor governor = ApiGovernor.acquire(config);
             try {
-                if (batchContent != null) {
-                    zipOut.putNextEntry(new ZipEntry("request.txt"));
-                    FileUtil.copy(batchContent, zipOut, false);
-                }
-                for (Map.Entry<String, InputStream> entry : attachments.entrySet()) {
-                    zipOut.putNextEntry(new ZipEntry(entry.getKey()));
-                    FileUtil.copy(entry.getValue(), zipOut, false);
+                ZipOutputStream zipOut = new ZipOutputStream(transport.connect(endpoint, getHeaders(getContentTypeString(
+                        jobInfo.getContentType(), true)), false));
+
+                try {
+                    if (batchContent != null) {
+                        zipOut.putNextEntry(new ZipEntry("request.txt"));
+                        FileUtil.copy(batchContent, zipOut, false);
+                    }
+                    for (Map.Entry<String, InputStream> entry : attachments.entrySet()) {
+                        zipOut.putNextEntry(new ZipEntry(entry.getKey()));
+                        FileUtil.copy(entry.getValue(), zipOut, false);
+                    }
+                } finally {
+                    zipOut.close();
                 }
+
+                result = transport.getContent();
             } finally {
-                zipOut.close();
+                ApiGovernor.release(governor);
             }
-
-            InputStream result = transport.getContent();
             return BatchRequest.loadBatchInfo(result);
         } catch (IOException e) {
             throw new AsyncApiException("Failed to create batch", AsyncExceptionCode.ClientInputError, e);
@@ -289,7 +398,8 @@ public class BulkConnection {
     public BatchRequest createBatch(JobInfo job) throws AsyncApiException {
         try {
             String endpoint = getRestEndpoint();
-            JdkHttpTransport transport = new JdkHttpTransport(config);
+            JdkHttpTransport transport = JdkHttpTransport.newTransport(config);
+            transport.setCompressRequests(compressBatches);
             endpoint = endpoint + "job/" + job.getId() + "/batch";
             ContentType ct = job.getContentType();
             if (ct != null && ct != ContentType.XML) { throw new AsyncApiException(
@@ -307,12 +417,15 @@ public class BulkConnection {
             String endpoint = getRestEndpoint() + "job/" + jobId + "/batch/";
             URL url = new URL(endpoint);
             InputStream stream = doHttpGet(url);
-
-            XmlInputStream xin = new XmlInputStream();
-            xin.setInput(stream, "UTF-8");
-            BatchInfoList result = new BatchInfoList();
-            result.load(xin, typeMapper);
-            return result;
+            try {
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(stream, "UTF-8");
+                BatchInfoList result = new BatchInfoList();
+                result.load(xin, typeMapper);
+                return result;
+            } finally {
+                stream.close();
+            }
         } catch (IOException e) {
             throw new AsyncApiException("Failed to get batch info list ", AsyncExceptionCode.ClientInputError, e);
         } catch (PullParserException e) {
@@ -327,12 +440,15 @@ public class BulkConnection {
             String endpoint = getRestEndpoint() + "job/" + jobId + "/batch/" + batchId;
             URL url = new URL(endpoint);
             InputStream stream = doHttpGet(url);
-
-            XmlInputStream xin = new XmlInputStream();
-            xin.setInput(stream, "UTF-8");
-            BatchInfo result = new BatchInfo();
-            result.load(xin, typeMapper);
-            return result;
+            try {
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(stream, "UTF-8");
+                BatchInfo result = new BatchInfo();
+                result.load(xin, typeMapper);
+                return result;
+            } finally {
+                stream.close();
+            }
         } catch (IOException e) {
             throw new AsyncApiException("Failed to parse batch info ", AsyncExceptionCode.ClientInputError, e);
         } catch (PullParserException e) {
@@ -347,12 +463,15 @@ public class BulkConnection {
             String endpoint = getRestEndpoint() + "job/" + jobId + "/batch/" + batchId + "/result";
             URL url = new URL(endpoint);
             InputStream stream = doHttpGet(url);
-
-            XmlInputStream xin = new XmlInputStream();
-            xin.setInput(stream, "UTF-8");
-            BatchResult result = new BatchResult();
-            result.load(xin, typeMapper);
-            return result;
+            try {
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(stream, "UTF-8");
+                BatchResult result = new BatchResult();
+                result.load(xin, typeMapper);
+                return result;
+            } finally {
+                stream.close();
+            }
         } catch (PullParserException e) {
             throw new AsyncApiException("Failed to parse result ", AsyncExceptionCode.ClientInputError, e);
         } catch (IOException e) {
@@ -362,6 +481,24 @@ public class BulkConnection {
         }
     }
 
+    /**
+     * Reads the results of a batch one at a time instead of loading them all into a {@link BatchResult}.
+     * The reader must be closed.
+     */
+    public BatchResultReader getBatchResultReader(String jobId, String batchId) throws AsyncApiException {
+        InputStream stream = getBatchResultStream(jobId, batchId);
+        try {
+            return new BatchResultReader(stream);
+        } catch (AsyncApiException e) {
+            try {
+                stream.close();
+            } catch (IOException ignored) {
+                // report the parse failure
+            }
+            throw e;
+        }
+    }
+
     public InputStream getBatchResultStream(String jobId, String batchId) throws AsyncApiException {
         try {
             String endpoint = getRestEndpoint() + "job/" + jobId + "/batch/" + batchId + "/result";
@@ -386,11 +523,15 @@ public class BulkConnection {
         InputStream stream = getBatchResultStream(jobId, batchId);
 
         try {
-            XmlInputStream xin = new XmlInputStream();
-            xin.setInput(stream, "UTF-8");
-            QueryResultList result = new QueryResultList();
-            result.load(xin, typeMapper);
-            return result;
+            try {
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(stream, "UTF-8");
+                QueryResultList result = new QueryResultList();
+                result.load(xin, typeMapper);
+                return result;
+            } finally {
+                stream.close();
+            }
         } catch (ConnectionException e) {
             throw new AsyncApiException("Failed to parse query result list ", AsyncExceptionCode.ClientInputError, e);
         } catch (PullParserException e) {
@@ -412,19 +553,36 @@ public class BulkConnection {
     
 
     private InputStream doHttpGet(URL url) throws IOException, AsyncApiException {
-        HttpURLConnection connection = JdkHttpTransport.createConnection(config, url, null);
-        connection.setRequestProperty(SESSION_ID, config.getSessionId());
+        HashMap<String, String> httpHeaders = new HashMap<String, String>();
+        httpHeaders.put(SESSION_ID, config.getSessionId());
 
-        boolean success = true;
+        JdkHttpTransport transport;
         InputStream in;
-        try {
-            in = connection.getInputStream();
-        } catch (IOException e) {
-            success = false;
-            in = connection.getErrorStream();
+        for (int attempt = 1; ; attempt++) {
+            transport = JdkHttpTransport.newTransport(config);
+            try {
+                ApiGovernor governor = ApiGovernor.acquire(config);
+                try {
+                    in = transport.get(url.toExternalForm(), httpHeaders, true);
+                } finally {
+                    ApiGovernor.release(governor);
+                }
+            } catch (IOException e) {
+                if (RetryHelper.awaitRetry(config, "get", attempt, RetryHelper.classify(e, true), -1)) {
+                    continue;
+                }
+                throw e;
+            }
+            if (transport.isSuccessful()) {
+                RetryHelper.succeeded(config, "get");
+                break;
+            } else if (!retryResponse(transport, in, "get", attempt)) {
+                break;
+            }
         }
+        boolean success = transport.isSuccessful();
 
-        String encoding = connection.getHeaderField("Content-Encoding");
+        String encoding = transport.getHeaderField("Content-Encoding");
         if ("gzip".equals(encoding)) {
             in = new GZIPInputStream(in);
         }
@@ -439,7 +597,7 @@ public class BulkConnection {
                     MessageHandler handler = it.next();
                     if (handler instanceof MessageHandlerWithHeaders) {
                         ((MessageHandlerWithHeaders)handler).handleRequest(url, new byte[0], null);
-                        ((MessageHandlerWithHeaders)handler).handleResponse(url, bytes, connection.getHeaderFields());
+                        ((MessageHandlerWithHeaders)handler).handleResponse(url, bytes, transport.getHeaderFields());
                     } else {
                         handler.handleRequest(url, new byte[0]);
                         handler.handleResponse(url, bytes);
@@ -450,7 +608,7 @@ public class BulkConnection {
             if (config.isTraceMessage()) {
                 config.getTraceStream().println(url.toExternalForm());
 
-                Map<String, List<String>> headers = connection.getHeaderFields();
+                Map<String, List<String>> headers = transport.getHeaderFields();
                 for (Map.Entry<String, List<String>>entry : headers.entrySet()) {
                     StringBuffer sb = new StringBuffer();
                     List<String> values = entry.getValue();
@@ -482,11 +640,15 @@ public class BulkConnection {
             URL url = new URL(endpoint);
 
             InputStream in = doHttpGet(url);
-            JobInfo result = new JobInfo();
-            XmlInputStream xin = new XmlInputStream();
-            xin.setInput(in, "UTF-8");
-            result.load(xin, typeMapper);
-            return result;
+            try {
+                JobInfo result = new JobInfo();
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(in, "UTF-8");
+                result.load(xin, typeMapper);
+                return result;
+            } finally {
+                in.close();
+            }
         } catch (PullParserException e) {
             throw new AsyncApiException("Failed to get job status ", AsyncExceptionCode.ClientInputError, e);
         } catch (IOException e) {
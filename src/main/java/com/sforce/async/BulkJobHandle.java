@@ -0,0 +1,145 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * BulkJobHandle -- tracks a job whose batches were created by a {@link BulkJobOrchestrator}.
+ * Batches are kept in the order the records were read; {@link #refresh()} fetches their
+ * current state from the server.
+ */
+public class BulkJobHandle {
+    private final BulkConnection connection;
+    private JobInfo jobInfo;
+    private final List<BatchInfo> batches = new ArrayList<BatchInfo>();
+    private final List<Integer> batchRecordCounts = new ArrayList<Integer>();
+
+    BulkJobHandle(BulkConnection connection, JobInfo jobInfo) {
+        this.connection = connection;
+        this.jobInfo = jobInfo;
+    }
+
+    synchronized int reserveBatch(int recordCount) {
+        batches.add(null);
+        batchRecordCounts.add(recordCount);
+        return batches.size() - 1;
+    }
+
+    synchronized void setBatch(int index, BatchInfo batchInfo) {
+        batches.set(index, batchInfo);
+    }
+
+    synchronized void setJobInfo(JobInfo jobInfo) {
+        this.jobInfo = jobInfo;
+    }
+
+    public synchronized JobInfo getJobInfo() {
+        return jobInfo;
+    }
+
+    public String getJobId() {
+        return getJobInfo().getId();
+    }
+
+    /**
+     * @return batches in the order their records were read, null for a batch that has not been created yet
+     */
+    public synchronized List<BatchInfo> getBatches() {
+        return new ArrayList<BatchInfo>(batches);
+    }
+
+    public synchronized int getBatchCount() {
+        return batches.size();
+    }
+
+    /**
+     * @return number of records sent to the server
+     */
+    public synchronized long getRecordsSubmitted() {
+        long total = 0;
+        for (int i = 0; i < batches.size(); i++) {
+            if (batches.get(i) != null) {
+                total += batchRecordCounts.get(i);
+            }
+        }
+        return total;
+    }
+
+    public synchronized int getBatchCount(BatchStateEnum state) {
+        int count = 0;
+        for (BatchInfo batch : batches) {
+            if (batch != null && batch.getState() == state) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized int getNumberRecordsProcessed() {
+        int total = 0;
+        for (BatchInfo batch : batches) {
+            if (batch != null) {
+                total += batch.getNumberRecordsProcessed();
+            }
+        }
+        return total;
+    }
+
+    public synchronized int getNumberRecordsFailed() {
+        int total = 0;
+        for (BatchInfo batch : batches) {
+            if (batch != null) {
+                total += batch.getNumberRecordsFailed();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * @return true when every batch has been created and has reached a final state
+     */
+    public synchronized boolean isDone() {
+        for (BatchInfo batch : batches) {
+            if (batch == null || batch.getState() == BatchStateEnum.Queued ||
+                    batch.getState() == BatchStateEnum.InProgress) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reloads the state of the job and of its batches from the server.
+     */
+    public void refresh() throws AsyncApiException {
+        String jobId = getJobId();
+        JobInfo job = connection.getJobStatus(jobId);
+        BatchInfoList list = connection.getBatchInfoList(jobId);
+
+        Map<String, BatchInfo> byId = new HashMap<String, BatchInfo>();
+        for (BatchInfo batch : list.getBatchInfo()) {
+            byId.put(batch.getId(), batch);
+        }
+
+        synchronized (this) {
+            jobInfo = job;
+            for (int i = 0; i < batches.size(); i++) {
+                BatchInfo batch = batches.get(i);
+                if (batch != null && byId.containsKey(batch.getId())) {
+                    batches.set(i, byId.get(batch.getId()));
+                }
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "BulkJobHandle{jobId=" + getJobId() + ", batches=" + getBatchCount() +
+                ", recordsSubmitted=" + getRecordsSubmitted() + "}";
+    }
+}
@@ -0,0 +1,303 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * BulkJobMonitor -- watches batches until they reach a final state.
+ * <p/>
+ * Every job with watched batches is polled with a single getBatchInfoList() call per tick, and all
+ * jobs share one small scheduled thread pool. The interval between ticks of a job goes back to the
+ * minimum whenever one of its batches makes progress and grows while they only wait in the queue
+ * or stall.
+ */
+public class BulkJobMonitor {
+    public static final long DEFAULT_MIN_POLL_INTERVAL = 2000;
+    public static final long DEFAULT_MAX_POLL_INTERVAL = 60000;
+    public static final int DEFAULT_MAX_CONSECUTIVE_ERRORS = 3;
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    private static final AtomicInteger MONITOR_COUNT = new AtomicInteger();
+
+    private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler;
+    private final Map<String, JobPoll> jobs = new HashMap<String, JobPoll>();
+    private volatile long minPollInterval = DEFAULT_MIN_POLL_INTERVAL;
+    private volatile long maxPollInterval = DEFAULT_MAX_POLL_INTERVAL;
+    private volatile int maxConsecutiveErrors = DEFAULT_MAX_CONSECUTIVE_ERRORS;
+    private boolean shutdown;
+
+    /**
+     * polls on its own pool of {@link #DEFAULT_POOL_SIZE} daemon threads
+     */
+    public BulkJobMonitor() {
+        this(newScheduler(), true);
+    }
+
+    /**
+     * @param scheduler runs the polls, it is not shut down by {@link #shutdown()}
+     */
+    public BulkJobMonitor(ScheduledExecutorService scheduler) {
+        this(scheduler, false);
+    }
+
+    private BulkJobMonitor(ScheduledExecutorService scheduler, boolean ownsScheduler) {
+        this.scheduler = scheduler;
+        this.ownsScheduler = ownsScheduler;
+    }
+
+    private static ScheduledExecutorService newScheduler() {
+        final int monitor = MONITOR_COUNT.incrementAndGet();
+        return Executors.newScheduledThreadPool(DEFAULT_POOL_SIZE, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                Thread thread = new Thread(runnable, "bulk-job-monitor-" + monitor + "-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public BatchFuture watch(BulkConnection connection, BatchInfo batchInfo) {
+        return watch(connection, batchInfo.getJobId(), batchInfo.getId());
+    }
+
+    /**
+     * @return futures for the batches of the handle that have been created, in the order of the records
+     */
+    public List<BatchFuture> watch(BulkConnection connection, BulkJobHandle handle) {
+        List<BatchFuture> futures = new ArrayList<BatchFuture>();
+        for (BatchInfo batch : handle.getBatches()) {
+            if (batch != null) {
+                futures.add(watch(connection, handle.getJobId(), batch.getId()));
+            }
+        }
+        return futures;
+    }
+
+    /**
+     * Starts watching a batch. Watching a batch that is already watched returns the same future.
+     *
+     * @param connection used to poll the job, replaces the connection of earlier watches on the same job
+     */
+    public synchronized BatchFuture watch(BulkConnection connection, String jobId, String batchId) {
+        if (shutdown) {
+            throw new IllegalStateException("BulkJobMonitor has been shut down");
+        }
+        JobPoll job = jobs.get(jobId);
+        boolean added = job == null;
+        if (added) {
+            job = new JobPoll(jobId);
+            jobs.put(jobId, job);
+        }
+        job.connection = connection;
+
+        BatchFuture future = job.futures.get(batchId);
+        if (future == null) {
+            future = new BatchFuture(this, jobId, batchId);
+            job.futures.put(batchId, future);
+        }
+        if (added) {
+            schedule(job, 0);
+        }
+        return future;
+    }
+
+    synchronized void unwatch(BatchFuture future) {
+        JobPoll job = jobs.get(future.getJobId());
+        if (job != null && job.futures.get(future.getBatchId()) == future) {
+            job.futures.remove(future.getBatchId());
+            if (job.futures.isEmpty()) {
+                jobs.remove(job.jobId);
+                if (job.task != null) {
+                    job.task.cancel(false);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return number of jobs with batches being watched
+     */
+    public synchronized int getJobCount() {
+        return jobs.size();
+    }
+
+    /**
+     * Stops polling and cancels the futures of every watched batch.
+     */
+    public void shutdown() {
+        List<BatchFuture> futures = new ArrayList<BatchFuture>();
+        synchronized (this) {
+            shutdown = true;
+            for (JobPoll job : jobs.values()) {
+                if (job.task != null) {
+                    job.task.cancel(false);
+                }
+                futures.addAll(job.futures.values());
+            }
+            jobs.clear();
+        }
+        for (BatchFuture future : futures) {
+            future.cancel(false);
+        }
+        if (ownsScheduler) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    private void schedule(final JobPoll job, long delay) {
+        job.interval = delay;
+        try {
+            job.task = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    poll(job);
+                }
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            jobs.remove(job.jobId);
+            for (BatchFuture future : job.futures.values()) {
+                future.fail(e);
+            }
+        }
+    }
+
+    private void poll(JobPoll job) {
+        BulkConnection connection;
+        Map<String, BatchFuture> watched;
+        synchronized (this) {
+            if (jobs.get(job.jobId) != job) {
+                return;
+            }
+            connection = job.connection;
+            watched = new HashMap<String, BatchFuture>(job.futures);
+        }
+
+        BatchInfoList list;
+        try {
+            list = connection.getBatchInfoList(job.jobId);
+        } catch (Exception e) {
+            synchronized (this) {
+                if (jobs.get(job.jobId) != job) {
+                    return;
+                }
+                if (++job.errors < maxConsecutiveErrors) {
+                    schedule(job, nextInterval(job.interval, 2));
+                    return;
+                }
+                jobs.remove(job.jobId);
+            }
+            for (BatchFuture future : watched.values()) {
+                future.fail(e);
+            }
+            return;
+        }
+
+        boolean progress = false;
+        boolean queued = true;
+        Set<String> finished = new HashSet<String>();
+        for (BatchInfo batch : list.getBatchInfo()) {
+            BatchFuture future = watched.remove(batch.getId());
+            if (future == null) {
+                continue;
+            }
+            progress |= future.update(batch);
+            queued &= batch.getState() == BatchStateEnum.Queued;
+            if (isFinal(batch.getState())) {
+                future.complete(batch);
+                finished.add(batch.getId());
+            }
+        }
+        // anything left was not returned for the job
+        for (BatchFuture future : watched.values()) {
+            future.fail(new AsyncApiException("Batch " + future.getBatchId() + " not found in job " + job.jobId,
+                    AsyncExceptionCode.InvalidBatch));
+            finished.add(future.getBatchId());
+        }
+
+        synchronized (this) {
+            if (jobs.get(job.jobId) != job) {
+                return;
+            }
+            job.errors = 0;
+            job.futures.keySet().removeAll(finished);
+            if (job.futures.isEmpty()) {
+                jobs.remove(job.jobId);
+                return;
+            }
+            long next;
+            if (progress) {
+                next = minPollInterval;
+            } else if (queued) {
+                next = nextInterval(job.interval, 2);
+            } else {
+                next = nextInterval(job.interval, 1.5);
+            }
+            schedule(job, next);
+        }
+    }
+
+    private long nextInterval(long interval, double factor) {
+        return Math.min(maxPollInterval, Math.max(minPollInterval, (long) (interval * factor)));
+    }
+
+    private static boolean isFinal(BatchStateEnum state) {
+        return state == BatchStateEnum.Completed || state == BatchStateEnum.Failed ||
+                state == BatchStateEnum.NotProcessed;
+    }
+
+    public long getMinPollInterval() {
+        return minPollInterval;
+    }
+
+    public void setMinPollInterval(long minPollInterval) {
+        this.minPollInterval = minPollInterval;
+    }
+
+    public long getMaxPollInterval() {
+        return maxPollInterval;
+    }
+
+    public void setMaxPollInterval(long maxPollInterval) {
+        this.maxPollInterval = maxPollInterval;
+    }
+
+    public int getMaxConsecutiveErrors() {
+        return maxConsecutiveErrors;
+    }
+
+    public void setMaxConsecutiveErrors(int maxConsecutiveErrors) {
+        this.maxConsecutiveErrors = maxConsecutiveErrors;
+    }
+
+    private static class JobPoll {
+        private final String jobId;
+        private final Map<String, BatchFuture> futures = new LinkedHashMap<String, BatchFuture>();
+        private BulkConnection connection;
+        private ScheduledFuture<?> task;
+        private long interval;
+        private int errors;
+
+        JobPoll(String jobId) {
+            this.jobId = jobId;
+        }
+    }
+}
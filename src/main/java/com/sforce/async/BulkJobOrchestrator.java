@@ -0,0 +1,238 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import com.sforce.ws.parser.XmlOutputStream;
+import com.sforce.ws.wsdl.Constants;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * BulkJobOrchestrator -- loads an arbitrarily long sequence of records into a single job.
+ * <p/>
+ * Records are read from an iterator and cut into xml batches that stay within a record count
+ * and a request size. Batches are uploaded as soon as they are complete, up to
+ * <code>maxConcurrentBatches</code> at a time, so at most that many batches are held in memory.
+ * The job is closed once every batch has been created. If a batch cannot be created the job is
+ * aborted and the error is thrown.
+ */
+public class BulkJobOrchestrator {
+
+    /** max records per batch accepted by the bulk api */
+    public static final int DEFAULT_MAX_RECORDS_PER_BATCH = 10000;
+    /** max size of a batch request accepted by the bulk api */
+    public static final int DEFAULT_MAX_BYTES_PER_BATCH = 10000000;
+    public static final int DEFAULT_MAX_CONCURRENT_BATCHES = 4;
+
+    private static final int END_TAG_SIZE = "</sObjects>".length();
+
+    private final BulkConnection connection;
+    private final ExecutorService executor;
+    private int maxRecordsPerBatch = DEFAULT_MAX_RECORDS_PER_BATCH;
+    private int maxBytesPerBatch = DEFAULT_MAX_BYTES_PER_BATCH;
+    private int maxConcurrentBatches = DEFAULT_MAX_CONCURRENT_BATCHES;
+
+    /**
+     * batches are uploaded one at a time by the calling thread
+     */
+    public BulkJobOrchestrator(BulkConnection connection) {
+        this(connection, null);
+    }
+
+    /**
+     * @param connection connection used to create the job and its batches
+     * @param executor   runs the batch uploads, null to upload from the calling thread
+     */
+    public BulkJobOrchestrator(BulkConnection connection, ExecutorService executor) {
+        this.connection = connection;
+        this.executor = executor;
+    }
+
+    /**
+     * Creates the job if it does not have an id yet, adds the records in as many batches as needed
+     * and closes the job.
+     *
+     * @param job     job to load, must use the xml content type
+     * @param records records to load
+     * @return handle on the job and the created batches
+     * @throws AsyncApiException if the job or one of the batches could not be created
+     */
+    public BulkJobHandle execute(JobInfo job, Iterator<SObject> records) throws AsyncApiException {
+        if (job.getContentType() != null && job.getContentType() != ContentType.XML) {
+            throw new AsyncApiException("Only jobs with xml content type can be loaded from records",
+                    AsyncExceptionCode.ClientInputError);
+        }
+        if (job.getId() == null) {
+            job = connection.createJob(job);
+        }
+
+        BulkJobHandle handle = new BulkJobHandle(connection, job);
+        AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Semaphore permits = new Semaphore(Math.max(1, maxConcurrentBatches));
+        List<Future<?>> uploads = new ArrayList<Future<?>>();
+
+        try {
+            Batch batch = null;
+            while (records.hasNext() && failure.get() == null) {
+                SObject record = records.next();
+                if (batch == null) {
+                    batch = new Batch();
+                }
+                if (!batch.add(record)) {
+                    submit(job, handle, batch, permits, failure, uploads);
+                    batch = new Batch();
+                    batch.add(record);
+                }
+                if (batch.recordCount >= maxRecordsPerBatch) {
+                    submit(job, handle, batch, permits, failure, uploads);
+                    batch = null;
+                }
+            }
+            if (batch != null && failure.get() == null) {
+                submit(job, handle, batch, permits, failure, uploads);
+            }
+            for (Future<?> upload : uploads) {
+                upload.get();
+            }
+        } catch (AsyncApiException e) {
+            failure.compareAndSet(null, e);
+        } catch (IOException e) {
+            failure.compareAndSet(null, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure.compareAndSet(null, e);
+        } catch (ExecutionException e) {
+            failure.compareAndSet(null, e.getCause());
+        } catch (RuntimeException e) {
+            failure.compareAndSet(null, e);
+        }
+
+        Throwable error = failure.get();
+        if (error != null) {
+            for (Future<?> upload : uploads) {
+                upload.cancel(true);
+            }
+            try {
+                handle.setJobInfo(connection.abortJob(job.getId()));
+            } catch (AsyncApiException ignored) {
+                // report the original failure
+            }
+            if (error instanceof AsyncApiException) {
+                throw (AsyncApiException) error;
+            }
+            throw new AsyncApiException("Failed to create batch", AsyncExceptionCode.ClientInputError, error);
+        }
+
+        handle.setJobInfo(connection.closeJob(job.getId()));
+        return handle;
+    }
+
+    private void submit(final JobInfo job, final BulkJobHandle handle, Batch batch, final Semaphore permits,
+                        final AtomicReference<Throwable> failure, List<Future<?>> uploads)
+            throws IOException, InterruptedException, AsyncApiException {
+        final byte[] content = batch.finish();
+        final int index = handle.reserveBatch(batch.recordCount);
+
+        if (executor == null) {
+            handle.setBatch(index, connection.createBatchFromStream(job, new ByteArrayInputStream(content)));
+            return;
+        }
+
+        permits.acquire();
+        try {
+            uploads.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (failure.get() == null) {
+                            handle.setBatch(index, connection.createBatchFromStream(job, new ByteArrayInputStream(content)));
+                        }
+                    } catch (Throwable e) {
+                        failure.compareAndSet(null, e);
+                    } finally {
+                        permits.release();
+                    }
+                }
+            }));
+        } catch (RejectedExecutionException e) {
+            // the executor is saturated, upload the batch on the calling thread
+            permits.release();
+            handle.setBatch(index, connection.createBatchFromStream(job, new ByteArrayInputStream(content)));
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    public int getMaxRecordsPerBatch() {
+        return maxRecordsPerBatch;
+    }
+
+    public void setMaxRecordsPerBatch(int maxRecordsPerBatch) {
+        this.maxRecordsPerBatch = maxRecordsPerBatch;
+    }
+
+    public int getMaxBytesPerBatch() {
+        return maxBytesPerBatch;
+    }
+
+    public void setMaxBytesPerBatch(int maxBytesPerBatch) {
+        this.maxBytesPerBatch = maxBytesPerBatch;
+    }
+
+    public int getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    public void setMaxConcurrentBatches(int maxConcurrentBatches) {
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    /**
+     * xml request body of a batch. A record that would take the batch over maxBytesPerBatch is
+     * dropped from the buffer so that it can start the next batch.
+     */
+    private class Batch extends ByteArrayOutputStream {
+        private final XmlOutputStream xml;
+        private int recordCount;
+
+        Batch() throws IOException {
+            super(64 * 1024);
+            xml = new AsyncXmlOutputStream(this, false);
+            xml.setPrefix("xsi", Constants.SCHEMA_INSTANCE_NS);
+            xml.writeStartTag(BulkConnection.NAMESPACE, "sObjects");
+        }
+
+        boolean add(SObject record) throws IOException {
+            xml.flush();
+            int mark = count;
+            record.write(xml);
+            xml.flush();
+            if (recordCount > 0 && count + END_TAG_SIZE > maxBytesPerBatch) {
+                count = mark;
+                return false;
+            }
+            recordCount++;
+            return true;
+        }
+
+        byte[] finish() throws IOException {
+            xml.writeEndTag(BulkConnection.NAMESPACE, "sObjects");
+            xml.endDocument();
+            xml.flush();
+            return toByteArray();
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * BulkQueryExtract -- runs a query as many batches of one job and streams their merged results.
+ * <p/>
+ * The query is either split by the server with PK chunking, or split beforehand into queries over
+ * ranges of ids that are submitted as batches of their own. Either way the batches are processed
+ * concurrently by the server, watched by a {@link BulkJobMonitor} and their result sets downloaded
+ * in parallel by a {@link QueryResultDownload}.
+ */
+public class BulkQueryExtract {
+    public static final String PK_CHUNKING_HEADER = "Sforce-Enable-PKChunking";
+    public static final int DEFAULT_CHUNK_SIZE = 100000;
+
+    private final BulkConnection connection;
+    private final ExecutorService executor;
+    private final BulkJobMonitor monitor;
+    private int parallelism = QueryResultDownload.DEFAULT_PARALLELISM;
+    private boolean ordered = true;
+
+    /**
+     * @param connection connection used to create the job, its batches and to download the results
+     * @param executor   runs the downloads
+     * @param monitor    watches the batches
+     */
+    public BulkQueryExtract(BulkConnection connection, ExecutorService executor, BulkJobMonitor monitor) {
+        this.connection = connection;
+        this.executor = executor;
+        this.monitor = monitor;
+    }
+
+    /**
+     * Creates the job with PK chunking enabled and submits the query as one batch, which the server splits
+     * into a batch per chunkSize records. Servers that do not support PK chunking process the query as a
+     * single batch, whose results are returned the same way.
+     *
+     * @param job       query job to create
+     * @param chunkSize number of records in each chunk
+     * @return the results of all the chunks; for csv jobs the header line is only kept once
+     * @throws AsyncApiException if the job could not be run or one of its batches failed
+     */
+    public InputStream extract(JobInfo job, String query, int chunkSize) throws AsyncApiException {
+        JobInfo created = connection.createJob(job, Collections.singletonMap(PK_CHUNKING_HEADER,
+                "chunkSize=" + chunkSize));
+        BatchInfo original;
+        try {
+            original = createBatch(created, query);
+        } catch (AsyncApiException e) {
+            abortJob(created);
+            throw e;
+        }
+        closeJob(created);
+
+        BatchInfo state = await(Collections.singletonList(monitor.watch(connection, original))).get(0);
+        if (state.getState() == BatchStateEnum.Failed) {
+            throw batchFailed(state);
+        }
+
+        List<BatchFuture> futures = new ArrayList<BatchFuture>();
+        if (state.getState() == BatchStateEnum.NotProcessed) {
+            // the original batch is only split, the chunks are the batches created for it
+            for (BatchInfo batch : connection.getBatchInfoList(created.getId()).getBatchInfo()) {
+                if (!batch.getId().equals(original.getId())) {
+                    futures.add(monitor.watch(connection, batch));
+                }
+            }
+        }
+        await(futures);
+        return download(created);
+    }
+
+    /**
+     * Creates the job and submits every query as a batch of its own.
+     *
+     * @param job     query job to create
+     * @param queries queries over distinct records, usually ranges of ids
+     * @return the results of all the queries, in order; for csv jobs the header line is only kept once
+     * @throws AsyncApiException if the job could not be run or one of its batches failed
+     */
+    public InputStream extract(JobInfo job, List<String> queries) throws AsyncApiException {
+        JobInfo created = connection.createJob(job);
+        List<BatchFuture> futures = new ArrayList<BatchFuture>(queries.size());
+        try {
+            for (String query : queries) {
+                futures.add(monitor.watch(connection, createBatch(created, query)));
+            }
+        } catch (AsyncApiException e) {
+            for (BatchFuture future : futures) {
+                future.cancel(false);
+            }
+            abortJob(created);
+            throw e;
+        }
+        closeJob(created);
+
+        await(futures);
+        return download(created);
+    }
+
+    private BatchInfo createBatch(JobInfo job, String query) throws AsyncApiException {
+        try {
+            return connection.createBatchFromStream(job, new ByteArrayInputStream(query.getBytes("UTF-8")));
+        } catch (UnsupportedEncodingException e) {
+            throw new AsyncApiException("Failed to encode query", AsyncExceptionCode.ClientInputError, e);
+        }
+    }
+
+    private void closeJob(JobInfo job) throws AsyncApiException {
+        connection.closeJob(job.getId());
+    }
+
+    private void abortJob(JobInfo job) {
+        try {
+            connection.abortJob(job.getId());
+        } catch (AsyncApiException e) {
+            // the original failure is reported
+        }
+    }
+
+    /**
+     * @return the final state of every batch
+     * @throws AsyncApiException if a batch failed or could not be watched
+     */
+    private List<BatchInfo> await(List<BatchFuture> futures) throws AsyncApiException {
+        List<BatchInfo> batches = new ArrayList<BatchInfo>(futures.size());
+        try {
+            for (BatchFuture future : futures) {
+                BatchInfo batch = future.get();
+                if (batch.getState() == BatchStateEnum.Failed) {
+                    throw batchFailed(batch);
+                }
+                batches.add(batch);
+            }
+            return batches;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AsyncApiException("Interrupted while waiting for batches", AsyncExceptionCode.ClientInputError, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AsyncApiException) {
+                throw (AsyncApiException) e.getCause();
+            }
+            throw new AsyncApiException("Failed to watch batches", AsyncExceptionCode.ClientInputError, e.getCause());
+        } finally {
+            for (BatchFuture future : futures) {
+                if (!future.isDone()) {
+                    future.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static AsyncApiException batchFailed(BatchInfo batch) {
+        return new AsyncApiException("Batch " + batch.getId() + " of job " + batch.getJobId() + " failed: " +
+                batch.getStateMessage(), AsyncExceptionCode.InvalidBatch);
+    }
+
+    private InputStream download(JobInfo job) throws AsyncApiException {
+        QueryResultDownload download = new QueryResultDownload(connection, executor);
+        download.setParallelism(parallelism);
+        download.setOrdered(ordered);
+        download.start(job.getId());
+        return download.getInputStream(job.getContentType() == ContentType.CSV);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * @param parallelism maximum number of result sets downloaded at the same time
+     */
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @param ordered false to read the result sets as soon as they are downloaded instead of in batch order
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+}
@@ -0,0 +1,442 @@
+package com.sforce.async;
+
+import java.io.*;
+import java.nio.charset.Charset;
+import java.util.Arrays;
+
+/*
+ * Copyright, 1999, SALESFORCE.com
+ */
+
+/**
+ * Reads a CSV stream one record at a time into a reused buffer.
+ * <p/>
+ * Unlike {@link CSVReader}, which validates batch content against the upload limits, there is no limit
+ * on the number of records or the size of the stream, so it suits query results and batch results of any
+ * size. Fields are exposed as {@link CharSequence} views that stay valid until the next call to
+ * {@link #next()}; nothing is allocated per record or per field unless a field is turned into a String.
+ * <p/>
+ * Empty fields, quoted or not, and fields missing from a short record are read as null by
+ * {@link #getString(int)}, the same way {@link CSVReader} reads them.
+ */
+public class CSVRecordCursor implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final Reader input;
+    private final char separator;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private int position;
+    private int limit;
+    private boolean atEOF;
+    private boolean ignoreBlankRecords = true;
+
+    private char[] record = new char[1024];
+    private int recordLength;
+    private int recordNumber;
+    private int columnCount;
+    private boolean blank;
+    // characters read for the current field, kept or not
+    private int fieldChars;
+    private int[] fieldStart = new int[16];
+    private int[] fieldEnd = new int[16];
+    private Field[] fields = new Field[16];
+
+    // column index -> position in the projection, -1 for a column that is skipped
+    private int[] projection;
+    private int projectedCount;
+
+    public CSVRecordCursor(InputStream input) {
+        this(new InputStreamReader(input, Charset.forName("UTF-8")), ',');
+    }
+
+    public CSVRecordCursor(InputStream input, String enc) throws UnsupportedEncodingException {
+        this(new InputStreamReader(input, enc), ',');
+    }
+
+    /**
+     * @param input read through a buffer of its own, it does not need to be buffered
+     */
+    public CSVRecordCursor(Reader input, char separator) {
+        this.input = input;
+        this.separator = separator;
+    }
+
+    /**
+     * Moves to the next record.
+     *
+     * @return false at the end of the stream
+     */
+    public boolean next() throws IOException {
+        do {
+            if (!readRecord()) {
+                return false;
+            }
+        } while (ignoreBlankRecords && blank);
+        recordNumber++;
+        return true;
+    }
+
+    /**
+     * @return number of fields of the current record, or of the projection when one is set
+     */
+    public int getFieldCount() {
+        return projection == null ? columnCount : projectedCount;
+    }
+
+    /**
+     * @return view on the field, valid until the next call to {@link #next()}; null if the record has no such field
+     */
+    public CharSequence getField(int index) {
+        if (fieldLength(index) < 0) {
+            return null;
+        }
+        if (index >= fields.length) {
+            Field[] grown = new Field[Math.max(index + 1, fields.length * 2)];
+            System.arraycopy(fields, 0, grown, 0, fields.length);
+            fields = grown;
+        }
+        Field field = fields[index];
+        if (field == null) {
+            field = fields[index] = new Field(index);
+        }
+        return field;
+    }
+
+    /**
+     * @return value of the field, null if it is empty or missing
+     */
+    public String getString(int index) {
+        int length = fieldLength(index);
+        return length <= 0 ? null : new String(record, fieldStart[index], length);
+    }
+
+    public boolean isEmpty(int index) {
+        return fieldLength(index) <= 0;
+    }
+
+    /**
+     * @return true if the field equals the given value, without creating a String
+     */
+    public boolean fieldEquals(int index, String value) {
+        int length = fieldLength(index);
+        if (length != value.length()) {
+            return false;
+        }
+        int start = fieldStart[index];
+        for (int i = 0; i < length; i++) {
+            if (record[start + i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return number of the current record, starting at 1
+     */
+    public int getRecordNumber() {
+        return recordNumber;
+    }
+
+    /**
+     * Looks up columns by name in the current record, usually the header.
+     *
+     * @return column index of each name, to be passed to {@link #setProjection(int...)}
+     * @throws CSVReader.CSVParseException if one of the names is not in the record
+     */
+    public int[] indexesOf(String... names) throws CSVReader.CSVParseException {
+        int[] indexes = new int[names.length];
+        for (int i = 0; i < names.length; i++) {
+            indexes[i] = -1;
+            for (int column = 0; column < getFieldCount(); column++) {
+                if (fieldEquals(column, names[i])) {
+                    indexes[i] = column;
+                    break;
+                }
+            }
+            if (indexes[i] < 0) {
+                throw new CSVReader.CSVParseException("Column not found: " + names[i], recordNumber);
+            }
+        }
+        return indexes;
+    }
+
+    /**
+     * Only keeps the given columns of the following records; the other columns are skipped without being
+     * copied. Field indexes then refer to positions in the projection.
+     *
+     * @param columns indexes of the columns to keep, in the order they are exposed; none to keep all columns
+     */
+    public void setProjection(int... columns) {
+        if (columns == null || columns.length == 0) {
+            projection = null;
+            projectedCount = 0;
+            return;
+        }
+        int max = 0;
+        for (int column : columns) {
+            max = Math.max(max, column);
+        }
+        projection = new int[max + 1];
+        Arrays.fill(projection, -1);
+        for (int i = 0; i < columns.length; i++) {
+            projection[columns[i]] = i;
+        }
+        projectedCount = columns.length;
+        ensureFieldCapacity(projectedCount);
+    }
+
+    public void setIgnoreBlankRecords(boolean ignoreBlankRecords) {
+        this.ignoreBlankRecords = ignoreBlankRecords;
+    }
+
+    public void close() throws IOException {
+        input.close();
+    }
+
+    private boolean isProjected(int column) {
+        return column < projection.length && projection[column] >= 0;
+    }
+
+    private int fieldLength(int index) {
+        if (index < 0 || index >= getFieldCount()) {
+            return -1;
+        }
+        return fieldEnd[index] - fieldStart[index];
+    }
+
+    private boolean readRecord() throws IOException {
+        if (atEOF || (position >= limit && !fill())) {
+            atEOF = true;
+            return false;
+        }
+
+        recordLength = 0;
+        columnCount = 0;
+        if (projection != null) {
+            // a short record leaves the missing columns unset
+            for (int i = 0; i < projectedCount; i++) {
+                fieldStart[i] = 0;
+                fieldEnd[i] = -1;
+            }
+        }
+
+        while (true) {
+            int slot = projection == null ? columnCount : (isProjected(columnCount) ? projection[columnCount] : -1);
+            int start = recordLength;
+            fieldChars = 0;
+            int c = readUnquoted(slot >= 0);
+
+            if (c == '"') {
+                if (fieldChars > 0) {
+                    throw new CSVReader.CSVParseException(
+                            "Found unescaped quote. A value with quote should be within a quote", recordNumber + 1);
+                }
+                c = readQuoted(slot >= 0);
+                if (c != separator && c != '\n' && c != '\r' && c != -1) {
+                    throw new CSVReader.CSVParseException("Not expecting more text after end quote", recordNumber + 1);
+                }
+            }
+
+            if (slot >= 0) {
+                ensureFieldCapacity(slot + 1);
+                fieldStart[slot] = start;
+                fieldEnd[slot] = recordLength;
+            }
+            columnCount++;
+
+            if (c == separator) {
+                continue;
+            }
+            blank = columnCount == 1 && fieldChars == 0;
+            if (c == '\r' && peek() == '\n') {
+                position++;
+            }
+            if (c == -1) {
+                atEOF = true;
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Copies characters up to the next separator, end of line, quote or end of stream.
+     *
+     * @return the character that stopped the field, -1 at the end of the stream
+     */
+    private int readUnquoted(boolean keep) throws IOException {
+        while (true) {
+            char[] buf = buffer;
+            int p = position;
+            int end = limit;
+            while (p < end) {
+                char c = buf[p];
+                if (c == separator || c == '\n' || c == '\r' || c == '"') {
+                    break;
+                }
+                p++;
+            }
+            if (keep) {
+                append(buf, position, p - position);
+            }
+            fieldChars += p - position;
+            position = p;
+            if (p < end) {
+                position++;
+                return buf[p];
+            }
+            if (!fill()) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * Copies the content of a quoted field, the opening quote having been read.
+     *
+     * @return the character following the closing quote, -1 at the end of the stream
+     */
+    private int readQuoted(boolean keep) throws IOException {
+        while (true) {
+            char[] buf = buffer;
+            int p = position;
+            int end = limit;
+            while (p < end) {
+                char c = buf[p];
+                if (c == '"' || c == '\r') {
+                    break;
+                }
+                p++;
+            }
+            if (keep) {
+                append(buf, position, p - position);
+            }
+            fieldChars += p - position;
+            position = p;
+            if (p == end) {
+                if (!fill()) {
+                    atEOF = true;
+                    throw new CSVReader.CSVParseException("EOF reached before closing an opened quote",
+                            recordNumber + 1);
+                }
+                continue;
+            }
+
+            position++;
+            if (buf[p] == '\r') {
+                // line breaks within a value are read as \n
+                if (peek() == '\n') {
+                    position++;
+                }
+                fieldChars++;
+                if (keep) {
+                    append('\n');
+                }
+                continue;
+            }
+
+            int next = read();
+            if (next != '"') {
+                return next;
+            }
+            fieldChars++;
+            if (keep) {
+                append('"');
+            }
+        }
+    }
+
+    private int read() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position++];
+    }
+
+    private int peek() throws IOException {
+        if (position >= limit && !fill()) {
+            return -1;
+        }
+        return buffer[position];
+    }
+
+    private boolean fill() throws IOException {
+        int n;
+        do {
+            n = input.read(buffer, 0, buffer.length);
+        } while (n == 0);
+        if (n < 0) {
+            position = limit = 0;
+            return false;
+        }
+        position = 0;
+        limit = n;
+        return true;
+    }
+
+    private void append(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return;
+        }
+        ensureRecordCapacity(recordLength + length);
+        System.arraycopy(chars, offset, record, recordLength, length);
+        recordLength += length;
+    }
+
+    private void append(char c) {
+        ensureRecordCapacity(recordLength + 1);
+        record[recordLength++] = c;
+    }
+
+    private void ensureRecordCapacity(int capacity) {
+        if (capacity > record.length) {
+            char[] grown = new char[Math.max(capacity, record.length * 2)];
+            System.arraycopy(record, 0, grown, 0, recordLength);
+            record = grown;
+        }
+    }
+
+    private void ensureFieldCapacity(int capacity) {
+        if (capacity > fieldStart.length) {
+            int size = Math.max(capacity, fieldStart.length * 2);
+            int[] start = new int[size];
+            int[] end = new int[size];
+            System.arraycopy(fieldStart, 0, start, 0, fieldStart.length);
+            System.arraycopy(fieldEnd, 0, end, 0, fieldEnd.length);
+            fieldStart = start;
+            fieldEnd = end;
+        }
+    }
+
+    /**
+     * View on a field of the current record.
+     */
+    private class Field implements CharSequence {
+        private final int index;
+
+        Field(int index) {
+            this.index = index;
+        }
+
+        public int length() {
+            return Math.max(0, fieldLength(index));
+        }
+
+        public char charAt(int i) {
+            if (i < 0 || i >= length()) {
+                throw new IndexOutOfBoundsException(String.valueOf(i));
+            }
+            return record[fieldStart[index] + i];
+        }
+
+        public CharSequence subSequence(int start, int end) {
+            return toString().substring(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return new String(record, fieldStart[index], length());
+        }
+    }
+}
@@ -0,0 +1,450 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * QueryResultDownload -- downloads the result sets of bulk query batches in parallel.
+ * <p/>
+ * Every result set of every batch is spooled to a temporary file by up to {@link #getParallelism()}
+ * concurrent downloads, and handed to the consumer in the order of the batches and of their results, or
+ * in the order the downloads complete. At most {@link #getMaxSpooledResults()} result sets are spooled
+ * and not yet consumed at any time; downloads wait for the consumer beyond that.
+ */
+public class QueryResultDownload implements Closeable {
+    public static final int DEFAULT_PARALLELISM = 4;
+    public static final int DEFAULT_MAX_SPOOLED_RESULTS = 8;
+
+    private final BulkConnection connection;
+    private final ExecutorService executor;
+    private int parallelism = DEFAULT_PARALLELISM;
+    private int maxSpooledResults = DEFAULT_MAX_SPOOLED_RESULTS;
+    private boolean ordered = true;
+    private File spoolDirectory;
+
+    private String jobId;
+    private List<Part> parts;
+    private final BlockingQueue<Part> completed = new LinkedBlockingQueue<Part>();
+    private final List<Future<?>> downloads = new ArrayList<Future<?>>();
+    private Semaphore spoolPermits;
+    private int consumed;
+    private volatile boolean closed;
+
+    /**
+     * @param connection connection used to list and download the results
+     * @param executor   runs the downloads
+     */
+    public QueryResultDownload(BulkConnection connection, ExecutorService executor) {
+        this.connection = connection;
+        this.executor = executor;
+    }
+
+    /**
+     * Starts downloading the results of every batch of the job. Batches that were not processed, like the
+     * original batch of a pk chunked job, are skipped.
+     *
+     * @throws AsyncApiException if a batch failed or is not complete yet, or the results could not be listed
+     */
+    public void start(String jobId) throws AsyncApiException {
+        List<BatchInfo> batches = new ArrayList<BatchInfo>();
+        for (BatchInfo batch : connection.getBatchInfoList(jobId).getBatchInfo()) {
+            if (batch.getState() == BatchStateEnum.NotProcessed) {
+                continue;
+            }
+            if (batch.getState() != BatchStateEnum.Completed) {
+                throw new AsyncApiException("Batch " + batch.getId() + " of job " + jobId + " is " +
+                        batch.getState() + ": " + batch.getStateMessage(), AsyncExceptionCode.InvalidBatch);
+            }
+            batches.add(batch);
+        }
+        start(jobId, batches);
+    }
+
+    /**
+     * Starts downloading the results of the given batches of a job.
+     *
+     * @throws AsyncApiException if the results could not be listed
+     */
+    public void start(String jobId, List<BatchInfo> batches) throws AsyncApiException {
+        if (parts != null) {
+            throw new IllegalStateException("Download already started");
+        }
+        this.jobId = jobId;
+
+        String[][] resultIds = listResults(jobId, batches);
+        parts = new ArrayList<Part>();
+        for (int i = 0; i < batches.size(); i++) {
+            for (String resultId : resultIds[i]) {
+                parts.add(new Part(parts.size(), batches.get(i).getId(), resultId));
+            }
+        }
+
+        spoolPermits = new Semaphore(Math.max(1, maxSpooledResults));
+        final AtomicInteger next = new AtomicInteger();
+        Runnable download = new Runnable() {
+            @Override
+            public void run() {
+                download(next);
+            }
+        };
+        for (int i = 0; i < Math.min(Math.max(1, parallelism), parts.size()); i++) {
+            try {
+                downloads.add(executor.submit(download));
+            } catch (RejectedExecutionException e) {
+                if (downloads.isEmpty()) {
+                    close();
+                    throw new AsyncApiException("No thread available to download results",
+                            AsyncExceptionCode.ClientInputError, e);
+                }
+                break;
+            }
+        }
+    }
+
+    /**
+     * @return number of result sets to download
+     */
+    public int getResultCount() {
+        return parts == null ? 0 : parts.size();
+    }
+
+    /**
+     * Waits for the next result set. The returned stream must be closed, which deletes its spool file and
+     * lets another download start.
+     *
+     * @return the next result set, null when all of them have been returned
+     * @throws AsyncApiException if the download of the result set failed
+     */
+    public InputStream nextResult() throws AsyncApiException {
+        if (parts == null) {
+            throw new IllegalStateException("Download not started");
+        }
+        if (consumed >= parts.size()) {
+            return null;
+        }
+
+        Part part;
+        try {
+            if (ordered) {
+                part = parts.get(consumed);
+                part.done.await();
+            } else {
+                part = completed.take();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            close();
+            throw new AsyncApiException("Interrupted while downloading results", AsyncExceptionCode.ClientInputError, e);
+        }
+        consumed++;
+
+        if (part.failure != null) {
+            close();
+            if (part.failure instanceof AsyncApiException) {
+                throw (AsyncApiException) part.failure;
+            }
+            throw new AsyncApiException("Failed to download result " + part.resultId + " of batch " + part.batchId,
+                    AsyncExceptionCode.ClientInputError, part.failure);
+        }
+
+        try {
+            return new SpooledResultStream(part);
+        } catch (IOException e) {
+            part.discard();
+            close();
+            throw new AsyncApiException("Failed to read spooled result", AsyncExceptionCode.ClientInputError, e);
+        }
+    }
+
+    /**
+     * @param skipRepeatedHeader true to drop the first line of every result set but the first one, which
+     *                           is the header of csv results
+     * @return all the result sets as one stream
+     */
+    public InputStream getInputStream(final boolean skipRepeatedHeader) {
+        return new InputStream() {
+            private InputStream current;
+            private boolean first = true;
+            private boolean end;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                int n = read(b, 0, 1);
+                return n < 0 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                while (!end) {
+                    if (current == null && !advance()) {
+                        end = true;
+                        break;
+                    }
+                    int n = current.read(b, off, len);
+                    if (n >= 0) {
+                        return n;
+                    }
+                    current.close();
+                    current = null;
+                }
+                return -1;
+            }
+
+            private boolean advance() throws IOException {
+                try {
+                    current = nextResult();
+                } catch (AsyncApiException e) {
+                    throw new IOException(e.getMessage(), e);
+                }
+                if (current == null) {
+                    return false;
+                }
+                if (skipRepeatedHeader && !first) {
+                    int c;
+                    do {
+                        c = current.read();
+                    } while (c != -1 && c != '\n');
+                }
+                first = false;
+                return true;
+            }
+
+            @Override
+            public void close() throws IOException {
+                if (current != null) {
+                    current.close();
+                }
+                QueryResultDownload.this.close();
+            }
+        };
+    }
+
+    /**
+     * Stops the downloads and deletes the spooled result sets that were not consumed.
+     */
+    public void close() {
+        closed = true;
+        for (Future<?> download : downloads) {
+            download.cancel(true);
+        }
+        if (parts != null) {
+            for (Part part : parts) {
+                if (!part.taken) {
+                    part.discard();
+                }
+            }
+        }
+    }
+
+    private String[][] listResults(final String jobId, final List<BatchInfo> batches) throws AsyncApiException {
+        final String[][] resultIds = new String[batches.size()][];
+        final AtomicInteger next = new AtomicInteger();
+        List<Future<?>> listings = new ArrayList<Future<?>>();
+        Callable<Void> lister = new Callable<Void>() {
+            @Override
+            public Void call() throws AsyncApiException {
+                listResults(jobId, batches, next, resultIds);
+                return null;
+            }
+        };
+        for (int i = 0; i < Math.min(Math.max(1, parallelism), batches.size()); i++) {
+            try {
+                listings.add(executor.submit(lister));
+            } catch (RejectedExecutionException e) {
+                break;
+            }
+        }
+        if (listings.isEmpty()) {
+            // the executor is saturated, list the results on the calling thread
+            listResults(jobId, batches, next, resultIds);
+            return resultIds;
+        }
+
+        try {
+            for (Future<?> listing : listings) {
+                listing.get();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new AsyncApiException("Interrupted while listing results", AsyncExceptionCode.ClientInputError, e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof AsyncApiException) {
+                throw (AsyncApiException) e.getCause();
+            }
+            throw new AsyncApiException("Failed to list results", AsyncExceptionCode.ClientInputError, e.getCause());
+        } finally {
+            for (Future<?> listing : listings) {
+                listing.cancel(true);
+            }
+        }
+        return resultIds;
+    }
+
+    private void listResults(String jobId, List<BatchInfo> batches, AtomicInteger next, String[][] resultIds)
+            throws AsyncApiException {
+        int index;
+        while ((index = next.getAndIncrement()) < batches.size()) {
+            String[] results = connection.getQueryResultList(jobId, batches.get(index).getId()).getResult();
+            resultIds[index] = results == null ? new String[0] : results;
+        }
+    }
+
+    private void download(AtomicInteger next) {
+        while (!closed) {
+            try {
+                spoolPermits.acquire();
+            } catch (InterruptedException e) {
+                return;
+            }
+            int index = next.getAndIncrement();
+            if (index >= parts.size() || closed) {
+                spoolPermits.release();
+                return;
+            }
+
+            Part part = parts.get(index);
+            try {
+                part.file = File.createTempFile("bulk-query-", ".result", spoolDirectory);
+                InputStream in = connection.getQueryResultStream(jobId, part.batchId, part.resultId);
+                try {
+                    OutputStream out = new FileOutputStream(part.file);
+                    try {
+                        byte[] buffer = new byte[64 * 1024];
+                        int n;
+                        while ((n = in.read(buffer)) != -1) {
+                            out.write(buffer, 0, n);
+                        }
+                    } finally {
+                        out.close();
+                    }
+                } finally {
+                    in.close();
+                }
+            } catch (Throwable e) {
+                part.failure = e;
+            }
+
+            if (closed) {
+                part.discard();
+            }
+            part.done.countDown();
+            completed.add(part);
+            if (part.failure != null) {
+                return;
+            }
+        }
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    public void setParallelism(int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    public int getMaxSpooledResults() {
+        return maxSpooledResults;
+    }
+
+    public void setMaxSpooledResults(int maxSpooledResults) {
+        this.maxSpooledResults = maxSpooledResults;
+    }
+
+    public boolean isOrdered() {
+        return ordered;
+    }
+
+    /**
+     * @param ordered false to hand the result sets over as soon as they are downloaded
+     */
+    public void setOrdered(boolean ordered) {
+        this.ordered = ordered;
+    }
+
+    public File getSpoolDirectory() {
+        return spoolDirectory;
+    }
+
+    /**
+     * @param spoolDirectory where the result sets are spooled, null for the default temporary directory
+     */
+    public void setSpoolDirectory(File spoolDirectory) {
+        this.spoolDirectory = spoolDirectory;
+    }
+
+    private class Part {
+        private final int index;
+        private final String batchId;
+        private final String resultId;
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile File file;
+        private volatile Throwable failure;
+        private volatile boolean taken;
+        private boolean released;
+
+        Part(int index, String batchId, String resultId) {
+            this.index = index;
+            this.batchId = batchId;
+            this.resultId = resultId;
+        }
+
+        synchronized void discard() {
+            if (file != null) {
+                file.delete();
+                file = null;
+            }
+            if (!released && done.getCount() == 0) {
+                released = true;
+                spoolPermits.release();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return "Part{index=" + index + ", batchId=" + batchId + ", resultId=" + resultId + "}";
+        }
+    }
+
+    private static class SpooledResultStream extends FilterInputStream {
+        private final Part part;
+
+        SpooledResultStream(Part part) throws IOException {
+            super(new BufferedInputStream(new FileInputStream(part.file), 64 * 1024));
+            this.part = part;
+            part.taken = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                super.close();
+            } finally {
+                part.discard();
+            }
+        }
+    }
+}
@@ -1,23 +1,49 @@
 package com.sforce.bulk;
 
-import java.io.PrintWriter;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.io.Writer;
 
 /**
  * CSV writer
  *
+ * Records are written through a reused buffer that is only flushed when full, on {@link #flush()} and
+ * on {@link #endDocument()}. Values are quoted only when they need to be. Like a PrintWriter, the writer
+ * does not throw on I/O errors; use {@link #checkError()}.
+ *
  * <p/>
  * User: mcheenath
  * Date: Nov 1, 2010
  */
 public class CsvWriter {
-    private PrintWriter writer;
+    private static final int BUFFER_SIZE = 32 * 1024;
+
+    private final Writer writer;
+    private final OutputStream out;
+    private final char[] chars;
+    private final byte[] bytes;
+    private int count;
+    private boolean trouble;
 
     public CsvWriter(String[] headers, Writer w) {
+        this(headers, w, null);
+    }
+
+    /**
+     * Writes the records to the stream encoded as UTF-8, without going through a Writer.
+     */
+    public CsvWriter(String[] headers, OutputStream out) {
+        this(headers, null, out);
+    }
+
+    private CsvWriter(String[] headers, Writer w, OutputStream out) {
         assert headers != null;
         assert headers.length != 0;
 
-        writer = new PrintWriter(w, true);
+        this.writer = w;
+        this.out = out;
+        this.chars = w != null ? new char[BUFFER_SIZE] : null;
+        this.bytes = out != null ? new byte[BUFFER_SIZE] : null;
         writeRecord(headers);
     }
 
@@ -34,15 +60,24 @@ public class CsvWriter {
     }
 
     public void endDocument() {
-        writer.close();
+        flush();
+        try {
+            if (writer != null) {
+                writer.close();
+            } else {
+                out.close();
+            }
+        } catch (IOException e) {
+            trouble = true;
+        }
     }
 
     public void endRecord() {
-        writer.println();
+        put('\n');
     }
 
     public void writeField(String value) {
-        writer.print(",");
+        put(',');
         writeFirstField(value);
     }
 
@@ -51,9 +86,134 @@ public class CsvWriter {
             return;
         }
 
-        writer.print("\"");
-        value = value.replaceAll("\"", "\"\"");
-        writer.print(value);
-        writer.print("\"");
+        if (!needsQuotes(value)) {
+            put(value, false);
+            return;
+        }
+
+        put('"');
+        put(value, true);
+        put('"');
+    }
+
+    /**
+     * Writes the buffered records to the underlying writer or stream and flushes it.
+     */
+    public void flush() {
+        try {
+            if (writer != null) {
+                writer.write(chars, 0, count);
+                writer.flush();
+            } else {
+                out.write(bytes, 0, count);
+                out.flush();
+            }
+        } catch (IOException e) {
+            trouble = true;
+        }
+        count = 0;
+    }
+
+    /**
+     * @return true if writing to the underlying writer or stream failed
+     */
+    public boolean checkError() {
+        return trouble;
+    }
+
+    private static boolean needsQuotes(String value) {
+        int length = value.length();
+        if (length == 0 || isSpace(value.charAt(0)) || isSpace(value.charAt(length - 1))) {
+            return true;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (c == ',' || c == '"' || c == '\n' || c == '\r') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t';
+    }
+
+    private void put(String value, boolean escapeQuotes) {
+        int length = value.length();
+        if (writer != null && !escapeQuotes) {
+            int offset = 0;
+            while (offset < length) {
+                if (count == chars.length) {
+                    drain();
+                }
+                int n = Math.min(length - offset, chars.length - count);
+                value.getChars(offset, offset + n, chars, count);
+                count += n;
+                offset += n;
+            }
+            return;
+        }
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            if (escapeQuotes && c == '"') {
+                put('"');
+            }
+            if (writer == null && Character.isHighSurrogate(c) && i + 1 < length &&
+                    Character.isLowSurrogate(value.charAt(i + 1))) {
+                putCodePoint(Character.toCodePoint(c, value.charAt(++i)));
+            } else {
+                put(c);
+            }
+        }
+    }
+
+    private void put(char c) {
+        if (writer != null) {
+            if (count == chars.length) {
+                drain();
+            }
+            chars[count++] = c;
+            return;
+        }
+        if (count + 3 > bytes.length) {
+            drain();
+        }
+        if (c < 0x80) {
+            bytes[count++] = (byte) c;
+        } else if (c < 0x800) {
+            bytes[count++] = (byte) (0xc0 | (c >> 6));
+            bytes[count++] = (byte) (0x80 | (c & 0x3f));
+        } else if (c >= Character.MIN_SURROGATE && c <= Character.MAX_SURROGATE) {
+            // unpaired surrogate, replaced the same way the UTF-8 encoder does
+            bytes[count++] = '?';
+        } else {
+            bytes[count++] = (byte) (0xe0 | (c >> 12));
+            bytes[count++] = (byte) (0x80 | ((c >> 6) & 0x3f));
+            bytes[count++] = (byte) (0x80 | (c & 0x3f));
+        }
+    }
+
+    private void putCodePoint(int codePoint) {
+        if (count + 4 > bytes.length) {
+            drain();
+        }
+        bytes[count++] = (byte) (0xf0 | (codePoint >> 18));
+        bytes[count++] = (byte) (0x80 | ((codePoint >> 12) & 0x3f));
+        bytes[count++] = (byte) (0x80 | ((codePoint >> 6) & 0x3f));
+        bytes[count++] = (byte) (0x80 | (codePoint & 0x3f));
+    }
+
+    private void drain() {
+        try {
+            if (writer != null) {
+                writer.write(chars, 0, count);
+            } else {
+                out.write(bytes, 0, count);
+            }
+        } catch (IOException e) {
+            trouble = true;
+        }
+        count = 0;
     }
 }
@@ -1,6 +1,7 @@
 package com.sforce.bulk;
 
 import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.RetryPolicy;
 
 import java.io.PrintStream;
 
@@ -42,12 +43,12 @@ public class StreamHandler {
         getLogStream().println(BULK_TAG + "ERROR:" + message);
         e.printStackTrace(getLogStream());
 
-        if (errorCount > getMaxErrorCount()) {
-            String str = "Tried more than " + getMaxErrorCount() + "... gaving up ...";
+        long waitTime = errorCount > getMaxErrorCount() ? -1 : getWaitTime();
+        if (waitTime < 0) {
+            String str = "Tried " + errorCount + " times... gaving up ...";
             info(str);
             shutdown = true;
         } else {
-            long waitTime = getWaitTime();
             info("Error count " + errorCount + ". Trying again after " + waitTime);
 
             try {
@@ -58,7 +59,15 @@ public class StreamHandler {
         }
     }
 
+    /**
+     * @return the time to wait before trying again, from the retry policy of the config if it has one, or -1 to
+     *         give up
+     */
     public long getWaitTime() {
+        RetryPolicy retryPolicy = config.getRetryPolicy();
+        if (retryPolicy != null) {
+            return retryPolicy.getRetryDelay("stream", errorCount, RetryPolicy.Failure.REJECTED, -1);
+        }
         return (long) (Math.pow(2, errorCount) * 1000);
     }
 
@@ -4,7 +4,6 @@ import com.sforce.async.*;
 
 import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
 
 /**
  * This class represents
@@ -19,7 +18,7 @@ public class UpdateResultStream {
     private BatchInfo[] batchList;
     private int batchIndex = -1;
     private int recordIndex = 0;
-    private CSVReader resultReader;
+    private CSVRecordCursor resultReader;
 
     public UpdateResultStream(StreamHandler handler, BulkConnection bulkConnection, JobInfo job)
             throws StreamException {
@@ -47,9 +46,7 @@ public class UpdateResultStream {
 
     public UpdateResult next() throws StreamException {
         try {
-            ArrayList<String> record;
-
-            if (resultReader == null || (record = resultReader.nextRecord()) == null) {
+            if (resultReader == null || !resultReader.next()) {
                 batchIndex++;
 
                 if (batchIndex >= batchList.length) {
@@ -58,31 +55,21 @@ public class UpdateResultStream {
                 }
 
                 loadNextBatch();
-                record = resultReader.nextRecord();
-            }
 
-            if (record ==  null) {
-                return null;
+                if (!resultReader.next()) {
+                    return null;
+                }
             }
 
             recordIndex++;
-            return new UpdateResult(valueAt(record,0), booleanAt(record, 1), booleanAt(record, 2), valueAt(record, 3));
+            return new UpdateResult(resultReader.getString(0), booleanAt(1), booleanAt(2), resultReader.getString(3));
         } catch (IOException e) {
             throw new StreamException("Failed to read next record", e);
         }
     }
 
-    private String valueAt(ArrayList<String> record, int index) {
-        if (index < record.size()) {
-            return record.get(index);
-        } else {
-            return null;
-        }
-    }
-
-    private boolean booleanAt(ArrayList<String> record, int index) {
-        String val = valueAt(record, index);
-        return Boolean.parseBoolean(val);
+    private boolean booleanAt(int index) {
+        return Boolean.parseBoolean(resultReader.getString(index));
     }
 
     private void waitForNextBatch() throws StreamException {
@@ -119,8 +106,8 @@ public class UpdateResultStream {
                 InputStream resultStream =
                         bulkConnection.getBatchResultStream(job.getId(), batchList[batchIndex].getId());
 
-                resultReader = new CSVReader(resultStream);
-                resultReader.nextRecord(); //comsume header
+                resultReader = new CSVRecordCursor(resultStream);
+                resultReader.next(); //comsume header
                 break;
             } catch(Throwable e) {
                 handler.error("Failed to read result for batch " + batchList[batchIndex].getId(), e);
@@ -3,10 +3,20 @@ package com.sforce.bulk;
 import com.sforce.async.*;
 
 import java.io.ByteArrayInputStream;
-import java.io.StringWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 
 /**
- * This class represents
+ * This class represents a stream of records loaded into a bulk api job as csv batches.
+ * <p/>
+ * Records are encoded as they are written into a reusable byte buffer. A full batch is uploaded on a
+ * background thread while the next one fills, so at most two batches are held in memory.
  * <p/>
  * User: mcheenath
  * Date: Dec 10, 2010
@@ -17,9 +27,13 @@ public class UpdateStream {
     private JobInfo job;
     private BulkConnection bulkConnection;
     private String[] fieldNames;
-    private StringWriter writer;
+    private BatchBuffer buffer;
     private CsvWriter csvWriter;
     private int recordCount;
+    private BatchBuffer spare;
+    private BatchBuffer uploading;
+    private Future<?> pendingUpload;
+    private ExecutorService uploader;
 
     public static UpdateStream create(StreamHandler handler) throws StreamException {
         return new UpdateStream(handler);
@@ -84,8 +98,17 @@ public class UpdateStream {
     }
 
     public UpdateResultStream close() throws StreamException {
-        if (writer != null) {
-            createBatch();
+        try {
+            if (buffer != null) {
+                csvWriter.endDocument();
+                createBatch();
+            }
+            awaitUpload();
+        } finally {
+            if (uploader != null) {
+                uploader.shutdown();
+                uploader = null;
+            }
         }
 
         while(handler.shouldContinue()) {
@@ -107,9 +130,10 @@ public class UpdateStream {
             throw new StreamException("start() not called");
         }
 
-        if (writer == null) {
-            writer = new StringWriter();
-            csvWriter = new CsvWriter(fieldNames, writer);
+        if (buffer == null) {
+            buffer = spare != null ? spare : new BatchBuffer();
+            spare = null;
+            csvWriter = new CsvWriter(fieldNames, buffer);
         }
 
         csvWriter.writeRecord(values);
@@ -122,22 +146,86 @@ public class UpdateStream {
     }
 
     private void createBatch() throws StreamException {
+        // the previous batch has to be uploaded first, which also bounds the memory held to two batches
+        awaitUpload();
+
+        final BatchBuffer content = buffer;
+        buffer = null;
+        csvWriter = null;
+        recordCount = 0;
+
+        uploading = content;
+        pendingUpload = getUploader().submit(new Callable<Void>() {
+            @Override
+            public Void call() throws StreamException {
+                uploadBatch(content);
+                return null;
+            }
+        });
+    }
+
+    private void uploadBatch(BatchBuffer content) throws StreamException {
         while(handler.shouldContinue()) {
             try {
                 handler.info("Creating Batch");
 
-                BatchInfo batch = bulkConnection.createBatchFromStream(job,
-                        new ByteArrayInputStream(writer.getBuffer().toString().getBytes()));
+                BatchInfo batch = bulkConnection.createBatchFromStream(job, content.getInputStream());
 
                 handler.info("Batch created with ID: " + batch.getId());
-                writer = null;
-                csvWriter = null;
-                recordCount = 0;
-
                 break;
             } catch (Throwable e) {
-                handler.error("Failed to close job ", e);
+                handler.error("Failed to create batch ", e);
             }
         }
     }
+
+    private void awaitUpload() throws StreamException {
+        if (pendingUpload == null) {
+            return;
+        }
+
+        try {
+            pendingUpload.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new StreamException("Interrupted while creating batch", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StreamException) {
+                throw (StreamException) e.getCause();
+            }
+            throw new StreamException("Failed to create batch", e.getCause());
+        } finally {
+            pendingUpload = null;
+            spare = uploading;
+            spare.reset();
+            uploading = null;
+        }
+    }
+
+    private ExecutorService getUploader() {
+        if (uploader == null) {
+            uploader = Executors.newSingleThreadExecutor(new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "bulk-update-stream-" + job.getId());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        }
+        return uploader;
+    }
+
+    /**
+     * Batch content that can be read back without copying and reused for a later batch.
+     */
+    private static class BatchBuffer extends ByteArrayOutputStream {
+        BatchBuffer() {
+            super(64 * 1024);
+        }
+
+        InputStream getInputStream() {
+            return new ByteArrayInputStream(buf, 0, count);
+        }
+    }
 }
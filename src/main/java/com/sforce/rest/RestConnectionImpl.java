@@ -26,14 +26,15 @@
 package com.sforce.rest;
 
 import java.io.*;
-import java.net.HttpURLConnection;
 import java.net.URL;
 import java.util.HashMap;
 
 import com.google.gson.Gson;
 import com.sforce.rest.pojo.SObject;
+import com.sforce.ws.ApiGovernor;
 import com.sforce.ws.ConnectorConfig;
 import com.sforce.ws.transport.JdkHttpTransport;
+import com.sforce.ws.transport.RetryHelper;
 
 /**
  * RestConnection
@@ -227,18 +228,30 @@ public class RestConnectionImpl implements RestConnection {
 	 */
     private String doHttpGet(URL url) throws IOException, RestApiException {
         System.out.println("GET " + url.toString());
-        HttpURLConnection connection = JdkHttpTransport.createConnection(config, url, headers, false);
-    	connection.setInstanceFollowRedirects(true);
-
-    	InputStream in;
-    	System.out.println("HTTP " + connection.getResponseCode());
-    	if(connection.getResponseCode() >= 400) {
-    	    in = connection.getErrorStream();
-    	} else {
-    	    in = connection.getInputStream();
-    	}
+        JdkHttpTransport transport;
+        InputStream in;
+        for (int attempt = 1; ; attempt++) {
+            transport = JdkHttpTransport.newTransport(config);
+            try {
+                ApiGovernor governor = ApiGovernor.acquire(config);
+                try {
+                    in = transport.get(url.toExternalForm(), headers, false);
+                } finally {
+                    ApiGovernor.release(governor);
+                }
+            } catch (IOException e) {
+                if (RetryHelper.awaitRetry(config, "get", attempt, RetryHelper.classify(e, true), -1)) {
+                    continue;
+                }
+                throw e;
+            }
+            if (!retryResponse(transport, in, "get", attempt)) {
+                break;
+            }
+        }
+        System.out.println("HTTP " + transport.getResponseCode());
 
-        String encoding = connection.getHeaderField(CONTENT_HEADER);
+        String encoding = transport.getHeaderField(CONTENT_HEADER);
         StringBuilder responseBuilder = new StringBuilder();
         if (encoding.startsWith(ContentType.JSON.toString())) {
             BufferedInputStream bin = new BufferedInputStream(in);
@@ -268,25 +281,35 @@ public class RestConnectionImpl implements RestConnection {
      */
     private String doHttpPost(URL url, String body) throws IOException {		
         System.out.println("POST " + url.toString() + " " + body);
-        HttpURLConnection connection = JdkHttpTransport.createConnection(config, url, headers, false);
-        connection.setInstanceFollowRedirects(true);
-        connection.setDoOutput(true);
-        connection.setRequestMethod("POST");
-        
-        OutputStream out = connection.getOutputStream();
+        JdkHttpTransport transport;
         InputStream in;
-        out.write(body.getBytes());
-        out.flush();
-        out.close();     
-        
-
-        System.out.print("HTTP " + connection.getResponseCode());
-        if(connection.getResponseCode() >= 400) {
-            in = connection.getErrorStream();
-        } else {
-            in = connection.getInputStream();
+        for (int attempt = 1; ; attempt++) {
+            transport = JdkHttpTransport.newTransport(config);
+            boolean sent = false;
+            try {
+                ApiGovernor governor = ApiGovernor.acquire(config);
+                try {
+                    OutputStream out = transport.connect(url.toExternalForm(), headers, false);
+                    out.write(body.getBytes());
+                    out.flush();
+                    out.close();
+                    sent = true;
+                    in = transport.getContent();
+                } finally {
+                    ApiGovernor.release(governor);
+                }
+            } catch (IOException e) {
+                if (RetryHelper.awaitRetry(config, "post", attempt, RetryHelper.classify(e, sent), -1)) {
+                    continue;
+                }
+                throw e;
+            }
+            if (!retryResponse(transport, in, "post", attempt)) {
+                break;
+            }
         }
-        
+        System.out.print("HTTP " + transport.getResponseCode());
+
         BufferedInputStream bin = new BufferedInputStream(in);
 
         StringBuilder responseBuilder = new StringBuilder();
@@ -297,16 +320,38 @@ public class RestConnectionImpl implements RestConnection {
         while ((bytesRead = bin.read(buffer)) != -1) {
             responseBuilder.append(new String(buffer, 0, bytesRead));
         }
+        bin.close();
         String serverResponse = responseBuilder.toString();
         System.out.print(serverResponse + "\r\n");
         
-        if(connection.getResponseCode() >= 400) {
+        if(transport.getResponseCode() >= 400) {
             throw new IllegalStateException(serverResponse);
         } else {
             return serverResponse;
         }
     }
     
+    /**
+     * Closes the response of a failed request and waits before sending it again, if its status says it can be.
+     *
+     * @return true if the request is to be sent again
+     */
+    private boolean retryResponse(JdkHttpTransport transport, InputStream in, String operation, int attempt)
+            throws IOException {
+        if (transport.getResponseCode() < 400) {
+            RetryHelper.succeeded(config, operation);
+            return false;
+        }
+        long delay = RetryHelper.getRetryDelay(config, operation, attempt,
+                RetryHelper.classify(transport.getResponseCode()), RetryHelper.getRetryAfter(transport));
+        if (delay < 0) {
+            return false;
+        }
+        in.close();
+        RetryHelper.sleep(delay);
+        return true;
+    }
+
     /**
      * HTTP PATCH
      * @param url
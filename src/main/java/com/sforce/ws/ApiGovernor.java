@@ -0,0 +1,305 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws;
+
+import java.io.InterruptedIOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Meters the calls made to an organization: at most callsPerSecond calls are started per second, with bursts of up
+ * to one second worth of calls, and at most maxConcurrentCalls calls are in progress at the same time. Calls over
+ * either limit wait for their turn, in order.
+ * <p/>
+ * The governor also follows the API usage the server reports in the Sforce-Limit-Info header of its responses.
+ * Once less than a fifth of the 24 hour quota remains, the rate is lowered in proportion to what is left, down to
+ * a twentieth of callsPerSecond, so that the quota lasts longer instead of running out at full speed.
+ * <p/>
+ * One governor is meant to be shared by every connection to the same organization.
+ */
+public class ApiGovernor {
+    public static final String LIMIT_INFO_HEADER = "Sforce-Limit-Info";
+
+    private static final String API_USAGE = "api-usage=";
+    private static final double RESERVE = 0.2;
+    private static final double MIN_RATE_FACTOR = 0.05;
+
+    private final double callsPerSecond;
+    private final int maxConcurrentCalls;
+    private final Semaphore concurrentCalls;
+
+    // token bucket, guarded by this; tokens go below zero when calls have reserved tokens not refilled yet
+    private double tokens;
+    private long refilledAt;
+    private double rateFactor = 1;
+
+    private final AtomicLong callCount = new AtomicLong();
+    private final AtomicLong waitCount = new AtomicLong();
+    private final AtomicLong totalWaitNanos = new AtomicLong();
+    private final AtomicLong maxWaitNanos = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private volatile long apiUsage = -1;
+    private volatile long apiLimit = -1;
+
+    /**
+     * @param callsPerSecond     number of calls started per second at most, 0 for no limit
+     * @param maxConcurrentCalls number of calls in progress at the same time at most, 0 for no limit
+     */
+    public ApiGovernor(double callsPerSecond, int maxConcurrentCalls) {
+        this.callsPerSecond = Math.max(0, callsPerSecond);
+        this.maxConcurrentCalls = Math.max(0, maxConcurrentCalls);
+        this.concurrentCalls = this.maxConcurrentCalls > 0 ? new Semaphore(this.maxConcurrentCalls, true) : null;
+        this.tokens = getBurst();
+        this.refilledAt = System.nanoTime();
+    }
+
+    /**
+     * Waits for a permit from the governor of the config, if it has one.
+     *
+     * @return the governor to release the permit to, null if the config has none
+     */
+    public static ApiGovernor acquire(ConnectorConfig config) throws InterruptedIOException {
+        ApiGovernor governor = config.getApiGovernor();
+        if (governor != null) {
+            governor.acquirePermit();
+        }
+        return governor;
+    }
+
+    /**
+     * Releases a permit returned by {@link #acquire(ConnectorConfig)}.
+     */
+    public static void release(ApiGovernor governor) {
+        if (governor != null) {
+            governor.releasePermit();
+        }
+    }
+
+    /**
+     * Waits until a call can be started. Every permit must be given back with {@link #releasePermit()} once the
+     * call is over.
+     *
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public void acquirePermit() throws InterruptedIOException {
+        long start = System.nanoTime();
+        try {
+            long delay = reserveToken();
+            if (delay > 0) {
+                Thread.sleep(delay / 1000000, (int) (delay % 1000000));
+            }
+            if (concurrentCalls != null) {
+                concurrentCalls.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            InterruptedIOException ex = new InterruptedIOException("Interrupted while waiting to call the server");
+            ex.initCause(e);
+            throw ex;
+        }
+        recordWait(System.nanoTime() - start);
+        int current = inFlight.incrementAndGet();
+        for (int peak = peakInFlight.get(); current > peak && !peakInFlight.compareAndSet(peak, current); ) {
+            peak = peakInFlight.get();
+        }
+    }
+
+    public void releasePermit() {
+        inFlight.decrementAndGet();
+        if (concurrentCalls != null) {
+            concurrentCalls.release();
+        }
+    }
+
+    /**
+     * Takes the next token of the bucket, possibly one that is not there yet.
+     *
+     * @return the time in nanoseconds until the token is there
+     */
+    private synchronized long reserveToken() {
+        if (callsPerSecond == 0) {
+            return 0;
+        }
+        double rate = getEffectiveRate();
+        long now = System.nanoTime();
+        tokens = Math.min(getBurst(), tokens + (now - refilledAt) * rate / 1e9);
+        refilledAt = now;
+        tokens--;
+        return tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+    }
+
+    private void recordWait(long nanos) {
+        callCount.incrementAndGet();
+        // waits shorter than a millisecond are only the time taken to get the permit
+        if (nanos < 1000000) {
+            return;
+        }
+        waitCount.incrementAndGet();
+        totalWaitNanos.addAndGet(nanos);
+        for (long max = maxWaitNanos.get(); nanos > max && !maxWaitNanos.compareAndSet(max, nanos); ) {
+            max = maxWaitNanos.get();
+        }
+    }
+
+    private double getBurst() {
+        return Math.max(1, callsPerSecond);
+    }
+
+    /**
+     * Reads the API usage out of a Sforce-Limit-Info header, such as "api-usage=18/5000", and adapts the rate
+     * to the quota left.
+     */
+    public void updateLimitInfo(String limitInfo) {
+        if (limitInfo == null) {
+            return;
+        }
+        int start = limitInfo.indexOf(API_USAGE);
+        // per-app-api-usage is the usage of the connected app, not of the organization
+        while (start > 0 && limitInfo.charAt(start - 1) == '-') {
+            start = limitInfo.indexOf(API_USAGE, start + 1);
+        }
+        if (start < 0) {
+            return;
+        }
+        start += API_USAGE.length();
+        int slash = limitInfo.indexOf('/', start);
+        if (slash < 0) {
+            return;
+        }
+        int end = slash + 1;
+        while (end < limitInfo.length() && Character.isDigit(limitInfo.charAt(end))) {
+            end++;
+        }
+        long usage;
+        long limit;
+        try {
+            usage = Long.parseLong(limitInfo.substring(start, slash).trim());
+            limit = Long.parseLong(limitInfo.substring(slash + 1, end));
+        } catch (NumberFormatException e) {
+            return;
+        }
+        if (limit <= 0) {
+            return;
+        }
+        apiUsage = usage;
+        apiLimit = limit;
+
+        double remaining = Math.max(0, limit - usage) / (double) limit;
+        double factor = remaining >= RESERVE ? 1 : Math.max(MIN_RATE_FACTOR, remaining / RESERVE);
+        synchronized (this) {
+            rateFactor = factor;
+        }
+    }
+
+    /**
+     * @return calls made, calls that had to wait, total, average and longest wait in milliseconds, calls in
+     *         progress and their peak, saturation of the concurrent calls in percent, current rate, API usage,
+     *         limit and remaining quota as last reported by the server (-1 until known)
+     */
+    public Map<String, Number> getStatistics() {
+        Map<String, Number> statistics = new LinkedHashMap<String, Number>();
+        long calls = getCallCount();
+        statistics.put("calls", calls);
+        statistics.put("waits", getWaitCount());
+        statistics.put("totalWaitMillis", getTotalWaitMillis());
+        statistics.put("averageWaitMillis", calls > 0 ? getTotalWaitMillis() / calls : 0L);
+        statistics.put("maxWaitMillis", getMaxWaitMillis());
+        statistics.put("inFlight", getInFlight());
+        statistics.put("peakInFlight", getPeakInFlight());
+        statistics.put("saturation", getSaturation());
+        statistics.put("callsPerSecond", getEffectiveRate());
+        statistics.put("apiUsage", getApiUsage());
+        statistics.put("apiLimit", getApiLimit());
+        statistics.put("remainingQuota", getRemainingQuota());
+        return statistics;
+    }
+
+    public double getCallsPerSecond() {
+        return callsPerSecond;
+    }
+
+    public int getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    /**
+     * @return the rate calls are currently started at, lower than callsPerSecond when the quota is running out
+     */
+    public synchronized double getEffectiveRate() {
+        return callsPerSecond * rateFactor;
+    }
+
+    public long getCallCount() {
+        return callCount.get();
+    }
+
+    /**
+     * @return the number of calls that waited for the rate or for other calls to finish
+     */
+    public long getWaitCount() {
+        return waitCount.get();
+    }
+
+    public long getTotalWaitMillis() {
+        return totalWaitNanos.get() / 1000000;
+    }
+
+    public long getMaxWaitMillis() {
+        return maxWaitNanos.get() / 1000000;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    public int getPeakInFlight() {
+        return peakInFlight.get();
+    }
+
+    /**
+     * @return the calls in progress in percent of maxConcurrentCalls, 0 when there is no such limit
+     */
+    public int getSaturation() {
+        return maxConcurrentCalls > 0 ? getInFlight() * 100 / maxConcurrentCalls : 0;
+    }
+
+    public long getApiUsage() {
+        return apiUsage;
+    }
+
+    public long getApiLimit() {
+        return apiLimit;
+    }
+
+    public long getRemainingQuota() {
+        long limit = apiLimit;
+        return limit < 0 ? -1 : Math.max(0, limit - apiUsage);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Retries calls with exponential backoff: the n-th retry waits between half and all of
+ * initialDelay * 2^(n-1) milliseconds, capped at maxDelay, or longer if the server asked for it with Retry-After.
+ * <p/>
+ * Calls the server has not processed are retried whatever they do. Calls that may have been processed are only
+ * retried when they are idempotent: reads, whose name starts with one of "get", "describe", "query", "retrieve"
+ * or "search", and the operations added with {@link #addIdempotentOperation(String)}.
+ * <p/>
+ * Retries are drawn from a budget shared by every connection using the policy. Each retry takes one token and
+ * each successful call gives back a tenth of one, so that when the server is down calls fail fast instead of all
+ * of them waiting through their retries.
+ */
+public class BackoffRetryPolicy implements RetryPolicy {
+    public static final int DEFAULT_MAX_RETRIES = 3;
+    public static final long DEFAULT_INITIAL_DELAY = 500;
+    public static final long DEFAULT_MAX_DELAY = 30000;
+    public static final int DEFAULT_BUDGET = 100;
+
+    // the budget is counted in tenths of a retry
+    private static final int TENTHS_PER_RETRY = 10;
+    private static final Set<String> IDEMPOTENT_PREFIXES = Collections.unmodifiableSet(new HashSet<String>(
+            Arrays.asList("get", "describe", "query", "retrieve", "search")));
+
+    private final int maxRetries;
+    private final long initialDelay;
+    private final long maxDelay;
+    private final int budget;
+    private final Set<String> idempotentOperations = Collections.synchronizedSet(new HashSet<String>());
+    private final Random random = new Random();
+    private int tenths;
+
+    public BackoffRetryPolicy() {
+        this(DEFAULT_MAX_RETRIES, DEFAULT_INITIAL_DELAY, DEFAULT_MAX_DELAY, DEFAULT_BUDGET);
+    }
+
+    /**
+     * @param maxRetries   number of times a call is sent again at most
+     * @param initialDelay time in milliseconds before the first retry
+     * @param maxDelay     longest time in milliseconds to wait before a retry; calls the server asks to retry
+     *                     later than that are not retried
+     * @param budget       number of retries that can be made without calls succeeding in between
+     */
+    public BackoffRetryPolicy(int maxRetries, long initialDelay, long maxDelay, int budget) {
+        this.maxRetries = maxRetries;
+        this.initialDelay = Math.max(1, initialDelay);
+        this.maxDelay = Math.max(this.initialDelay, maxDelay);
+        this.budget = budget;
+        this.tenths = budget * TENTHS_PER_RETRY;
+        idempotentOperations.add("updateJob");
+    }
+
+    /**
+     * Lets calls of the operation be retried after the server may have processed them.
+     */
+    public void addIdempotentOperation(String operation) {
+        idempotentOperations.add(operation);
+    }
+
+    public boolean isIdempotent(String operation) {
+        if (idempotentOperations.contains(operation)) {
+            return true;
+        }
+        for (String prefix : IDEMPOTENT_PREFIXES) {
+            if (operation.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public long getRetryDelay(String operation, int attempt, Failure failure, long retryAfter) {
+        if (attempt > maxRetries || retryAfter > maxDelay) {
+            return -1;
+        }
+        if (failure == Failure.INTERRUPTED && !isIdempotent(operation)) {
+            return -1;
+        }
+        if (!takeToken()) {
+            return -1;
+        }
+        long delay = initialDelay << Math.min(attempt - 1, 30);
+        delay = Math.min(delay, maxDelay);
+        delay = delay / 2 + nextLong(delay / 2 + 1);
+        return Math.max(delay, retryAfter);
+    }
+
+    @Override
+    public synchronized void succeeded(String operation) {
+        tenths = Math.min(budget * TENTHS_PER_RETRY, tenths + 1);
+    }
+
+    /**
+     * @return the number of retries that can currently be made
+     */
+    public synchronized int getRemainingBudget() {
+        return tenths / TENTHS_PER_RETRY;
+    }
+
+    private synchronized boolean takeToken() {
+        if (tenths < TENTHS_PER_RETRY) {
+            return false;
+        }
+        tenths -= TENTHS_PER_RETRY;
+        return true;
+    }
+
+    private synchronized long nextLong(long bound) {
+        return (long) (random.nextDouble() * bound);
+    }
+
+    public int getMaxRetries() {
+        return maxRetries;
+    }
+
+    public long getInitialDelay() {
+        return initialDelay;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getBudget() {
+        return budget;
+    }
+}
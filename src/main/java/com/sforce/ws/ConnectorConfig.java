@@ -29,6 +29,7 @@ import java.io.*;
 import java.net.*;
 import java.util.*;
 
+import com.sforce.ws.transport.HttpConnectionPool;
 import com.sforce.ws.transport.JdkHttpTransport;
 import com.sforce.ws.util.Verbose;
 
@@ -60,11 +61,18 @@ public class ConnectorConfig {
     private HashMap<String, String> headers;
     private Proxy proxy = null;
     private ArrayList<MessageHandler> handlers = new ArrayList<MessageHandler>();
+    private boolean streamResponseToMessageHandlers;
+    private int maxMessageHandlerResponseSize;
     private int maxRequestSize;
     private int maxResponseSize;
+    private int binarySpoolThreshold = -1;
+    private File binarySpoolDirectory;
+    private RetryPolicy retryPolicy;
+    private ApiGovernor apiGovernor;
     private boolean validateSchema = true;
     private Class transport = JdkHttpTransport.class;
     private SessionRenewer sessionRenewer;
+    private HttpConnectionPool connectionPool;
 
     public static final ConnectorConfig DEFAULT = new ConnectorConfig();
 
@@ -76,6 +84,19 @@ public class ConnectorConfig {
         this.transport = transport;
     }
 
+    public HttpConnectionPool getConnectionPool() {
+        return connectionPool;
+    }
+
+    /**
+     * sets the pool used by {@link com.sforce.ws.transport.PooledHttpTransport}. Configs that point at the
+     * same pool share its connections.
+     * @param connectionPool pool of persistent connections
+     */
+    public void setConnectionPool(HttpConnectionPool connectionPool) {
+        this.connectionPool = connectionPool;
+    }
+
     public void setNtlmDomain(String domain) {
         if (System.getProperty("http.auth.ntlm.domain") == null) {
             System.setProperty("http.auth.ntlm.domain", domain);
@@ -297,6 +318,34 @@ public class ConnectorConfig {
         handlers.clear();
     }
 
+    public boolean isStreamResponseToMessageHandlers() {
+        return streamResponseToMessageHandlers;
+    }
+
+    /**
+     * when true, responses are parsed as they arrive instead of being read in full before parsing. Message
+     * handlers receive the first maxMessageHandlerResponseSize bytes of the response once it has been read. Has no
+     * effect when tracing is enabled.
+     * @param streamResponseToMessageHandlers true to stream responses when message handlers are registered
+     */
+    public void setStreamResponseToMessageHandlers(boolean streamResponseToMessageHandlers) {
+        this.streamResponseToMessageHandlers = streamResponseToMessageHandlers;
+    }
+
+    public int getMaxMessageHandlerResponseSize() {
+        return maxMessageHandlerResponseSize;
+    }
+
+    /**
+     * limits the number of response bytes passed to message handlers when responses are streamed. Only the
+     * first maxMessageHandlerResponseSize bytes are kept, the rest of the response is streamed without being
+     * copied; 0 passes the whole response.
+     * @param maxMessageHandlerResponseSize max number of bytes passed to handlers
+     */
+    public void setMaxMessageHandlerResponseSize(int maxMessageHandlerResponseSize) {
+        this.maxMessageHandlerResponseSize = maxMessageHandlerResponseSize;
+    }
+
     public int getMaxRequestSize() {
         return maxRequestSize;
     }
@@ -313,6 +362,52 @@ public class ConnectorConfig {
         this.maxResponseSize = maxResponseSize;
     }
 
+    public int getBinarySpoolThreshold() {
+        return binarySpoolThreshold;
+    }
+
+    /**
+     * By default base64Binary fields of sObjects are read as byte arrays. With a threshold of zero or more they
+     * are decoded as they are parsed into a {@link com.sforce.ws.bind.BinaryContent}, kept in memory up to
+     * threshold bytes and spooled to a temporary file above, which is deleted when the content is closed.
+     */
+    public void setBinarySpoolThreshold(int binarySpoolThreshold) {
+        this.binarySpoolThreshold = binarySpoolThreshold;
+    }
+
+    public File getBinarySpoolDirectory() {
+        return binarySpoolDirectory;
+    }
+
+    /**
+     * @param binarySpoolDirectory where spooled binary fields are written, null for the default temporary directory
+     */
+    public void setBinarySpoolDirectory(File binarySpoolDirectory) {
+        this.binarySpoolDirectory = binarySpoolDirectory;
+    }
+
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    /**
+     * @param retryPolicy decides which failed calls are sent again, null (the default) to never retry them
+     */
+    public void setRetryPolicy(RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    public ApiGovernor getApiGovernor() {
+        return apiGovernor;
+    }
+
+    /**
+     * @param apiGovernor meters the calls made with this config, null (the default) to make them as they come
+     */
+    public void setApiGovernor(ApiGovernor apiGovernor) {
+        this.apiGovernor = apiGovernor;
+    }
+
     private void verifyEndpoint(String contains) throws ConnectionException {
         if (authEndpoint != null && !authEndpoint.contains(contains)) {
             throw new ConnectionException("Check authEndpoint. It must contain '" + contains + "'. " +
@@ -0,0 +1,70 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws;
+
+/**
+ * Decides whether a call that failed for a transient reason is sent again, and after how long.
+ * <p/>
+ * The policy set with {@link ConnectorConfig#setRetryPolicy(RetryPolicy)} is used by the SOAP, bulk and REST
+ * connections created from the config, which consult it concurrently.
+ *
+ * @see BackoffRetryPolicy
+ */
+public interface RetryPolicy {
+
+    /**
+     * How a call failed, from the point of view of whether the server may have processed it.
+     */
+    enum Failure {
+        /**
+         * The request could not be sent, the server has not seen it.
+         */
+        CONNECT_FAILED,
+        /**
+         * The server refused the request without processing it, for instance with a 503 response or a
+         * REQUEST_LIMIT_EXCEEDED fault.
+         */
+        REJECTED,
+        /**
+         * The request was sent but no complete response came back, the server may have processed it.
+         */
+        INTERRUPTED
+    }
+
+    /**
+     * @param operation  name of the call, such as "query", "create" or "getBatchInfo"
+     * @param attempt    number of times the call has been sent so far
+     * @param failure    how the last attempt failed
+     * @param retryAfter delay in milliseconds the server asked for with a Retry-After header, -1 if it did not
+     * @return the time in milliseconds to wait before sending the call again, or a negative number to give up
+     */
+    long getRetryDelay(String operation, int attempt, Failure failure, long retryAfter);
+
+    /**
+     * Called every time a call succeeds.
+     */
+    void succeeded(String operation);
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.bind;
+
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * The value of a base64Binary field that is not held as a byte array. It is either a file, or the decoded
+ * content of a field read from a response: small contents are kept in memory and larger ones spooled to a
+ * temporary file, which is deleted by {@link #close()}. Values read from a response must be closed once they are
+ * no longer needed, otherwise their temporary file is left behind.
+ * <p/>
+ * The content is only read when {@link #openStream()} is called, every call returning a new stream, so that
+ * requests writing it can be sent again.
+ *
+ * @see TypeMapper#readBinaryContent(com.sforce.ws.parser.XmlInputStream)
+ */
+public class BinaryContent implements Closeable {
+    private final byte[] bytes;
+    private final File file;
+    private final boolean temporary;
+
+    public BinaryContent(byte[] bytes) {
+        this(bytes, null, false);
+    }
+
+    public BinaryContent(File file) {
+        this(null, file, false);
+    }
+
+    private BinaryContent(byte[] bytes, File file, boolean temporary) {
+        this.bytes = bytes;
+        this.file = file;
+        this.temporary = temporary;
+    }
+
+    public InputStream openStream() throws IOException {
+        if (bytes != null) {
+            return new ByteArrayInputStream(bytes);
+        }
+        return new FileInputStream(file);
+    }
+
+    /**
+     * @return the size of the content in bytes
+     */
+    public long length() {
+        return bytes != null ? bytes.length : file.length();
+    }
+
+    /**
+     * @return the whole content, for callers that do need it in memory
+     */
+    public byte[] toByteArray() throws IOException {
+        if (bytes != null) {
+            return bytes.clone();
+        }
+        if (file.length() > Integer.MAX_VALUE) {
+            throw new IOException("Content of " + file + " is too large for an array");
+        }
+        byte[] content = new byte[(int) file.length()];
+        InputStream in = openStream();
+        try {
+            int length = 0;
+            int read;
+            while (length < content.length && (read = in.read(content, length, content.length - length)) > 0) {
+                length += read;
+            }
+            if (length < content.length) {
+                throw new IOException("Unexpected end of " + file);
+            }
+        } finally {
+            in.close();
+        }
+        return content;
+    }
+
+    /**
+     * Deletes the temporary file holding the content, if any. The content cannot be read afterwards.
+     */
+    public void dispose() {
+        if (temporary) {
+            file.delete();
+        }
+    }
+
+    /**
+     * Same as {@link #dispose()}.
+     */
+    @Override
+    public void close() {
+        dispose();
+    }
+
+    @Override
+    public String toString() {
+        return "BinaryContent{length=" + length() + (file != null ? ", file=" + file : "") + "}";
+    }
+
+    /**
+     * Collects decoded content in memory until it grows past threshold bytes, and in a temporary file from then on.
+     */
+    static class Spool extends OutputStream {
+        private final int threshold;
+        private final File directory;
+        private ByteArrayOutputStream memory = new ByteArrayOutputStream();
+        private File file;
+        private OutputStream fileOut;
+
+        Spool(int threshold, File directory) {
+            this.threshold = threshold;
+            this.directory = directory;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (fileOut == null && memory.size() + len > threshold) {
+                file = File.createTempFile("sfdc-binary", ".tmp", directory);
+                fileOut = new FileOutputStream(file);
+                memory.writeTo(fileOut);
+                memory = null;
+            }
+            if (fileOut != null) {
+                fileOut.write(b, off, len);
+            } else {
+                memory.write(b, off, len);
+            }
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (fileOut != null) {
+                fileOut.close();
+            }
+        }
+
+        BinaryContent toContent() throws IOException {
+            close();
+            if (file != null) {
+                return new BinaryContent(null, file, true);
+            }
+            return new BinaryContent(memory.toByteArray());
+        }
+
+        /**
+         * Removes what has been spooled so far, when the content could not be read completely.
+         */
+        void discard() {
+            try {
+                close();
+            } catch (IOException e) {
+                // the file is deleted anyway
+            }
+            if (file != null) {
+                file.delete();
+            }
+        }
+    }
+}
@@ -46,6 +46,7 @@ import java.util.TimeZone;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Locale;
 
 /**
  * The CalendarSerializer deserializes a dateTime.
@@ -67,15 +68,143 @@ public class CalendarCodec {
     zulu.setTimeZone(TimeZone.getTimeZone("GMT"));
   }
 
+  /*
+   * Values between 1583-01-01 and 9999-12-31 are parsed and formatted by hand, without locking.
+   * Anything else (Julian dates, lenient out of range fields, locales with other calendars or digits)
+   * goes through zulu so the results are the same as before. The fast path is only used when zulu
+   * has a plain gregorian calendar and parses numbers like it does in the US locale.
+   */
+  private static final boolean USE_FAST_PATH = zulu.getCalendar().getClass() == GregorianCalendar.class &&
+      zulu.getNumberFormat().equals(new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'", Locale.US).getNumberFormat());
+  private static final long MILLIS_PER_DAY = 24L * 60 * 60 * 1000;
+  private static final long MIN_FAST_MILLIS = daysFromCivil(1583, 1, 1) * MILLIS_PER_DAY;
+  private static final long MAX_FAST_MILLIS = daysFromCivil(10000, 1, 1) * MILLIS_PER_DAY;
+  private static final long NOT_PARSED = Long.MIN_VALUE;
+
   public String getValueAsString(Object value) {
-    Date date = value instanceof Date ? (Date) value :
-        ((Calendar) value).getTime();
+    long millis = value instanceof Date ? ((Date) value).getTime() :
+        ((Calendar) value).getTimeInMillis();
+
+    if (USE_FAST_PATH && millis >= MIN_FAST_MILLIS && millis < MAX_FAST_MILLIS) {
+      return format(millis);
+    }
 
     // Serialize including convert to GMT
     synchronized (zulu) {
       // Sun JDK bug http://developer.java.sun.com/developer/bugParade/bugs/4229798.html
-      return zulu.format(date);
+      return zulu.format(new Date(millis));
+    }
+  }
+
+  private static String format(long millis) {
+    long days = millis / MILLIS_PER_DAY;
+    int millisOfDay = (int) (millis - days * MILLIS_PER_DAY);
+    if (millisOfDay < 0) {
+      days--;
+      millisOfDay += MILLIS_PER_DAY;
     }
+    char[] buffer = new char[24];
+
+    civilFromDays(days, buffer);
+    buffer[10] = 'T';
+    int seconds = millisOfDay / 1000;
+    put2(buffer, 11, seconds / 3600);
+    buffer[13] = ':';
+    put2(buffer, 14, seconds / 60 % 60);
+    buffer[16] = ':';
+    put2(buffer, 17, seconds % 60);
+    buffer[19] = '.';
+    int millisOfSecond = millisOfDay % 1000;
+    buffer[20] = (char) ('0' + millisOfSecond / 100);
+    put2(buffer, 21, millisOfSecond % 100);
+    buffer[23] = 'Z';
+    return new String(buffer);
+  }
+
+  /**
+   * days since 1970-01-01 of a proleptic gregorian date, for years >= 0
+   */
+  private static long daysFromCivil(int year, int month, int day) {
+    if (month <= 2) {
+      year--;
+    }
+    int era = year / 400;
+    int yearOfEra = year - era * 400;
+    int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+    int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+    return era * 146097L + dayOfEra - 719468;
+  }
+
+  /**
+   * writes yyyy-MM-dd for the given days since 1970-01-01 (a date after year 0) at the start of buffer
+   */
+  private static void civilFromDays(long days, char[] buffer) {
+    days += 719468;
+    int era = (int) (days / 146097);
+    int dayOfEra = (int) (days - era * 146097L);
+    int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    int mp = (5 * dayOfYear + 2) / 153;
+    int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+    int month = mp < 10 ? mp + 3 : mp - 9;
+    int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+    put2(buffer, 0, year / 100);
+    put2(buffer, 2, year % 100);
+    buffer[4] = '-';
+    put2(buffer, 5, month);
+    buffer[7] = '-';
+    put2(buffer, 8, day);
+  }
+
+  private static void put2(char[] buffer, int offset, int value) {
+    buffer[offset] = (char) ('0' + value / 10);
+    buffer[offset + 1] = (char) ('0' + value % 10);
+  }
+
+  private static int digits(String source, int start, int end) {
+    int value = 0;
+    for (int i = start; i < end; i++) {
+      int digit = Character.digit(source.charAt(i), 10);
+      if (digit < 0) {
+        return -1;
+      }
+      value = value * 10 + digit;
+    }
+    return value;
+  }
+
+  private static boolean isLeapYear(int year) {
+    return (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+  }
+
+  private static int daysInMonth(int year, int month) {
+    if (month == 2) {
+      return isLeapYear(year) ? 29 : 28;
+    }
+    return month == 4 || month == 6 || month == 9 || month == 11 ? 30 : 31;
+  }
+
+  /**
+   * parses the validated yyyy-MM-ddTHH:mm:ss prefix as GMT, or returns NOT_PARSED when the
+   * value has to go through zulu
+   */
+  private static long parseFields(String source) {
+    if (!USE_FAST_PATH) {
+      return NOT_PARSED;
+    }
+    int year = digits(source, 0, 4);
+    int month = digits(source, 5, 7);
+    int day = digits(source, 8, 10);
+    int hours = digits(source, 11, 13);
+    int minutes = digits(source, 14, 16);
+    int seconds = digits(source, 17, 19);
+    if (year < 1583 || month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month) ||
+        hours < 0 || hours > 23 || minutes < 0 || minutes > 59 || seconds < 0 || seconds > 59) {
+      return NOT_PARSED;
+    }
+    return daysFromCivil(year, month, day) * MILLIS_PER_DAY +
+        ((hours * 60 + minutes) * 60 + seconds) * 1000L;
   }
 
   /**
@@ -86,7 +215,7 @@ public class CalendarCodec {
    */
   public Calendar deserialize(String source) {
     Calendar calendar = Calendar.getInstance();
-    Date date;
+    long date;
     boolean bc = false;
 
     // validate fixed portion of format
@@ -111,12 +240,15 @@ public class CalendarCodec {
       throw new NumberFormatException("Unable to parse dateTime");
     }
     // convert what we have validated so far
-    try {
-      synchronized (zulu) {
-        date = zulu.parse(source.substring(0, 19) + ".000Z");
+    date = bc ? NOT_PARSED : parseFields(source);
+    if (date == NOT_PARSED) {
+      try {
+        synchronized (zulu) {
+          date = zulu.parse(source.substring(0, 19) + ".000Z").getTime();
+        }
+      } catch (Exception e) {
+        throw new NumberFormatException(e.toString());
       }
-    } catch (Exception e) {
-      throw new NumberFormatException(e.toString());
     }
     int pos = 19;
 
@@ -128,21 +260,23 @@ public class CalendarCodec {
           Character.isDigit(source.charAt(pos))) {
         pos++;
       }
-      String decimal = source.substring(start, pos);
-      if (decimal.length() == 3) {
-        milliseconds = Integer.parseInt(decimal);
-      } else if (decimal.length() < 3) {
-        milliseconds = Integer.parseInt((decimal + "000")
-            .substring(0, 3));
+      int length = pos - start;
+      if (length == 3) {
+        milliseconds = digits(source, start, pos);
+      } else if (length < 3) {
+        milliseconds = digits(source, start, pos);
+        for (int i = length; i < 3; i++) {
+          milliseconds *= 10;
+        }
       } else {
-        milliseconds = Integer.parseInt(decimal.substring(0, 3));
-        if (decimal.charAt(3) >= '5') {
+        milliseconds = digits(source, start, start + 3);
+        if (source.charAt(start + 3) >= '5') {
           ++milliseconds;
         }
       }
 
       // add milliseconds to the current date
-      date.setTime(date.getTime() + milliseconds);
+      date += milliseconds;
     }
 
     // parse optional timezone
@@ -165,7 +299,7 @@ public class CalendarCodec {
       if (source.charAt(pos) == '+') {
         milliseconds = -milliseconds;
       }
-      date.setTime(date.getTime() + milliseconds);
+      date += milliseconds;
       pos += 6;
     }
     if (pos < source.length() && source.charAt(pos) == 'Z') {
@@ -175,7 +309,7 @@ public class CalendarCodec {
     if (pos < source.length()) {
       throw new NumberFormatException("Unable to parse dateTime");
     }
-    calendar.setTime(date);
+    calendar.setTimeInMillis(date);
 
     // support dates before the Christian era
     if (bc) {
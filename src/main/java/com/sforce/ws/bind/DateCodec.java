@@ -45,6 +45,7 @@ import java.text.SimpleDateFormat;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.GregorianCalendar;
+import java.util.Locale;
 
 /**
  * Taken from axis:
@@ -61,17 +62,64 @@ public class DateCodec {
             new SimpleDateFormat("yyyy-MM-dd");
     //  0123456789 0 123456789
 
+    /*
+     * Per thread copies of the calendar used by zulu, so that dates are converted in the same time zone
+     * and calendar system as zulu would without locking. Unless zulu has a plain gregorian calendar and parses
+     * numbers like it does in the US locale, dates always go through zulu.
+     */
+    private static final boolean USE_FAST_PATH = zulu.getCalendar().getClass() == GregorianCalendar.class &&
+            zulu.getNumberFormat().equals(new SimpleDateFormat("yyyy-MM-dd", Locale.US).getNumberFormat());
+    private static final Calendar zuluCalendar = (Calendar) zulu.getCalendar().clone();
+    private static final ThreadLocal<Calendar> calendars = new ThreadLocal<Calendar>() {
+        @Override
+        protected Calendar initialValue() {
+            return (Calendar) zuluCalendar.clone();
+        }
+    };
 
     public String getValueAsString(Object value) {
-        Date date = value instanceof Date ? (Date) value : ((Calendar) value).getTime();
+        long millis = value instanceof Date ? ((Date) value).getTime() : ((Calendar) value).getTimeInMillis();
+
+        if (USE_FAST_PATH) {
+            Calendar calendar = calendars.get();
+            calendar.setTimeInMillis(millis);
+            int year = calendar.get(Calendar.YEAR);
+            if (calendar.get(Calendar.ERA) == GregorianCalendar.AD && year <= 9999) {
+                char[] buffer = new char[10];
+                put2(buffer, 0, year / 100);
+                put2(buffer, 2, year % 100);
+                buffer[4] = '-';
+                put2(buffer, 5, calendar.get(Calendar.MONTH) + 1);
+                buffer[7] = '-';
+                put2(buffer, 8, calendar.get(Calendar.DAY_OF_MONTH));
+                return new String(buffer);
+            }
+        }
 
         // Serialize including convert to GMT
         synchronized (zulu) {
           // Sun JDK bug http://developer.java.sun.com/developer/bugParade/bugs/4229798.html
-          return zulu.format(date);
+          return zulu.format(new Date(millis));
         }
     }
 
+    private static void put2(char[] buffer, int offset, int value) {
+        buffer[offset] = (char) ('0' + value / 10);
+        buffer[offset + 1] = (char) ('0' + value % 10);
+    }
+
+    private static int asciiDigits(String source, int start, int end) {
+        int value = 0;
+        for (int i = start; i < end; i++) {
+            char c = source.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
 
     /**
      * The simple deserializer provides most of the stuff.
@@ -84,7 +132,7 @@ public class DateCodec {
             throw new NumberFormatException("Unable to parse date");
         }
 
-        Date result;
+        long result;
         boolean bc = false;
         Calendar calendar = Calendar.getInstance();
 
@@ -106,21 +154,35 @@ public class DateCodec {
         }
 
         // convert what we have validated so far
-        try {
-            synchronized (zulu) {
-                result = zulu.parse(source.substring(0, 10));
+        boolean complete = source.length() >= 10;
+        int year = complete ? asciiDigits(source, 0, 4) : -1;
+        int month = complete ? asciiDigits(source, 5, 7) : -1;
+        int day = complete ? asciiDigits(source, 8, 10) : -1;
+        if (USE_FAST_PATH && year >= 0 && month >= 0 && day >= 0) {
+            // same fields zulu.parse() sets on its calendar
+            Calendar fields = calendars.get();
+            fields.clear();
+            fields.set(Calendar.YEAR, year);
+            fields.set(Calendar.MONTH, month - 1);
+            fields.set(Calendar.DAY_OF_MONTH, day);
+            result = fields.getTimeInMillis();
+        } else {
+            try {
+                synchronized (zulu) {
+                    result = zulu.parse(source.substring(0, 10)).getTime();
+                }
+            } catch (Exception e) {
+                throw new NumberFormatException(e.toString());
             }
-        } catch (Exception e) {
-            throw new NumberFormatException(e.toString());
         }
 
         // support dates before the Christian era
         if (bc) {
-            calendar.setTime(result);
+            calendar.setTimeInMillis(result);
             calendar.set(Calendar.ERA, GregorianCalendar.BC);
             //result = calendar.getTime();
         } else {
-            calendar.setTime(result);
+            calendar.setTimeInMillis(result);
         }
 
         return calendar;
@@ -25,7 +25,11 @@
  */
 package com.sforce.ws.bind;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
 import java.lang.reflect.Array;
 import java.util.ArrayList;
 import java.util.Calendar;
@@ -33,6 +37,7 @@ import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.xml.namespace.QName;
 
@@ -62,6 +67,8 @@ public class TypeMapper {
     private static HashMap<String, QName> javaXmlMapping = getJavaXmlMapping();
     private static final HashSet<String> keywords = getKeyWords();
     private static HashMap<String, Class<?>> primitiveClassCache = getPrimitiveClassCache();
+    // xsi types registered with prewarm(), shared by all mappers without a package prefix
+    private static final ConcurrentHashMap<QName, Class<?>> prewarmedTypes = new ConcurrentHashMap<QName, Class<?>>();
 
     private static HashMap<String, QName> getJavaXmlMapping() {
         HashMap<String, QName> map = new HashMap<String, QName>();
@@ -79,6 +86,8 @@ public class TypeMapper {
         map.put(GregorianCalendar.class.getName(), new QName(Constants.SCHEMA_NS, "dateTime"));
         map.put(Time.class.getName(), new QName(Constants.SCHEMA_NS, "time"));
         map.put("[B", new QName(Constants.SCHEMA_NS, "base64Binary")); //byte[]
+        map.put(InputStream.class.getName(), new QName(Constants.SCHEMA_NS, "base64Binary"));
+        map.put(BinaryContent.class.getName(), new QName(Constants.SCHEMA_NS, "base64Binary"));
         map.put(double.class.getName(), new QName(Constants.SCHEMA_NS, "double"));
         map.put(Double.class.getName(), new QName(Constants.SCHEMA_NS, "double"));
         map.put(Object.class.getName(), new QName(Constants.SCHEMA_NS, "anyType"));
@@ -132,7 +141,7 @@ public class TypeMapper {
     private String packagePrefix;
     private CalendarCodec calendarCodec = new CalendarCodec();
     private DateCodec dateCodec = new DateCodec();
-    private HashMap<QName, Class<?>> typeCache = new HashMap<QName, Class<?>>();
+    private final ConcurrentHashMap<QName, Class<?>> typeCache = new ConcurrentHashMap<QName, Class<?>>();
     private ConnectorConfig config;
 
 
@@ -262,20 +271,43 @@ public class TypeMapper {
         if (value == null) {
             writeNull(out, info);
         } else {
-            out.writeStartTag(getNamespace(info), info.getName());
-            if (writeFieldXsiType) {
-                writeXsiType(out, info.getTypeNS(), info.getType());
-            } else {
-                if ("anyType".equals(info.getType()) && Constants.SCHEMA_NS.equals(info.getTypeNS())) {
-                    QName xmlType = getXmlType(javaType);
-                    if (xmlType == null) {
-                        throw new IOException("Failed to find xml type for java type: " + javaType);
-                    }
-                    writeXsiType(out, xmlType.getNamespaceURI(), xmlType.getLocalPart());
+            writeSimpleStartTag(out, info, javaType);
+            out.writeText(value);
+            out.writeEndTag(getNamespace(info), info.getName());
+        }
+    }
+
+    private void writeSimpleStartTag(XmlOutputStream out, TypeInfo info, String javaType) throws IOException {
+        out.writeStartTag(getNamespace(info), info.getName());
+        if (writeFieldXsiType) {
+            writeXsiType(out, info.getTypeNS(), info.getType());
+        } else {
+            if ("anyType".equals(info.getType()) && Constants.SCHEMA_NS.equals(info.getTypeNS())) {
+                QName xmlType = getXmlType(javaType);
+                if (xmlType == null) {
+                    throw new IOException("Failed to find xml type for java type: " + javaType);
                 }
+                writeXsiType(out, xmlType.getNamespaceURI(), xmlType.getLocalPart());
             }
-            out.writeText(value);
+        }
+    }
+
+    /**
+     * Writes the content of an InputStream, which is read to its end and closed, or of a BinaryContent as
+     * base64 text, a few kilobytes at a time. A BinaryContent is opened again on every write, an InputStream
+     * makes the document impossible to write again.
+     */
+    private void writeBinary(XmlOutputStream out, TypeInfo info, Object value) throws IOException {
+        if (!(value instanceof BinaryContent)) {
+            out.setNotReplayable();
+        }
+        InputStream in = value instanceof BinaryContent ? ((BinaryContent) value).openStream() : (InputStream) value;
+        try {
+            writeSimpleStartTag(out, info, "[B");
+            Base64.encode(in, new XmlTextWriter(out));
             out.writeEndTag(getNamespace(info), info.getName());
+        } finally {
+            in.close();
         }
     }
 
@@ -356,6 +388,8 @@ public class TypeMapper {
         } else if (value instanceof Calendar || value instanceof Date) {
             String s = calendarCodec.getValueAsString(value);
             writeSimpleType(out, info, s, true, Calendar.class.getName());
+        } else if (value instanceof InputStream || value instanceof BinaryContent) {
+            writeBinary(out, info, value);
         } else if (value instanceof byte[]) {
             String s = new String(Base64.encode((byte[]) value));
             writeSimpleType(out, info, s, true, "[B");
@@ -495,6 +529,55 @@ public class TypeMapper {
         }
     }
 
+    /**
+     * Decodes the base64 text of the element whose start tag has just been read straight from the characters
+     * of the parser, up to its end tag.
+     */
+    public void readBase64(XmlInputStream in, OutputStream out) throws IOException, ConnectionException {
+        Base64.Decoder decoder = new Base64.Decoder(out);
+        int[] holder = new int[2];
+        while (true) {
+            int type = in.next();
+            if (type == XmlInputStream.TEXT) {
+                char[] chars = in.getTextCharacters(holder);
+                decoder.decode(chars, holder[0], holder[1]);
+            } else if (type == XmlInputStream.END_TAG) {
+                break;
+            } else {
+                throw new ConnectionException("Unexpected content in base64 value at " + in);
+            }
+        }
+        decoder.finish();
+    }
+
+    /**
+     * @return true if base64Binary fields of sObjects are read with {@link #readBinaryContent(XmlInputStream)}
+     * @see ConnectorConfig#setBinarySpoolThreshold(int)
+     */
+    public boolean isSpoolingBinaries() {
+        return config != null && config.getBinarySpoolThreshold() >= 0;
+    }
+
+    /**
+     * Same as {@link #readBase64(XmlInputStream, OutputStream)}, the content being kept in memory or spooled to a
+     * temporary file depending on its size.
+     */
+    public BinaryContent readBinaryContent(XmlInputStream in) throws IOException, ConnectionException {
+        BinaryContent.Spool spool = new BinaryContent.Spool(Math.max(0, config.getBinarySpoolThreshold()),
+                config.getBinarySpoolDirectory());
+        boolean complete = false;
+        try {
+            readBase64(in, spool);
+            BinaryContent content = spool.toContent();
+            complete = true;
+            return content;
+        } finally {
+            if (!complete) {
+                spool.discard();
+            }
+        }
+    }
+
     public Object readObject(XmlInputStream in, TypeInfo info, Class<?> type)
             throws ConnectionException, IOException {
 
@@ -609,9 +692,10 @@ public class TypeMapper {
         } else if (type == double.class || type == Double.class) {
             return readDouble(in, typeInfo, type);
         } else if (type == byte[].class) {
-            String str = readString(in, typeInfo, type);
-            str = str == null ? "" : str;
-            return Base64.decode(str.getBytes());
+            consumeStartTag(in);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            readBase64(in, bytes);
+            return bytes.toByteArray();
         }
 
         if (type.isEnum()) {
@@ -657,21 +741,46 @@ public class TypeMapper {
         Class<?> c = typeCache.get(qName);
 
         if (c == null) {
-            String type = nillableJavaMapping.get(qName);
-            if (type == null) {
-                type = xmlJavaMapping.get(qName);
+            if (packagePrefix == null) {
+                c = prewarmedTypes.get(qName);
             }
-            if (type == null) {
-                type = NameMapper.getPackageName(qName.getNamespaceURI(), packagePrefix) + "." +
-                       NameMapper.getClassName(qName.getLocalPart());
+            if (c == null) {
+                String type = nillableJavaMapping.get(qName);
+                if (type == null) {
+                    type = xmlJavaMapping.get(qName);
+                }
+                if (type == null) {
+                    type = NameMapper.getPackageName(qName.getNamespaceURI(), packagePrefix) + "." +
+                           NameMapper.getClassName(qName.getLocalPart());
+                }
+                c = load(type);
+            }
+            // concurrent lookups of the same type resolve the same class, first one wins
+            Class<?> existing = typeCache.putIfAbsent(qName, c);
+            if (existing != null) {
+                c = existing;
             }
-            c = load(type);
-            typeCache.put(qName, c);
         }
 
         return c;
     }
 
+    /**
+     * Registers generated types ahead of time so that the first response carrying them as xsi:type does not have
+     * to resolve and load the classes. Each class is registered under its simple name, and the same name with a
+     * lower case first letter, in the given namespace. Applies to every mapper without a package prefix.
+     *
+     * @param namespace xml namespace of the types
+     * @param types     generated classes for the types in that namespace
+     */
+    public static void prewarm(String namespace, Class<?>... types) {
+        for (Class<?> type : types) {
+            String name = type.getSimpleName();
+            prewarmedTypes.put(new QName(namespace, name), type);
+            prewarmedTypes.put(new QName(namespace, Character.toLowerCase(name.charAt(0)) + name.substring(1)), type);
+        }
+    }
+
     private Class<?> load(String type) throws ConnectionException {
         ClassLoader cl = Thread.currentThread().getContextClassLoader();
 
@@ -725,4 +834,28 @@ public class TypeMapper {
             return arrayResult;
         }
     }
+
+    /**
+     * Passes the characters written to it to the text of the current element.
+     */
+    private static class XmlTextWriter extends Writer {
+        private final XmlOutputStream out;
+
+        XmlTextWriter(XmlOutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(char[] chars, int offset, int length) throws IOException {
+            out.writeText(new String(chars, offset, length));
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
 }
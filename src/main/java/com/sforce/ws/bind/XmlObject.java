@@ -47,11 +47,18 @@ import java.util.Map;
  * @since 1.0  Dec 12, 2005
  */
 public class XmlObject implements XMLizable {
+    /**
+     * objects with fewer children are searched linearly, larger ones get a name index on first lookup
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
     private QName name;
     private QName xmlType;
     private Object value;
     private String defaultNamespace;
     private ArrayList<XmlObject> children = new ArrayList<XmlObject>();
+    // local name -> last child with that name, built lazily by findField
+    private HashMap<String, XmlObject> index;
 
     public XmlObject() {
         this(null, null);
@@ -140,14 +147,14 @@ public class XmlObject implements XMLizable {
         if (value instanceof XmlObject) {
             child = (XmlObject) value;
             child.name = getQNameFor(n);
-            children.add(child);
+            addChild(child);
         } else {
             if (set) {
                 child = findField(n);
             }
             if (child == null) {
                 child = new XmlObject(getQNameFor(n), value);
-                children.add(child);
+                addChild(child);
             } else {
                 child.setValue(value);
             }
@@ -162,11 +169,26 @@ public class XmlObject implements XMLizable {
 
     public boolean removeField(String name) {
         XmlObject item = findField(name);
-        return item != null && children.remove(item);
+        if (item == null) {
+            return false;
+        }
+        for (int i = children.size() - 1; i >= 0; i--) {
+            if (children.get(i) == item) {
+                children.remove(i);
+                break;
+            }
+        }
+        if (index != null) {
+            index.remove(name);
+            XmlObject previous = findLast(name);
+            if (previous != null) {
+                index.put(name, previous);
+            }
+        }
+        return true;
     }
 
     public Object getField(String name) {
-        //TODO: optimize
         XmlObject item = findField(name);
         Object result = null;
         if (item != null) {
@@ -184,19 +206,54 @@ public class XmlObject implements XMLizable {
     }
 
     private XmlObject findField(String name) {
-        XmlObject item = null;
+        if (index == null) {
+            if (children.size() < INDEX_THRESHOLD) {
+                return findLast(name);
+            }
+            index = new HashMap<String, XmlObject>(children.size() * 4 / 3 + 1);
+            for (XmlObject child : children) {
+                index.put(child.getName().getLocalPart(), child);
+            }
+        }
+        return index.get(name);
+    }
 
-        for (XmlObject child : children) {
+    private XmlObject findLast(String name) {
+        for (int i = children.size() - 1; i >= 0; i--) {
+            XmlObject child = children.get(i);
             if (child.getName().getLocalPart().equals(name)) {
-                item = child;
+                return child;
             }
         }
+        return null;
+    }
 
-        return item;
+    private void addChild(XmlObject child) {
+        children.add(child);
+        if (index != null) {
+            index.put(child.getName().getLocalPart(), child);
+        }
     }
 
     public Iterator<XmlObject> getChildren() {
-        return children.iterator();
+        final Iterator<XmlObject> it = children.iterator();
+        return new Iterator<XmlObject>() {
+            @Override
+            public boolean hasNext() {
+                return it.hasNext();
+            }
+
+            @Override
+            public XmlObject next() {
+                return it.next();
+            }
+
+            @Override
+            public void remove() {
+                it.remove();
+                index = null;
+            }
+        };
     }
 
     public Iterator<XmlObject> getChildren(String name) {
@@ -271,6 +328,11 @@ public class XmlObject implements XMLizable {
     }
 
     protected void loadAfterStartTag(XmlInputStream in, TypeMapper typeMapper) throws IOException, ConnectionException {
+        if (isBase64Binary(xmlType) && typeMapper.isSpoolingBinaries() && !typeMapper.isXsiNilTrue(in)) {
+            value = typeMapper.readBinaryContent(in);
+            return;
+        }
+
         StringBuilder text = new StringBuilder();
         boolean textFound = false;
 
@@ -280,7 +342,7 @@ public class XmlObject implements XMLizable {
             if (type == XmlInputStream.START_TAG) {
                 XmlObject child = new XmlObject();
                 child.load(in, typeMapper);
-                children.add(child);
+                addChild(child);
             } else if (type == XmlInputStream.TEXT) {
                 text.append(in.getText());
                 textFound = true;
@@ -298,8 +360,13 @@ public class XmlObject implements XMLizable {
         if (textFound) value = typeMapper.deserialize(text.toString(), xmlType);
     }
 
+    private static boolean isBase64Binary(QName type) {
+        return type != null && "base64Binary".equals(type.getLocalPart()) &&
+                Constants.SCHEMA_NS.equals(type.getNamespaceURI());
+    }
+
     public Map<String, Object> toMap() {
-        Map<String, Object> map = new HashMap<String, Object>();
+        Map<String, Object> map = new HashMap<String, Object>(children.size() * 4 / 3 + 1);
 
         if (value == null) {
             for (XmlObject child : children) {
@@ -155,6 +155,15 @@ public final class XmlInputStream {
       return parser.getText();
   }
 
+  /**
+   * Gives access to the text of the current event without copying it.
+   *
+   * @param holderForStartAndLength receives the offset and length of the text in the returned array
+   */
+  public char[] getTextCharacters(int[] holderForStartAndLength) {
+      return parser.getTextCharacters(holderForStartAndLength);
+  }
+
   public int nextTag() throws IOException, ConnectionException {
     if (peekTag != EMPTY) {
       int t = peekTag;
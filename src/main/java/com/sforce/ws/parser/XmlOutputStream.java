@@ -41,6 +41,7 @@ import com.sforce.ws.wsdl.Constants;
 public class XmlOutputStream {
     private MXSerializer serializer = new MXSerializer();
     private OutputStream out;
+    private boolean replayable = true;
 
     public XmlOutputStream(OutputStream out, boolean prettyPrint) throws IOException {
         this.out = out;
@@ -57,6 +58,21 @@ public class XmlOutputStream {
         serializer.setProperty(serializer.PROPERTY_SERIALIZER_INDENTATION, prettyPrintIndentation);
     }    
 
+    /**
+     * Records that content which can only be read once, such as an InputStream, has been written, so the same
+     * document cannot be written again.
+     */
+    public void setNotReplayable() {
+        replayable = false;
+    }
+
+    /**
+     * @return false if content that can only be read once has been written
+     */
+    public boolean isReplayable() {
+        return replayable;
+    }
+
     public String getPrefix(String namespace) {
         return serializer.getPrefix(namespace, false);
     }
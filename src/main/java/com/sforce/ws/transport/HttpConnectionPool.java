@@ -0,0 +1,331 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided 
+ * that the following conditions are met:
+ * 
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and 
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ *    
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or 
+ *    promote products derived from this software without specific prior written permission.
+ *  
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED 
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR 
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED 
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING 
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+import com.sforce.ws.ConnectorConfig;
+
+/**
+ * A bounded pool of persistent HTTP connections, kept per route (scheme, host, port and proxy).
+ * <p/>
+ * At most {@link #getMaxPerRoute()} connections to a route are leased at any time; callers beyond that wait
+ * up to {@link #getLeaseTimeout()} for one to be released. Connections idle for longer than
+ * {@link #getIdleTimeout()} are evicted, and connections idle for longer than
+ * {@link #getValidateAfterInactivity()} are checked before being handed out again.
+ * <p/>
+ * A pool is used through {@link PooledHttpTransport}, and can be shared by every connection whose
+ * {@link ConnectorConfig} points at it with {@link ConnectorConfig#setConnectionPool(HttpConnectionPool)}.
+ */
+public class HttpConnectionPool {
+
+    public static final int DEFAULT_MAX_PER_ROUTE = 20;
+    public static final long DEFAULT_IDLE_TIMEOUT = 60 * 1000;
+    public static final long DEFAULT_VALIDATE_AFTER_INACTIVITY = 2 * 1000;
+    public static final long DEFAULT_LEASE_TIMEOUT = 60 * 1000;
+
+    private static HttpConnectionPool defaultPool;
+
+    private final Map<String, Route> routes = new HashMap<String, Route>();
+    private int maxPerRoute;
+    private long idleTimeout = DEFAULT_IDLE_TIMEOUT;
+    private long validateAfterInactivity = DEFAULT_VALIDATE_AFTER_INACTIVITY;
+    private long leaseTimeout = DEFAULT_LEASE_TIMEOUT;
+    private boolean shutdown;
+
+    private long created;
+    private long reused;
+    private long evicted;
+    private long invalidated;
+    private int pending;
+
+    public HttpConnectionPool() {
+        this(DEFAULT_MAX_PER_ROUTE);
+    }
+
+    public HttpConnectionPool(int maxPerRoute) {
+        if (maxPerRoute < 1) {
+            throw new IllegalArgumentException("maxPerRoute must be at least 1, was " + maxPerRoute);
+        }
+        this.maxPerRoute = maxPerRoute;
+    }
+
+    /**
+     * @return the pool used by {@link PooledHttpTransport} when the config does not name one
+     */
+    public static synchronized HttpConnectionPool getDefault() {
+        if (defaultPool == null) {
+            defaultPool = new HttpConnectionPool();
+        }
+        return defaultPool;
+    }
+
+    /**
+     * Leases a connection to the route of the given url, reusing an idle one when possible.
+     *
+     * @throws IOException when no connection could be leased within the lease timeout, or a new one could
+     * not be opened
+     */
+    PooledConnection lease(URL url, ConnectorConfig config) throws IOException {
+        String routeKey = PooledConnection.routeOf(url, config.getProxy());
+        Route route = getRoute(routeKey);
+
+        acquire(route, routeKey);
+
+        boolean leased = false;
+        try {
+            PooledConnection connection = takeIdle(route);
+            if (connection == null) {
+                connection = PooledConnection.open(routeKey, url, config);
+                synchronized (this) {
+                    created++;
+                }
+            } else {
+                connection.setReadTimeout(config.getReadTimeout());
+            }
+            leased = true;
+            return connection;
+        } finally {
+            if (!leased) {
+                route.permits.release();
+            }
+        }
+    }
+
+    /**
+     * Returns a leased connection to the pool. Connections that are not reusable are closed.
+     */
+    void release(PooledConnection connection, boolean reusable) {
+        Route route = getRoute(connection.getRoute());
+        try {
+            synchronized (this) {
+                if (reusable && !shutdown && connection.isOpen()) {
+                    connection.touch();
+                    connection.setReused(true);
+                    route.idle.addFirst(connection);
+                } else {
+                    connection.close();
+                }
+            }
+        } finally {
+            route.permits.release();
+        }
+    }
+
+    private void acquire(Route route, String routeKey) throws IOException {
+        synchronized (this) {
+            if (shutdown) {
+                throw new IOException("Connection pool has been shut down");
+            }
+            pending++;
+        }
+
+        try {
+            if (leaseTimeout > 0) {
+                if (!route.permits.tryAcquire(leaseTimeout, TimeUnit.MILLISECONDS)) {
+                    throw new IOException("Timed out after " + leaseTimeout + "ms waiting for a connection to " +
+                            routeKey + ", all " + maxPerRoute + " connections are leased");
+                }
+            } else {
+                route.permits.acquire();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for a connection to " + routeKey);
+        } finally {
+            synchronized (this) {
+                pending--;
+            }
+        }
+    }
+
+    /**
+     * Takes the most recently used idle connection of the route, dropping expired and stale ones on the way.
+     */
+    private PooledConnection takeIdle(Route route) {
+        while (true) {
+            PooledConnection connection;
+            synchronized (this) {
+                connection = route.idle.poll();
+                if (connection == null) {
+                    return null;
+                }
+                long idleFor = System.currentTimeMillis() - connection.getLastUsedAt();
+                if (idleTimeout > 0 && idleFor > idleTimeout) {
+                    connection.close();
+                    evicted++;
+                    continue;
+                }
+                if (idleFor <= validateAfterInactivity) {
+                    reused++;
+                    return connection;
+                }
+            }
+
+            // validation does a short blocking read, keep it outside the lock
+            if (!connection.isStale()) {
+                synchronized (this) {
+                    reused++;
+                }
+                return connection;
+            }
+
+            connection.close();
+            synchronized (this) {
+                invalidated++;
+            }
+        }
+    }
+
+    private synchronized Route getRoute(String routeKey) {
+        Route route = routes.get(routeKey);
+        if (route == null) {
+            route = new Route(maxPerRoute);
+            routes.put(routeKey, route);
+        }
+        return route;
+    }
+
+    /**
+     * Closes every idle connection that has not been used for longer than the idle timeout.
+     *
+     * @return the number of connections closed
+     */
+    public synchronized int closeExpiredConnections() {
+        int count = 0;
+        if (idleTimeout <= 0) {
+            return count;
+        }
+
+        long now = System.currentTimeMillis();
+        for (Route route : routes.values()) {
+            Iterator<PooledConnection> it = route.idle.iterator();
+            while (it.hasNext()) {
+                PooledConnection connection = it.next();
+                if (now - connection.getLastUsedAt() > idleTimeout) {
+                    it.remove();
+                    connection.close();
+                    count++;
+                }
+            }
+        }
+        evicted += count;
+        return count;
+    }
+
+    /**
+     * Closes all idle connections. Leased connections are closed when they are released.
+     */
+    public synchronized void closeIdleConnections() {
+        for (Route route : routes.values()) {
+            for (PooledConnection connection : route.idle) {
+                connection.close();
+            }
+            route.idle.clear();
+        }
+    }
+
+    /**
+     * Closes all idle connections and refuses further leases.
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+        closeIdleConnections();
+    }
+
+    /**
+     * @return a snapshot of the pool usage counters
+     */
+    public synchronized PoolStatistics getStatistics() {
+        int leased = 0;
+        int available = 0;
+        List<String> routeNames = new ArrayList<String>(routes.keySet());
+        for (Route route : routes.values()) {
+            leased += maxPerRoute - route.permits.availablePermits();
+            available += route.idle.size();
+        }
+        return new PoolStatistics(maxPerRoute, leased, available, pending, created, reused, evicted, invalidated,
+                routeNames);
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    /**
+     * sets how long a connection may stay idle before it is closed
+     * @param idleTimeout timeout in ms, 0 to keep idle connections until the server closes them
+     */
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getValidateAfterInactivity() {
+        return validateAfterInactivity;
+    }
+
+    /**
+     * sets how long a connection may stay idle before it is checked for staleness when leased
+     * @param validateAfterInactivity time in ms
+     */
+    public void setValidateAfterInactivity(long validateAfterInactivity) {
+        this.validateAfterInactivity = validateAfterInactivity;
+    }
+
+    public long getLeaseTimeout() {
+        return leaseTimeout;
+    }
+
+    /**
+     * sets how long to wait for a connection when all connections to a route are leased
+     * @param leaseTimeout timeout in ms, 0 to wait forever
+     */
+    public void setLeaseTimeout(long leaseTimeout) {
+        this.leaseTimeout = leaseTimeout;
+    }
+
+    private static class Route {
+        private final Semaphore permits;
+        private final LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+
+        private Route(int maxPerRoute) {
+            this.permits = new Semaphore(maxPerRoute, true);
+        }
+    }
+}
@@ -50,6 +50,7 @@ public class JdkHttpTransport implements Transport {
     private HttpURLConnection connection;
     private boolean successful;
     private ConnectorConfig config;
+    private boolean compressRequests;
 	private URL url;
 
     public JdkHttpTransport() {
@@ -59,11 +60,53 @@ public class JdkHttpTransport implements Transport {
         setConfig(config);
     }
 
+    /**
+     * Creates the transport configured with {@link ConnectorConfig#setTransport(Class)} when it extends
+     * JdkHttpTransport, so that bulk and REST calls go through the same transport as SOAP calls. Any other
+     * transport class falls back to a plain JdkHttpTransport.
+     *
+     * @param config connector configuration
+     * @return a transport ready to connect
+     * @throws IOException failed to instantiate the configured transport
+     */
+    public static JdkHttpTransport newTransport(ConnectorConfig config) throws IOException {
+        Class<?> transportClass = config.getTransport();
+        if (transportClass == null || !JdkHttpTransport.class.isAssignableFrom(transportClass)) {
+            return new JdkHttpTransport(config);
+        }
+
+        try {
+            JdkHttpTransport transport = (JdkHttpTransport) transportClass.newInstance();
+            transport.setConfig(config);
+            return transport;
+        } catch (InstantiationException e) {
+            throw new IOException("Failed to create new Transport " + transportClass, e);
+        } catch (IllegalAccessException e) {
+            throw new IOException("Failed to create new Transport " + transportClass, e);
+        }
+    }
+
     @Override
     public void setConfig(ConnectorConfig config) {
         this.config = config;
     }
 
+    /**
+     * Gzip encodes the requests sent with compression enabled even when compression is turned off in the
+     * config, for callers that know the request body compresses well.
+     */
+    public void setCompressRequests(boolean compressRequests) {
+        this.compressRequests = compressRequests;
+    }
+
+    /**
+     * @param enableCompression whether the caller allows compression for this request
+     * @return true if the request body is gzip encoded and a gzip encoded response is accepted
+     */
+    protected boolean isCompressing(boolean enableCompression) {
+        return enableCompression && (compressRequests || config.isCompression());
+    }
+
     public OutputStream connect(String uri, HashMap<String, String> httpHeaders) throws IOException {
         return connectLocal(uri, httpHeaders, true);
     }
@@ -94,7 +137,28 @@ public class JdkHttpTransport implements Transport {
 
     private OutputStream connectLocal(String uri, HashMap<String, String> httpHeaders, boolean enableCompression)
             throws IOException {
-        return wrapOutput(connectRaw(uri, httpHeaders, enableCompression), enableCompression);
+        url = new URL(uri);
+        return wrapOutput(connectRaw(url, httpHeaders, enableCompression), enableCompression);
+    }
+
+    /**
+     * Sends a GET request to the specified endpoint and returns the raw response body. Unlike
+     * {@link #getContent()} the body is neither decompressed nor passed to the message handlers, so callers
+     * can decide how to consume it.
+     *
+     * @param uri endpoint address
+     * @param httpHeaders additional request headers
+     * @param enableCompression true to ask the server for a gzip encoded response
+     * @return response or error stream
+     * @throws IOException failed to send the request
+     */
+    public InputStream get(String uri, HashMap<String, String> httpHeaders, boolean enableCompression)
+            throws IOException {
+        url = new URL(uri);
+        sendGet(url, httpHeaders, enableCompression);
+        InputStream in = openResponse();
+        readLimitInfo();
+        return in;
     }
 
     private OutputStream wrapOutput(OutputStream output, boolean enableCompression) throws IOException {
@@ -103,7 +167,7 @@ public class JdkHttpTransport implements Transport {
         }
 
         // when we are writing a zip file we don't bother with compression
-        if (enableCompression && config.isCompression()) {
+        if (isCompressing(enableCompression)) {
             output = new GZIPOutputStream(output);
         }
 
@@ -118,11 +182,12 @@ public class JdkHttpTransport implements Transport {
         return output;
     }
 
-    private OutputStream connectRaw(String uri, HashMap<String, String> httpHeaders, boolean enableCompression)
+    /**
+     * Opens a POST request to the given url and returns the stream the request body is written to.
+     */
+    protected OutputStream connectRaw(URL url, HashMap<String, String> httpHeaders, boolean enableCompression)
             throws IOException {
-        url = new URL(uri);
-
-        connection = createConnection(config, url, httpHeaders, enableCompression);
+        connection = openConnection(config, url, httpHeaders, isCompressing(enableCompression));
         connection.setRequestMethod("POST");
         connection.setDoInput(true);
         connection.setDoOutput(true);
@@ -133,6 +198,74 @@ public class JdkHttpTransport implements Transport {
         return connection.getOutputStream();
     }
 
+    /**
+     * Sends a GET request to the given url. The response is read with {@link #openResponse()}.
+     */
+    protected void sendGet(URL url, HashMap<String, String> httpHeaders, boolean enableCompression)
+            throws IOException {
+        connection = openConnection(config, url, httpHeaders, isCompressing(enableCompression));
+    }
+
+    /**
+     * Returns the raw response body, or the error body when the server did not answer with a success code.
+     * Implementations must record the outcome with {@link #setSuccessful(boolean)}.
+     */
+    protected InputStream openResponse() throws IOException {
+        InputStream in;
+
+        try {
+            setSuccessful(true);
+            in = connection.getInputStream();
+        } catch (IOException e) {
+            setSuccessful(false);
+            in = connection.getErrorStream();
+            if (in == null) {
+                throw e;
+            }
+        }
+
+        return in;
+    }
+
+    /**
+     * Passes the API usage reported by the server on to the governor of the config.
+     */
+    private void readLimitInfo() {
+        ApiGovernor governor = config.getApiGovernor();
+        if (governor != null) {
+            governor.updateLimitInfo(getHeaderField(ApiGovernor.LIMIT_INFO_HEADER));
+        }
+    }
+
+    protected void setSuccessful(boolean successful) {
+        this.successful = successful;
+    }
+
+    protected ConnectorConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return the HTTP status code of the response
+     */
+    public int getResponseCode() throws IOException {
+        return connection.getResponseCode();
+    }
+
+    /**
+     * @return the value of the named response header, or null if it is not present
+     */
+    public String getHeaderField(String name) {
+        return connection.getHeaderField(name);
+    }
+
+    /**
+     * @return all response headers, keyed by header name
+     */
+    public Map<String, List<String>> getHeaderFields() {
+        return connection.getHeaderFields();
+    }
+
     public static HttpURLConnection createConnection(ConnectorConfig config, URL url,
             HashMap<String, String> httpHeaders) throws IOException {
         return createConnection(config, url, httpHeaders, true);
@@ -140,6 +273,11 @@ public class JdkHttpTransport implements Transport {
 
     public static HttpURLConnection createConnection(ConnectorConfig config, URL url,
             HashMap<String, String> httpHeaders, boolean enableCompression) throws IOException {
+        return openConnection(config, url, httpHeaders, enableCompression && config.isCompression());
+    }
+
+    private static HttpURLConnection openConnection(ConnectorConfig config, URL url,
+            HashMap<String, String> httpHeaders, boolean compress) throws IOException {
 
         if (config.isTraceMessage()) {
             config.getTraceStream().println( "WSC: Creating a new connection to " + url + " Proxy = " +
@@ -158,7 +296,7 @@ public class JdkHttpTransport implements Transport {
             }
         }
 
-        if (enableCompression && config.isCompression()) {
+        if (compress) {
             connection.addRequestProperty("Content-Encoding", "gzip");
             connection.addRequestProperty("Accept-Encoding", "gzip");
         }
@@ -189,20 +327,10 @@ public class JdkHttpTransport implements Transport {
 
     @Override
     public InputStream getContent() throws IOException {
-        InputStream in;
-
-        try {
-            successful = true;
-            in = connection.getInputStream();
-        } catch (IOException e) {
-            successful = false;
-            in = connection.getErrorStream();
-            if (in == null) {
-                throw e;
-            }
-        }
+        InputStream in = openResponse();
+        readLimitInfo();
 
-        String encoding = connection.getHeaderField("Content-Encoding");
+        String encoding = getHeaderField("Content-Encoding");
 
         if (config.getMaxResponseSize() > 0) {
             in = new LimitingInputStream(config.getMaxResponseSize(), in);
@@ -212,24 +340,16 @@ public class JdkHttpTransport implements Transport {
             in = new GZIPInputStream(in);
         }
 
-        if (config.hasMessageHandlers() || config.isTraceMessage()) {
+        if (config.isTraceMessage() || (config.hasMessageHandlers() && !config.isStreamResponseToMessageHandlers())) {
             byte[] bytes = FileUtil.toBytes(in);
             in = new ByteArrayInputStream(bytes);
 
             if (config.hasMessageHandlers()) {
-                Iterator<MessageHandler> it = config.getMessagerHandlers();
-                while(it.hasNext()) {
-                    MessageHandler handler = it.next();
-                    if (handler instanceof MessageHandlerWithHeaders) {
-                        ((MessageHandlerWithHeaders) handler).handleResponse(url, bytes, connection.getHeaderFields());
-                    } else {
-                        handler.handleResponse(url, bytes);
-                    }
-                }
+                notifyResponseHandlers(bytes);
             }
 
             if (config.isTraceMessage()) {
-                Map<String, List<String>> headers = connection.getHeaderFields();
+                Map<String, List<String>> headers = getHeaderFields();
                 for (Map.Entry header : headers.entrySet()) {
                     config.getTraceStream().print(header.getKey());
                     config.getTraceStream().print("=");
@@ -238,11 +358,25 @@ public class JdkHttpTransport implements Transport {
                 
                 new TeeInputStream(config, bytes);
             }
+        } else if (config.hasMessageHandlers()) {
+            in = new MessageHandlerInputStream(in, config.getMaxMessageHandlerResponseSize());
         }
 
         return in;
     }
 
+    private void notifyResponseHandlers(byte[] bytes) {
+        Iterator<MessageHandler> it = config.getMessagerHandlers();
+        while(it.hasNext()) {
+            MessageHandler handler = it.next();
+            if (handler instanceof MessageHandlerWithHeaders) {
+                ((MessageHandlerWithHeaders) handler).handleResponse(url, bytes, getHeaderFields());
+            } else {
+                handler.handleResponse(url, bytes);
+            }
+        }
+    }
+
     @Override
     public boolean isSuccessful() {
         return successful;
@@ -336,6 +470,99 @@ public class JdkHttpTransport implements Transport {
         }
     }
 
+    /**
+     * Passes the response through to the caller while keeping a copy of its first maxSize bytes for the message
+     * handlers, which are notified when the response has been read or the stream is closed. A maxSize of 0 or less
+     * keeps the whole response.
+     */
+    public class MessageHandlerInputStream extends FilterInputStream {
+        private byte[] prefix;
+        private int size;
+        private int maxSize;
+        private boolean notified;
+
+        public MessageHandlerInputStream(InputStream in, int maxSize) {
+            super(in);
+            this.maxSize = maxSize > 0 ? maxSize : Integer.MAX_VALUE;
+            this.prefix = new byte[Math.min(this.maxSize, 8192)];
+        }
+
+        private void capture(byte b[], int off, int len) {
+            len = Math.min(len, maxSize - size);
+            if (len <= 0) {
+                return;
+            }
+            ensureCapacity(size + len);
+            System.arraycopy(b, off, prefix, size, len);
+            size += len;
+        }
+
+        private void ensureCapacity(int capacity) {
+            if (capacity > prefix.length) {
+                prefix = Arrays.copyOf(prefix, (int) Math.min(maxSize, Math.max(capacity, prefix.length * 2L)));
+            }
+        }
+
+        private void notifyHandlers() {
+            if (!notified) {
+                notified = true;
+                notifyResponseHandlers(size == prefix.length ? prefix : Arrays.copyOf(prefix, size));
+                prefix = null;
+            }
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = in.read();
+            if (b == -1) {
+                notifyHandlers();
+            } else if (size < maxSize) {
+                ensureCapacity(size + 1);
+                prefix[size++] = (byte) b;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte b[], int off, int len) throws IOException {
+            int count = in.read(b, off, len);
+            if (count == -1) {
+                notifyHandlers();
+            } else {
+                capture(b, off, count);
+            }
+            return count;
+        }
+
+        @Override
+        public long skip(long n) throws IOException {
+            byte[] buffer = new byte[(int) Math.min(n, 4096)];
+            long skipped = 0;
+            while (skipped < n) {
+                int count = read(buffer, 0, (int) Math.min(n - skipped, buffer.length));
+                if (count == -1) {
+                    break;
+                }
+                skipped += count;
+            }
+            return skipped;
+        }
+
+        @Override
+        public boolean markSupported() {
+            return false;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                in.close();
+            } finally {
+                notifyHandlers();
+            }
+        }
+    }
+
     public static class LimitingInputStream extends InputStream {
 
         private int maxSize;
@@ -0,0 +1,121 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided 
+ * that the following conditions are met:
+ * 
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and 
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ *    
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or 
+ *    promote products derived from this software without specific prior written permission.
+ *  
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED 
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR 
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED 
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING 
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A point in time snapshot of the counters of a {@link HttpConnectionPool}.
+ */
+public class PoolStatistics {
+    private final int maxPerRoute;
+    private final int leased;
+    private final int available;
+    private final int pending;
+    private final long created;
+    private final long reused;
+    private final long evicted;
+    private final long invalidated;
+    private final List<String> routes;
+
+    PoolStatistics(int maxPerRoute, int leased, int available, int pending, long created, long reused,
+                   long evicted, long invalidated, List<String> routes) {
+        this.maxPerRoute = maxPerRoute;
+        this.leased = leased;
+        this.available = available;
+        this.pending = pending;
+        this.created = created;
+        this.reused = reused;
+        this.evicted = evicted;
+        this.invalidated = invalidated;
+        this.routes = Collections.unmodifiableList(routes);
+    }
+
+    public int getMaxPerRoute() {
+        return maxPerRoute;
+    }
+
+    /**
+     * @return connections currently in use
+     */
+    public int getLeased() {
+        return leased;
+    }
+
+    /**
+     * @return idle connections ready to be reused
+     */
+    public int getAvailable() {
+        return available;
+    }
+
+    /**
+     * @return threads waiting for a connection
+     */
+    public int getPending() {
+        return pending;
+    }
+
+    /**
+     * @return connections opened since the pool was created
+     */
+    public long getCreated() {
+        return created;
+    }
+
+    /**
+     * @return leases served by an already open connection
+     */
+    public long getReused() {
+        return reused;
+    }
+
+    /**
+     * @return idle connections closed because they exceeded the idle timeout
+     */
+    public long getEvicted() {
+        return evicted;
+    }
+
+    /**
+     * @return idle connections closed because they failed validation
+     */
+    public long getInvalidated() {
+        return invalidated;
+    }
+
+    public List<String> getRoutes() {
+        return routes;
+    }
+
+    @Override
+    public String toString() {
+        return "[leased=" + leased + ", available=" + available + ", pending=" + pending + ", maxPerRoute=" +
+                maxPerRoute + ", created=" + created + ", reused=" + reused + ", evicted=" + evicted +
+                ", invalidated=" + invalidated + ", routes=" + routes + "]";
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided 
+ * that the following conditions are met:
+ * 
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and 
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ *    
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or 
+ *    promote products derived from this software without specific prior written permission.
+ *  
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED 
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR 
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED 
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING 
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.util.Base64;
+
+/**
+ * A persistent socket to one route (scheme, host, port and proxy) that is handed out by
+ * {@link HttpConnectionPool}. Https routes going through an http proxy are tunnelled with CONNECT.
+ */
+class PooledConnection {
+    private static final int BUFFER_SIZE = 8192;
+
+    private final String route;
+    private final Socket socket;
+    private final InputStream input;
+    private final OutputStream output;
+    private final long createdAt;
+    private long lastUsedAt;
+    private boolean reused;
+
+    private PooledConnection(String route, Socket socket) throws IOException {
+        this.route = route;
+        this.socket = socket;
+        this.input = new BufferedInputStream(socket.getInputStream(), BUFFER_SIZE);
+        this.output = new BufferedOutputStream(socket.getOutputStream(), BUFFER_SIZE);
+        this.createdAt = System.currentTimeMillis();
+        this.lastUsedAt = createdAt;
+    }
+
+    static String routeOf(URL url, Proxy proxy) {
+        return url.getProtocol() + "://" + url.getHost() + ":" + portOf(url) + (proxy.type() == Proxy.Type.DIRECT ? "" : " via " + proxy);
+    }
+
+    static int portOf(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    static boolean isSecure(URL url) {
+        return "https".equalsIgnoreCase(url.getProtocol());
+    }
+
+    static PooledConnection open(String route, URL url, ConnectorConfig config) throws IOException {
+        Proxy proxy = config.getProxy();
+        String host = url.getHost();
+        int port = portOf(url);
+        boolean tunnel = isSecure(url) && proxy.type() == Proxy.Type.HTTP;
+
+        if (config.isTraceMessage()) {
+            config.getTraceStream().println("WSC: Creating a new pooled connection to " + route);
+        }
+
+        Socket socket = proxy.type() == Proxy.Type.SOCKS ? new Socket(proxy) : new Socket();
+        try {
+            InetSocketAddress address = proxy.type() == Proxy.Type.HTTP ? (InetSocketAddress) proxy.address()
+                    : new InetSocketAddress(host, port);
+            socket.connect(address, config.getConnectionTimeout());
+            socket.setTcpNoDelay(true);
+            socket.setKeepAlive(true);
+            socket.setSoTimeout(config.getReadTimeout());
+
+            if (tunnel) {
+                openTunnel(socket, host, port, config);
+            }
+
+            if (isSecure(url)) {
+                socket = startTls(socket, host, port);
+            }
+
+            return new PooledConnection(route, socket);
+        } catch (IOException e) {
+            closeQuietly(socket);
+            throw e;
+        }
+    }
+
+    private static void openTunnel(Socket socket, String host, int port, ConnectorConfig config) throws IOException {
+        StringBuilder request = new StringBuilder();
+        request.append("CONNECT ").append(host).append(':').append(port).append(" HTTP/1.1\r\n");
+        request.append("Host: ").append(host).append(':').append(port).append("\r\n");
+        String proxyAuthorization = proxyAuthorization(config);
+        if (proxyAuthorization != null) {
+            request.append("Proxy-Authorization: ").append(proxyAuthorization).append("\r\n");
+        }
+        request.append("\r\n");
+
+        OutputStream out = socket.getOutputStream();
+        out.write(request.toString().getBytes("ISO-8859-1"));
+        out.flush();
+
+        // read the proxy reply byte by byte, anything after the blank line belongs to the tls handshake
+        InputStream in = socket.getInputStream();
+        String statusLine = readLine(in);
+        if (statusLine == null || statusLine.split(" ").length < 2 || !statusLine.split(" ")[1].equals("200")) {
+            throw new IOException("Unable to tunnel through proxy " + config.getProxy() + ": " + statusLine);
+        }
+        String line;
+        while ((line = readLine(in)) != null && line.length() > 0) {
+            // skip the proxy response headers
+        }
+    }
+
+    private static Socket startTls(Socket socket, String host, int port) throws IOException {
+        SSLSocketFactory factory = HttpsURLConnection.getDefaultSSLSocketFactory();
+        SSLSocket sslSocket = (SSLSocket) factory.createSocket(socket, host, port, true);
+        SSLParameters parameters = sslSocket.getSSLParameters();
+        parameters.setEndpointIdentificationAlgorithm("HTTPS");
+        sslSocket.setSSLParameters(parameters);
+        sslSocket.startHandshake();
+        return sslSocket;
+    }
+
+    static String proxyAuthorization(ConnectorConfig config) {
+        if (config.getProxyUsername() == null) {
+            return null;
+        }
+        String token = config.getProxyUsername() + ":" + config.getProxyPassword();
+        return "Basic " + new String(Base64.encode(token.getBytes()));
+    }
+
+    /**
+     * Reads a CRLF terminated line in ISO-8859-1, as used for the HTTP status line and headers.
+     *
+     * @return the line without its terminator, or null at end of stream
+     */
+    static String readLine(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int ch;
+        while ((ch = in.read()) != -1) {
+            if (ch == '\n') {
+                int length = line.length();
+                if (length > 0 && line.charAt(length - 1) == '\r') {
+                    line.setLength(length - 1);
+                }
+                return line.toString();
+            }
+            line.append((char) ch);
+        }
+        return line.length() == 0 ? null : line.toString();
+    }
+
+    /**
+     * Checks that the server has not closed an idle connection. A live idle connection has nothing to read,
+     * so a short read either times out (alive) or returns end of stream or unexpected bytes (stale).
+     */
+    boolean isStale() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return true;
+        }
+
+        try {
+            if (input.available() > 0) {
+                return true;
+            }
+            int soTimeout = socket.getSoTimeout();
+            try {
+                socket.setSoTimeout(1);
+                // either end of stream or bytes nobody asked for, the connection can't be reused
+                input.read();
+                return true;
+            } catch (SocketTimeoutException e) {
+                return false;
+            } finally {
+                socket.setSoTimeout(soTimeout);
+            }
+        } catch (IOException e) {
+            return true;
+        }
+    }
+
+    void close() {
+        closeQuietly(socket);
+    }
+
+    boolean isOpen() {
+        return !socket.isClosed();
+    }
+
+    private static void closeQuietly(Socket socket) {
+        try {
+            socket.close();
+        } catch (IOException e) {
+            // nothing left to do with a broken connection
+        }
+    }
+
+    void setReadTimeout(int readTimeout) throws IOException {
+        socket.setSoTimeout(readTimeout);
+    }
+
+    String getRoute() {
+        return route;
+    }
+
+    InputStream getInput() {
+        return input;
+    }
+
+    OutputStream getOutput() {
+        return output;
+    }
+
+    long getCreatedAt() {
+        return createdAt;
+    }
+
+    long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    void touch() {
+        lastUsedAt = System.currentTimeMillis();
+    }
+
+    boolean isReused() {
+        return reused;
+    }
+
+    void setReused(boolean reused) {
+        this.reused = reused;
+    }
+}
@@ -0,0 +1,590 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided 
+ * that the following conditions are met:
+ * 
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the 
+ *    following disclaimer.
+ *  
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and 
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution. 
+ *    
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or 
+ *    promote products derived from this software without specific prior written permission.
+ *  
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED 
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A 
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR 
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED 
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION) 
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING 
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE 
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Proxy;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.tools.VersionInfo;
+
+/**
+ * An implementation of Transport that speaks HTTP/1.1 over persistent connections leased from a
+ * {@link HttpConnectionPool}, so repeated calls to the same host skip the TCP and TLS handshakes.
+ * <p/>
+ * Enable it with {@link ConnectorConfig#setTransport(Class)}. The pool is taken from
+ * {@link ConnectorConfig#getConnectionPool()}, or {@link HttpConnectionPool#getDefault()} when none is set.
+ * Because it extends {@link JdkHttpTransport}, the bulk and REST connections built on the same config use it
+ * as well.
+ * <p/>
+ * Unless chunked posts are enabled the request body is buffered, which lets a request that could not be written
+ * on a connection the server had already closed be sent again on a fresh one. The response stream must be read
+ * to the end or closed to give the connection back to the pool.
+ */
+public class PooledHttpTransport extends JdkHttpTransport {
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_DRAIN = 64 * 1024;
+    private static final int MAX_RETRIES = 2;
+
+    private HttpConnectionPool pool;
+    private URL url;
+    private String method;
+    private List<String[]> requestHeaders;
+    private ByteArrayOutputStream requestBody;
+    private PooledConnection streamingConnection;
+    private int responseCode = -1;
+    private Map<String, List<String>> responseHeaders = Collections.emptyMap();
+
+    public PooledHttpTransport() {
+    }
+
+    public PooledHttpTransport(ConnectorConfig config) {
+        super(config);
+    }
+
+    public HttpConnectionPool getConnectionPool() {
+        if (pool == null) {
+            pool = getConfig().getConnectionPool() != null ? getConfig().getConnectionPool()
+                    : HttpConnectionPool.getDefault();
+        }
+        return pool;
+    }
+
+    @Override
+    protected OutputStream connectRaw(URL url, HashMap<String, String> httpHeaders, boolean enableCompression)
+            throws IOException {
+        prepare(url, "POST", httpHeaders, enableCompression);
+
+        if (getConfig().useChunkedPost()) {
+            PooledConnection connection = getConnectionPool().lease(url, getConfig());
+            try {
+                requestHeaders.add(new String[]{"Transfer-Encoding", "chunked"});
+                writeHead(connection);
+            } catch (IOException e) {
+                getConnectionPool().release(connection, false);
+                throw e;
+            }
+            streamingConnection = connection;
+            return new ChunkedOutputStream(connection);
+        }
+
+        requestBody = new ByteArrayOutputStream();
+        return requestBody;
+    }
+
+    @Override
+    protected void sendGet(URL url, HashMap<String, String> httpHeaders, boolean enableCompression)
+            throws IOException {
+        prepare(url, "GET", httpHeaders, enableCompression);
+    }
+
+    @Override
+    protected InputStream openResponse() throws IOException {
+        if (streamingConnection != null) {
+            PooledConnection connection = streamingConnection;
+            streamingConnection = null;
+            try {
+                return readResponse(connection);
+            } catch (IOException e) {
+                getConnectionPool().release(connection, false);
+                throw e;
+            }
+        }
+
+        for (int attempt = 0; ; attempt++) {
+            PooledConnection connection = getConnectionPool().lease(url, getConfig());
+            boolean written = false;
+            try {
+                writeHead(connection);
+                if (requestBody != null) {
+                    requestBody.writeTo(connection.getOutput());
+                }
+                connection.getOutput().flush();
+                written = true;
+                return readResponse(connection);
+            } catch (IOException e) {
+                getConnectionPool().release(connection, false);
+                // the server may close an idle connection just as we send on it, in which case the request could
+                // not be written and is sent again; once it has been written the server may have processed it,
+                // and whether to send it again is left to the retry policy of the caller
+                if (written || !connection.isReused() || e instanceof SocketTimeoutException || attempt >= MAX_RETRIES) {
+                    throw e;
+                }
+                if (getConfig().isTraceMessage()) {
+                    getConfig().getTraceStream().println("WSC: Retrying request to " + url +
+                            " on a new connection: " + e);
+                }
+            }
+        }
+    }
+
+    @Override
+    public String getHeaderField(String name) {
+        String value = null;
+        for (Map.Entry<String, List<String>> entry : responseHeaders.entrySet()) {
+            if (entry.getKey() != null && entry.getKey().equalsIgnoreCase(name)) {
+                List<String> values = entry.getValue();
+                value = values.get(values.size() - 1);
+            }
+        }
+        return value;
+    }
+
+    @Override
+    public Map<String, List<String>> getHeaderFields() {
+        return responseHeaders;
+    }
+
+    /**
+     * @return the HTTP status code of the response, or -1 before the response has been read
+     */
+    public int getResponseCode() {
+        return responseCode;
+    }
+
+    private void prepare(URL url, String method, HashMap<String, String> httpHeaders, boolean enableCompression) {
+        ConnectorConfig config = getConfig();
+        this.url = url;
+        this.method = method;
+        this.requestBody = null;
+        this.requestHeaders = new ArrayList<String[]>();
+
+        int port = PooledConnection.portOf(url);
+        String host = url.getPort() == -1 || port == url.getDefaultPort() ? url.getHost() : url.getHost() + ":" + port;
+        requestHeaders.add(new String[]{"Host", host});
+        requestHeaders.add(new String[]{"User-Agent", VersionInfo.info()});
+
+        if (config.getHeaders() != null) {
+            for (Map.Entry<String, String> entry : config.getHeaders().entrySet()) {
+                requestHeaders.add(new String[]{entry.getKey(), entry.getValue()});
+            }
+        }
+
+        if (isCompressing(enableCompression)) {
+            requestHeaders.add(new String[]{"Content-Encoding", "gzip"});
+            requestHeaders.add(new String[]{"Accept-Encoding", "gzip"});
+        }
+
+        // https requests are tunnelled and authenticate with CONNECT, plain requests go to the proxy directly
+        if (isPlainProxied(url, config)) {
+            String proxyAuthorization = PooledConnection.proxyAuthorization(config);
+            if (proxyAuthorization != null) {
+                requestHeaders.add(new String[]{"Proxy-Authorization", proxyAuthorization});
+            }
+        }
+
+        if (httpHeaders != null) {
+            for (Map.Entry<String, String> entry : httpHeaders.entrySet()) {
+                requestHeaders.add(new String[]{entry.getKey(), entry.getValue()});
+            }
+        }
+    }
+
+    private static boolean isPlainProxied(URL url, ConnectorConfig config) {
+        return !PooledConnection.isSecure(url) && config.getProxy().type() == Proxy.Type.HTTP;
+    }
+
+    private void writeHead(PooledConnection connection) throws IOException {
+        String target;
+        if (isPlainProxied(url, getConfig())) {
+            target = url.toExternalForm();
+        } else {
+            target = url.getFile().length() == 0 ? "/" : url.getFile();
+        }
+
+        StringBuilder head = new StringBuilder(512);
+        head.append(method).append(' ').append(target).append(" HTTP/1.1\r\n");
+        for (String[] header : requestHeaders) {
+            head.append(header[0]).append(": ").append(header[1]).append("\r\n");
+        }
+        if (requestBody != null) {
+            head.append("Content-Length: ").append(requestBody.size()).append("\r\n");
+        }
+        head.append("\r\n");
+
+        connection.getOutput().write(head.toString().getBytes("ISO-8859-1"));
+    }
+
+    private InputStream readResponse(PooledConnection connection) throws IOException {
+        InputStream in = connection.getInput();
+
+        String statusLine;
+        Map<String, List<String>> headers;
+        int status;
+        do {
+            statusLine = PooledConnection.readLine(in);
+            if (statusLine == null) {
+                throw new IOException("Connection to " + connection.getRoute() + " closed without a response");
+            }
+            status = parseStatus(statusLine);
+            headers = readHeaders(in, statusLine);
+        } while (status >= 100 && status < 200);
+
+        responseCode = status;
+        responseHeaders = Collections.unmodifiableMap(headers);
+        setSuccessful(status < 400);
+
+        boolean keepAlive;
+        String connectionHeader = getHeaderField("Connection");
+        if (statusLine.startsWith("HTTP/1.0")) {
+            keepAlive = "keep-alive".equalsIgnoreCase(connectionHeader);
+        } else {
+            keepAlive = !"close".equalsIgnoreCase(connectionHeader);
+        }
+
+        InputStream body;
+        String transferEncoding = getHeaderField("Transfer-Encoding");
+        String contentLength = getHeaderField("Content-Length");
+        if (status == 204 || status == 304) {
+            body = new ContentLengthInputStream(in, 0);
+        } else if (transferEncoding != null && transferEncoding.toLowerCase().contains("chunked")) {
+            body = new ChunkedInputStream(in);
+        } else if (contentLength != null) {
+            try {
+                body = new ContentLengthInputStream(in, Long.parseLong(contentLength.trim()));
+            } catch (NumberFormatException e) {
+                throw new IOException("Invalid Content-Length " + contentLength + " from " + connection.getRoute());
+            }
+        } else {
+            // the body runs until the server closes the connection
+            body = in;
+            keepAlive = false;
+        }
+
+        return new ResponseInputStream(connection, body, keepAlive);
+    }
+
+    private static int parseStatus(String statusLine) throws IOException {
+        String[] parts = statusLine.split(" ", 3);
+        if (parts.length < 2 || !parts[0].startsWith("HTTP/")) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+        try {
+            return Integer.parseInt(parts[1]);
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid HTTP status line: " + statusLine);
+        }
+    }
+
+    private static Map<String, List<String>> readHeaders(InputStream in, String statusLine) throws IOException {
+        Map<String, List<String>> headers = new LinkedHashMap<String, List<String>>();
+        // same convention as HttpURLConnection, the status line is stored under the null key
+        headers.put(null, Collections.singletonList(statusLine));
+
+        String line;
+        while ((line = PooledConnection.readLine(in)) != null && line.length() > 0) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                continue;
+            }
+            String name = line.substring(0, colon).trim();
+            String value = line.substring(colon + 1).trim();
+            List<String> values = headers.get(name);
+            if (values == null) {
+                values = new ArrayList<String>(1);
+                headers.put(name, values);
+            }
+            values.add(value);
+        }
+        return headers;
+    }
+
+    /**
+     * Gives the connection back to the pool once the body has been read to the end, or closes it when the
+     * body is abandoned with more than a small amount left unread.
+     */
+    private class ResponseInputStream extends InputStream {
+        private final PooledConnection connection;
+        private final InputStream body;
+        private final boolean keepAlive;
+        private boolean released;
+
+        private ResponseInputStream(PooledConnection connection, InputStream body, boolean keepAlive) {
+            this.connection = connection;
+            this.body = body;
+            this.keepAlive = keepAlive;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (released) {
+                return -1;
+            }
+            try {
+                int b = body.read();
+                if (b == -1) {
+                    release(keepAlive);
+                }
+                return b;
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (released) {
+                return -1;
+            }
+            try {
+                int count = body.read(b, off, len);
+                if (count == -1) {
+                    release(keepAlive);
+                }
+                return count;
+            } catch (IOException e) {
+                release(false);
+                throw e;
+            }
+        }
+
+        @Override
+        public int available() throws IOException {
+            return released ? 0 : body.available();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (released) {
+                return;
+            }
+            if (!keepAlive) {
+                release(false);
+                return;
+            }
+
+            byte[] buffer = new byte[4096];
+            long drained = 0;
+            try {
+                int count;
+                while ((count = body.read(buffer)) != -1) {
+                    drained += count;
+                    if (drained > MAX_DRAIN) {
+                        release(false);
+                        return;
+                    }
+                }
+                release(true);
+            } catch (IOException e) {
+                release(false);
+            }
+        }
+
+        private void release(boolean reusable) {
+            if (!released) {
+                released = true;
+                getConnectionPool().release(connection, reusable);
+            }
+        }
+    }
+
+    private static class ContentLengthInputStream extends InputStream {
+        private final InputStream in;
+        private long remaining;
+
+        private ContentLengthInputStream(InputStream in, long length) {
+            this.in = in;
+            this.remaining = length;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Premature end of response body, " + remaining + " bytes missing");
+            }
+            remaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, remaining));
+            if (count == -1) {
+                throw new IOException("Premature end of response body, " + remaining + " bytes missing");
+            }
+            remaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return (int) Math.min(in.available(), remaining);
+        }
+    }
+
+    private static class ChunkedInputStream extends InputStream {
+        private final InputStream in;
+        private long chunkRemaining;
+        private boolean eof;
+
+        private ChunkedInputStream(InputStream in) {
+            this.in = in;
+        }
+
+        private boolean nextChunk() throws IOException {
+            if (eof) {
+                return false;
+            }
+            if (chunkRemaining == 0) {
+                String line = PooledConnection.readLine(in);
+                // the CRLF that ends the previous chunk
+                if (line != null && line.length() == 0) {
+                    line = PooledConnection.readLine(in);
+                }
+                if (line == null) {
+                    throw new IOException("Premature end of chunked response body");
+                }
+                int extension = line.indexOf(';');
+                String size = (extension == -1 ? line : line.substring(0, extension)).trim();
+                try {
+                    chunkRemaining = Long.parseLong(size, 16);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Invalid chunk size " + line);
+                }
+                if (chunkRemaining == 0) {
+                    // skip the trailers
+                    while ((line = PooledConnection.readLine(in)) != null && line.length() > 0) {
+                    }
+                    eof = true;
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!nextChunk()) {
+                return -1;
+            }
+            int b = in.read();
+            if (b == -1) {
+                throw new IOException("Premature end of chunked response body");
+            }
+            chunkRemaining--;
+            return b;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!nextChunk()) {
+                return -1;
+            }
+            int count = in.read(b, off, (int) Math.min(len, chunkRemaining));
+            if (count == -1) {
+                throw new IOException("Premature end of chunked response body");
+            }
+            chunkRemaining -= count;
+            return count;
+        }
+
+        @Override
+        public int available() throws IOException {
+            return eof ? 0 : (int) Math.min(in.available(), chunkRemaining);
+        }
+    }
+
+    private static class ChunkedOutputStream extends OutputStream {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[CHUNK_SIZE];
+        private int count;
+        private boolean closed;
+
+        private ChunkedOutputStream(PooledConnection connection) {
+            this.out = connection.getOutput();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (count == buffer.length) {
+                writeChunk();
+            }
+            buffer[count++] = (byte) b;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (count == buffer.length) {
+                    writeChunk();
+                }
+                int n = Math.min(len, buffer.length - count);
+                System.arraycopy(b, off, buffer, count, n);
+                count += n;
+                off += n;
+                len -= n;
+            }
+        }
+
+        private void writeChunk() throws IOException {
+            if (count > 0) {
+                out.write((Integer.toHexString(count) + "\r\n").getBytes("ISO-8859-1"));
+                out.write(buffer, 0, count);
+                out.write('\r');
+                out.write('\n');
+                count = 0;
+            }
+        }
+
+        @Override
+        public void flush() throws IOException {
+            writeChunk();
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                writeChunk();
+                out.write("0\r\n\r\n".getBytes("ISO-8859-1"));
+                out.flush();
+            }
+        }
+    }
+}
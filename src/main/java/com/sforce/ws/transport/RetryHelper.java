@@ -0,0 +1,170 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.NoRouteToHostException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.Locale;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.RetryPolicy;
+import com.sforce.ws.RetryPolicy.Failure;
+import com.sforce.ws.SoapFaultException;
+
+/**
+ * Classifies failed calls and applies the {@link RetryPolicy} of a config to them.
+ */
+public final class RetryHelper {
+
+    private RetryHelper() {
+    }
+
+    /**
+     * @param sent true once the request has been written
+     * @return how the call failed, or null if it is not worth retrying
+     */
+    public static Failure classify(IOException e, boolean sent) {
+        if (e instanceof SocketTimeoutException) {
+            return sent ? Failure.INTERRUPTED : Failure.CONNECT_FAILED;
+        }
+        if (e instanceof InterruptedIOException) {
+            return null;
+        }
+        if (e instanceof ConnectException || e instanceof UnknownHostException || e instanceof NoRouteToHostException) {
+            return Failure.CONNECT_FAILED;
+        }
+        return sent ? Failure.INTERRUPTED : Failure.CONNECT_FAILED;
+    }
+
+    /**
+     * @return how the call failed given the HTTP status of its response, or null if it is not worth retrying
+     */
+    public static Failure classify(int responseCode) {
+        switch (responseCode) {
+        case 429:
+        case 503:
+            return Failure.REJECTED;
+        case 502:
+        case 504:
+            return Failure.INTERRUPTED;
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * @return true for the faults of requests the server did not process and could process later: concurrent
+     *         request limits, unavailable servers and rows locked by other transactions
+     */
+    public static boolean isRejected(ConnectionException e) {
+        if (!(e instanceof SoapFaultException) || ((SoapFaultException) e).getFaultCode() == null) {
+            return false;
+        }
+        String code = ((SoapFaultException) e).getFaultCode().getLocalPart();
+        if ("REQUEST_LIMIT_EXCEEDED".equals(code)) {
+            // the daily limit of the organization does not go away by waiting a bit
+            return e.getMessage() == null || !e.getMessage().contains("TotalRequests");
+        }
+        return "SERVER_UNAVAILABLE".equals(code) || "UNABLE_TO_LOCK_ROW".equals(code);
+    }
+
+    /**
+     * @return the delay in milliseconds asked for by the Retry-After header of the response, -1 if there is none
+     */
+    public static long getRetryAfter(JdkHttpTransport transport) {
+        String value = transport.getHeaderField("Retry-After");
+        if (value == null) {
+            return -1;
+        }
+        value = value.trim();
+        try {
+            return Math.max(0, Long.parseLong(value) * 1000);
+        } catch (NumberFormatException e) {
+            try {
+                SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+                return Math.max(0, format.parse(value).getTime() - System.currentTimeMillis());
+            } catch (ParseException pe) {
+                return -1;
+            }
+        }
+    }
+
+    /**
+     * @return the time in milliseconds to wait before sending the call again, -1 if it must not be retried
+     */
+    public static long getRetryDelay(ConnectorConfig config, String operation, int attempt, Failure failure,
+            long retryAfter) {
+        RetryPolicy policy = config.getRetryPolicy();
+        if (policy == null || failure == null) {
+            return -1;
+        }
+        long delay = policy.getRetryDelay(operation, attempt, failure, retryAfter);
+        if (delay >= 0 && config.isTraceMessage()) {
+            config.getTraceStream().println("WSC: Retrying " + operation + " in " + delay + " ms after attempt " +
+                    attempt + " failed: " + failure);
+        }
+        return delay;
+    }
+
+    /**
+     * Waits before the next attempt if the call is to be retried.
+     *
+     * @return true if the call is to be sent again
+     * @throws InterruptedIOException if the thread is interrupted while waiting
+     */
+    public static boolean awaitRetry(ConnectorConfig config, String operation, int attempt, Failure failure,
+            long retryAfter) throws InterruptedIOException {
+        long delay = getRetryDelay(config, operation, attempt, failure, retryAfter);
+        if (delay < 0) {
+            return false;
+        }
+        sleep(delay);
+        return true;
+    }
+
+    public static void sleep(long delay) throws InterruptedIOException {
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting to retry");
+        }
+    }
+
+    public static void succeeded(ConnectorConfig config, String operation) {
+        RetryPolicy policy = config.getRetryPolicy();
+        if (policy != null) {
+            policy.succeeded(operation);
+        }
+    }
+}
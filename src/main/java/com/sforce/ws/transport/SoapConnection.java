@@ -25,8 +25,10 @@
  */
 package com.sforce.ws.transport;
 
+import com.sforce.ws.ApiGovernor;
 import com.sforce.ws.ConnectionException;
 import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.RetryPolicy.Failure;
 import com.sforce.ws.SessionRenewer;
 import com.sforce.ws.SoapFaultException;
 import com.sforce.ws.bind.TypeInfo;
@@ -41,6 +43,7 @@ import com.sforce.ws.wsdl.Constants;
 import javax.xml.namespace.QName;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.InterruptedIOException;
 import java.io.OutputStream;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -93,39 +96,91 @@ public class SoapConnection {
             throws ConnectionException {
 
         long startTime = System.currentTimeMillis();
+        String operation = requestElement.getLocalPart();
+        boolean firstTime = true;
+        int attempt = 0;
 
-        try {
-            boolean firstTime = true;
-            while(true) {
+        while (true) {
+            attempt++;
+            boolean sent = false;
+            Failure responseFailure = null;
+            long retryAfter = -1;
+            XmlOutputStream xout = null;
+            ApiGovernor governor = acquirePermit(operation);
+            try {
+                // the permit is given back before waiting to retry
                 try {
                     Transport transport = newTransport(config);
                     OutputStream out = transport.connect(url, soapAction);
-                    sendRequest(out, request, requestElement);
+                    xout = new XmlOutputStream(out, config.isPrettyPrintXml());
+                    sendRequest(xout, request, requestElement);
+                    sent = true;
                     InputStream in = transport.getContent();
-                    XMLizable result;
-                    result = receive(transport, responseElement, responseType, in);
+                    if (!transport.isSuccessful() && transport instanceof JdkHttpTransport) {
+                        JdkHttpTransport http = (JdkHttpTransport) transport;
+                        responseFailure = RetryHelper.classify(http.getResponseCode());
+                        retryAfter = RetryHelper.getRetryAfter(http);
+                    }
+                    XMLizable result = receive(transport, responseElement, responseType, in);
+                    RetryHelper.succeeded(config, operation);
                     return result;
-                } catch (SessionTimedOutException se) {
-                    if (config.getSessionRenewer() == null || !firstTime) {
-                        throw (ConnectionException) se.getCause();
-                    } else {
-                    	SessionRenewer.SessionRenewalHeader sessionHeader = config.getSessionRenewer().renewSession(config);
-                    	if (sessionHeader != null) {
-                            addHeader(sessionHeader.name, sessionHeader.headerElement);
-                    	}
+                } finally {
+                    ApiGovernor.release(governor);
+                }
+            } catch (SessionTimedOutException se) {
+                if (config.getSessionRenewer() == null || !firstTime || !isReplayable(xout)) {
+                    throw (ConnectionException) se.getCause();
+                } else {
+                    SessionRenewer.SessionRenewalHeader sessionHeader = config.getSessionRenewer().renewSession(config);
+                    if (sessionHeader != null) {
+                        addHeader(sessionHeader.name, sessionHeader.headerElement);
                     }
                 }
                 firstTime = false;
+                // renewing the session is not a retry
+                attempt--;
+            } catch (ConnectionException e) {
+                Failure failure = responseFailure != null ? responseFailure : RetryHelper.isRejected(e) ? Failure.REJECTED : null;
+                if (!isReplayable(xout) || !awaitRetry(operation, attempt, failure, retryAfter)) {
+                    throw e;
+                }
+            } catch (SocketTimeoutException e) {
+                if (!isReplayable(xout) || !awaitRetry(operation, attempt, RetryHelper.classify(e, sent), retryAfter)) {
+                    long timeTaken = System.currentTimeMillis() - startTime;
+                    throw new ConnectionException("Request to " + url + " timed out. TimeTaken=" + timeTaken +
+                            " ConnectionTimeout=" + config.getConnectionTimeout() + " ReadTimeout=" +
+                            config.getReadTimeout(), e);
+                }
+            } catch (IOException e) {
+                Failure failure = responseFailure != null ? responseFailure : RetryHelper.classify(e, sent);
+                if (!isReplayable(xout) || !awaitRetry(operation, attempt, failure, retryAfter)) {
+                    throw new ConnectionException("Failed to send request to " + url, e);
+                }
             }
-        } catch (SocketTimeoutException e) {
-            long timeTaken = System.currentTimeMillis() - startTime;
-            throw new ConnectionException("Request to " + url + " timed out. TimeTaken=" + timeTaken +
-                    " ConnectionTimeout=" + config.getConnectionTimeout() + " ReadTimeout=" + 
-                    config.getReadTimeout(), e);
+        }
+    }
+
+    /**
+     * A request that has read an InputStream value cannot be sent again, the stream being at its end.
+     */
+    private static boolean isReplayable(XmlOutputStream xout) {
+        return xout == null || xout.isReplayable();
+    }
 
+    private ApiGovernor acquirePermit(String operation) throws ConnectionException {
+        try {
+            return ApiGovernor.acquire(config);
+        } catch (InterruptedIOException e) {
+            throw new ConnectionException("Interrupted while waiting to call " + operation, e);
+        }
+    }
 
-        } catch (IOException e) {
-            throw new ConnectionException("Failed to send request to " + url, e);
+    private boolean awaitRetry(String operation, int attempt, Failure failure, long retryAfter)
+            throws ConnectionException {
+        try {
+            return RetryHelper.awaitRetry(config, operation, attempt, failure, retryAfter);
+        } catch (InterruptedIOException e) {
+            throw new ConnectionException("Interrupted while waiting to retry " + operation, e);
         }
     }
 
@@ -316,8 +371,7 @@ public class SoapConnection {
         typeMapper.verifyTag(Constants.SOAP_ENVELOPE_NS, "Envelope", xin.getNamespace(), xin.getName());
     }
 
-    private void sendRequest(OutputStream out, XMLizable request, QName requestElement) throws IOException {
-        XmlOutputStream xout = new XmlOutputStream(out, config.isPrettyPrintXml());
+    private void sendRequest(XmlOutputStream xout, XMLizable request, QName requestElement) throws IOException {
         xout.startDocument();
 
         xout.setPrefix("env", Constants.SOAP_ENVELOPE_NS);
@@ -16,6 +16,11 @@
 
 package com.sforce.ws.util;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Writer;
+
 /**
  * Unceremoniously lifted from
  * jakarta-commons/httpclient/src/java/org/apache/commons/httpclient/Base64.java
@@ -116,8 +121,20 @@ public final class Base64 {
      * @return Base64-encoded array
      */
     public static byte[] encode(byte[] binaryData) {
+        return encode(binaryData, 0, binaryData.length);
+    }
 
-        int lengthDataBits = binaryData.length * EIGHTBIT;
+    /**
+     * Encodes length octects of binaryData, starting at offset, into Base64.
+     *
+     * @param binaryData Array containing binaryData
+     * @param offset     index of the first octect to encode
+     * @param length     number of octects to encode
+     * @return Base64-encoded array
+     */
+    public static byte[] encode(byte[] binaryData, int offset, int length) {
+
+        int lengthDataBits = length * EIGHTBIT;
         int fewerThan24bits = lengthDataBits % TWENTYFOURBITGROUP;
         int numberTriplets = lengthDataBits / TWENTYFOURBITGROUP;
         byte encodedData[];
@@ -138,7 +155,7 @@ public final class Base64 {
         int i = 0;
         for (i = 0; i < numberTriplets; i++) {
 
-            dataIndex = i * 3;
+            dataIndex = offset + i * 3;
             b1 = binaryData[dataIndex];
             b2 = binaryData[dataIndex + 1];
             b3 = binaryData[dataIndex + 2];
@@ -159,7 +176,7 @@ public final class Base64 {
         }
 
         // form integral number of 6-bit groups
-        dataIndex = i * 3;
+        dataIndex = offset + i * 3;
         encodedIndex = i * 4;
         if (fewerThan24bits == EIGHTBIT) {
             b1 = binaryData[dataIndex];
@@ -187,6 +204,43 @@ public final class Base64 {
     }
 
 
+    /**
+     * Encodes the content of in into Base64, a few kilobytes at a time, until the end of in is reached.
+     *
+     * @param in  stream of binary data, left open
+     * @param out receives the Base64 characters
+     */
+    public static void encode(InputStream in, Writer out) throws IOException {
+        byte[] buffer = new byte[3 * 1024];
+        char[] chars = new char[4 * 1024];
+        int length;
+        while ((length = readFully(in, buffer)) > 0) {
+            byte[] encoded = encode(buffer, 0, length);
+            for (int i = 0; i < encoded.length; i++) {
+                chars[i] = (char) encoded[i];
+            }
+            out.write(chars, 0, encoded.length);
+            if (length < buffer.length) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Only the last chunk of a stream may be padded, so every other chunk has to fill the buffer.
+     */
+    private static int readFully(InputStream in, byte[] buffer) throws IOException {
+        int length = 0;
+        while (length < buffer.length) {
+            int read = in.read(buffer, length, buffer.length - length);
+            if (read < 0) {
+                break;
+            }
+            length += read;
+        }
+        return length;
+    }
+
     /**
      * Decodes Base64 data into octects.
      *
@@ -246,5 +300,71 @@ public final class Base64 {
         }
         return decodedData;
     }
+
+    /**
+     * Decodes Base64 characters handed over in any number of pieces, writing the octects to a stream as soon
+     * as each group of four characters is complete. White space between the characters is skipped.
+     */
+    public static final class Decoder {
+        private final OutputStream out;
+        private final byte[] buffer = new byte[3 * 1024];
+        private int length;
+        private final int[] quad = new int[4];
+        private int quadLength;
+        private int padding;
+
+        public Decoder(OutputStream out) {
+            this.out = out;
+        }
+
+        public void decode(char[] chars, int offset, int count) throws IOException {
+            for (int i = offset; i < offset + count; i++) {
+                char c = chars[i];
+                if (c == ' ' || c == '\n' || c == '\r' || c == '\t') {
+                    continue;
+                }
+                if (c == PAD && quadLength >= 2) {
+                    padding++;
+                    quad[quadLength++] = 0;
+                } else if (c >= BASELENGTH || base64Alphabet[c] == -1 || padding > 0) {
+                    throw new IOException("Invalid Base64 character: " + c);
+                } else {
+                    quad[quadLength++] = base64Alphabet[c];
+                }
+                if (quadLength == 4) {
+                    flushQuad();
+                }
+            }
+        }
+
+        /**
+         * Writes the last octects out.
+         *
+         * @throws IOException if the characters do not end with a complete group
+         */
+        public void finish() throws IOException {
+            if (quadLength != 0) {
+                throw new IOException("Truncated Base64 data");
+            }
+            out.write(buffer, 0, length);
+            length = 0;
+        }
+
+        private void flushQuad() throws IOException {
+            if (length + 3 > buffer.length) {
+                out.write(buffer, 0, length);
+                length = 0;
+            }
+            int bits = quad[0] << 18 | quad[1] << 12 | quad[2] << 6 | quad[3];
+            buffer[length++] = (byte) (bits >> 16);
+            if (padding < 2) {
+                buffer[length++] = (byte) (bits >> 8);
+            }
+            if (padding < 1) {
+                buffer[length++] = (byte) bits;
+            }
+            quadLength = 0;
+        }
+    }
 }
 
@@ -11,6 +11,7 @@
 package org.mule.modules.salesforce;
 
 import java.io.ByteArrayInputStream;
+import java.io.File;
 import java.io.InputStream;
 import java.io.SequenceInputStream;
 import java.io.Serializable;
@@ -22,8 +23,23 @@ import java.util.Collections;
 import java.util.Date;
 import java.util.GregorianCalendar;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.log4j.Logger;
 import org.joda.time.DateTime;
@@ -56,14 +72,20 @@ import org.springframework.util.StringUtils;
 
 import com.sforce.async.AsyncApiException;
 import com.sforce.async.AsyncExceptionCode;
+import com.sforce.async.BatchFuture;
 import com.sforce.async.BatchInfo;
 import com.sforce.async.BatchRequest;
 import com.sforce.async.BatchResult;
 import com.sforce.async.BulkConnection;
+import com.sforce.async.BulkJobHandle;
+import com.sforce.async.BulkJobMonitor;
+import com.sforce.async.BulkJobOrchestrator;
+import com.sforce.async.BulkQueryExtract;
 import com.sforce.async.ConcurrencyMode;
 import com.sforce.async.ContentType;
 import com.sforce.async.JobInfo;
 import com.sforce.async.OperationEnum;
+import com.sforce.async.QueryResultDownload;
 import com.sforce.async.QueryResultList;
 import com.sforce.soap.partner.AssignmentRuleHeader_element;
 import com.sforce.soap.partner.CallOptions_element;
@@ -81,13 +103,49 @@ import com.sforce.soap.partner.QueryResult;
 import com.sforce.soap.partner.SaveResult;
 import com.sforce.soap.partner.SearchRecord;
 import com.sforce.soap.partner.SearchResult;
+import com.sforce.soap.partner.StatusCode;
 import com.sforce.soap.partner.UpsertResult;
+import com.sforce.soap.partner.fault.ExceptionCode;
 import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ApiGovernor;
+import com.sforce.ws.BackoffRetryPolicy;
 import com.sforce.ws.ConnectionException;
+import com.sforce.ws.RetryPolicy;
+import com.sforce.ws.SoapFaultException;
+import com.sforce.ws.bind.TypeMapper;
 
 public abstract class BaseSalesforceConnector implements MuleContextAware {
     private static final Logger LOGGER = Logger.getLogger(BaseSalesforceConnector.class);
 
+    /**
+     * Maximum number of ids accepted by a single retrieve() call
+     */
+    private static final int MAX_RETRIEVE_IDS = 2000;
+
+    private static final int DEFAULT_RETRIEVE_PARALLELISM = 4;
+
+    /**
+     * Maximum number of records accepted by a single create(), update(), upsert() or delete() call
+     */
+    private static final int MAX_SAVE_RECORDS = 200;
+
+    private static final int DEFAULT_SAVE_PARALLELISM = 4;
+
+    /**
+     * Maximum number of bytes of each response written to the debug log
+     */
+    protected static final int MAX_LOGGED_RESPONSE_SIZE = 64 * 1024;
+
+    /**
+     * Governors of the calls to each organization, by organization id
+     */
+    private static final ConcurrentMap<String, ApiGovernor> API_GOVERNORS = new ConcurrentHashMap<String, ApiGovernor>();
+
+    /**
+     * Retry policies of the calls to each organization, by organization id
+     */
+    private static final ConcurrentMap<String, BackoffRetryPolicy> RETRY_POLICIES = new ConcurrentHashMap<String, BackoffRetryPolicy>();
+
     /**
      * Object store manager to obtain a store to support {@link this#getUpdatedObjects}
      */
@@ -132,11 +190,304 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Optional
     private Boolean allowFieldTruncationSupport;
 
+    /**
+     * Maximum number of concurrent calls used by {@link this#retrieve} when the list of ids is larger than what
+     * Salesforce accepts in a single call and has to be split in chunks. A value of 1 retrieves the chunks one after the other.
+     */
+    @Configurable
+    @Optional
+    @Default("4")
+    private Integer retrieveParallelism;
+
+    /**
+     * Maximum number of concurrent calls used by {@link this#create}, {@link this#update}, {@link this#upsert} and
+     * {@link this#delete} when there are more records than Salesforce accepts in a single call and they have to be
+     * split in chunks. A value of 1 saves the chunks one after the other.
+     */
+    @Configurable
+    @Optional
+    @Default("4")
+    private Integer saveParallelism;
+
+    /**
+     * Number of threads kept to make the concurrent calls of the connector: the chunks of {@link this#retrieve} and
+     * {@link this#create}, query read-ahead, bulk uploads and downloads and describe refreshes. Idle threads are
+     * discarded after a minute.
+     */
+    @Configurable
+    @Optional
+    @Default("16")
+    private Integer executorCoreThreads;
+
+    /**
+     * Maximum number of threads making the concurrent calls of the connector. Threads beyond executorCoreThreads are
+     * only started once executorQueueSize tasks are waiting.
+     */
+    @Configurable
+    @Optional
+    @Default("32")
+    private Integer executorMaxThreads;
+
+    /**
+     * Number of concurrent calls that can wait for a thread. Calls submitted while the queue is full and every thread
+     * is busy are made by the calling thread instead when possible, or fail with a RejectedExecutionException.
+     */
+    @Configurable
+    @Optional
+    @Default("500")
+    private Integer executorQueueSize;
+
+    /**
+     * Number of pages that {@link this#query} and {@link this#queryAll} fetch ahead of the consumer. While a page is
+     * being processed the following ones are retrieved in the background. Zero disables read-ahead.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Integer queryPrefetchDepth;
+
+    /**
+     * Maximum number of batches that {@link this#createBulkJob} uploads at the same time.
+     */
+    @Configurable
+    @Optional
+    @Default("4")
+    private Integer maxConcurrentBatches;
+
+    /**
+     * If true, the content of Bulk API batches is uploaded gzip compressed.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private Boolean compressBulkBatches;
+
+    /**
+     * Maximum number of records that {@link this#createSingle} and {@link this#updateSingle} calls made at about the
+     * same time, by concurrent flows, are grouped into to be saved with a single call. Each record still gets its own
+     * result. Zero saves every record with a call of its own.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Integer coalesceMaxRecords;
+
+    /**
+     * Maximum time in milliseconds that a record saved by {@link this#createSingle} or {@link this#updateSingle}
+     * waits for other records to be grouped with, when coalesceMaxRecords is set.
+     */
+    @Configurable
+    @Optional
+    @Default("20")
+    private Long coalesceMaxDelay;
+
+    /**
+     * Time in seconds that the results of {@link this#describeGlobal} and {@link this#describeSObject}, which are
+     * also used to build metadata, are kept in a cache. Results in use are refreshed in the background shortly
+     * before they expire. Zero disables the cache.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Long describeCacheTtl;
+
+    /**
+     * Maximum number of describe results kept in the cache, the least recently used are evicted first.
+     */
+    @Configurable
+    @Optional
+    @Default("500")
+    private Integer describeCacheMaxEntries;
+
+    /**
+     * Directory where the describe results are saved, so that they can be read again after a restart as long as
+     * they have not expired.
+     */
+    @Configurable
+    @Optional
+    private String describeCacheDirectory;
+
+    /**
+     * If true, the values of the records given to create, update and upsert calls, SOAP or Bulk, are converted to
+     * the type of their field as described by {@link this#describeSObject}, and records with unknown fields or values
+     * that cannot be converted are rejected before anything is sent. For instance "2011-12-13" is sent as a date to
+     * a date field. Describe results are compiled once per sObject type; set describeCacheTtl to pick up changes.
+     * Without describeCacheTtl, a type is only described again after a record used a field it did not have.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private Boolean coerceFieldTypes;
+
+    /**
+     * If set, base64Binary fields such as Attachment.Body are decoded while the response is parsed into a
+     * {@link com.sforce.ws.bind.BinaryContent} instead of a byte array, kept in memory up to this number of bytes and
+     * spooled to a temporary file above; use openStream() to read them and close() to delete that file. Requests are
+     * then sent in chunks, so that InputStream and BinaryContent values given to create, update and upsert are encoded
+     * as they are sent.
+     */
+    @Configurable
+    @Optional
+    private Integer binarySpoolThreshold;
+
+    /**
+     * Number of times a SOAP, Bulk or REST call that failed for a transient reason, such as a connection reset, a 503
+     * response or a REQUEST_LIMIT_EXCEEDED fault, is sent again. Calls that may have been processed by Salesforce,
+     * like a create whose response was lost, are only sent again if they are reads. Zero disables retries.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Integer maxRetries;
+
+    /**
+     * Time in milliseconds before the first retry of a call, doubled at every following retry and randomized
+     * so that calls failing together are not all retried at once.
+     */
+    @Configurable
+    @Optional
+    @Default("500")
+    private Long retryInitialDelay;
+
+    /**
+     * Longest time in milliseconds waited before a retry. Calls that Salesforce asks to retry later than that with
+     * a Retry-After header are not retried.
+     */
+    @Configurable
+    @Optional
+    @Default("30000")
+    private Long retryMaxDelay;
+
+    /**
+     * Number of retries all the calls to the organization of the connection can make without calls succeeding in
+     * between; every successful call gives a tenth of a retry back. Once it is used up, failed calls are not retried
+     * until calls succeed again, so that an outage does not hold every flow in retries. Calls that send an InputStream
+     * value are not retried, the stream having been read by the first attempt.
+     */
+    @Configurable
+    @Optional
+    @Default("100")
+    private Integer retryBudget;
+
+    /**
+     * Number of SOAP, Bulk and REST calls the connector starts per second at most, calls over the rate waiting for
+     * their turn. Once Salesforce reports that less than a fifth of the 24 hour API quota is left, the rate is
+     * lowered in proportion to what is left, down to a twentieth of this value. The limit applies to all the calls
+     * made to the organization of the connection, the first configuration connecting to it setting the value. Not set
+     * or zero means no limit.
+     */
+    @Configurable
+    @Optional
+    private Double maxCallsPerSecond;
+
+    /**
+     * Number of SOAP, Bulk and REST calls the connector has in progress at the same time at most, further calls
+     * waiting for one of them to finish. Keeps the connector under its share of the concurrent request limit of the
+     * organization. Not set or zero means no limit.
+     */
+    @Configurable
+    @Optional
+    private Integer maxConcurrentCalls;
+
+    /**
+     * If true, {@link this#subscribeTopic} keeps the replay id of the last event processed on each topic in the
+     * {@link this#timeObjectStore} and subscribes again from it after a reconnection or a restart, so that the events
+     * published meanwhile are delivered instead of lost. Uses version 37.0 of the Streaming API.
+     */
+    @Configurable
+    @Optional
+    @Default("false")
+    private Boolean replayTopicEvents;
+
+    /**
+     * Number of events processed after which the replay ids are written to the object store. Events processed since
+     * the last write are delivered again after a restart.
+     */
+    @Configurable
+    @Optional
+    @Default("100")
+    private Integer replayIdFlushEvents;
+
+    /**
+     * Time in milliseconds after which the replay ids are written to the object store with the next event, even if
+     * fewer than replayIdFlushEvents events have been processed.
+     */
+    @Configurable
+    @Optional
+    @Default("10000")
+    private Long replayIdFlushInterval;
+
+    /**
+     * Number of replay ids remembered for each topic, so that events delivered again after a reconnection are
+     * dropped instead of processed twice. Zero processes every event delivered.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Integer replayDeduplicationWindow;
+
+    /**
+     * Number of threads processing the events received by {@link this#subscribeTopic}, so that slow flows do not
+     * delay the reception of the next events. The events of a topic are always processed one at a time, in the order
+     * they were received. Zero processes the events on the thread receiving them.
+     */
+    @Configurable
+    @Optional
+    @Default("0")
+    private Integer eventDispatchWorkers;
+
+    /**
+     * Number of events each of the eventDispatchWorkers keeps in memory waiting to be processed.
+     */
+    @Configurable
+    @Optional
+    @Default("1000")
+    private Integer eventQueueCapacity;
+
+    /**
+     * What happens to events received while the queue of their topic is full: BLOCK waits for room, holding the
+     * reception of the next events, DROP_OLDEST drops the oldest event waiting and SPILL writes the event to a file in
+     * eventSpoolDirectory until there is room.
+     */
+    @Configurable
+    @Optional
+    @Default("BLOCK")
+    private EventOverflowPolicy eventOverflowPolicy;
+
+    /**
+     * Directory spilled events are written to, the temporary directory if not set.
+     */
+    @Configurable
+    @Optional
+    private String eventSpoolDirectory;
+
     private ObjectStoreHelper objectStoreHelper;
 
+    private ExecutorService executorService;
+
+    private BulkJobMonitor bulkJobMonitor;
+
+    private SaveCoalescer saveCoalescer;
+
+    private DescribeCache describeCache;
+
+    private ReplayIdStore replayIdStore;
+
+    private StreamingEventDispatcher eventDispatcher;
+
+    private final Map<String, SObjectCodec> sObjectCodecs = new ConcurrentHashMap<String, SObjectCodec>();
+
     private Registry registry;
     
     private static final List<Subscription> subscriptions = new ArrayList<Subscription>();
+
+    static {
+        // resolve the partner types that show up as xsi:type in responses at deploy time rather than on the first call
+        TypeMapper.prewarm("urn:sobject.partner.soap.sforce.com", SObject.class);
+        TypeMapper.prewarm("urn:partner.soap.sforce.com", QueryResult.class, SaveResult.class, UpsertResult.class,
+                DeleteResult.class, SearchResult.class, SearchRecord.class, GetUpdatedResult.class, GetDeletedResult.class,
+                DescribeGlobalResult.class, DescribeSObjectResult.class);
+    }
     
     private static class Subscription {
     	private String topic;
@@ -235,7 +586,17 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     public List<SaveResult> create(@MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type,
                                    @Placement(group = "sObject Field Mappings") @FriendlyName("sObjects") @Optional @Default("#[payload]") List<Map<String, Object>> objects) throws Exception {
-        return Arrays.asList(getConnection().create(toSObjectList(type, objects)));
+        return saveInChunks(toSObjectList(type, objects, getSObjectCodec(type)), new SaveCall<SObject, SaveResult>() {
+            @Override
+            public SaveResult[] call(PartnerConnection connection, SObject[] chunk) throws Exception {
+                return connection.create(chunk);
+            }
+
+            @Override
+            public SaveResult failed(SObject object, com.sforce.soap.partner.Error error) {
+                return failedSaveResult(error);
+            }
+        });
     }
 
     /**
@@ -396,6 +757,54 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
         return createBatchForQuery(jobInfo, queryStream);
     }
 
+    /**
+     * Creates a job for the given operation, loads all the records in as many batches as needed and closes the job.
+     * <p/>
+     * Records are read one at a time, so besides a list the input can be any iterable or iterator of records such as
+     * a streamed payload. A batch is cut every recordsPerBatch records, or earlier when its request would exceed the
+     * size accepted by the Bulk API, and up to maxConcurrentBatches batches are uploaded at the same time. If a
+     * batch cannot be created the job is aborted.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:create-bulk-job}
+     *
+     * @param operation           The {@link com.sforce.async.OperationEnum} that will be executed by the job.
+     * @param type                The type of Salesforce object that the job will process.
+     * @param externalIdFieldName Contains the name of the field on this object with the external ID field attribute
+     *                            for custom objects or the idLookup field property for standard objects
+     *                            (only required for Upsert Operations).
+     * @param concurrencyMode     The concurrency mode of the job, either Parallel or Serial.
+     * @param recordsPerBatch     Maximum number of records in each batch.
+     * @param objects             A list, iterable or iterator of sObjects.
+     * @return A {@link com.sforce.async.BulkJobHandle} with the closed job and the batches in the order of the records
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api_asynch/Content/asynch_api_batches_create.htm">createBatch()</a>
+     * @since 5.4
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
+    public BulkJobHandle createBulkJob(@Placement(group = "Information", order = 1) OperationEnum operation,
+                                       @MetaDataKeyParam @Placement(group = "Information", order = 2) @FriendlyName("sObject Type") String type,
+                                       @Placement(group = "Information", order = 3) @Optional String externalIdFieldName,
+                                       @Placement(group = "Information", order = 4) @Optional ConcurrencyMode concurrencyMode,
+                                       @Placement(group = "Information", order = 5) @Optional @Default("10000") int recordsPerBatch,
+                                       @Placement(group = "Salesforce sObjects list") @FriendlyName("sObjects") @Optional @Default("#[payload]") Object objects) throws Exception {
+        try {
+            JobInfo jobInfo = createJobInfo(operation, type, externalIdFieldName, null, concurrencyMode);
+            BulkJobOrchestrator orchestrator = new BulkJobOrchestrator(getBulkConnection(), getExecutorService());
+            orchestrator.setMaxRecordsPerBatch(recordsPerBatch);
+            orchestrator.setMaxConcurrentBatches(maxConcurrentBatches != null ? maxConcurrentBatches : BulkJobOrchestrator.DEFAULT_MAX_CONCURRENT_BATCHES);
+            return orchestrator.execute(jobInfo, toAsyncSObjectIterator(objects, getSObjectCodec(type)));
+        } catch (AsyncApiException e) {
+            if (e.getExceptionCode() == AsyncExceptionCode.InvalidSessionId) {
+                throw new ConnectionException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Adds one or more new records to your organization's data.
      * <p/>
@@ -441,7 +850,10 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     public SaveResult createSingle(@MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type,
                                    @Placement(group = "sObject Field Mappings") @FriendlyName("sObject") @Optional @Default("#[payload]") Map<String, Object> object) throws Exception {
-        SaveResult[] saveResults = getConnection().create(new SObject[]{toSObject(type, object)});
+        if (isCoalescingSaves()) {
+            return awaitSave(getSaveCoalescer().submit(getConnection(), SaveCoalescer.Operation.CREATE, toSObject(type, object, getSObjectCodec(type))));
+        }
+        SaveResult[] saveResults = getConnection().create(new SObject[]{toSObject(type, object, getSObjectCodec(type))});
         if (saveResults.length > 0) {
             return saveResults[0];
         }
@@ -468,7 +880,17 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     public List<SaveResult> update(@MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type,
                                    @Placement(group = "Salesforce sObjects list") @FriendlyName("sObjects") @Optional @Default("#[payload]") List<Map<String, Object>> objects) throws Exception {
-        return Arrays.asList(getConnection().update(toSObjectList(type, objects)));
+        return saveInChunks(toSObjectList(type, objects, getSObjectCodec(type)), new SaveCall<SObject, SaveResult>() {
+            @Override
+            public SaveResult[] call(PartnerConnection connection, SObject[] chunk) throws Exception {
+                return connection.update(chunk);
+            }
+
+            @Override
+            public SaveResult failed(SObject object, com.sforce.soap.partner.Error error) {
+                return failedSaveResult(error);
+            }
+        });
     }
 
     /**
@@ -490,7 +912,10 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     public SaveResult updateSingle(@MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type,
                                    @Placement(group = "Salesforce Object") @FriendlyName("sObject") @Optional @Default("#[payload]") Map<String, Object> object) throws Exception {
-        return getConnection().update(new SObject[]{toSObject(type, object)})[0];
+        if (isCoalescingSaves()) {
+            return awaitSave(getSaveCoalescer().submit(getConnection(), SaveCoalescer.Operation.UPDATE, toSObject(type, object, getSObjectCodec(type))));
+        }
+        return getConnection().update(new SObject[]{toSObject(type, object, getSObjectCodec(type))})[0];
     }
 
     /**
@@ -539,10 +964,24 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @InvalidateConnectionOn(exception = ConnectionException.class)
     @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
-    public List<UpsertResult> upsert(@Placement(group = "Information") String externalIdFieldName,
+    public List<UpsertResult> upsert(@Placement(group = "Information") final String externalIdFieldName,
                                      @MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type,
                                      @Placement(group = "Salesforce sObjects list") @FriendlyName("sObjects") @Optional @Default("#[payload]") List<Map<String, Object>> objects) throws Exception {
-        return Arrays.asList(getConnection().upsert(externalIdFieldName, toSObjectList(type, objects)));
+        return saveInChunks(toSObjectList(type, objects, getSObjectCodec(type)), new SaveCall<SObject, UpsertResult>() {
+            @Override
+            public UpsertResult[] call(PartnerConnection connection, SObject[] chunk) throws Exception {
+                return connection.upsert(externalIdFieldName, chunk);
+            }
+
+            @Override
+            public UpsertResult failed(SObject object, com.sforce.soap.partner.Error error) {
+                UpsertResult result = new UpsertResult();
+                result.setId(object.getId());
+                result.setSuccess(false);
+                result.setErrors(new com.sforce.soap.partner.Error[]{error});
+                return result;
+            }
+        });
     }
 
     /**
@@ -595,6 +1034,48 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
         return getBulkConnection().getBatchInfo(batchInfo.getJobId(), batchInfo.getId());
     }
 
+    /**
+     * Waits for a submitted {@link BatchInfo} to reach a final state.
+     * <p/>
+     * Batches of the same job are tracked together with one status request for the whole job on each poll, and
+     * polls slow down while the batches are queued or making no progress.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:await-batch-completion}
+     *
+     * @param batchInfo the {@link BatchInfo} being monitored
+     * @param timeout   Maximum time to wait in milliseconds, zero to wait until the batch completes
+     * @return Latest {@link BatchInfo}, which may still be queued or in progress when the timeout elapsed
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api_asynch/Content/asynch_api_batches_get_info_all.htm">getBatchInfoList()</a>
+     * @since 5.4
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
+    public BatchInfo awaitBatchCompletion(BatchInfo batchInfo, @Optional @Default("0") long timeout) throws Exception {
+        BatchFuture future = getBulkJobMonitor().watch(getBulkConnection(), batchInfo);
+        try {
+            return timeout > 0 ? future.get(timeout, TimeUnit.MILLISECONDS) : future.get();
+        } catch (TimeoutException e) {
+            future.cancel(false);
+            return future.getLatest() != null ? future.getLatest() : batchInfo;
+        } catch (InterruptedException e) {
+            future.cancel(false);
+            throw e;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof AsyncApiException && ((AsyncApiException) cause).getExceptionCode() == AsyncExceptionCode.InvalidSessionId) {
+                throw new ConnectionException(cause.getMessage(), cause);
+            }
+            if (cause instanceof Exception) {
+                throw (Exception) cause;
+            }
+            throw e;
+        }
+    }
+
     /**
      * Access {@link com.sforce.async.BatchResult} of a submitted {@link BatchInfo}.
      * <p/>
@@ -649,71 +1130,624 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
      * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api_asynch/Content/asynch_api_batches_interpret_status.htm">BatchInfo status</a>
      * @since 4.5
      */
-    @Processor
-    @OAuthProtected
-    @InvalidateConnectionOn(exception = ConnectionException.class)
-    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
-    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
-    public InputStream queryResultStream(BatchInfo batchInfo) throws Exception {
-        QueryResultList queryResultList = getBulkConnection().getQueryResultList(batchInfo.getJobId(), batchInfo.getId());
-        String[] results = queryResultList.getResult();
-        if (results.length > 0) {
-            List<InputStream> inputStreams = new ArrayList<InputStream>(results.length);
-            for (String resultId : queryResultList.getResult()) {
-                inputStreams.add(getBulkConnection().getQueryResultStream(batchInfo.getJobId(), batchInfo.getId(), resultId));
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
+    public InputStream queryResultStream(BatchInfo batchInfo) throws Exception {
+        QueryResultList queryResultList = getBulkConnection().getQueryResultList(batchInfo.getJobId(), batchInfo.getId());
+        String[] results = queryResultList.getResult();
+        if (results.length > 0) {
+            List<InputStream> inputStreams = new ArrayList<InputStream>(results.length);
+            for (String resultId : queryResultList.getResult()) {
+                inputStreams.add(getBulkConnection().getQueryResultStream(batchInfo.getJobId(), batchInfo.getId(), resultId));
+            }
+            return new SequenceInputStream(Collections.enumeration(inputStreams));
+        }
+        return null;
+    }
+
+    /**
+     * Returns an {@link InputStream} with the query results of every batch of a bulk query job, such as a job
+     * split by PK chunking.
+     * <p/>
+     * The result sets are downloaded in parallel to temporary files and read one after the other. Only a bounded
+     * number of result sets are kept on disk ahead of the reader. For CSV jobs the header line is only kept
+     * for the first result set.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:query-job-result-stream}
+     *
+     * @param jobId       The id of the query job, all its batches must be complete.
+     * @param parallelism Maximum number of result sets downloaded at the same time.
+     * @param ordered     If false, result sets are read as soon as they are downloaded instead of in batch order.
+     * @return {@link InputStream} with the results of all the batches of the job.
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api_asynch/Content/asynch_api_batches_get_results.htm">getBatchResult()</a>
+     * @since 5.4
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
+    public InputStream queryJobResultStream(String jobId,
+                                            @Optional @Default("4") int parallelism,
+                                            @Optional @Default("true") boolean ordered) throws Exception {
+        try {
+            JobInfo jobInfo = getBulkConnection().getJobStatus(jobId);
+            QueryResultDownload download = new QueryResultDownload(getBulkConnection(), getExecutorService());
+            download.setParallelism(parallelism);
+            download.setOrdered(ordered);
+            download.start(jobId);
+            return download.getInputStream(jobInfo.getContentType() == ContentType.CSV);
+        } catch (AsyncApiException e) {
+            if (e.getExceptionCode() == AsyncExceptionCode.InvalidSessionId) {
+                throw new ConnectionException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Extracts the results of a query with a bulk query job whose batches each scan a range of record ids, so that
+     * a large object is not scanned by a single batch.
+     * <p/>
+     * With server chunking the job is created with PK chunking enabled and the server splits the query. Otherwise
+     * the records matching the WHERE clause of the query are counted, their lowest and highest ids are looked up and
+     * the query is submitted as one batch per range of about chunkSize records. The query may have a WHERE clause; ORDER BY and LIMIT clauses apply to each range.
+     * The batches are processed concurrently and their result sets downloaded in parallel and read in order. For
+     * CSV jobs the header line is only kept once.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:bulk-extract}
+     *
+     * @param query          The query to be executed.
+     * @param contentType    The content type of the results, either CSV or XML.
+     * @param chunkSize      Approximate number of records scanned by each batch.
+     * @param serverChunking If true, the query is split by the server with PK chunking instead of by the connector.
+     * @param parallelism    Maximum number of result sets downloaded at the same time.
+     * @return {@link InputStream} with the results of all the batches.
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api_asynch/Content/asynch_api_batches_get_results.htm">getBatchResult()</a>
+     * @since 5.4
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Bulk API", description = "The Bulk API provides programmatic access to allow you to quickly load your organization's data into Salesforce.")
+    public InputStream bulkExtract(@Optional @Default("#[payload]") String query,
+                                   @Optional @Default("CSV") ContentType contentType,
+                                   @Optional @Default("100000") int chunkSize,
+                                   @Optional @Default("false") boolean serverChunking,
+                                   @Optional @Default("4") int parallelism) throws Exception {
+        String type = IdRangeQuerySplitter.getObjectName(query);
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setOperation(OperationEnum.query);
+        jobInfo.setObject(type);
+        jobInfo.setContentType(contentType);
+        try {
+            BulkQueryExtract extract = new BulkQueryExtract(getBulkConnection(), getExecutorService(), getBulkJobMonitor());
+            extract.setParallelism(parallelism);
+            if (serverChunking) {
+                return extract.extract(jobInfo, query, chunkSize);
+            }
+            return extract.extract(jobInfo, splitQueryByIdRange(query, type, chunkSize));
+        } catch (AsyncApiException e) {
+            if (e.getExceptionCode() == AsyncExceptionCode.InvalidSessionId) {
+                throw new ConnectionException(e.getMessage(), e);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Retrieves a list of available objects for your organization's data.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:describe-global}
+     *
+     * @return A {@link com.sforce.soap.partner.DescribeGlobalResult}
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api/Content/sforce_api_calls_describeglobal.htm">describeGlobal()</a>
+     * @since 4.0
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Describe Calls", description = "A set of calls to describe record structure in Salesforce.")
+    public DescribeGlobalResult describeGlobal() throws Exception {
+        if (isCachingDescribes()) {
+            return getDescribeCache().describeGlobal(getConnection());
+        }
+        return getConnection().describeGlobal();
+    }
+
+    /**
+     * Retrieves one or more records based on the specified IDs.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:retrieve}
+     *
+     * @param type   Object type. The sp ecified value must be a valid object for your organization.
+     * @param ids    The ids of the objects to retrieve
+     * @param fields The fields to return for the matching objects
+     * @return An array of {@link SObject}s
+     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     */
+    @Processor
+    @OAuthProtected
+    @InvalidateConnectionOn(exception = ConnectionException.class)
+    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
+    @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
+    public List<Map<String, Object>> retrieve(@MetaDataKeyParam @Placement(group = "Information", order = 1) @FriendlyName("sObject Type") String type,
+                                              @Placement(group = "Ids to Retrieve") List<String> ids,
+                                              @Placement(group = "Fields to Retrieve") List<String> fields) throws Exception {
+        String fiedsCommaDelimited = StringUtils.collectionToCommaDelimitedString(fields);
+        SObject[] sObjects;
+        if (ids.size() <= MAX_RETRIEVE_IDS) {
+            sObjects = getConnection().retrieve(fiedsCommaDelimited, type, ids.toArray(new String[ids.size()]));
+        } else {
+            sObjects = retrieveInChunks(fiedsCommaDelimited, type, ids);
+        }
+        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
+        if (sObjects != null) {
+            for (SObject sObject : sObjects) {
+                result.add(sObject.toMap());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Splits the ids in chunks of {@link #MAX_RETRIEVE_IDS} and retrieves them using up to
+     * {@link #retrieveParallelism} concurrent calls. Records are returned in the same order as the ids.
+     */
+    private SObject[] retrieveInChunks(final String fields, final String type, List<String> ids) throws Exception {
+        int parallelism = retrieveParallelism != null ? retrieveParallelism : DEFAULT_RETRIEVE_PARALLELISM;
+        List<SObject[]> results = callInChunks(ids.toArray(new String[ids.size()]), MAX_RETRIEVE_IDS, parallelism,
+                new ChunkCall<String, SObject>() {
+                    @Override
+                    public SObject[] call(PartnerConnection connection, String[] chunk) throws Exception {
+                        return connection.retrieve(fields, type, chunk);
+                    }
+                }, null);
+
+        int size = 0;
+        for (SObject[] result : results) {
+            size += result != null ? result.length : 0;
+        }
+        SObject[] sObjects = new SObject[size];
+        int offset = 0;
+        for (SObject[] result : results) {
+            if (result != null) {
+                System.arraycopy(result, 0, sObjects, offset, result.length);
+                offset += result.length;
+            }
+        }
+        return sObjects;
+    }
+
+    /**
+     * Saves the records in chunks of {@link #MAX_SAVE_RECORDS} using up to {@link #saveParallelism} concurrent calls.
+     * Results are returned in the same order as the records. When the call of a chunk fails, each of its records
+     * gets a failed result carrying the error of the call while the other chunks are still saved; if every call
+     * fails, or a call fails because the session is no longer valid, the error is thrown.
+     */
+    private <I, R> List<R> saveInChunks(I[] items, SaveCall<I, R> call) throws Exception {
+        if (items.length <= MAX_SAVE_RECORDS) {
+            return Arrays.asList(call.call(getConnection(), items));
+        }
+
+        int chunks = (items.length + MAX_SAVE_RECORDS - 1) / MAX_SAVE_RECORDS;
+        Exception[] failures = new Exception[chunks];
+        int parallelism = saveParallelism != null ? saveParallelism : DEFAULT_SAVE_PARALLELISM;
+        List<R[]> results = callInChunks(items, MAX_SAVE_RECORDS, parallelism, call, failures);
+
+        List<R> saved = new ArrayList<R>(items.length);
+        boolean anySaved = false;
+        for (int i = 0; i < chunks; i++) {
+            if (failures[i] == null) {
+                saved.addAll(Arrays.asList(results.get(i)));
+                anySaved = true;
+                continue;
+            }
+            LOGGER.warn("Failed to save records " + (i * MAX_SAVE_RECORDS + 1) + " to " +
+                    Math.min((i + 1) * MAX_SAVE_RECORDS, items.length) + ": " + failures[i]);
+            com.sforce.soap.partner.Error error = new com.sforce.soap.partner.Error();
+            error.setStatusCode(StatusCode.UNKNOWN_EXCEPTION);
+            error.setMessage(failures[i].getMessage() != null ? failures[i].getMessage() : failures[i].toString());
+            for (int j = i * MAX_SAVE_RECORDS; j < Math.min((i + 1) * MAX_SAVE_RECORDS, items.length); j++) {
+                saved.add(call.failed(items[j], error));
+            }
+        }
+        if (!anySaved) {
+            throw failures[0];
+        }
+        return saved;
+    }
+
+    private static SaveResult failedSaveResult(com.sforce.soap.partner.Error error) {
+        SaveResult result = new SaveResult();
+        result.setSuccess(false);
+        result.setErrors(new com.sforce.soap.partner.Error[]{error});
+        return result;
+    }
+
+    /**
+     * Splits the items in chunks and makes one call per chunk using up to parallelism concurrent calls.
+     *
+     * @param failures if not null, receives the error of each chunk whose call failed and the other chunks are
+     *                 still called; if null the first error is thrown, as are session failures in any case
+     * @return the results of each chunk in order, null for the chunks that failed
+     */
+    private <I, R> List<R[]> callInChunks(I[] items, int chunkSize, int parallelism, final ChunkCall<I, R> call,
+                                          final Exception[] failures) throws Exception {
+        final List<I[]> chunks = new ArrayList<I[]>();
+        for (int i = 0; i < items.length; i += chunkSize) {
+            chunks.add(Arrays.copyOfRange(items, i, Math.min(i + chunkSize, items.length)));
+        }
+
+        final PartnerConnection connection = getConnection();
+        final List<R[]> results = new ArrayList<R[]>(Collections.<R[]>nCopies(chunks.size(), null));
+        int workers = Math.min(parallelism, chunks.size());
+        if (workers <= 1) {
+            for (int i = 0; i < chunks.size(); i++) {
+                try {
+                    results.set(i, call.call(connection, chunks.get(i)));
+                } catch (Exception e) {
+                    if (failures == null || isSessionFailure(e)) {
+                        throw e;
+                    }
+                    failures[i] = e;
+                }
+            }
+            return results;
+        }
+
+        final AtomicInteger nextChunk = new AtomicInteger();
+        Callable<Void> worker = new Callable<Void>() {
+            @Override
+            public Void call() throws Exception {
+                int index;
+                while ((index = nextChunk.getAndIncrement()) < chunks.size()) {
+                    try {
+                        R[] result = call.call(connection, chunks.get(index));
+                        synchronized (results) {
+                            results.set(index, result);
+                        }
+                    } catch (Exception e) {
+                        if (failures == null || isSessionFailure(e)) {
+                            throw e;
+                        }
+                        failures[index] = e;
+                    }
+                }
+                return null;
+            }
+        };
+        List<Future<Void>> futures = new ArrayList<Future<Void>>(workers);
+        for (int i = 0; i < workers; i++) {
+            try {
+                futures.add(getExecutorService().submit(worker));
+            } catch (RejectedExecutionException e) {
+                // the executor is saturated, go on with the workers already submitted
+                break;
+            }
+        }
+        if (futures.isEmpty()) {
+            worker.call();
+            return results;
+        }
+        try {
+            for (Future<Void> future : futures) {
+                future.get();
+            }
+        } catch (ExecutionException e) {
+            nextChunk.set(chunks.size());
+            cancelAll(futures);
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
+            }
+            throw (Error) e.getCause();
+        } catch (InterruptedException e) {
+            nextChunk.set(chunks.size());
+            cancelAll(futures);
+            Thread.currentThread().interrupt();
+            throw e;
+        }
+        return results;
+    }
+
+    /**
+     * @return true for the faults of calls made with a session that is no longer valid, which the calls of the other
+     *         chunks cannot succeed with either and which must reach DevKit so that it reconnects
+     */
+    private static boolean isSessionFailure(Exception e) {
+        if (!(e instanceof SoapFaultException) || ((SoapFaultException) e).getFaultCode() == null) {
+            return false;
+        }
+        String faultCode = ((SoapFaultException) e).getFaultCode().getLocalPart();
+        return ExceptionCode.INVALID_SESSION_ID.name().equals(faultCode) ||
+                ExceptionCode.INVALID_OPERATION_WITH_EXPIRED_PASSWORD.name().equals(faultCode);
+    }
+
+    /**
+     * A call made for each chunk of a list of items that is too large for a single call.
+     */
+    private interface ChunkCall<I, R> {
+        R[] call(PartnerConnection connection, I[] chunk) throws Exception;
+    }
+
+    /**
+     * A call saving each chunk of a list of records that is too large for a single call.
+     */
+    private abstract static class SaveCall<I, R> implements ChunkCall<I, R> {
+        /**
+         * @return the result of a record whose chunk could not be saved
+         */
+        public abstract R failed(I item, com.sforce.soap.partner.Error error);
+    }
+
+    private void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            future.cancel(true);
+        }
+    }
+
+    /**
+     * Shared by every bulk operation of this connector that waits on batches.
+     */
+    protected synchronized BulkJobMonitor getBulkJobMonitor() {
+        if (bulkJobMonitor == null) {
+            bulkJobMonitor = new BulkJobMonitor();
+        }
+        return bulkJobMonitor;
+    }
+
+    private boolean isCachingDescribes() {
+        return describeCacheTtl != null && describeCacheTtl > 0;
+    }
+
+    /**
+     * Shared by {@link #describeGlobal} and {@link #describeSObject} when describeCacheTtl is set.
+     */
+    protected synchronized DescribeCache getDescribeCache() {
+        if (describeCache == null) {
+            describeCache = new DescribeCache(describeCacheTtl * 1000,
+                    describeCacheMaxEntries != null ? describeCacheMaxEntries : 500, new Executor() {
+                        @Override
+                        public void execute(Runnable command) {
+                            // the executor of the connector is replaced after a reconnection, the cache is not
+                            getExecutorService().execute(command);
+                        }
+                    },
+                    describeCacheDirectory != null ? new File(describeCacheDirectory) : null);
+        }
+        return describeCache;
+    }
+
+    /**
+     * Shared by all the connections to the same organization, so that they draw on the same retry budget, created
+     * with the settings of the first configuration connecting to it.
+     *
+     * @return null when maxRetries is not set
+     */
+    private RetryPolicy getRetryPolicy(String organizationId) {
+        if (maxRetries == null || maxRetries <= 0) {
+            return null;
+        }
+        BackoffRetryPolicy retryPolicy = RETRY_POLICIES.get(organizationId);
+        if (retryPolicy == null) {
+            BackoffRetryPolicy created = new BackoffRetryPolicy(maxRetries,
+                    retryInitialDelay != null ? retryInitialDelay : BackoffRetryPolicy.DEFAULT_INITIAL_DELAY,
+                    retryMaxDelay != null ? retryMaxDelay : BackoffRetryPolicy.DEFAULT_MAX_DELAY,
+                    retryBudget != null ? retryBudget : BackoffRetryPolicy.DEFAULT_BUDGET);
+            retryPolicy = RETRY_POLICIES.putIfAbsent(organizationId, created);
+            if (retryPolicy == null) {
+                retryPolicy = created;
+            }
+        }
+        return retryPolicy;
+    }
+
+    /**
+     * Sets the retry policy and the governor of the organization of the connection, when maxRetries,
+     * maxCallsPerSecond or maxConcurrentCalls is set. Must be called once the connection has a session.
+     */
+    protected void applyOrganizationPolicies(PartnerConnection connection) throws ConnectionException {
+        boolean retrying = maxRetries != null && maxRetries > 0;
+        if (!retrying && !isGoverningCalls()) {
+            return;
+        }
+        String organizationId = getOrganizationId(connection);
+        connection.getConfig().setRetryPolicy(getRetryPolicy(organizationId));
+        if (isGoverningCalls()) {
+            connection.getConfig().setApiGovernor(getApiGovernor(organizationId));
+        }
+    }
+
+    /**
+     * The limits apply to a whole organization and DevKit pools several instances of the connector per
+     * configuration, so there is one governor per organization for all of them, created with the limits of the first
+     * configuration connecting to it.
+     */
+    private ApiGovernor getApiGovernor(String organizationId) {
+        ApiGovernor apiGovernor = API_GOVERNORS.get(organizationId);
+        if (apiGovernor == null) {
+            ApiGovernor created = new ApiGovernor(maxCallsPerSecond != null ? maxCallsPerSecond : 0,
+                    maxConcurrentCalls != null ? maxConcurrentCalls : 0);
+            apiGovernor = API_GOVERNORS.putIfAbsent(organizationId, created);
+            if (apiGovernor == null) {
+                apiGovernor = created;
+            }
+        }
+        return apiGovernor;
+    }
+
+    /**
+     * @return the 15 character id of the organization the session of the connection belongs to
+     */
+    static String getOrganizationId(PartnerConnection connection) throws ConnectionException {
+        // session ids start with the id of their organization, as in 00D30000000XsfG!AQoAQH...
+        String sessionId = connection.getConfig().getSessionId();
+        int separator = sessionId != null ? sessionId.indexOf('!') : -1;
+        if (separator >= 15) {
+            return sessionId.substring(0, 15);
+        }
+        return connection.getUserInfo().getOrganizationId().substring(0, 15);
+    }
+
+    protected boolean isReplayingTopicEvents() {
+        return replayTopicEvents != null && replayTopicEvents;
+    }
+
+    /**
+     * Shared by all the subscriptions of the connector, so that they are written to the object store together.
+     */
+    protected synchronized ReplayIdStore getReplayIdStore() {
+        if (replayIdStore == null) {
+            replayIdStore = new ReplayIdStore(getObjectStoreHelper(getConnection().getConfig().getUsername()),
+                    replayIdFlushEvents != null ? replayIdFlushEvents : 100,
+                    replayIdFlushInterval != null ? replayIdFlushInterval : 10000,
+                    replayDeduplicationWindow != null ? replayDeduplicationWindow : 0);
+        }
+        return replayIdStore;
+    }
+
+    private boolean isDispatchingEvents() {
+        return eventDispatchWorkers != null && eventDispatchWorkers > 0;
+    }
+
+    /**
+     * Shared by all the subscriptions of the connector.
+     *
+     * @return null when eventDispatchWorkers is not set
+     */
+    protected synchronized StreamingEventDispatcher getEventDispatcher() {
+        if (!isDispatchingEvents()) {
+            return null;
+        }
+        if (eventDispatcher == null) {
+            eventDispatcher = new StreamingEventDispatcher(eventDispatchWorkers,
+                    eventQueueCapacity != null ? eventQueueCapacity : 1000, eventOverflowPolicy,
+                    eventSpoolDirectory != null ? new File(eventSpoolDirectory) : null);
+        }
+        return eventDispatcher;
+    }
+
+    private boolean isGoverningCalls() {
+        return (maxCallsPerSecond != null && maxCallsPerSecond > 0) ||
+                (maxConcurrentCalls != null && maxConcurrentCalls > 0);
+    }
+
+    private boolean isCoalescingSaves() {
+        return coalesceMaxRecords != null && coalesceMaxRecords > 1;
+    }
+
+    /**
+     * Shared by {@link #createSingle} and {@link #updateSingle} to group records saved at about the same time, and
+     * by all the instances of the connector connected as the same user.
+     */
+    protected synchronized SaveCoalescer getSaveCoalescer() throws ConnectionException {
+        if (saveCoalescer == null) {
+            String scope = getOrganizationId(getConnection()) + "/" + getConnectedUser();
+            saveCoalescer = SaveCoalescer.acquire(scope, coalesceMaxRecords,
+                    coalesceMaxDelay != null ? coalesceMaxDelay : 20L);
+        }
+        return saveCoalescer;
+    }
+
+    /**
+     * @return what identifies the user the connector is connected as
+     */
+    protected String getConnectedUser() {
+        return getConnection().getConfig().getUsername();
+    }
+
+    /**
+     * Gives back what the connector shares with its other instances, saving the records waiting to be grouped
+     * before the connection they were submitted through is closed, and stops the workers processing streaming
+     * events and the executor. Must be called without holding the monitor of the connector, as it makes calls.
+     */
+    protected void releaseSharedResources() {
+        SaveCoalescer coalescer;
+        synchronized (this) {
+            coalescer = saveCoalescer;
+            saveCoalescer = null;
+        }
+        if (coalescer != null) {
+            SaveCoalescer.release(coalescer);
+        }
+        shutdownEventDispatcher();
+        shutdownExecutorService();
+    }
+
+    /**
+     * Stops the workers processing streaming events and deletes their spool files. Subscriptions made afterwards get
+     * a new dispatcher.
+     */
+    protected void shutdownEventDispatcher() {
+        StreamingEventDispatcher dispatcher;
+        synchronized (this) {
+            dispatcher = eventDispatcher;
+            eventDispatcher = null;
+        }
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    private SaveResult awaitSave(Future<SaveResult> save) throws Exception {
+        try {
+            return save.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof Exception) {
+                throw (Exception) e.getCause();
             }
-            return new SequenceInputStream(Collections.enumeration(inputStreams));
+            throw (Error) e.getCause();
         }
-        return null;
     }
 
     /**
-     * Retrieves a list of available objects for your organization's data.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:describe-global}
-     *
-     * @return A {@link com.sforce.soap.partner.DescribeGlobalResult}
-     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
-     * @api.doc <a href="http://www.salesforce.com/us/developer/docs/api/Content/sforce_api_calls_describeglobal.htm">describeGlobal()</a>
-     * @since 4.0
+     * Executor used to issue concurrent calls, with executorCoreThreads to executorMaxThreads threads and up to
+     * executorQueueSize waiting tasks; further tasks are rejected. Threads are discarded after a minute of inactivity
+     * and the executor is shut down when the connector disconnects.
      */
-    @Processor
-    @OAuthProtected
-    @InvalidateConnectionOn(exception = ConnectionException.class)
-    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
-    @Category(name = "Describe Calls", description = "A set of calls to describe record structure in Salesforce.")
-    public DescribeGlobalResult describeGlobal() throws Exception {
-        return getConnection().describeGlobal();
+    protected synchronized ExecutorService getExecutorService() {
+        if (executorService == null) {
+            int coreThreads = Math.max(1, executorCoreThreads != null ? executorCoreThreads : 16);
+            int maxThreads = Math.max(coreThreads, executorMaxThreads != null ? executorMaxThreads : 32);
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(coreThreads, maxThreads, 60L, TimeUnit.SECONDS,
+                    new ArrayBlockingQueue<Runnable>(Math.max(1, executorQueueSize != null ? executorQueueSize : 500)),
+                    new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger();
+
+                @Override
+                public Thread newThread(Runnable runnable) {
+                    Thread thread = new Thread(runnable, "salesforce-connector-" + count.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            }, new ThreadPoolExecutor.AbortPolicy());
+            executor.allowCoreThreadTimeOut(true);
+            executorService = executor;
+        }
+        return executorService;
     }
 
     /**
-     * Retrieves one or more records based on the specified IDs.
-     * <p/>
-     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:retrieve}
-     *
-     * @param type   Object type. The sp ecified value must be a valid object for your organization.
-     * @param ids    The ids of the objects to retrieve
-     * @param fields The fields to return for the matching objects
-     * @return An array of {@link SObject}s
-     * @throws Exception {@link com.sforce.ws.ConnectionException} when there is an error
+     * Shuts the executor down once the tasks submitted to it are done. A new one is created if the connector is used
+     * again.
      */
-    @Processor
-    @OAuthProtected
-    @InvalidateConnectionOn(exception = ConnectionException.class)
-    @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
-    @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
-    public List<Map<String, Object>> retrieve(@MetaDataKeyParam @Placement(group = "Information", order = 1) @FriendlyName("sObject Type") String type,
-                                              @Placement(group = "Ids to Retrieve") List<String> ids,
-                                              @Placement(group = "Fields to Retrieve") List<String> fields) throws Exception {
-        String fiedsCommaDelimited = StringUtils.collectionToCommaDelimitedString(fields);
-        SObject[] sObjects = getConnection().retrieve(fiedsCommaDelimited, type, ids.toArray(new String[ids.size()]));
-        List<Map<String, Object>> result = new ArrayList<Map<String, Object>>();
-        if (sObjects != null) {
-            for (SObject sObject : sObjects) {
-                result.add(sObject.toMap());
-            }
+    private void shutdownExecutorService() {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = executorService;
+            executorService = null;
+        }
+        if (executor != null) {
+            executor.shutdown();
         }
-        return result;
     }
 
     /**
@@ -782,7 +1816,8 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     @Paged
     public PagingDelegate<Map<String, Object>> query(@Placement(group = "Query") final String query, final PagingConfiguration pagingConfiguration) throws Exception {
-        return new SalesforcePagingDelegate(this.getConnection(), query) {
+        int prefetchDepth = queryPrefetchDepth != null ? queryPrefetchDepth : 0;
+        return new SalesforcePagingDelegate(this.getConnection(), query, prefetchDepth, prefetchDepth > 0 ? getExecutorService() : null) {
             
             @Override
             protected QueryResult doQuery(String query) throws ConnectionException {
@@ -809,7 +1844,8 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     @Paged
     public PagingDelegate<Map<String, Object>> queryAll(@Placement(group = "Query") String query, PagingConfiguration pagingConfiguration) throws Exception {
-        return new SalesforcePagingDelegate(this.getConnection(), query) {
+        int prefetchDepth = queryPrefetchDepth != null ? queryPrefetchDepth : 0;
+        return new SalesforcePagingDelegate(this.getConnection(), query, prefetchDepth, prefetchDepth > 0 ? getExecutorService() : null) {
             
             @Override
             protected QueryResult doQuery(String query) throws ConnectionException {
@@ -993,7 +2029,21 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
     @Category(name = "Core Calls", description = "A set of calls that compromise the core of the API.")
     public List<DeleteResult> delete(@Optional @Default("#[payload]") @Placement(group = "Ids to Delete") List<String> ids) throws Exception {
-        return Arrays.asList(getConnection().delete(ids.toArray(new String[]{})));
+        return saveInChunks(ids.toArray(new String[ids.size()]), new SaveCall<String, DeleteResult>() {
+            @Override
+            public DeleteResult[] call(PartnerConnection connection, String[] chunk) throws Exception {
+                return connection.delete(chunk);
+            }
+
+            @Override
+            public DeleteResult failed(String id, com.sforce.soap.partner.Error error) {
+                DeleteResult result = new DeleteResult();
+                result.setId(id);
+                result.setSuccess(false);
+                result.setErrors(new com.sforce.soap.partner.Error[]{error});
+                return result;
+            }
+        });
     }
 
     /**
@@ -1118,9 +2168,74 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     @OAuthInvalidateAccessTokenOn(exception = ConnectionException.class)
     @Category(name = "Describe Calls", description = "A set of calls to describe record structure in Salesforce.")
     public DescribeSObjectResult describeSObject(@MetaDataKeyParam @Placement(group = "Information") @FriendlyName("sObject Type") String type) throws Exception {
+        if (isCachingDescribes()) {
+            return getDescribeCache().describeSObject(getConnection(), type);
+        }
         return getConnection().describeSObject(type);
     }
 
+    /**
+     * Returns the statistics of the describe cache: number of hits, misses, background refreshes, results read from
+     * the cache directory, evictions and current number of results.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:describe-cache-statistics}
+     *
+     * @return A map of statistic names to values, empty when the cache is disabled
+     * @since 5.4
+     */
+    @Processor
+    @Category(name = "Describe Calls", description = "A set of calls to describe record structure in Salesforce.")
+    public Map<String, Long> describeCacheStatistics() {
+        if (!isCachingDescribes()) {
+            return Collections.emptyMap();
+        }
+        return getDescribeCache().getStatistics();
+    }
+
+    /**
+     * Returns the statistics of the calls metered by maxCallsPerSecond and maxConcurrentCalls: number of calls, calls
+     * that had to wait and their wait times, calls in progress and saturation of maxConcurrentCalls in percent, the
+     * current rate and the API usage, limit and remaining quota last reported by Salesforce.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:api-governor-statistics}
+     *
+     * @return A map of statistic names to values, empty when calls are not metered
+     * @since 5.4
+     */
+    @Processor
+    @Category(name = "Utility Calls", description = "API calls that your client applications can invoke to obtain the system timestamp, user information, and change user passwords.")
+    public Map<String, Number> apiGovernorStatistics() {
+        ApiGovernor apiGovernor = getConnection().getConfig().getApiGovernor();
+        if (apiGovernor == null) {
+            return Collections.emptyMap();
+        }
+        return apiGovernor.getStatistics();
+    }
+
+    /**
+     * Returns the statistics of the events received by {@link this#subscribeTopic} when eventDispatchWorkers is set:
+     * number of events dispatched, processed, failed, dropped and spilled, events waiting and their peak, and average
+     * and longest time in milliseconds from the reception of an event to the end of its processing.
+     * <p/>
+     * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:streaming-event-statistics}
+     *
+     * @return A map of statistic names to values, empty when events are processed as they are received or no topic
+     *         has been subscribed to
+     * @since 5.4
+     */
+    @Processor
+    @Category(name = "Streaming API", description = "Create topics, to which applications can subscribe, receiving asynchronous notifications of changes to data in Salesforce, via the Bayeux protocol.")
+    public Map<String, Number> streamingEventStatistics() {
+        StreamingEventDispatcher dispatcher;
+        synchronized (this) {
+            dispatcher = eventDispatcher;
+        }
+        if (dispatcher == null) {
+            return Collections.emptyMap();
+        }
+        return dispatcher.getStatistics();
+    }
+
     /**
      * Retrieves the list of individual records that have been deleted between the range of now to the duration before now.
      * <p/>
@@ -1344,6 +2459,10 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     /**
      * Subscribe to a topic.
      * <p/>
+     * When replayTopicEvents is set, the subscription resumes after the last event processed, including after a
+     * restart, and events are processed at least once. When eventDispatchWorkers is set, events are queued and
+     * processed by worker threads, in order for each topic.
+     * <p/>
      * {@sample.xml ../../../doc/mule-module-sfdc.xml.sample sfdc:subscribe-topic}
      *
      * @param topic    The name of the topic to subscribe to
@@ -1364,12 +2483,17 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
            subscribed = true;
        }
 
-       subscriptions.add(new Subscription(topicName, callback, subscribed));
+       final Subscription subscription = new Subscription(topicName, callback, subscribed);
+       subscriptions.add(subscription);
 
        return new StopSourceCallback() {
             @Override
             public void stop() throws Exception {
                 getBayeuxClient().unsubscribe(topicName);
+                subscriptions.remove(subscription);
+                if (subscriptions.isEmpty()) {
+                    shutdownEventDispatcher();
+                }
             }
         };
     }
@@ -1389,7 +2513,8 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     }
     
     private void subscribe(String topicName, SourceCallback callback) {
-    	this.getBayeuxClient().subscribe(topicName, new SalesforceBayeuxMessageListener(callback));
+    	this.getBayeuxClient().subscribe(topicName, new SalesforceBayeuxMessageListener(callback,
+                isReplayingTopicEvents() ? getReplayIdStore() : null, getEventDispatcher()));
     }
 
     public void setObjectStoreManager(ObjectStoreManager objectStoreManager) {
@@ -1406,29 +2531,61 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
 
 
     protected com.sforce.async.SObject[] toAsyncSObjectList(List<Map<String, Object>> objects) {
+        return toAsyncSObjectList(objects, null);
+    }
+
+    private com.sforce.async.SObject[] toAsyncSObjectList(List<Map<String, Object>> objects, SObjectCodec codec) {
         com.sforce.async.SObject[] sobjects = new com.sforce.async.SObject[objects.size()];
         int s = 0;
         for (Map<String, Object> map : objects) {
-            sobjects[s] = toAsyncSObject(map);
+            sobjects[s] = toAsyncSObject(map, codec);
             s++;
         }
         return sobjects;
     }
 
     protected SObject[] toSObjectList(String type, List<Map<String, Object>> objects) {
+        return toSObjectList(type, objects, null);
+    }
+
+    private SObject[] toSObjectList(String type, List<Map<String, Object>> objects, SObjectCodec codec) {
         SObject[] sobjects = new SObject[objects.size()];
         int s = 0;
         for (Map<String, Object> map : objects) {
-            sobjects[s] = toSObject(type, map);
+            sobjects[s] = toSObject(type, map, codec);
             s++;
         }
         return sobjects;
     }
 
-    private BatchInfo createBatchAndCompleteRequest(JobInfo jobInfo, List<Map<String, Object>> objects) throws ConnectionException {
+    /**
+     * Without the describe cache, the codec of a type is kept until a record uses a field it does not know about:
+     * that field may have been created since, so the type is described again on the next call. Other changes, such
+     * as a field changing type, are not picked up until the connector is restarted.
+     *
+     * @return the codec of the type when coerceFieldTypes is set, null otherwise
+     */
+    protected SObjectCodec getSObjectCodec(String type) throws Exception {
+        if (coerceFieldTypes == null || !coerceFieldTypes || type == null) {
+            return null;
+        }
+        SObjectCodec codec = sObjectCodecs.get(type);
+        if (codec != null && !codec.isStale() && !isCachingDescribes()) {
+            return codec;
+        }
+        // with the describe cache, the codec is compiled again whenever the describe result is reloaded
+        DescribeSObjectResult describe = describeSObject(type);
+        if (codec == null || codec.getDescribe() != describe) {
+            codec = SObjectCodec.compile(describe);
+            sObjectCodecs.put(type, codec);
+        }
+        return codec;
+    }
+
+    private BatchInfo createBatchAndCompleteRequest(JobInfo jobInfo, List<Map<String, Object>> objects) throws Exception {
         try {
             BatchRequest batchRequest = getBulkConnection().createBatch(jobInfo);
-            batchRequest.addSObjects(toAsyncSObjectList(objects));
+            batchRequest.addSObjects(toAsyncSObjectList(objects, getSObjectCodec(jobInfo.getObject())));
             return batchRequest.completeRequest();
         } catch (AsyncApiException e) {
             if (e.getExceptionCode() == AsyncExceptionCode.InvalidSessionId) {
@@ -1470,7 +2627,69 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
         return getBulkConnection().createJob(jobInfo);
     }
 
-    private com.sforce.async.SObject toAsyncSObject(Map<String, Object> map) {
+    /**
+     * Splits the query into queries over ranges of about chunkSize ids of the records it selects.
+     */
+    private List<String> splitQueryByIdRange(String query, String type, int chunkSize) throws Exception {
+        String conditions = IdRangeQuerySplitter.getConditions(query);
+        String filter = conditions != null ? " WHERE " + conditions : "";
+        int count = getConnection().query("SELECT COUNT() FROM " + type + filter).getSize();
+        if (chunkSize <= 0 || count <= chunkSize) {
+            return Collections.singletonList(query);
+        }
+        String minId = getBoundaryId(type, filter, "ASC");
+        String maxId = getBoundaryId(type, filter, "DESC");
+        if (minId == null || maxId == null) {
+            return Collections.singletonList(query);
+        }
+        int chunks = (int) (((long) count + chunkSize - 1) / chunkSize);
+        return IdRangeQuerySplitter.toChunkQueries(query, IdRangeQuerySplitter.splitIdRange(minId, maxId, chunks));
+    }
+
+    private String getBoundaryId(String type, String filter, String order) throws Exception {
+        SObject[] records = getConnection().query("SELECT Id FROM " + type + filter + " ORDER BY Id " + order + " LIMIT 1").getRecords();
+        return records != null && records.length > 0 ? records[0].getId() : null;
+    }
+
+    /**
+     * Lazily converts a list, iterable or iterator of maps to bulk sObjects.
+     */
+    protected Iterator<com.sforce.async.SObject> toAsyncSObjectIterator(Object objects) {
+        return toAsyncSObjectIterator(objects, null);
+    }
+
+    @SuppressWarnings("unchecked")
+    private Iterator<com.sforce.async.SObject> toAsyncSObjectIterator(Object objects, final SObjectCodec codec) {
+        final Iterator<Map<String, Object>> maps;
+        if (objects instanceof Iterator) {
+            maps = (Iterator<Map<String, Object>>) objects;
+        } else if (objects instanceof Iterable) {
+            maps = ((Iterable<Map<String, Object>>) objects).iterator();
+        } else if (objects instanceof Map) {
+            maps = Collections.singletonList((Map<String, Object>) objects).iterator();
+        } else {
+            throw new IllegalArgumentException("Expected a list, iterable or iterator of maps but got " +
+                    (objects == null ? "null" : objects.getClass().getName()));
+        }
+        return new Iterator<com.sforce.async.SObject>() {
+            @Override
+            public boolean hasNext() {
+                return maps.hasNext();
+            }
+
+            @Override
+            public com.sforce.async.SObject next() {
+                return toAsyncSObject(maps.next(), codec);
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    private com.sforce.async.SObject toAsyncSObject(Map<String, Object> map, SObjectCodec codec) {
         com.sforce.async.SObject sObject = new com.sforce.async.SObject();
         for (String key : map.keySet()) {
 
@@ -1478,7 +2697,10 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
 
             if (object != null) {
                 if (object instanceof Map) {
-                    sObject.setFieldReference(key, toAsyncSObject(toSObjectMap((Map) object)));
+                    sObject.setFieldReference(key, toAsyncSObject(toSObjectMap((Map) object), null));
+                }
+                else if (codec != null) {
+                    sObject.setField(key, codec.toBulkValue(key, object));
                 }
                 else if (isDateField(object)) {
                     sObject.setField(key, convertDateToString(object));
@@ -1494,6 +2716,10 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     }
 
     protected SObject toSObject(String type, Map<String, Object> map) {
+        return toSObject(type, map, null);
+    }
+
+    private SObject toSObject(String type, Map<String, Object> map, SObjectCodec codec) {
         SObject sObject = new SObject();
         sObject.setType(type);
         for (Map.Entry<String, Object> entry : map.entrySet()) {
@@ -1502,6 +2728,8 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
             	sObject.setFieldsToNull((String[]) entry.getValue());
             } else if (entry.getValue() instanceof Map) {
                 sObject.setField(key, toSObject(key, toSObjectMap((Map) entry.getValue())));
+            } else if (codec != null) {
+                sObject.setField(key, codec.toSoapValue(key, entry.getValue()));
             } else {
                 sObject.setField(key, entry.getValue());
             }
@@ -1566,6 +2794,20 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
         if (allowFieldTruncationSupport != null) {
             connection.setAllowFieldTruncationHeader(allowFieldTruncationSupport);
         }
+
+        //binary fields
+        Integer binarySpoolThreshold = getBinarySpoolThreshold();
+        if (binarySpoolThreshold != null) {
+            connection.getConfig().setBinarySpoolThreshold(binarySpoolThreshold);
+            connection.getConfig().setUseChunkedPost(true);
+        }
+    }
+
+    protected void setConnectionOptions(BulkConnection bulkConnection) {
+        Boolean compressBulkBatches = getCompressBulkBatches();
+        if (compressBulkBatches != null) {
+            bulkConnection.setCompressBatches(compressBulkBatches);
+        }
     }
 
     public ObjectStore<? extends Serializable> getTimeObjectStore() {
@@ -1603,6 +2845,238 @@ public abstract class BaseSalesforceConnector implements MuleContextAware {
     public void setAllowFieldTruncationSupport(Boolean allowFieldTruncationSupport) {
         this.allowFieldTruncationSupport = allowFieldTruncationSupport;
     }
+
+    public Integer getRetrieveParallelism() {
+        return retrieveParallelism;
+    }
+
+    public void setRetrieveParallelism(Integer retrieveParallelism) {
+        this.retrieveParallelism = retrieveParallelism;
+    }
+
+    public Integer getSaveParallelism() {
+        return saveParallelism;
+    }
+
+    public void setSaveParallelism(Integer saveParallelism) {
+        this.saveParallelism = saveParallelism;
+    }
+
+    public Integer getExecutorCoreThreads() {
+        return executorCoreThreads;
+    }
+
+    public void setExecutorCoreThreads(Integer executorCoreThreads) {
+        this.executorCoreThreads = executorCoreThreads;
+    }
+
+    public Integer getExecutorMaxThreads() {
+        return executorMaxThreads;
+    }
+
+    public void setExecutorMaxThreads(Integer executorMaxThreads) {
+        this.executorMaxThreads = executorMaxThreads;
+    }
+
+    public Integer getExecutorQueueSize() {
+        return executorQueueSize;
+    }
+
+    public void setExecutorQueueSize(Integer executorQueueSize) {
+        this.executorQueueSize = executorQueueSize;
+    }
+
+    public Integer getQueryPrefetchDepth() {
+        return queryPrefetchDepth;
+    }
+
+    public void setQueryPrefetchDepth(Integer queryPrefetchDepth) {
+        this.queryPrefetchDepth = queryPrefetchDepth;
+    }
+
+    public Integer getMaxConcurrentBatches() {
+        return maxConcurrentBatches;
+    }
+
+    public void setMaxConcurrentBatches(Integer maxConcurrentBatches) {
+        this.maxConcurrentBatches = maxConcurrentBatches;
+    }
+
+    public Boolean getCompressBulkBatches() {
+        return compressBulkBatches;
+    }
+
+    public void setCompressBulkBatches(Boolean compressBulkBatches) {
+        this.compressBulkBatches = compressBulkBatches;
+    }
+
+    public Integer getCoalesceMaxRecords() {
+        return coalesceMaxRecords;
+    }
+
+    public void setCoalesceMaxRecords(Integer coalesceMaxRecords) {
+        this.coalesceMaxRecords = coalesceMaxRecords;
+    }
+
+    public Long getCoalesceMaxDelay() {
+        return coalesceMaxDelay;
+    }
+
+    public void setCoalesceMaxDelay(Long coalesceMaxDelay) {
+        this.coalesceMaxDelay = coalesceMaxDelay;
+    }
+
+    public Long getDescribeCacheTtl() {
+        return describeCacheTtl;
+    }
+
+    public void setDescribeCacheTtl(Long describeCacheTtl) {
+        this.describeCacheTtl = describeCacheTtl;
+    }
+
+    public Integer getDescribeCacheMaxEntries() {
+        return describeCacheMaxEntries;
+    }
+
+    public void setDescribeCacheMaxEntries(Integer describeCacheMaxEntries) {
+        this.describeCacheMaxEntries = describeCacheMaxEntries;
+    }
+
+    public String getDescribeCacheDirectory() {
+        return describeCacheDirectory;
+    }
+
+    public void setDescribeCacheDirectory(String describeCacheDirectory) {
+        this.describeCacheDirectory = describeCacheDirectory;
+    }
+
+    public Boolean getCoerceFieldTypes() {
+        return coerceFieldTypes;
+    }
+
+    public void setCoerceFieldTypes(Boolean coerceFieldTypes) {
+        this.coerceFieldTypes = coerceFieldTypes;
+    }
+
+    public Integer getBinarySpoolThreshold() {
+        return binarySpoolThreshold;
+    }
+
+    public void setBinarySpoolThreshold(Integer binarySpoolThreshold) {
+        this.binarySpoolThreshold = binarySpoolThreshold;
+    }
+
+    public Integer getMaxRetries() {
+        return maxRetries;
+    }
+
+    public void setMaxRetries(Integer maxRetries) {
+        this.maxRetries = maxRetries;
+    }
+
+    public Long getRetryInitialDelay() {
+        return retryInitialDelay;
+    }
+
+    public void setRetryInitialDelay(Long retryInitialDelay) {
+        this.retryInitialDelay = retryInitialDelay;
+    }
+
+    public Long getRetryMaxDelay() {
+        return retryMaxDelay;
+    }
+
+    public void setRetryMaxDelay(Long retryMaxDelay) {
+        this.retryMaxDelay = retryMaxDelay;
+    }
+
+    public Integer getRetryBudget() {
+        return retryBudget;
+    }
+
+    public void setRetryBudget(Integer retryBudget) {
+        this.retryBudget = retryBudget;
+    }
+
+    public Double getMaxCallsPerSecond() {
+        return maxCallsPerSecond;
+    }
+
+    public void setMaxCallsPerSecond(Double maxCallsPerSecond) {
+        this.maxCallsPerSecond = maxCallsPerSecond;
+    }
+
+    public Integer getMaxConcurrentCalls() {
+        return maxConcurrentCalls;
+    }
+
+    public void setMaxConcurrentCalls(Integer maxConcurrentCalls) {
+        this.maxConcurrentCalls = maxConcurrentCalls;
+    }
+
+    public Boolean getReplayTopicEvents() {
+        return replayTopicEvents;
+    }
+
+    public void setReplayTopicEvents(Boolean replayTopicEvents) {
+        this.replayTopicEvents = replayTopicEvents;
+    }
+
+    public Integer getReplayIdFlushEvents() {
+        return replayIdFlushEvents;
+    }
+
+    public void setReplayIdFlushEvents(Integer replayIdFlushEvents) {
+        this.replayIdFlushEvents = replayIdFlushEvents;
+    }
+
+    public Long getReplayIdFlushInterval() {
+        return replayIdFlushInterval;
+    }
+
+    public void setReplayIdFlushInterval(Long replayIdFlushInterval) {
+        this.replayIdFlushInterval = replayIdFlushInterval;
+    }
+
+    public Integer getReplayDeduplicationWindow() {
+        return replayDeduplicationWindow;
+    }
+
+    public void setReplayDeduplicationWindow(Integer replayDeduplicationWindow) {
+        this.replayDeduplicationWindow = replayDeduplicationWindow;
+    }
+
+    public Integer getEventDispatchWorkers() {
+        return eventDispatchWorkers;
+    }
+
+    public void setEventDispatchWorkers(Integer eventDispatchWorkers) {
+        this.eventDispatchWorkers = eventDispatchWorkers;
+    }
+
+    public Integer getEventQueueCapacity() {
+        return eventQueueCapacity;
+    }
+
+    public void setEventQueueCapacity(Integer eventQueueCapacity) {
+        this.eventQueueCapacity = eventQueueCapacity;
+    }
+
+    public EventOverflowPolicy getEventOverflowPolicy() {
+        return eventOverflowPolicy;
+    }
+
+    public void setEventOverflowPolicy(EventOverflowPolicy eventOverflowPolicy) {
+        this.eventOverflowPolicy = eventOverflowPolicy;
+    }
+
+    public String getEventSpoolDirectory() {
+        return eventSpoolDirectory;
+    }
+
+    public void setEventSpoolDirectory(String eventSpoolDirectory) {
+        this.eventSpoolDirectory = eventSpoolDirectory;
+    }
     
     @Override
     public void setMuleContext(MuleContext context) {
@@ -0,0 +1,309 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.DescribeGlobalResult;
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.bind.TypeMapper;
+import com.sforce.ws.bind.XMLizable;
+import com.sforce.ws.parser.XmlInputStream;
+import com.sforce.ws.parser.XmlOutputStream;
+import org.apache.log4j.Logger;
+
+import javax.xml.namespace.QName;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches the results of describeGlobal() and describeSObject() of each organization.
+ * <p/>
+ * A result is served from the cache for ttl milliseconds after it has been loaded. Once three quarters of the ttl
+ * have passed, the first request for it still gets the cached result but also reloads it in the background, so that
+ * results in use are refreshed before they expire. At most maxEntries results are kept, the least recently used
+ * are evicted first.
+ * <p/>
+ * When a snapshot directory is set, every result loaded from Salesforce is also saved there, and a result missing
+ * from the cache is read from its snapshot as long as the snapshot is younger than the ttl. Connectors that start
+ * again then do not have to describe everything again.
+ */
+public class DescribeCache {
+    private static final Logger LOGGER = Logger.getLogger(DescribeCache.class);
+
+    private static final String NAMESPACE = "urn:partner.soap.sforce.com";
+    private static final QName RESULT_QNAME = new QName(NAMESPACE, "result");
+    private static final String GLOBAL_KEY = "describeGlobal";
+
+    private final long ttl;
+    private final Executor executor;
+    private final File snapshotDirectory;
+    private final TypeMapper typeMapper = new TypeMapper();
+    private final Map<String, Entry> entries;
+
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+    private final AtomicLong refreshCount = new AtomicLong();
+    private final AtomicLong snapshotLoadCount = new AtomicLong();
+    private final AtomicLong evictionCount = new AtomicLong();
+
+    /**
+     * @param ttl               time in milliseconds a result is served from the cache
+     * @param maxEntries        maximum number of results kept
+     * @param executor          reloads the results that are about to expire
+     * @param snapshotDirectory where results are saved to and read from, null to keep them in memory only
+     */
+    public DescribeCache(long ttl, final int maxEntries, Executor executor, File snapshotDirectory) {
+        this.ttl = ttl;
+        this.executor = executor;
+        this.snapshotDirectory = snapshotDirectory;
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > Math.max(1, maxEntries)) {
+                    evictionCount.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+        typeMapper.setPackagePrefix(null);
+        if (snapshotDirectory != null && !snapshotDirectory.isDirectory() && !snapshotDirectory.mkdirs()) {
+            LOGGER.warn("Cannot create describe snapshot directory " + snapshotDirectory);
+        }
+    }
+
+    public DescribeGlobalResult describeGlobal(final PartnerConnection connection) throws ConnectionException {
+        return get(connection, GLOBAL_KEY, DescribeGlobalResult.class, new Loader() {
+            @Override
+            public XMLizable load() throws ConnectionException {
+                return connection.describeGlobal();
+            }
+        });
+    }
+
+    public DescribeSObjectResult describeSObject(final PartnerConnection connection, final String type) throws ConnectionException {
+        return get(connection, type, DescribeSObjectResult.class, new Loader() {
+            @Override
+            public XMLizable load() throws ConnectionException {
+                return connection.describeSObject(type);
+            }
+        });
+    }
+
+    /**
+     * Removes every result from the cache. Snapshots are left alone but are only read again once they have been
+     * written again.
+     */
+    public void invalidate() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        if (snapshotDirectory != null) {
+            File[] snapshots = snapshotDirectory.listFiles();
+            if (snapshots != null) {
+                for (File snapshot : snapshots) {
+                    if (snapshot.getName().endsWith(".xml")) {
+                        snapshot.setLastModified(0);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * @return hits, misses, refreshes, snapshot loads, evictions and current size of the cache
+     */
+    public Map<String, Long> getStatistics() {
+        Map<String, Long> statistics = new LinkedHashMap<String, Long>();
+        statistics.put("hits", getHitCount());
+        statistics.put("misses", getMissCount());
+        statistics.put("refreshes", getRefreshCount());
+        statistics.put("snapshotLoads", getSnapshotLoadCount());
+        statistics.put("evictions", getEvictionCount());
+        statistics.put("size", (long) getSize());
+        return statistics;
+    }
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getRefreshCount() {
+        return refreshCount.get();
+    }
+
+    public long getSnapshotLoadCount() {
+        return snapshotLoadCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public int getSize() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    private <T extends XMLizable> T get(PartnerConnection connection, String name, Class<T> type, Loader loader)
+            throws ConnectionException {
+        final String key = BaseSalesforceConnector.getOrganizationId(connection) + "." + name;
+        long now = System.currentTimeMillis();
+        Entry entry;
+        synchronized (entries) {
+            entry = entries.get(key);
+        }
+        if (entry != null && now - entry.loadedAt < ttl) {
+            hitCount.incrementAndGet();
+            if (now - entry.loadedAt >= ttl - ttl / 4) {
+                refresh(key, entry, loader);
+            }
+            return type.cast(entry.value);
+        }
+
+        missCount.incrementAndGet();
+        entry = readSnapshot(key, type);
+        if (entry != null) {
+            snapshotLoadCount.incrementAndGet();
+        } else {
+            entry = new Entry(loader.load(), now);
+            writeSnapshot(key, entry.value);
+        }
+        synchronized (entries) {
+            entries.put(key, entry);
+        }
+        return type.cast(entry.value);
+    }
+
+    private void refresh(final String key, final Entry entry, final Loader loader) {
+        synchronized (entry) {
+            if (entry.refreshing) {
+                return;
+            }
+            entry.refreshing = true;
+        }
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        Entry refreshed = new Entry(loader.load(), System.currentTimeMillis());
+                        synchronized (entries) {
+                            entries.put(key, refreshed);
+                        }
+                        refreshCount.incrementAndGet();
+                        writeSnapshot(key, refreshed.value);
+                    } catch (Exception e) {
+                        LOGGER.warn("Failed to refresh " + key + ", it will be loaded again once expired", e);
+                    } finally {
+                        synchronized (entry) {
+                            entry.refreshing = false;
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (entry) {
+                entry.refreshing = false;
+            }
+        }
+    }
+
+    private File getSnapshotFile(String key) {
+        return new File(snapshotDirectory, key.replaceAll("[^A-Za-z0-9_.-]", "_") + ".xml");
+    }
+
+    private Entry readSnapshot(String key, Class<? extends XMLizable> type) {
+        if (snapshotDirectory == null) {
+            return null;
+        }
+        File file = getSnapshotFile(key);
+        long loadedAt = file.lastModified();
+        if (loadedAt == 0 || System.currentTimeMillis() - loadedAt >= ttl) {
+            return null;
+        }
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                XmlInputStream xin = new XmlInputStream();
+                xin.setInput(in, "UTF-8");
+                XMLizable value = type.newInstance();
+                value.load(xin, typeMapper);
+                return new Entry(value, loadedAt);
+            } finally {
+                in.close();
+            }
+        } catch (Exception e) {
+            LOGGER.warn("Ignoring unreadable describe snapshot " + file, e);
+            return null;
+        }
+    }
+
+    private void writeSnapshot(String key, XMLizable value) {
+        if (snapshotDirectory == null) {
+            return;
+        }
+        File file = getSnapshotFile(key);
+        File temp = new File(file.getPath() + ".tmp");
+        try {
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                XmlOutputStream xout = new XmlOutputStream(out, false);
+                xout.startDocument();
+                xout.setPrefix("", NAMESPACE);
+                xout.setPrefix("xsi", "http://www.w3.org/2001/XMLSchema-instance");
+                value.write(RESULT_QNAME, xout, typeMapper);
+                xout.endDocument();
+                xout.close();
+            } finally {
+                out.close();
+            }
+            if (!(temp.renameTo(file) || (file.delete() && temp.renameTo(file)))) {
+                throw new IOException("Cannot rename " + temp + " to " + file);
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Failed to write describe snapshot " + file, e);
+            temp.delete();
+        }
+    }
+
+    private interface Loader {
+        XMLizable load() throws ConnectionException;
+    }
+
+    private static class Entry {
+        private final XMLizable value;
+        private final long loadedAt;
+        private boolean refreshing;
+
+        Entry(XMLizable value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
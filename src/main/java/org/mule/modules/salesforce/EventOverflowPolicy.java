@@ -0,0 +1,31 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+/**
+ * Specifies what happens to a streaming event received while the queue of its channel is full
+ */
+public enum EventOverflowPolicy {
+    /**
+     * The event waits for room in the queue, which also holds the delivery of the next events by Salesforce.
+     */
+    BLOCK,
+
+    /**
+     * The oldest event of the queue is dropped to make room for the event.
+     */
+    DROP_OLDEST,
+
+    /**
+     * The event is written to a file and read back once the queue has room again.
+     */
+    SPILL
+}
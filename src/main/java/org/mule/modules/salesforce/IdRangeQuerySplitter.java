@@ -0,0 +1,246 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits a SOQL query into queries over consecutive ranges of record ids, so that each range can be
+ * scanned by a batch of its own.
+ * <p/>
+ * An id is made of a three character key prefix followed by a base 62 number, whose digits sort the same
+ * way as the characters of the id. Boundaries are computed on that number between the lowest and highest
+ * ids of the object; the first and last ranges are left open so that records created meanwhile are not
+ * missed.
+ */
+public final class IdRangeQuerySplitter {
+
+    private static final String DIGITS = "0123456789ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz";
+    private static final BigInteger BASE = BigInteger.valueOf(DIGITS.length());
+    private static final int PREFIX_LENGTH = 3;
+    private static final int ID_LENGTH = 15;
+
+    private static final String[] CLAUSES_AFTER_WHERE = {"WITH", "GROUP", "HAVING", "ORDER", "LIMIT", "OFFSET", "FOR"};
+
+    private IdRangeQuerySplitter() {
+    }
+
+    /**
+     * @return the object the query selects from
+     * @throws IllegalArgumentException if the query has no FROM clause
+     */
+    public static String getObjectName(String query) {
+        List<Word> words = topLevelWords(query);
+        for (int i = 0; i < words.size() - 1; i++) {
+            if (words.get(i).is("FROM")) {
+                return words.get(i + 1).text;
+            }
+        }
+        throw new IllegalArgumentException("No FROM clause in query: " + query);
+    }
+
+    /**
+     * @param minId  lowest id of the object
+     * @param maxId  highest id of the object
+     * @param chunks number of ranges wanted
+     * @return the ids between consecutive ranges, in increasing order; fewer than chunks - 1 when the
+     *         ids are too close to each other
+     */
+    public static List<String> splitIdRange(String minId, String maxId, int chunks) {
+        if (minId.length() < ID_LENGTH || maxId.length() < ID_LENGTH) {
+            throw new IllegalArgumentException("Invalid id range: " + minId + " - " + maxId);
+        }
+        if (!minId.regionMatches(0, maxId, 0, PREFIX_LENGTH)) {
+            throw new IllegalArgumentException("Ids of different objects: " + minId + " - " + maxId);
+        }
+        String prefix = minId.substring(0, PREFIX_LENGTH);
+        BigInteger min = decode(minId.substring(PREFIX_LENGTH, ID_LENGTH));
+        BigInteger span = decode(maxId.substring(PREFIX_LENGTH, ID_LENGTH)).subtract(min);
+
+        List<String> boundaries = new ArrayList<String>();
+        BigInteger previous = BigInteger.ZERO;
+        for (int i = 1; i < chunks; i++) {
+            BigInteger offset = span.multiply(BigInteger.valueOf(i)).divide(BigInteger.valueOf(chunks));
+            if (offset.compareTo(previous) > 0) {
+                boundaries.add(prefix + encode(min.add(offset), ID_LENGTH - PREFIX_LENGTH));
+                previous = offset;
+            }
+        }
+        return boundaries;
+    }
+
+    /**
+     * @param boundaries ids between consecutive ranges, as returned by {@link #splitIdRange(String, String, int)}
+     * @return one query per range, boundaries.size() + 1 in all
+     */
+    public static List<String> toChunkQueries(String query, List<String> boundaries) {
+        List<String> queries = new ArrayList<String>(boundaries.size() + 1);
+        if (boundaries.isEmpty()) {
+            queries.add(query);
+            return queries;
+        }
+        queries.add(restrict(query, "Id < '" + boundaries.get(0) + "'"));
+        for (int i = 1; i < boundaries.size(); i++) {
+            queries.add(restrict(query, "Id >= '" + boundaries.get(i - 1) + "' AND Id < '" + boundaries.get(i) + "'"));
+        }
+        queries.add(restrict(query, "Id >= '" + boundaries.get(boundaries.size() - 1) + "'"));
+        return queries;
+    }
+
+    /**
+     * Adds a condition to the WHERE clause of the query, creating the clause if there is none. Subqueries
+     * and string literals are left alone.
+     */
+    public static String restrict(String query, String condition) {
+        int[] clause = locateWhereClause(query);
+        int conditionsStart = clause[0];
+        int end = clause[1];
+
+        String tail = end < query.length() ? " " + query.substring(end) : "";
+        if (conditionsStart < 0) {
+            return query.substring(0, end).trim() + " WHERE " + condition + tail;
+        }
+        return query.substring(0, conditionsStart) + " " + condition + " AND (" +
+                query.substring(conditionsStart, end).trim() + ")" + tail;
+    }
+
+    /**
+     * @return the conditions of the WHERE clause of the query, null if it has none
+     * @throws IllegalArgumentException if the query has no FROM clause
+     */
+    public static String getConditions(String query) {
+        int[] clause = locateWhereClause(query);
+        return clause[0] < 0 ? null : query.substring(clause[0], clause[1]).trim();
+    }
+
+    /**
+     * @return the offset where the conditions of the WHERE clause start, -1 if there is none, and the offset
+     *         where the clause ends
+     */
+    private static int[] locateWhereClause(String query) {
+        List<Word> words = topLevelWords(query);
+        int from = -1;
+        int where = -1;
+        int end = query.length();
+        for (int i = 0; i < words.size(); i++) {
+            Word word = words.get(i);
+            if (from < 0) {
+                if (word.is("FROM")) {
+                    from = i;
+                }
+            } else if (where < 0 && word.is("WHERE")) {
+                where = i;
+            } else if (isClauseAfterWhere(words, i)) {
+                end = word.start;
+                break;
+            }
+        }
+        if (from < 0) {
+            throw new IllegalArgumentException("No FROM clause in query: " + query);
+        }
+        return new int[] {where < 0 ? -1 : words.get(where).end, end};
+    }
+
+    private static boolean isClauseAfterWhere(List<Word> words, int index) {
+        Word word = words.get(index);
+        for (String clause : CLAUSES_AFTER_WHERE) {
+            if (word.is(clause)) {
+                if (word.is("GROUP") || word.is("ORDER")) {
+                    return index + 1 < words.size() && words.get(index + 1).is("BY");
+                }
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return the words of the query outside of parentheses and string literals
+     */
+    private static List<Word> topLevelWords(String query) {
+        List<Word> words = new ArrayList<Word>();
+        int depth = 0;
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (c == '\'') {
+                for (i++; i < length && query.charAt(i) != '\''; i++) {
+                    if (query.charAt(i) == '\\') {
+                        i++;
+                    }
+                }
+                i++;
+            } else if (c == '(') {
+                depth++;
+                i++;
+            } else if (c == ')') {
+                depth--;
+                i++;
+            } else if (isWordChar(c)) {
+                int start = i;
+                while (i < length && isWordChar(query.charAt(i))) {
+                    i++;
+                }
+                if (depth == 0) {
+                    words.add(new Word(query.substring(start, i), start, i));
+                }
+            } else {
+                i++;
+            }
+        }
+        return words;
+    }
+
+    private static boolean isWordChar(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '.';
+    }
+
+    private static BigInteger decode(String digits) {
+        BigInteger value = BigInteger.ZERO;
+        for (int i = 0; i < digits.length(); i++) {
+            int digit = DIGITS.indexOf(digits.charAt(i));
+            if (digit < 0) {
+                throw new IllegalArgumentException("Invalid id character: " + digits.charAt(i));
+            }
+            value = value.multiply(BASE).add(BigInteger.valueOf(digit));
+        }
+        return value;
+    }
+
+    private static String encode(BigInteger value, int length) {
+        char[] digits = new char[length];
+        for (int i = length - 1; i >= 0; i--) {
+            BigInteger[] qr = value.divideAndRemainder(BASE);
+            digits[i] = DIGITS.charAt(qr[1].intValue());
+            value = qr[0];
+        }
+        return new String(digits);
+    }
+
+    private static class Word {
+        private final String text;
+        private final int start;
+        private final int end;
+
+        Word(String text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+        }
+
+        boolean is(String keyword) {
+            return text.equalsIgnoreCase(keyword);
+        }
+    }
+}
@@ -20,6 +20,7 @@ public class ObjectStoreHelper {
 
     private static final String LATEST_UPDATE_TIME_KEY = "latestUpdateTime";
     private static final String LATEST_UPDATE_TIME_BACKUP_KEY = "latestUpdateTimeBackup";
+    private static final String REPLAY_ID_KEY = "replayId";
     private ObjectStore objectStore;
     private String keyPrefix;
 
@@ -57,6 +58,20 @@ public class ObjectStoreHelper {
         }
     }
 
+    public void updateReplayId(String channel, long replayId) throws ObjectStoreException {
+        if (objectStore.contains(getReplayIdKey(channel))) {
+            objectStore.remove(getReplayIdKey(channel));
+        }
+        objectStore.store(getReplayIdKey(channel), replayId);
+    }
+
+    public Long getReplayId(String channel) throws ObjectStoreException {
+        if (objectStore.contains(getReplayIdKey(channel))) {
+            return (Long) objectStore.retrieve(getReplayIdKey(channel));
+        }
+        return null;
+    }
+
     public String getLastUpdateTimeKey(String type) {
         return keyPrefix + '/' + type + '/' + LATEST_UPDATE_TIME_KEY;
     }
@@ -64,4 +79,8 @@ public class ObjectStoreHelper {
     public String getLatestUpdateTimeBackupKey(String type) {
         return keyPrefix + '/' + type + '/' + LATEST_UPDATE_TIME_BACKUP_KEY;
     }
-}
\ No newline at end of file
+
+    public String getReplayIdKey(String channel) {
+        return keyPrefix + channel + '/' + REPLAY_ID_KEY;
+    }
+}
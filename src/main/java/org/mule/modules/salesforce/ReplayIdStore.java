@@ -0,0 +1,141 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.apache.log4j.Logger;
+import org.mule.api.store.ObjectStoreException;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Keeps the replay id of the last event processed on each channel, so that subscriptions can resume from it after
+ * a reconnection, a new handshake or a restart of the application.
+ * <p/>
+ * Replay ids are kept in memory and written to the object store in batches: once flushEvents events have been
+ * processed since the last write, or flushInterval milliseconds have passed, and when subscriptions stop. Events
+ * processed after the last write are delivered again after a restart, so every event is processed at least once.
+ * To drop events delivered again within the same application, the last deduplicationWindow replay ids of each
+ * channel are remembered.
+ */
+public class ReplayIdStore {
+    private static final Logger LOGGER = Logger.getLogger(ReplayIdStore.class);
+
+    /**
+     * Replay id asking for the events published from now on
+     */
+    public static final long NEW_EVENTS = -1;
+
+    private final ObjectStoreHelper objectStoreHelper;
+    private final int flushEvents;
+    private final long flushInterval;
+    private final int deduplicationWindow;
+    private final Map<String, Long> replayIds = new HashMap<String, Long>();
+    private final Map<String, Long> storedReplayIds = new HashMap<String, Long>();
+    private final Map<String, Set<Long>> recentReplayIds = new HashMap<String, Set<Long>>();
+    private int unflushedEvents;
+    private long flushedAt = System.currentTimeMillis();
+
+    /**
+     * @param objectStoreHelper   writes and reads the replay ids
+     * @param flushEvents         number of events processed before the replay ids are written
+     * @param flushInterval       time in milliseconds after which the replay ids are written
+     * @param deduplicationWindow number of replay ids remembered per channel, 0 not to drop any event
+     */
+    public ReplayIdStore(ObjectStoreHelper objectStoreHelper, int flushEvents, long flushInterval, int deduplicationWindow) {
+        this.objectStoreHelper = objectStoreHelper;
+        this.flushEvents = Math.max(1, flushEvents);
+        this.flushInterval = flushInterval;
+        this.deduplicationWindow = Math.max(0, deduplicationWindow);
+    }
+
+    /**
+     * @return the replay id to subscribe to the channel from, {@link #NEW_EVENTS} if no event of the channel has
+     *         been processed
+     */
+    public synchronized long getReplayId(String channel) {
+        Long replayId = replayIds.get(channel);
+        if (replayId == null) {
+            try {
+                replayId = objectStoreHelper.getReplayId(channel);
+            } catch (ObjectStoreException e) {
+                LOGGER.warn("Failed to read the replay id of " + channel + ", subscribing to new events only", e);
+            }
+            if (replayId == null) {
+                return NEW_EVENTS;
+            }
+            replayIds.put(channel, replayId);
+            storedReplayIds.put(channel, replayId);
+        }
+        return replayId;
+    }
+
+    /**
+     * @return true if the event has been processed recently
+     */
+    public synchronized boolean isDuplicate(String channel, long replayId) {
+        Set<Long> recent = recentReplayIds.get(channel);
+        return recent != null && recent.contains(replayId);
+    }
+
+    /**
+     * Records that the event has been processed, writing the replay ids if the batch is complete.
+     */
+    public void processed(String channel, long replayId) {
+        boolean flush;
+        synchronized (this) {
+            Long last = replayIds.get(channel);
+            if (last == null || replayId > last) {
+                replayIds.put(channel, replayId);
+            }
+            if (deduplicationWindow > 0) {
+                Set<Long> recent = recentReplayIds.get(channel);
+                if (recent == null) {
+                    recent = new LinkedHashSet<Long>();
+                    recentReplayIds.put(channel, recent);
+                }
+                recent.add(replayId);
+                if (recent.size() > deduplicationWindow) {
+                    Iterator<Long> oldest = recent.iterator();
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            unflushedEvents++;
+            flush = unflushedEvents >= flushEvents || System.currentTimeMillis() - flushedAt >= flushInterval;
+        }
+        if (flush) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes the replay ids that changed since the last write.
+     */
+    public synchronized void flush() {
+        unflushedEvents = 0;
+        flushedAt = System.currentTimeMillis();
+        for (Map.Entry<String, Long> entry : replayIds.entrySet()) {
+            if (entry.getValue().equals(storedReplayIds.get(entry.getKey()))) {
+                continue;
+            }
+            try {
+                objectStoreHelper.updateReplayId(entry.getKey(), entry.getValue());
+                storedReplayIds.put(entry.getKey(), entry.getValue());
+            } catch (ObjectStoreException e) {
+                LOGGER.warn("Failed to write the replay id of " + entry.getKey() + ", it will be written with the next batch", e);
+            }
+        }
+    }
+}
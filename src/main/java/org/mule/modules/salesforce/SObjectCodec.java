@@ -0,0 +1,358 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.ws.bind.CalendarCodec;
+import com.sforce.ws.bind.DateCodec;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Calendar;
+import java.util.Collection;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+
+/**
+ * Converts the values of the fields of an sObject type to the representation expected by Salesforce, following the
+ * type of each field as described by {@link DescribeSObjectResult#getFields()}.
+ * <p/>
+ * The converter of every field is chosen once, when the codec is compiled, so converting a record is only a lookup
+ * and a conversion per field. Values that cannot be converted, such as "2011-12-13T" for a date or "yes" for a
+ * boolean, and fields the type does not have are rejected with an {@link IllegalArgumentException} before anything
+ * is sent. Keys naming a field of a related record, such as Owner.Email, are not described by the type and their
+ * values are passed through as they are.
+ */
+public final class SObjectCodec {
+
+    private static final TimeZone GMT = TimeZone.getTimeZone("GMT");
+    private static final CalendarCodec CALENDAR_CODEC = new CalendarCodec();
+    private static final DateCodec DATE_CODEC = new DateCodec();
+
+    private final DescribeSObjectResult describe;
+    private final String type;
+    private final Map<String, FieldCodec> fields = new HashMap<String, FieldCodec>();
+    private volatile boolean stale;
+
+    private SObjectCodec(DescribeSObjectResult describe) {
+        this.describe = describe;
+        this.type = describe.getName();
+        if (describe.getFields() != null) {
+            for (Field field : describe.getFields()) {
+                fields.put(field.getName().toLowerCase(Locale.ENGLISH), codecFor(field));
+            }
+        }
+    }
+
+    public static SObjectCodec compile(DescribeSObjectResult describe) {
+        return new SObjectCodec(describe);
+    }
+
+    /**
+     * @return the describe result the codec was compiled from
+     */
+    public DescribeSObjectResult getDescribe() {
+        return describe;
+    }
+
+    /**
+     * @return true once a field the describe result does not have has been asked for, as the type may have changed
+     *         since it was described
+     */
+    public boolean isStale() {
+        return stale;
+    }
+
+    /**
+     * @return the value to set on a {@link com.sforce.soap.partner.sobject.SObject}
+     * @throws IllegalArgumentException if the type has no such field or the value does not fit the field
+     */
+    public Object toSoapValue(String field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        FieldCodec codec = getCodec(field);
+        try {
+            return codec.toSoap(value);
+        } catch (RuntimeException e) {
+            throw invalid(codec, value, e);
+        }
+    }
+
+    /**
+     * @return the text to set on a {@link com.sforce.async.SObject}
+     * @throws IllegalArgumentException if the type has no such field or the value does not fit the field
+     */
+    public String toBulkValue(String field, Object value) {
+        if (value == null) {
+            return null;
+        }
+        FieldCodec codec = getCodec(field);
+        try {
+            return codec.toBulk(value);
+        } catch (RuntimeException e) {
+            throw invalid(codec, value, e);
+        }
+    }
+
+    private FieldCodec getCodec(String field) {
+        FieldCodec codec = fields.get(field.toLowerCase(Locale.ENGLISH));
+        if (codec == null) {
+            if (field.indexOf('.') > 0) {
+                return new FieldCodec(field, "relationship");
+            }
+            stale = true;
+            throw new IllegalArgumentException("No such field " + type + "." + field);
+        }
+        return codec;
+    }
+
+    private IllegalArgumentException invalid(FieldCodec codec, Object value, RuntimeException cause) {
+        return new IllegalArgumentException("Invalid value for " + type + "." + codec.name + " of type " + codec.type +
+                ": " + value + " (" + value.getClass().getName() + ")", cause);
+    }
+
+    private static FieldCodec codecFor(Field field) {
+        String name = field.getName();
+        // generated names of types that are java keywords start with an underscore
+        String type = field.getType() != null ? field.getType().name().replaceFirst("^_", "") : "unknown";
+        if (field.getType() == null) {
+            return new FieldCodec(name, type);
+        }
+        switch (field.getType()) {
+            case _boolean:
+                return new BooleanCodec(name, type);
+            case _int:
+                return new IntCodec(name, type);
+            case _double:
+            case currency:
+            case percent:
+                return new DoubleCodec(name, type);
+            case date:
+                return new DateFieldCodec(name, type);
+            case datetime:
+                return new DateTimeCodec(name, type);
+            case multipicklist:
+                return new TextCodec(name, type, ";");
+            case string:
+            case picklist:
+            case combobox:
+            case reference:
+            case textarea:
+            case phone:
+            case id:
+            case url:
+            case email:
+            case encryptedstring:
+                return new TextCodec(name, type, null);
+            default:
+                return new FieldCodec(name, type);
+        }
+    }
+
+    /**
+     * Sends values as they are.
+     */
+    private static class FieldCodec {
+        protected final String name;
+        protected final String type;
+
+        FieldCodec(String name, String type) {
+            this.name = name;
+            this.type = type;
+        }
+
+        Object toSoap(Object value) {
+            return value;
+        }
+
+        String toBulk(Object value) {
+            Object soap = toSoap(value);
+            if (soap instanceof Calendar || soap instanceof Date) {
+                return CALENDAR_CODEC.getValueAsString(soap);
+            }
+            return soap.toString();
+        }
+    }
+
+    private static class TextCodec extends FieldCodec {
+        private final String separator;
+
+        TextCodec(String name, String type, String separator) {
+            super(name, type);
+            this.separator = separator;
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof String) {
+                return value;
+            }
+            if (value instanceof CharSequence || value instanceof Number || value instanceof Boolean ||
+                    value instanceof Character || value instanceof Enum) {
+                return value.toString();
+            }
+            if (separator != null && value instanceof Collection) {
+                StringBuilder joined = new StringBuilder();
+                for (Iterator<?> i = ((Collection<?>) value).iterator(); i.hasNext(); ) {
+                    joined.append(i.next());
+                    if (i.hasNext()) {
+                        joined.append(separator);
+                    }
+                }
+                return joined.toString();
+            }
+            throw new IllegalArgumentException("Not a text value");
+        }
+    }
+
+    private static class BooleanCodec extends FieldCodec {
+        BooleanCodec(String name, String type) {
+            super(name, type);
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof Boolean) {
+                return value;
+            }
+            String text = value.toString().trim();
+            if ("true".equalsIgnoreCase(text)) {
+                return Boolean.TRUE;
+            }
+            if ("false".equalsIgnoreCase(text)) {
+                return Boolean.FALSE;
+            }
+            throw new IllegalArgumentException("Not a boolean");
+        }
+    }
+
+    private static class IntCodec extends FieldCodec {
+        IntCodec(String name, String type) {
+            super(name, type);
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof Integer) {
+                return value;
+            }
+            if (value instanceof Short || value instanceof Byte) {
+                return ((Number) value).intValue();
+            }
+            BigDecimal number;
+            if (value instanceof Number) {
+                number = new BigDecimal(value.toString());
+            } else {
+                number = new BigDecimal(value.toString().trim());
+            }
+            // throws if the value has a fraction or does not fit an int
+            return number.intValueExact();
+        }
+    }
+
+    private static class DoubleCodec extends FieldCodec {
+        DoubleCodec(String name, String type) {
+            super(name, type);
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof Double) {
+                return value;
+            }
+            if (value instanceof Number) {
+                return ((Number) value).doubleValue();
+            }
+            return Double.valueOf(value.toString().trim());
+        }
+
+        @Override
+        String toBulk(Object value) {
+            if (value instanceof BigDecimal || value instanceof BigInteger || value instanceof Long ||
+                    value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                return value.toString();
+            }
+            double number = (Double) toSoap(value);
+            if (Double.isNaN(number) || Double.isInfinite(number)) {
+                throw new IllegalArgumentException("Not a finite number");
+            }
+            return BigDecimal.valueOf(number).toPlainString();
+        }
+    }
+
+    /**
+     * Dates given as text are read as yyyy-MM-dd and sent as midnight GMT, so that the day does not depend on the
+     * time zone of the connector.
+     */
+    private static class DateFieldCodec extends FieldCodec {
+        DateFieldCodec(String name, String type) {
+            super(name, type);
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof Calendar || value instanceof Date) {
+                return value;
+            }
+            return parse(value.toString().trim());
+        }
+
+        @Override
+        String toBulk(Object value) {
+            if (value instanceof Calendar || value instanceof Date) {
+                return DATE_CODEC.getValueAsString(value);
+            }
+            return format(parse(value.toString().trim()));
+        }
+
+        private static Calendar parse(String text) {
+            if (text.length() != 10 || text.charAt(4) != '-' || text.charAt(7) != '-') {
+                throw new IllegalArgumentException("Not a yyyy-MM-dd date");
+            }
+            int year = Integer.parseInt(text.substring(0, 4));
+            int month = Integer.parseInt(text.substring(5, 7));
+            int day = Integer.parseInt(text.substring(8, 10));
+            GregorianCalendar calendar = new GregorianCalendar(GMT, Locale.ENGLISH);
+            calendar.setLenient(false);
+            calendar.clear();
+            calendar.set(year, month - 1, day);
+            // non lenient calendars only validate the fields when computing the time
+            calendar.getTimeInMillis();
+            return calendar;
+        }
+
+        private static String format(Calendar date) {
+            return String.format(Locale.ENGLISH, "%04d-%02d-%02d", date.get(Calendar.YEAR),
+                    date.get(Calendar.MONTH) + 1, date.get(Calendar.DAY_OF_MONTH));
+        }
+    }
+
+    private static class DateTimeCodec extends FieldCodec {
+        DateTimeCodec(String name, String type) {
+            super(name, type);
+        }
+
+        @Override
+        Object toSoap(Object value) {
+            if (value instanceof Calendar || value instanceof Date) {
+                return value;
+            }
+            return CALENDAR_CODEC.deserialize(value.toString().trim());
+        }
+    }
+}
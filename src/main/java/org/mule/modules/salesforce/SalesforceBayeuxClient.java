@@ -37,9 +37,13 @@ public class SalesforceBayeuxClient extends BayeuxClient {
     protected static final String LOCALEINFO_COOKIE = "com.salesforce.LocaleInfo";
     protected static final String SESSIONID_COOKIE = "sid";
     protected static final String LANGUAGE_COOKIE = "language";
+    protected static final String API_VERSION = "26.0";
+    // events can only be replayed from version 37.0 of the streaming API
+    protected static final String REPLAY_API_VERSION = "37.0";
     protected Map<String, org.cometd.bayeux.client.ClientSessionChannel.MessageListener> subscriptions;
     protected Map<String, org.cometd.bayeux.client.ClientSessionChannel.MessageListener> currentSubscriptions;
     protected BaseSalesforceConnector salesforceConnector;
+    protected ReplayIdStore replayIdStore;
     private boolean needToResubscribe = false;
 
     private static Map<String, Object> createLongPollingOptions() {
@@ -54,10 +58,15 @@ public class SalesforceBayeuxClient extends BayeuxClient {
      * @param salesforceConnector Salesforce connection
      */
     public SalesforceBayeuxClient(BaseSalesforceConnector salesforceConnector) throws MalformedURLException {
-        super("https://" + (new URL(salesforceConnector.getConnection().getConfig().getServiceEndpoint())).getHost() + "/cometd/26.0",
+        super("https://" + (new URL(salesforceConnector.getConnection().getConfig().getServiceEndpoint())).getHost() + "/cometd/" +
+                (salesforceConnector.isReplayingTopicEvents() ? REPLAY_API_VERSION : API_VERSION),
                 SalesforceLongPollingTransport.create(salesforceConnector, LONG_POLLING_OPTIONS));
 
         this.salesforceConnector = salesforceConnector;
+        if (salesforceConnector.isReplayingTopicEvents()) {
+            this.replayIdStore = salesforceConnector.getReplayIdStore();
+            addExtension(new SalesforceReplayExtension(replayIdStore));
+        }
         this.subscriptions = Collections.synchronizedMap(new HashMap<String, ClientSessionChannel.MessageListener>());
         this.currentSubscriptions = Collections.synchronizedMap(new HashMap<String, ClientSessionChannel.MessageListener>());
         setCookies();
@@ -136,8 +145,21 @@ public class SalesforceBayeuxClient extends BayeuxClient {
         super.handshake(HANDSHAKE_TIMEOUT);
     }
 
+    @Override
+    public void disconnect() {
+        flushReplayIds();
+        super.disconnect();
+    }
+
+    private void flushReplayIds() {
+        if (replayIdStore != null) {
+            replayIdStore.flush();
+        }
+    }
+
     public void unsubscribe(String channel) {
         getChannel(channel).unsubscribe();
+        flushReplayIds();
 
         this.subscriptions.remove(channel);
         this.currentSubscriptions.remove(channel);
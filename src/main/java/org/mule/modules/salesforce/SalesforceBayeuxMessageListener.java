@@ -16,54 +16,127 @@ import org.cometd.bayeux.client.ClientSessionChannel;
 import org.cometd.common.HashMapMessage;
 import org.mule.api.callback.SourceCallback;
 
+import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
 
-public class SalesforceBayeuxMessageListener implements ClientSessionChannel.MessageListener {
+public class SalesforceBayeuxMessageListener implements ClientSessionChannel.MessageListener, StreamingEventDispatcher.Handler {
     private static final Logger LOGGER = Logger.getLogger(SalesforceBayeuxMessageListener.class);
     private final SourceCallback callback;
+    private final ReplayIdStore replayIdStore;
+    private final StreamingEventDispatcher dispatcher;
 
     public SalesforceBayeuxMessageListener(final SourceCallback callback) {
+        this(callback, null);
+    }
+
+    /**
+     * @param replayIdStore records the events processed and drops those already processed, null not to
+     */
+    public SalesforceBayeuxMessageListener(final SourceCallback callback, final ReplayIdStore replayIdStore) {
+        this(callback, replayIdStore, null);
+    }
+
+    /**
+     * @param dispatcher processes the events on its workers, null to process them on the thread receiving them
+     */
+    public SalesforceBayeuxMessageListener(final SourceCallback callback, final ReplayIdStore replayIdStore,
+                                           final StreamingEventDispatcher dispatcher) {
         this.callback = callback;
+        this.replayIdStore = replayIdStore;
+        this.dispatcher = dispatcher;
     }
 
     @Override
     public void onMessage(ClientSessionChannel channel, Message message) {
         try {
-            if (message instanceof HashMapMessage) {
-                HashMapMessage hashMapMessage = (HashMapMessage) message;
-                Map<String, Object> inboundProperties = new HashMap<String, Object>();
-                if (!hashMapMessage.containsKey("channel")) {
-                    LOGGER.error("The event does not contain the channel");
-                } else {
-                    inboundProperties.put("channel", hashMapMessage.get("channel"));
-                }
-                Map data;
-                if (!hashMapMessage.containsKey("data")) {
-                    LOGGER.error("The event does not contain any data?");
-                } else {
-                    data = (HashMap) hashMapMessage.get("data");
-                    Map sObject = (Map) data.get("sobject");
-                    Map event = (Map) data.get("event");
-                    if (sObject == null) {
-                        LOGGER.error("The data of the event does not contain an SObject");
-                    } else {
-                        if (event == null) {
-                            LOGGER.error("The data of the event does not contain event information");
-                        } else {
-                            for (Map.Entry entry : (Set<Map.Entry>) event.entrySet()) {
-                                inboundProperties.put((String) entry.getKey(), entry.getValue());
-                            }
-                            callback.process(sObject, inboundProperties);
-                        }
-                    }
-                }
+            Event event = toEvent(message);
+            if (event == null) {
+                return;
+            }
+            if (dispatcher != null) {
+                dispatcher.dispatch(message.getChannel(), event, this);
             } else {
-                callback.process(message.getData());
+                handle(message.getChannel(), event);
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LOGGER.error("Interrupted while queuing event of " + message.getChannel(), e);
         } catch (Exception e) {
             LOGGER.error(e);
         }
     }
+
+    /**
+     * @return the event to process, null if the message is not a valid event
+     */
+    private Event toEvent(Message message) {
+        if (!(message instanceof HashMapMessage)) {
+            return new Event(message.getData(), null, null);
+        }
+        HashMapMessage hashMapMessage = (HashMapMessage) message;
+        Map<String, Object> inboundProperties = new HashMap<String, Object>();
+        if (!hashMapMessage.containsKey("channel")) {
+            LOGGER.error("The event does not contain the channel");
+        } else {
+            inboundProperties.put("channel", hashMapMessage.get("channel"));
+        }
+        if (!hashMapMessage.containsKey("data")) {
+            LOGGER.error("The event does not contain any data?");
+            return null;
+        }
+        Map data = (HashMap) hashMapMessage.get("data");
+        Map sObject = (Map) data.get("sobject");
+        Map event = (Map) data.get("event");
+        if (sObject == null) {
+            LOGGER.error("The data of the event does not contain an SObject");
+            return null;
+        }
+        if (event == null) {
+            LOGGER.error("The data of the event does not contain event information");
+            return null;
+        }
+        for (Map.Entry entry : (Set<Map.Entry>) event.entrySet()) {
+            inboundProperties.put((String) entry.getKey(), entry.getValue());
+        }
+        Long replayId = replayIdStore != null && event.get("replayId") instanceof Number ?
+                ((Number) event.get("replayId")).longValue() : null;
+        return new Event(sObject, inboundProperties, replayId);
+    }
+
+    @Override
+    public void handle(String channel, Serializable serializable) throws Exception {
+        Event event = (Event) serializable;
+        if (event.inboundProperties == null) {
+            callback.process(event.payload);
+            return;
+        }
+        if (event.replayId != null && replayIdStore.isDuplicate(channel, event.replayId)) {
+            LOGGER.debug("Dropping event " + event.replayId + " of " + channel + ", already processed");
+            return;
+        }
+        callback.process(event.payload, event.inboundProperties);
+        if (event.replayId != null) {
+            replayIdStore.processed(channel, event.replayId);
+        }
+    }
+
+    /**
+     * An event as passed to the flow. Events can only be spilled by the dispatcher if their payload is serializable,
+     * which the maps parsed from the Bayeux messages are.
+     */
+    private static class Event implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        private final Object payload;
+        private final Map<String, Object> inboundProperties;
+        private final Long replayId;
+
+        Event(Object payload, Map<String, Object> inboundProperties, Long replayId) {
+            this.payload = payload;
+            this.inboundProperties = inboundProperties;
+            this.replayId = replayId;
+        }
+    }
 }
@@ -255,7 +255,14 @@ public class SalesforceConnector extends BaseSalesforceConnector {
      * @throws Exception
      */
     @Disconnect
-    public synchronized void destroySession() {
+    public void destroySession() {
+        releaseSharedResources();
+        synchronized (this) {
+            closeSession();
+        }
+    }
+
+    private void closeSession() {
         if (isInitializedBayeuxClient()) {
             if (getBayeuxClient().isConnected()) {
                 getBayeuxClient().disconnect();
@@ -325,6 +332,8 @@ public class SalesforceConnector extends BaseSalesforceConnector {
                     LOGGER.debug(new String(response));
                 }
             });
+            connectorConfig.setStreamResponseToMessageHandlers(true);
+            connectorConfig.setMaxMessageHandlerResponseSize(MAX_LOGGED_RESPONSE_SIZE);
         }
 
         try {
@@ -338,6 +347,11 @@ public class SalesforceConnector extends BaseSalesforceConnector {
             connection.getSessionHeader().setSessionId(sessionId);
             connection.getConfig().setSessionId(sessionId);
             connection.getConfig().setServiceEndpoint(serviceEndpoint);
+            try {
+                applyOrganizationPolicies(connection);
+            } catch (ConnectionException e) {
+                throw new org.mule.api.ConnectionException(ConnectionExceptionCode.UNKNOWN, null, e.getMessage(), e);
+            }
         }
         else {
             reconnect();
@@ -347,6 +361,7 @@ public class SalesforceConnector extends BaseSalesforceConnector {
             String restEndpoint = "https://" + (new URL(connectorConfig.getServiceEndpoint())).getHost() + "/services/async/26.0";
             connectorConfig.setRestEndpoint(restEndpoint);
             bulkConnection = new BulkConnection(connectorConfig);
+            setConnectionOptions(bulkConnection);
         } catch (AsyncApiException e) {
             throw new org.mule.api.ConnectionException(ConnectionExceptionCode.UNKNOWN, e.getExceptionCode().toString(), e.getMessage(), e);
         } catch (MalformedURLException e) {
@@ -376,6 +391,7 @@ public class SalesforceConnector extends BaseSalesforceConnector {
             connection.getSessionHeader().setSessionId(loginResult.getSessionId());
             connection.getConfig().setServiceEndpoint(loginResult.getServerUrl());
             connection.getConfig().setSessionId(loginResult.getSessionId());
+            applyOrganizationPolicies(connection);
         } catch (ConnectionException e) {
             if (e instanceof ApiFault) {
                 throw new org.mule.api.ConnectionException(ConnectionExceptionCode.UNKNOWN, ((ApiFault) e).getExceptionCode().name(), ((ApiFault) e).getExceptionMessage(), e);
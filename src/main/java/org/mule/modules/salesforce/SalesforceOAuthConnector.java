@@ -11,6 +11,7 @@
 package org.mule.modules.salesforce;
 
 import org.mule.api.annotations.Configurable;
+import org.mule.api.annotations.lifecycle.Stop;
 import org.mule.api.annotations.oauth.OAuth2;
 import org.mule.api.annotations.oauth.OAuthAccessToken;
 import org.mule.api.annotations.oauth.OAuthAuthorizationParameter;
@@ -98,6 +99,12 @@ public class SalesforceOAuthConnector extends BaseSalesforceConnector {
     @OAuthCallbackParameter(expression = "#[json:instance_url]")
     private String instanceId;
 
+    /**
+     * Identity URL of the user, as in https://login.salesforce.com/id/00Dx0000000BV7z/005x00000012Q9P
+     */
+    @OAuthCallbackParameter(expression = "#[json:id]")
+    private String userIdentity;
+
     @Override
     protected boolean isReadyToSubscribe() {
     	return this.accessToken != null;
@@ -121,6 +128,8 @@ public class SalesforceOAuthConnector extends BaseSalesforceConnector {
                     LOGGER.debug(new String(response));
                 }
             });
+            config.setStreamResponseToMessageHandlers(true);
+            config.setMaxMessageHandlerResponseSize(MAX_LOGGED_RESPONSE_SIZE);
         }
 
         config.setSessionId(accessToken);
@@ -133,15 +142,25 @@ public class SalesforceOAuthConnector extends BaseSalesforceConnector {
 
         this.partnerConnection = Connector.newConnection(config);
         setConnectionOptions(this.partnerConnection);
+        applyOrganizationPolicies(this.partnerConnection);
 
         String restEndpoint = "https://" + (new URL(instanceId)).getHost() + "/services/async/26.0";
         config.setRestEndpoint(restEndpoint);
 
         this.bulkConnection = new BulkConnection(config);
+        setConnectionOptions(this.bulkConnection);
         
         this.processSubscriptions();
     }
 
+    /**
+     * Saves the records waiting to be grouped and gives back what the connector shares with its other instances.
+     */
+    @Stop
+    public void stop() {
+        releaseSharedResources();
+    }
+
     public String getConsumerKey() {
         return consumerKey;
     }
@@ -188,4 +207,17 @@ public class SalesforceOAuthConnector extends BaseSalesforceConnector {
     public String getInstanceId() {
         return instanceId;
     }
+
+    public String getUserIdentity() {
+        return userIdentity;
+    }
+
+    public void setUserIdentity(String userIdentity) {
+        this.userIdentity = userIdentity;
+    }
+
+    @Override
+    protected String getConnectedUser() {
+        return this.userIdentity;
+    }
 }
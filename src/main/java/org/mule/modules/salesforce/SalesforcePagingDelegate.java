@@ -13,6 +13,11 @@ package org.mule.modules.salesforce;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.mule.api.MuleException;
 import org.mule.streaming.PagingDelegate;
@@ -22,36 +27,62 @@ import com.sforce.soap.partner.QueryResult;
 import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
 
+/**
+ * Pages through the results of a query using queryMore().
+ * <p/>
+ * When created with a prefetch depth greater than zero, the delegate fetches the following pages in the background
+ * while the current one is being consumed. At most <code>prefetchDepth</code> pages are kept in memory ahead of the
+ * consumer; the background fetch waits for the consumer when that limit is reached and is cancelled on {@link #close()}.
+ */
 public abstract class SalesforcePagingDelegate extends PagingDelegate<Map<String, Object>>
 {
     private String query;
     private String queryLocator = null;
     private QueryResult cachedQueryResult = null;
     private PartnerConnection connection;
+    private boolean done = false;
+
+    private final int prefetchDepth;
+    private final ExecutorService executorService;
+    private BlockingQueue<PrefetchedPage> prefetchedPages;
+    private Future<?> prefetchTask;
+    private volatile boolean closed = false;
     
     public SalesforcePagingDelegate(PartnerConnection connection, String query) {
+        this(connection, query, 0, null);
+    }
+
+    public SalesforcePagingDelegate(PartnerConnection connection, String query, int prefetchDepth, ExecutorService executorService) {
         this.connection = connection;
         this.query = query;
+        this.prefetchDepth = executorService != null ? prefetchDepth : 0;
+        this.executorService = executorService;
     }
     
     @Override
     public List<Map<String, Object>> getPage() {
-        
+        if (this.done) {
+            return null;
+        }
+
+        QueryResult queryResult;
         if (this.cachedQueryResult != null) {
-            List<Map<String, Object>> items = this.consume(this.cachedQueryResult);
+            queryResult = this.cachedQueryResult;
             this.cachedQueryResult = null;
-            
-            return items;
+        } else {
+            queryResult = getQueryResult();
         }
-        
-        QueryResult queryResult = getQueryResult();
             
         this.queryLocator = queryResult.isDone() ? null : queryResult.getQueryLocator();
+        if (this.queryLocator != null && this.prefetchDepth > 0 && this.prefetchTask == null) {
+            startPrefetch(this.queryLocator);
+        }
         
         try {
             return this.consume(queryResult);
         } finally {
             if (this.queryLocator == null) {
+                this.done = true;
                 try {
                     this.close();
                 } catch (MuleException e) {
@@ -62,12 +93,65 @@ public abstract class SalesforcePagingDelegate extends PagingDelegate<Map<String
     }
 
     private QueryResult getQueryResult() {
+        if (this.prefetchTask != null) {
+            return takePrefetchedPage();
+        }
         try {
             return this.queryLocator != null ? this.connection.queryMore(this.queryLocator) : this.doQuery(this.query); 
         } catch (ConnectionException e) {
             throw new RuntimeException(e);
         }
     }
+
+    private void startPrefetch(final String firstQueryLocator) {
+        final BlockingQueue<PrefetchedPage> pages = new ArrayBlockingQueue<PrefetchedPage>(this.prefetchDepth);
+        Runnable prefetch = new Runnable() {
+            @Override
+            public void run() {
+                String locator = firstQueryLocator;
+                try {
+                    while (locator != null && !closed) {
+                        QueryResult queryResult;
+                        try {
+                            queryResult = connection.queryMore(locator);
+                            locator = queryResult.isDone() ? null : queryResult.getQueryLocator();
+                        } catch (Throwable e) {
+                            // hand every failure to the consumer, otherwise it would wait for a page forever
+                            pages.put(new PrefetchedPage(null, e));
+                            return;
+                        }
+                        pages.put(new PrefetchedPage(queryResult, null));
+                    }
+                } catch (InterruptedException e) {
+                    // closed while waiting for the consumer
+                }
+            }
+        };
+        try {
+            this.prefetchTask = this.executorService.submit(prefetch);
+            this.prefetchedPages = pages;
+        } catch (RejectedExecutionException e) {
+            // the executor is saturated, keep fetching the pages on the consumer thread
+        }
+    }
+
+    private QueryResult takePrefetchedPage() {
+        PrefetchedPage page;
+        try {
+            page = this.prefetchedPages.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        if (page.exception instanceof RuntimeException) {
+            throw (RuntimeException) page.exception;
+        } else if (page.exception instanceof Error) {
+            throw (Error) page.exception;
+        } else if (page.exception != null) {
+            throw new RuntimeException(page.exception);
+        }
+        return page.queryResult;
+    }
     
     protected abstract QueryResult doQuery(String query) throws ConnectionException;
     
@@ -88,6 +172,12 @@ public abstract class SalesforcePagingDelegate extends PagingDelegate<Map<String
     @Override
     public void close() throws MuleException {
         this.cachedQueryResult = null;
+        if (this.prefetchTask != null) {
+            this.closed = true;
+            this.done = true;
+            this.prefetchTask.cancel(true);
+            this.prefetchedPages.clear();
+        }
     }
     
     @Override
@@ -99,6 +189,13 @@ public abstract class SalesforcePagingDelegate extends PagingDelegate<Map<String
         return this.cachedQueryResult.getSize();
     }
 
-}
-
+    private static class PrefetchedPage {
+        private final QueryResult queryResult;
+        private final Throwable exception;
 
+        PrefetchedPage(QueryResult queryResult, Throwable exception) {
+            this.queryResult = queryResult;
+            this.exception = exception;
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.cometd.bayeux.Channel;
+import org.cometd.bayeux.Message;
+import org.cometd.bayeux.client.ClientSession;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Asks Salesforce to replay the events of a channel published after the last one processed, as kept by a
+ * {@link ReplayIdStore}. The replay id is added to every subscription, so subscriptions made again after a
+ * reconnection or a new handshake resume where the previous one stopped.
+ */
+public class SalesforceReplayExtension implements ClientSession.Extension {
+    private static final String EXTENSION_NAME = "replay";
+
+    private final ReplayIdStore replayIdStore;
+
+    public SalesforceReplayExtension(ReplayIdStore replayIdStore) {
+        this.replayIdStore = replayIdStore;
+    }
+
+    @Override
+    public boolean rcv(ClientSession session, Message.Mutable message) {
+        return true;
+    }
+
+    @Override
+    public boolean rcvMeta(ClientSession session, Message.Mutable message) {
+        return true;
+    }
+
+    @Override
+    public boolean send(ClientSession session, Message.Mutable message) {
+        return true;
+    }
+
+    @Override
+    public boolean sendMeta(ClientSession session, Message.Mutable message) {
+        if (Channel.META_HANDSHAKE.equals(message.getChannel())) {
+            message.getExt(true).put(EXTENSION_NAME, Boolean.TRUE);
+        } else if (Channel.META_SUBSCRIBE.equals(message.getChannel())) {
+            String subscription = (String) message.get(Message.SUBSCRIPTION_FIELD);
+            if (subscription != null) {
+                Map<String, Object> replayIds = new HashMap<String, Object>();
+                replayIds.put(subscription, replayIdStore.getReplayId(subscription));
+                message.getExt(true).put(EXTENSION_NAME, replayIds);
+            }
+        }
+        return true;
+    }
+}
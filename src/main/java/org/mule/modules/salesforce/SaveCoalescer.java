@@ -0,0 +1,356 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.SaveResult;
+import com.sforce.soap.partner.sobject.SObject;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Groups single record creates and updates submitted at about the same time, from any number of threads, into
+ * calls of up to maxRecords records.
+ * <p/>
+ * Records of the same operation and type are held until maxRecords of them are waiting, in which case the thread
+ * submitting the last one makes the call, or until maxDelay milliseconds have passed since the first one, in which
+ * case the call is made on the executor. The call goes through the connection the first record was submitted with,
+ * so a coalescer must only be given connections of the same user. Every record gets its own {@link SaveResult}
+ * through the returned future; if the call fails the future of every record of the call fails with the same error.
+ * <p/>
+ * {@link #acquire} shares one coalescer between all the connections of a user, such as the pooled instances of a
+ * connector, so that their records are grouped together.
+ */
+public class SaveCoalescer {
+
+    /**
+     * Maximum number of records accepted by a single create() or update() call
+     */
+    public static final int MAX_RECORDS = 200;
+
+    /**
+     * Number of threads making the calls triggered by maxDelay for the coalescers returned by {@link #acquire}
+     */
+    private static final int SAVE_THREADS = 4;
+
+    private static final Map<String, SaveCoalescer> SHARED = new HashMap<String, SaveCoalescer>();
+
+    public enum Operation {
+        CREATE, UPDATE
+    }
+
+    private final int maxRecords;
+    private final long maxDelay;
+    private final Executor executor;
+    private final ExecutorService ownExecutor;
+    private final ScheduledExecutorService scheduler;
+    private final Map<Key, Batch> pending = new HashMap<Key, Batch>();
+    private boolean shutdown;
+
+    // guarded by SHARED
+    private String scope;
+    private int users;
+
+    /**
+     * @param maxRecords number of records that triggers a call, at most {@link #MAX_RECORDS}
+     * @param maxDelay   maximum time in milliseconds a record waits for others
+     * @param executor   makes the calls triggered by maxDelay
+     */
+    public SaveCoalescer(int maxRecords, long maxDelay, Executor executor) {
+        this(maxRecords, maxDelay, executor, null);
+    }
+
+    private SaveCoalescer(int maxRecords, long maxDelay, Executor executor, ExecutorService ownExecutor) {
+        this.maxRecords = Math.max(1, Math.min(maxRecords, MAX_RECORDS));
+        this.maxDelay = maxDelay;
+        this.executor = executor;
+        this.ownExecutor = ownExecutor;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(THREAD_FACTORY);
+    }
+
+    /**
+     * Returns the coalescer shared by the connections of the scope, creating it with the given settings if there is
+     * none yet. Every coalescer acquired must be given back with {@link #release(SaveCoalescer)}.
+     *
+     * @param scope identifies the user the records are saved as, such as organization id and username
+     */
+    public static SaveCoalescer acquire(String scope, int maxRecords, long maxDelay) {
+        synchronized (SHARED) {
+            SaveCoalescer coalescer = SHARED.get(scope);
+            if (coalescer == null) {
+                ThreadPoolExecutor saveExecutor = new ThreadPoolExecutor(SAVE_THREADS, SAVE_THREADS, 60L, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(), THREAD_FACTORY);
+                saveExecutor.allowCoreThreadTimeOut(true);
+                coalescer = new SaveCoalescer(maxRecords, maxDelay, saveExecutor, saveExecutor);
+                coalescer.scope = scope;
+                SHARED.put(scope, coalescer);
+            }
+            coalescer.users++;
+            return coalescer;
+        }
+    }
+
+    /**
+     * Gives back a coalescer returned by {@link #acquire}, in the calling thread saving the records waiting, which
+     * may have been submitted through a connection about to be closed. The last user of the coalescer shuts it down.
+     */
+    public static void release(SaveCoalescer coalescer) {
+        boolean last;
+        synchronized (SHARED) {
+            last = --coalescer.users == 0;
+            if (last) {
+                SHARED.remove(coalescer.scope);
+            }
+        }
+        if (last) {
+            coalescer.shutdown();
+        } else {
+            coalescer.flush();
+        }
+    }
+
+    /**
+     * @return the result of the record, once the call it is grouped in has been made
+     */
+    public Future<SaveResult> submit(PartnerConnection connection, Operation operation, SObject object) {
+        Key key = new Key(operation, object.getType());
+        PendingSave save = new PendingSave();
+        Batch full = null;
+        synchronized (this) {
+            if (shutdown) {
+                throw new IllegalStateException("SaveCoalescer has been shut down");
+            }
+            Batch batch = pending.get(key);
+            if (batch == null) {
+                batch = new Batch(key, connection);
+                pending.put(key, batch);
+                if (maxRecords > 1) {
+                    batch.timer = schedule(batch);
+                }
+            }
+            batch.objects.add(object);
+            batch.saves.add(save);
+            if (batch.objects.size() >= maxRecords) {
+                pending.remove(key);
+                if (batch.timer != null) {
+                    batch.timer.cancel(false);
+                }
+                full = batch;
+            }
+        }
+        if (full != null) {
+            full.save();
+        }
+        return save;
+    }
+
+    /**
+     * Makes the calls of all the records waiting, in the calling thread.
+     */
+    public void flush() {
+        List<Batch> batches;
+        synchronized (this) {
+            batches = new ArrayList<Batch>(pending.values());
+            pending.clear();
+        }
+        for (Batch batch : batches) {
+            if (batch.timer != null) {
+                batch.timer.cancel(false);
+            }
+            batch.save();
+        }
+    }
+
+    /**
+     * Makes the calls of the records waiting and stops accepting new ones.
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        flush();
+        scheduler.shutdown();
+        if (ownExecutor != null) {
+            ownExecutor.shutdown();
+        }
+    }
+
+    private ScheduledFuture<?> schedule(final Batch batch) {
+        return scheduler.schedule(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (SaveCoalescer.this) {
+                    if (pending.get(batch.key) != batch) {
+                        return;
+                    }
+                    pending.remove(batch.key);
+                }
+                execute(batch);
+            }
+        }, maxDelay, TimeUnit.MILLISECONDS);
+    }
+
+    private void execute(final Batch batch) {
+        try {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    batch.save();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            batch.fail(e);
+        }
+    }
+
+    private static final ThreadFactory THREAD_FACTORY = new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable, "salesforce-save-coalescer");
+            thread.setDaemon(true);
+            return thread;
+        }
+    };
+
+    private static class Key {
+        private final Operation operation;
+        private final String type;
+
+        Key(Operation operation, String type) {
+            this.operation = operation;
+            this.type = type;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return operation == key.operation &&
+                    (type == null ? key.type == null : type.equals(key.type));
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * operation.hashCode() + (type != null ? type.hashCode() : 0);
+        }
+    }
+
+    private static class Batch {
+        private final Key key;
+        private final PartnerConnection connection;
+        private final List<SObject> objects = new ArrayList<SObject>();
+        private final List<PendingSave> saves = new ArrayList<PendingSave>();
+        private ScheduledFuture<?> timer;
+
+        Batch(Key key, PartnerConnection connection) {
+            this.key = key;
+            this.connection = connection;
+        }
+
+        void save() {
+            SaveResult[] results;
+            try {
+                SObject[] sObjects = objects.toArray(new SObject[objects.size()]);
+                results = key.operation == Operation.CREATE ? connection.create(sObjects) : connection.update(sObjects);
+            } catch (Throwable e) {
+                fail(e);
+                return;
+            }
+            for (int i = 0; i < saves.size(); i++) {
+                if (results != null && i < results.length) {
+                    saves.get(i).complete(results[i]);
+                } else {
+                    saves.get(i).fail(new IllegalStateException("No result returned for record " + i + " of the call"));
+                }
+            }
+        }
+
+        void fail(Throwable e) {
+            for (PendingSave save : saves) {
+                save.fail(e);
+            }
+        }
+    }
+
+    private static class PendingSave implements Future<SaveResult> {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile SaveResult result;
+        private volatile Throwable failure;
+
+        void complete(SaveResult result) {
+            this.result = result;
+            done.countDown();
+        }
+
+        void fail(Throwable failure) {
+            this.failure = failure;
+            done.countDown();
+        }
+
+        /**
+         * The record is saved with the others of its call, it cannot be cancelled.
+         */
+        @Override
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return false;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return false;
+        }
+
+        @Override
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        @Override
+        public SaveResult get() throws InterruptedException, ExecutionException {
+            done.await();
+            return getResult();
+        }
+
+        @Override
+        public SaveResult get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (!done.await(timeout, unit)) {
+                throw new TimeoutException();
+            }
+            return getResult();
+        }
+
+        private SaveResult getResult() throws ExecutionException {
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return result;
+        }
+    }
+}
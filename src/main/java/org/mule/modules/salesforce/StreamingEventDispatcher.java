@@ -0,0 +1,383 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.apache.log4j.Logger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands streaming events over from the thread receiving them to worker threads, so that slow flows do not hold the
+ * long polling of the Bayeux client.
+ * <p/>
+ * Every channel is given to one of the workers, which processes the events of its channels one at a time in the
+ * order they were received. Each worker queues at most capacity events in memory; what happens to events received
+ * while its queue is full is decided by the {@link EventOverflowPolicy}. Spilled events are written to a file of
+ * their own per worker and are processed, still in order, once the events queued before them have been.
+ */
+public class StreamingEventDispatcher {
+    private static final Logger LOGGER = Logger.getLogger(StreamingEventDispatcher.class);
+
+    /**
+     * Processes the events of a channel
+     */
+    public interface Handler {
+        void handle(String channel, Serializable event) throws Exception;
+    }
+
+    private final Worker[] workers;
+    private final int capacity;
+    private final EventOverflowPolicy overflowPolicy;
+    private final File spoolDirectory;
+    private final Map<String, Handler> handlers = new ConcurrentHashMap<String, Handler>();
+
+    private final AtomicLong dispatchedCount = new AtomicLong();
+    private final AtomicLong processedCount = new AtomicLong();
+    private final AtomicLong failedCount = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private final AtomicLong spilledCount = new AtomicLong();
+    private final AtomicInteger queueDepth = new AtomicInteger();
+    private final AtomicInteger maxQueueDepth = new AtomicInteger();
+    private final AtomicLong totalLatencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * @param workers        number of threads processing events
+     * @param capacity       number of events each worker queues in memory
+     * @param overflowPolicy what to do with events received while a queue is full
+     * @param spoolDirectory where spilled events are written, null for the default temporary directory
+     */
+    public StreamingEventDispatcher(int workers, int capacity, EventOverflowPolicy overflowPolicy, File spoolDirectory) {
+        this.capacity = Math.max(1, capacity);
+        this.overflowPolicy = overflowPolicy != null ? overflowPolicy : EventOverflowPolicy.BLOCK;
+        this.spoolDirectory = spoolDirectory;
+        this.workers = new Worker[Math.max(1, workers)];
+        for (int i = 0; i < this.workers.length; i++) {
+            this.workers[i] = new Worker("salesforce-event-dispatcher-" + (i + 1));
+            this.workers[i].thread.start();
+        }
+    }
+
+    /**
+     * Queues the event for the worker of its channel.
+     *
+     * @throws InterruptedException if the thread is interrupted while waiting for room in the queue
+     */
+    public void dispatch(String channel, Serializable event, Handler handler) throws InterruptedException {
+        handlers.put(channel, handler);
+        dispatchedCount.incrementAndGet();
+        Worker worker = workers[(channel.hashCode() & Integer.MAX_VALUE) % workers.length];
+        worker.offer(new Entry(channel, event, handler, System.nanoTime()));
+    }
+
+    /**
+     * Stops the workers and deletes their spool files. Events still queued are not processed, and events dispatched
+     * afterwards are dropped.
+     */
+    public void shutdown() {
+        for (Worker worker : workers) {
+            worker.stop();
+        }
+    }
+
+    /**
+     * @return events dispatched, processed, failed, dropped and spilled, events queued and their peak, average and
+     *         longest time in milliseconds from the reception of an event to the end of its processing
+     */
+    public Map<String, Number> getStatistics() {
+        Map<String, Number> statistics = new LinkedHashMap<String, Number>();
+        long processed = getProcessedCount() + getFailedCount();
+        statistics.put("dispatched", getDispatchedCount());
+        statistics.put("processed", getProcessedCount());
+        statistics.put("failed", getFailedCount());
+        statistics.put("dropped", getDroppedCount());
+        statistics.put("spilled", getSpilledCount());
+        statistics.put("queueDepth", getQueueDepth());
+        statistics.put("maxQueueDepth", getMaxQueueDepth());
+        statistics.put("averageLatencyMillis", processed > 0 ? totalLatencyNanos.get() / processed / 1000000 : 0L);
+        statistics.put("maxLatencyMillis", getMaxLatencyMillis());
+        return statistics;
+    }
+
+    public long getDispatchedCount() {
+        return dispatchedCount.get();
+    }
+
+    public long getProcessedCount() {
+        return processedCount.get();
+    }
+
+    public long getFailedCount() {
+        return failedCount.get();
+    }
+
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    public long getSpilledCount() {
+        return spilledCount.get();
+    }
+
+    /**
+     * @return the number of events queued in memory or spilled, not processed yet
+     */
+    public int getQueueDepth() {
+        return queueDepth.get();
+    }
+
+    public int getMaxQueueDepth() {
+        return maxQueueDepth.get();
+    }
+
+    public long getMaxLatencyMillis() {
+        return maxLatencyNanos.get() / 1000000;
+    }
+
+    private void queued() {
+        int depth = queueDepth.incrementAndGet();
+        for (int max = maxQueueDepth.get(); depth > max && !maxQueueDepth.compareAndSet(max, depth); ) {
+            max = maxQueueDepth.get();
+        }
+    }
+
+    private void process(Entry entry) {
+        try {
+            entry.handler.handle(entry.channel, entry.event);
+            processedCount.incrementAndGet();
+        } catch (Exception e) {
+            failedCount.incrementAndGet();
+            LOGGER.error("Failed to process event of " + entry.channel, e);
+        }
+        long latency = System.nanoTime() - entry.receivedAt;
+        totalLatencyNanos.addAndGet(latency);
+        for (long max = maxLatencyNanos.get(); latency > max && !maxLatencyNanos.compareAndSet(max, latency); ) {
+            max = maxLatencyNanos.get();
+        }
+    }
+
+    private static class Entry {
+        private final String channel;
+        private final Serializable event;
+        private final Handler handler;
+        private final long receivedAt;
+
+        Entry(String channel, Serializable event, Handler handler, long receivedAt) {
+            this.channel = channel;
+            this.event = event;
+            this.handler = handler;
+            this.receivedAt = receivedAt;
+        }
+    }
+
+    private class Worker implements Runnable {
+        private final Thread thread;
+        private final ArrayDeque<Entry> queue = new ArrayDeque<Entry>();
+        private boolean stopped;
+
+        // events spilled are always newer than those in the queue
+        private File spool;
+        private DataOutputStream spoolOutput;
+        private DataInputStream spoolInput;
+        private int spooled;
+
+        Worker(String name) {
+            thread = new Thread(this, name);
+            thread.setDaemon(true);
+        }
+
+        synchronized void offer(Entry entry) throws InterruptedException {
+            if (stopped) {
+                droppedCount.incrementAndGet();
+                LOGGER.warn("Event dispatcher is shut down, dropped event of " + entry.channel);
+                return;
+            }
+            if (spooled == 0 && queue.size() < capacity) {
+                add(entry);
+                return;
+            }
+            switch (overflowPolicy) {
+                case DROP_OLDEST:
+                    if (queue.poll() != null) {
+                        queueDepth.decrementAndGet();
+                        droppedCount.incrementAndGet();
+                        LOGGER.warn("Event queue of " + thread.getName() + " is full, dropped its oldest event");
+                    }
+                    add(entry);
+                    return;
+                case SPILL:
+                    if (spill(entry)) {
+                        return;
+                    }
+                    // events that cannot be spilled wait until the events spilled before them are queued
+                default:
+                    while (!stopped && (spooled > 0 || queue.size() >= capacity)) {
+                        wait();
+                    }
+                    if (stopped) {
+                        droppedCount.incrementAndGet();
+                        return;
+                    }
+                    add(entry);
+            }
+        }
+
+        private void add(Entry entry) {
+            queue.add(entry);
+            queued();
+            notifyAll();
+        }
+
+        private boolean spill(Entry entry) {
+            try {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream out = new ObjectOutputStream(bytes);
+                out.writeUTF(entry.channel);
+                out.writeLong(entry.receivedAt);
+                out.writeObject(entry.event);
+                out.close();
+
+                if (spoolOutput == null) {
+                    spool = File.createTempFile("salesforce-events", ".spool", spoolDirectory);
+                    spoolOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(spool)));
+                }
+                spoolOutput.writeInt(bytes.size());
+                bytes.writeTo(spoolOutput);
+            } catch (IOException e) {
+                LOGGER.warn("Failed to spill event of " + entry.channel + ", waiting for room in the queue", e);
+                return false;
+            }
+            spooled++;
+            spilledCount.incrementAndGet();
+            queued();
+            notifyAll();
+            return true;
+        }
+
+        /**
+         * Moves spilled events back to the queue, up to its capacity.
+         */
+        private void unspill() throws IOException, ClassNotFoundException {
+            if (spoolInput == null) {
+                spoolOutput.flush();
+                spoolInput = new DataInputStream(new BufferedInputStream(new FileInputStream(spool)));
+            } else {
+                spoolOutput.flush();
+            }
+            while (spooled > 0 && queue.size() < capacity) {
+                byte[] bytes = new byte[spoolInput.readInt()];
+                spoolInput.readFully(bytes);
+                ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                String channel = in.readUTF();
+                long receivedAt = in.readLong();
+                Serializable event = (Serializable) in.readObject();
+                spooled--;
+                Handler handler = handlers.get(channel);
+                if (handler != null) {
+                    queue.add(new Entry(channel, event, handler, receivedAt));
+                } else {
+                    queueDepth.decrementAndGet();
+                }
+            }
+            if (spooled == 0) {
+                deleteSpool();
+            }
+        }
+
+        private void deleteSpool() {
+            closeQuietly(spoolOutput);
+            closeQuietly(spoolInput);
+            spoolOutput = null;
+            spoolInput = null;
+            spooled = 0;
+            if (spool != null && !spool.delete()) {
+                spool.deleteOnExit();
+            }
+            spool = null;
+        }
+
+        private void closeQuietly(Closeable closeable) {
+            if (closeable != null) {
+                try {
+                    closeable.close();
+                } catch (IOException e) {
+                    // nothing left to read from it
+                }
+            }
+        }
+
+        /**
+         * Discards the events queued and the spool file. The spool is only used while holding the monitor of the
+         * worker, so it can be deleted here even if the worker is busy processing an event.
+         */
+        synchronized void stop() {
+            stopped = true;
+            queueDepth.addAndGet(-(queue.size() + spooled));
+            queue.clear();
+            deleteSpool();
+            thread.interrupt();
+            notifyAll();
+        }
+
+        @Override
+        public void run() {
+            while (true) {
+                Entry entry;
+                synchronized (this) {
+                    try {
+                        while (!stopped && queue.isEmpty() && spooled == 0) {
+                            wait();
+                        }
+                        if (stopped) {
+                            return;
+                        }
+                        if (queue.isEmpty()) {
+                            unspill();
+                        }
+                    } catch (InterruptedException e) {
+                        continue;
+                    } catch (Exception e) {
+                        LOGGER.error("Failed to read spilled events of " + thread.getName() + ", dropping them", e);
+                        queueDepth.addAndGet(-spooled);
+                        droppedCount.addAndGet(spooled);
+                        deleteSpool();
+                    }
+                    entry = queue.poll();
+                    if (entry == null) {
+                        continue;
+                    }
+                    queueDepth.decrementAndGet();
+                    notifyAll();
+                }
+                process(entry);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class BatchResultReaderTest {
+
+    private static final String NAMESPACE = "http://www.force.com/2009/06/asyncapi/dataload";
+
+    private static InputStream stream(String content) throws IOException {
+        return new ByteArrayInputStream(content.getBytes("UTF-8"));
+    }
+
+    @Test
+    public void testCsvResults() throws Exception {
+        BatchResultReader reader = new BatchResultReader(stream("\"Id\",\"Success\",\"Created\",\"Error\"\n" +
+                "\"001x1\",\"true\",\"true\",\"\"\n" +
+                "\"001x2\",\"true\",\"false\",\"\"\n" +
+                "\"\",\"false\",\"false\",\"REQUIRED_FIELD_MISSING:Required fields are missing: [Name]:Name --\"\n"));
+
+        Result created = reader.next();
+        assertEquals("001x1", created.getId());
+        assertTrue(created.isSuccess());
+        assertTrue(created.isCreated());
+        assertEquals(0, created.getErrors().length);
+
+        Result updated = reader.next();
+        assertEquals("001x2", updated.getId());
+        assertTrue(updated.isSuccess());
+        assertFalse(updated.isCreated());
+
+        Result failed = reader.next();
+        assertNull(failed.getId());
+        assertFalse(failed.isSuccess());
+        assertFalse(failed.isCreated());
+        assertEquals(1, failed.getErrors().length);
+        assertEquals(StatusCode.REQUIRED_FIELD_MISSING, failed.getErrors()[0].getStatusCode());
+        assertEquals("Required fields are missing: [Name]:Name --", failed.getErrors()[0].getMessage());
+
+        assertNull(reader.next());
+        assertNull(reader.next());
+        assertEquals(3, reader.getCount());
+        reader.close();
+    }
+
+    @Test
+    public void testCsvColumnsMappedByHeader() throws Exception {
+        BatchResultReader reader = new BatchResultReader(stream("Error,Success,Id\n" +
+                ",true,001x1\n" +
+                "DUPLICATE_VALUE:duplicate value found,false,001x2\n"));
+
+        Result first = reader.next();
+        assertEquals("001x1", first.getId());
+        assertTrue(first.isSuccess());
+        assertFalse(first.isCreated());
+        assertEquals(0, first.getErrors().length);
+
+        Result second = reader.next();
+        assertEquals("001x2", second.getId());
+        assertFalse(second.isSuccess());
+        assertEquals(StatusCode.DUPLICATE_VALUE, second.getErrors()[0].getStatusCode());
+        assertEquals("duplicate value found", second.getErrors()[0].getMessage());
+
+        assertNull(reader.next());
+        reader.close();
+    }
+
+    @Test
+    public void testCsvErrorWithoutStatusCode() throws Exception {
+        BatchResultReader reader = new BatchResultReader(stream("\"Id\",\"Success\",\"Created\",\"Error\"\n" +
+                "\"\",\"false\",\"false\",\"Unexpected error: try again\"\n"));
+
+        Error error = reader.next().getErrors()[0];
+        assertNull(error.getStatusCode());
+        assertEquals("Unexpected error: try again", error.getMessage());
+        reader.close();
+    }
+
+    @Test
+    public void testEmptyCsvResults() throws Exception {
+        BatchResultReader reader = new BatchResultReader(stream(""));
+        assertNull(reader.next());
+        assertEquals(0, reader.getCount());
+        reader.close();
+    }
+
+    @Test
+    public void testXmlResults() throws Exception {
+        BatchResultReader reader = new BatchResultReader(stream("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" +
+                "<results xmlns=\"" + NAMESPACE + "\">" +
+                "<result><id>001x1</id><success>true</success><created>true</created></result>" +
+                "<result><errors><fields>Name</fields><message>Required fields are missing: [Name]</message>" +
+                "<statusCode>REQUIRED_FIELD_MISSING</statusCode></errors><success>false</success>" +
+                "<created>false</created></result>" +
+                "</results>"));
+
+        Result created = reader.next();
+        assertEquals("001x1", created.getId());
+        assertTrue(created.isSuccess());
+        assertTrue(created.isCreated());
+        assertEquals(1, reader.getCount());
+
+        Result failed = reader.next();
+        assertFalse(failed.isSuccess());
+        assertEquals(1, failed.getErrors().length);
+        assertEquals(StatusCode.REQUIRED_FIELD_MISSING, failed.getErrors()[0].getStatusCode());
+        assertEquals("Required fields are missing: [Name]", failed.getErrors()[0].getMessage());
+        assertEquals("Name", failed.getErrors()[0].getFields()[0]);
+
+        assertNull(reader.next());
+        assertEquals(2, reader.getCount());
+        reader.close();
+    }
+
+    @Test
+    public void testXmlResultsReadOneAtATime() throws Exception {
+        final int total = 5000;
+        final int[] produced = new int[1];
+        InputStream results = new InputStream() {
+            private byte[] chunk = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?><results xmlns=\"" + NAMESPACE + "\">")
+                    .getBytes("UTF-8");
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                while (position == chunk.length) {
+                    if (produced[0] > total) {
+                        return -1;
+                    }
+                    chunk = (produced[0]++ < total ? "<result><id>001x" + produced[0] + "</id><success>true</success>" +
+                            "<created>true</created></result>" : "</results>").getBytes("UTF-8");
+                    position = 0;
+                }
+                return chunk[position++];
+            }
+        };
+        BatchResultReader reader = new BatchResultReader(results);
+        assertEquals("001x1", reader.next().getId());
+        // only what the parser buffers has been read ahead
+        assertTrue(produced[0] < total / 2);
+        for (int i = 2; i <= total; i++) {
+            assertEquals("001x" + i, reader.next().getId());
+        }
+        assertNull(reader.next());
+        assertEquals(total, reader.getCount());
+        reader.close();
+    }
+}
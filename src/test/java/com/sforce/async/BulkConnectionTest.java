@@ -0,0 +1,167 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.transport.HttpConnectionPool;
+import com.sforce.ws.transport.PooledHttpTransport;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class BulkConnectionTest {
+
+    private static final String NAMESPACE = "http://www.force.com/2009/06/asyncapi/dataload";
+    private static final int MAX_PER_ROUTE = 2;
+
+    private HttpServer server;
+    private HttpConnectionPool pool;
+    private BulkConnection connection;
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream request = exchange.getRequestBody();
+                while (request.read() != -1) {
+                    // the request is read before answering
+                }
+                String path = exchange.getRequestURI().getPath();
+                if (path.contains("missing")) {
+                    respond(exchange, 400, "<error xmlns=\"" + NAMESPACE + "\"><exceptionCode>InvalidJob</exceptionCode>" +
+                            "<exceptionMessage>Unable to find job</exceptionMessage></error>");
+                } else if (path.endsWith("/result")) {
+                    respond(exchange, 200, "<results xmlns=\"" + NAMESPACE + "\"><result><id>001x1</id>" +
+                            "<success>true</success><created>true</created></result><result><errors>" +
+                            "<message>duplicate value found</message><statusCode>DUPLICATE_VALUE</statusCode></errors>" +
+                            "<success>false</success><created>false</created></result></results>");
+                } else if (path.endsWith("/batch")) {
+                    respond(exchange, 201, "<batchInfo xmlns=\"" + NAMESPACE + "\"><id>751x</id><jobId>750x</jobId>" +
+                            "<state>Queued</state></batchInfo>");
+                } else if (path.contains("/batch/")) {
+                    respond(exchange, 200, "<batchInfo xmlns=\"" + NAMESPACE + "\"><id>751x</id><jobId>750x</jobId>" +
+                            "<state>Completed</state></batchInfo>");
+                } else {
+                    respond(exchange, 200, "<jobInfo xmlns=\"" + NAMESPACE + "\"><id>750x</id><state>Open</state></jobInfo>");
+                }
+            }
+        });
+        server.start();
+
+        pool = new HttpConnectionPool(MAX_PER_ROUTE);
+        pool.setLeaseTimeout(2000);
+        ConnectorConfig config = new ConnectorConfig();
+        config.setRestEndpoint("http://localhost:" + server.getAddress().getPort() + "/services/async/26.0");
+        config.setSessionId("00Dx");
+        config.setTransport(PooledHttpTransport.class);
+        config.setConnectionPool(pool);
+        connection = new BulkConnection(config);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = ("<?xml version=\"1.0\" encoding=\"UTF-8\"?>" + body).getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", "application/xml");
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    @Test
+    public void testGetJobStatusReleasesConnection() throws Exception {
+        for (int i = 0; i < MAX_PER_ROUTE * 3; i++) {
+            assertEquals(JobStateEnum.Open, connection.getJobStatus("750x").getState());
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testGetBatchInfoReleasesConnection() throws Exception {
+        for (int i = 0; i < MAX_PER_ROUTE * 3; i++) {
+            assertEquals(BatchStateEnum.Completed, connection.getBatchInfo("750x", "751x").getState());
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testCreateJobReleasesConnection() throws Exception {
+        for (int i = 0; i < MAX_PER_ROUTE * 3; i++) {
+            JobInfo job = new JobInfo();
+            job.setObject("Account");
+            job.setOperation(OperationEnum.insert);
+            assertEquals("750x", connection.createJob(job).getId());
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testErrorReleasesConnection() throws Exception {
+        for (int i = 0; i < MAX_PER_ROUTE * 3; i++) {
+            try {
+                connection.getJobStatus("missing");
+                fail("AsyncApiException should have been thrown");
+            } catch (AsyncApiException e) {
+                assertEquals(AsyncExceptionCode.InvalidJob, e.getExceptionCode());
+            }
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testGetBatchResultReader() throws Exception {
+        for (int i = 0; i < MAX_PER_ROUTE * 3; i++) {
+            BatchResultReader reader = connection.getBatchResultReader("750x", "751x");
+            try {
+                Result created = reader.next();
+                assertEquals("001x1", created.getId());
+                assertTrue(created.isSuccess());
+                assertTrue(created.isCreated());
+
+                Result failed = reader.next();
+                assertFalse(failed.isSuccess());
+                assertEquals(StatusCode.DUPLICATE_VALUE, failed.getErrors()[0].getStatusCode());
+                assertEquals("duplicate value found", failed.getErrors()[0].getMessage());
+
+                assertNull(reader.next());
+                assertEquals(2, reader.getCount());
+            } finally {
+                reader.close();
+            }
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testGetBatchResultReaderError() throws Exception {
+        try {
+            connection.getBatchResultReader("missing", "751x");
+            fail("AsyncApiException should have been thrown");
+        } catch (AsyncApiException e) {
+            assertEquals(AsyncExceptionCode.InvalidJob, e.getExceptionCode());
+        }
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * Copyright, 1999-2008, SALESFORCE.com All Rights Reserved Company Confidential
+ */
+package com.sforce.async;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class CSVRecordCursorTest {
+
+    /**
+     * Returns at most chunkSize characters per read, so that the cursor refills its buffer in the middle of
+     * a record.
+     */
+    private static class ChunkedReader extends Reader {
+        private final Reader input;
+        private final int chunkSize;
+
+        ChunkedReader(String content, int chunkSize) {
+            this.input = new StringReader(content);
+            this.chunkSize = chunkSize;
+        }
+
+        @Override
+        public int read(char[] cbuf, int off, int len) throws IOException {
+            return input.read(cbuf, off, Math.min(len, chunkSize));
+        }
+
+        @Override
+        public void close() throws IOException {
+            input.close();
+        }
+    }
+
+    private static CSVRecordCursor cursor(String content) throws IOException {
+        return new CSVRecordCursor(new ByteArrayInputStream(content.getBytes("UTF-8")));
+    }
+
+    private static void assertRecord(CSVRecordCursor cursor, String... values) throws IOException {
+        assertTrue(cursor.next());
+        assertEquals(values.length, cursor.getFieldCount());
+        for (int i = 0; i < values.length; i++) {
+            assertEquals("field " + i + " of record " + cursor.getRecordNumber(), values[i], cursor.getString(i));
+        }
+    }
+
+    @Test
+    public void testQuotedFieldsAcrossBufferBoundaries() throws Exception {
+        String content = "Id,Description\r\n" +
+                "001x1,\"Acme, \"\"Inc.\"\"\"\r\n" +
+                "\"001x2\",\"line 1\r\nline 2\nline 3\"\n" +
+                "001x3,\"\"\"\"\n";
+        // every chunk size puts a refill at a different offset: inside a quoted value, between an escaped
+        // quote pair, between \r and \n and right after a closing quote
+        for (int chunkSize = 1; chunkSize <= content.length(); chunkSize++) {
+            CSVRecordCursor cursor = new CSVRecordCursor(new ChunkedReader(content, chunkSize), ',');
+            assertRecord(cursor, "Id", "Description");
+            assertRecord(cursor, "001x1", "Acme, \"Inc.\"");
+            assertRecord(cursor, "001x2", "line 1\nline 2\nline 3");
+            assertRecord(cursor, "001x3", "\"");
+            assertFalse(cursor.next());
+            cursor.close();
+        }
+    }
+
+    @Test
+    public void testQuotedFieldLargerThanTheBuffer() throws Exception {
+        StringBuilder value = new StringBuilder();
+        for (int i = 0; i < 100000; i++) {
+            value.append(i % 1000 == 0 ? "\"\"" : "x");
+        }
+        CSVRecordCursor cursor = cursor("Id,Body\n001x1,\"" + value + "\"\n001x2,short\n");
+        assertRecord(cursor, "Id", "Body");
+        assertRecord(cursor, "001x1", value.toString().replace("\"\"", "\""));
+        assertRecord(cursor, "001x2", "short");
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testLineEndings() throws Exception {
+        for (String newline : new String[]{"\n", "\r\n", "\r"}) {
+            CSVRecordCursor cursor = cursor("Id,Name" + newline + "001x1,Acme" + newline + "001x2,\"Acme" + newline +
+                    "Corp\"" + newline + "001x3,Last");
+            assertRecord(cursor, "Id", "Name");
+            assertRecord(cursor, "001x1", "Acme");
+            // line breaks within a quoted value are read as \n whatever the stream uses
+            assertRecord(cursor, "001x2", "Acme\nCorp");
+            assertRecord(cursor, "001x3", "Last");
+            assertFalse(cursor.next());
+            assertEquals(4, cursor.getRecordNumber());
+        }
+    }
+
+    @Test
+    public void testMixedLineEndings() throws Exception {
+        CSVRecordCursor cursor = cursor("Id\r\n001x1\n001x2\r\n001x3\n");
+        assertRecord(cursor, "Id");
+        assertRecord(cursor, "001x1");
+        assertRecord(cursor, "001x2");
+        assertRecord(cursor, "001x3");
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testEmptyTrailingFields() throws Exception {
+        CSVRecordCursor cursor = cursor("Id,Name,Phone\n001x1,,\n001x2,Acme,\r\n001x3,\"\",\"\"\n001x4,");
+        assertRecord(cursor, "Id", "Name", "Phone");
+        assertRecord(cursor, "001x1", null, null);
+        assertTrue(cursor.isEmpty(2));
+        assertRecord(cursor, "001x2", "Acme", null);
+        assertRecord(cursor, "001x3", null, null);
+        assertEquals(0, cursor.getField(2).length());
+        assertRecord(cursor, "001x4", null);
+        assertFalse(cursor.next());
+    }
+
+    @Test
+    public void testShortRecord() throws Exception {
+        CSVRecordCursor cursor = cursor("Id,Name,Phone\n001x1\n");
+        assertTrue(cursor.next());
+        assertTrue(cursor.next());
+        assertEquals(1, cursor.getFieldCount());
+        assertNull(cursor.getString(2));
+        assertNull(cursor.getField(2));
+        assertTrue(cursor.isEmpty(2));
+    }
+
+    @Test
+    public void testSingleColumnNullRecords() throws Exception {
+        String content = "Name\nAcme\n\n\"\"\nGlobex\n";
+
+        // skipped by default, like CSVReader does
+        CSVRecordCursor cursor = cursor(content);
+        assertRecord(cursor, "Name");
+        assertRecord(cursor, "Acme");
+        assertRecord(cursor, "Globex");
+        assertFalse(cursor.next());
+
+        cursor = cursor(content);
+        cursor.setIgnoreBlankRecords(false);
+        assertRecord(cursor, "Name");
+        assertRecord(cursor, "Acme");
+        assertRecord(cursor, (String) null);
+        assertTrue(cursor.isEmpty(0));
+        assertFalse(cursor.fieldEquals(0, "Acme"));
+        assertTrue(cursor.fieldEquals(0, ""));
+        assertRecord(cursor, (String) null);
+        assertRecord(cursor, "Globex");
+        assertFalse(cursor.next());
+        assertEquals(5, cursor.getRecordNumber());
+    }
+
+    @Test
+    public void testProjection() throws Exception {
+        CSVRecordCursor cursor = cursor("Id,Name,Phone\n001x1,\"Acme, Inc.\",555\n001x2\n");
+        assertTrue(cursor.next());
+        cursor.setProjection(cursor.indexesOf("Phone", "Id"));
+        assertRecord(cursor, "555", "001x1");
+        assertTrue(cursor.next());
+        assertEquals("001x2", cursor.getString(1));
+        assertNull(cursor.getString(0));
+    }
+
+    @Test(expected = CSVReader.CSVParseException.class)
+    public void testUnclosedQuote() throws Exception {
+        CSVRecordCursor cursor = cursor("Id,Name\n001x1,\"Acme\n");
+        assertTrue(cursor.next());
+        cursor.next();
+    }
+
+    @Test(expected = CSVReader.CSVParseException.class)
+    public void testTextAfterClosingQuote() throws Exception {
+        CSVRecordCursor cursor = cursor("Id,Name\n001x1,\"Acme\"Inc\n");
+        assertTrue(cursor.next());
+        cursor.next();
+    }
+}
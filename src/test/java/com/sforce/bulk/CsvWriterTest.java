@@ -0,0 +1,104 @@
+package com.sforce.bulk;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringWriter;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class CsvWriterTest {
+
+    private static String writeWithWriter(String[]... records) {
+        StringWriter out = new StringWriter();
+        CsvWriter writer = new CsvWriter(records[0], out);
+        for (int i = 1; i < records.length; i++) {
+            writer.writeRecord(records[i]);
+        }
+        writer.endDocument();
+        assertFalse(writer.checkError());
+        return out.toString();
+    }
+
+    private static byte[] writeWithStream(String[]... records) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        CsvWriter writer = new CsvWriter(records[0], out);
+        for (int i = 1; i < records.length; i++) {
+            writer.writeRecord(records[i]);
+        }
+        writer.endDocument();
+        assertFalse(writer.checkError());
+        return out.toByteArray();
+    }
+
+    private static void assertWritten(String expected, String[]... records) throws Exception {
+        assertEquals(expected, writeWithWriter(records));
+        assertEquals(expected, new String(writeWithStream(records), "UTF-8"));
+    }
+
+    @Test
+    public void testPlainValuesAreNotQuoted() throws Exception {
+        assertWritten("Id,Name\n001x,Acme\n",
+                new String[]{"Id", "Name"}, new String[]{"001x", "Acme"});
+    }
+
+    @Test
+    public void testEmptyAndNullValues() throws Exception {
+        // an empty string is quoted so that it is not read as null
+        assertWritten("Id,Name,Phone\n001x,\"\",\n",
+                new String[]{"Id", "Name", "Phone"}, new String[]{"001x", "", null});
+        assertWritten("Id,Name\n,\n",
+                new String[]{"Id", "Name"}, new String[]{null, null});
+    }
+
+    @Test
+    public void testLeadingAndTrailingSpacesAreQuoted() throws Exception {
+        assertWritten("Name\n\" Acme\"\n\"Acme \"\n\"\tAcme\"\nA c m e\n",
+                new String[]{"Name"}, new String[]{" Acme"}, new String[]{"Acme "}, new String[]{"\tAcme"},
+                new String[]{"A c m e"});
+    }
+
+    @Test
+    public void testSpecialCharactersAreQuoted() throws Exception {
+        assertWritten("Name\n\"Acme, Inc.\"\n\"The \"\"Acme\"\" company\"\n\"line 1\nline 2\"\n\"line 1\r\nline 2\"\n" +
+                "\"\"\"\"\n",
+                new String[]{"Name"}, new String[]{"Acme, Inc."}, new String[]{"The \"Acme\" company"},
+                new String[]{"line 1\nline 2"}, new String[]{"line 1\r\nline 2"}, new String[]{"\""});
+    }
+
+    @Test
+    public void testNonAsciiCharacters() throws Exception {
+        String value = "caf\u00e9 \u20ac \ud83d\ude00 \ud801\udc37";
+        assertWritten("Name\n" + value + "\n\"" + value + ", again\"\n",
+                new String[]{"Name"}, new String[]{value}, new String[]{value + ", again"});
+    }
+
+    @Test
+    public void testUnpairedSurrogatesLikeTheUtf8Encoder() throws Exception {
+        String value = "a\ud83db\ude00c\ud83d";
+        assertArrayEquals(("Name\n" + value + "\n").getBytes("UTF-8"),
+                writeWithStream(new String[]{"Name"}, new String[]{value}));
+    }
+
+    @Test
+    public void testRecordsLargerThanTheBuffer() throws Exception {
+        StringBuilder large = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            // four byte characters end up split at every offset of the buffer
+            large.append(i % 3 == 0 ? "\ud83d\ude00" : i % 3 == 1 ? "\u00e9" : "\"");
+        }
+        String[] header = {"Id", "Body"};
+        String[][] records = new String[10][];
+        StringBuilder expected = new StringBuilder("Id,Body\n");
+        records[0] = header;
+        for (int i = 1; i < records.length; i++) {
+            String value = large.substring(0, large.length() - i);
+            records[i] = new String[]{String.valueOf(i), value};
+            expected.append(i).append(",\"").append(value.replace("\"", "\"\"")).append("\"\n");
+        }
+        assertEquals(expected.toString(), writeWithWriter(records));
+        assertArrayEquals(expected.toString().getBytes("UTF-8"), writeWithStream(records));
+    }
+}
@@ -0,0 +1,131 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws;
+
+import com.sforce.ws.RetryPolicy.Failure;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BackoffRetryPolicyTest {
+
+    @Test
+    public void testInterruptedOnlyRetriedWhenIdempotent() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(3, 10, 1000, 100);
+        assertEquals(-1, policy.getRetryDelay("create", 1, Failure.INTERRUPTED, -1));
+        assertEquals(-1, policy.getRetryDelay("convertLead", 1, Failure.INTERRUPTED, -1));
+        assertTrue(policy.getRetryDelay("query", 1, Failure.INTERRUPTED, -1) >= 0);
+        assertTrue(policy.getRetryDelay("describeSObjects", 1, Failure.INTERRUPTED, -1) >= 0);
+        assertTrue(policy.getRetryDelay("updateJob", 1, Failure.INTERRUPTED, -1) >= 0);
+    }
+
+    @Test
+    public void testNotProcessedRetriedWhateverTheOperation() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(3, 10, 1000, 100);
+        assertTrue(policy.getRetryDelay("create", 1, Failure.CONNECT_FAILED, -1) >= 0);
+        assertTrue(policy.getRetryDelay("create", 1, Failure.REJECTED, -1) >= 0);
+    }
+
+    @Test
+    public void testIsIdempotent() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy();
+        assertTrue(policy.isIdempotent("query"));
+        assertTrue(policy.isIdempotent("queryMore"));
+        assertTrue(policy.isIdempotent("retrieve"));
+        assertTrue(policy.isIdempotent("getUserInfo"));
+        assertTrue(policy.isIdempotent("search"));
+        assertFalse(policy.isIdempotent("create"));
+        assertFalse(policy.isIdempotent("upsert"));
+        assertFalse(policy.isIdempotent("logout"));
+
+        policy.addIdempotentOperation("upsert");
+        assertTrue(policy.isIdempotent("upsert"));
+        assertEquals(-1, policy.getRetryDelay("create", 1, Failure.INTERRUPTED, -1));
+        assertTrue(policy.getRetryDelay("upsert", 1, Failure.INTERRUPTED, -1) >= 0);
+    }
+
+    @Test
+    public void testBackoff() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(5, 100, 1000, 100);
+        for (int i = 0; i < 20; i++) {
+            assertBetween(50, 100, policy.getRetryDelay("query", 1, Failure.REJECTED, -1));
+            assertBetween(100, 200, policy.getRetryDelay("query", 2, Failure.REJECTED, -1));
+            assertBetween(200, 400, policy.getRetryDelay("query", 3, Failure.REJECTED, -1));
+            // capped at the maximum delay
+            assertBetween(500, 1000, policy.getRetryDelay("query", 5, Failure.REJECTED, -1));
+        }
+        assertEquals(-1, policy.getRetryDelay("query", 6, Failure.REJECTED, -1));
+    }
+
+    @Test
+    public void testRetryAfter() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(3, 10, 1000, 100);
+        assertEquals(800, policy.getRetryDelay("query", 1, Failure.REJECTED, 800));
+        // the server asks for a longer wait than the policy allows
+        assertEquals(-1, policy.getRetryDelay("query", 1, Failure.REJECTED, 5000));
+    }
+
+    @Test
+    public void testBudgetUseAndRefill() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(3, 1, 10, 2);
+        assertEquals(2, policy.getRemainingBudget());
+        assertTrue(policy.getRetryDelay("query", 1, Failure.REJECTED, -1) >= 0);
+        assertTrue(policy.getRetryDelay("create", 1, Failure.CONNECT_FAILED, -1) >= 0);
+        assertEquals(0, policy.getRemainingBudget());
+        assertEquals(-1, policy.getRetryDelay("query", 1, Failure.REJECTED, -1));
+
+        // each success gives back a tenth of a retry
+        for (int i = 0; i < 9; i++) {
+            policy.succeeded("query");
+        }
+        assertEquals(0, policy.getRemainingBudget());
+        assertEquals(-1, policy.getRetryDelay("query", 1, Failure.REJECTED, -1));
+        policy.succeeded("query");
+        assertEquals(1, policy.getRemainingBudget());
+        assertTrue(policy.getRetryDelay("query", 1, Failure.REJECTED, -1) >= 0);
+        assertEquals(0, policy.getRemainingBudget());
+
+        // the budget does not grow past its size
+        for (int i = 0; i < 100; i++) {
+            policy.succeeded("query");
+        }
+        assertEquals(2, policy.getRemainingBudget());
+    }
+
+    @Test
+    public void testRefusedRetriesDoNotUseTheBudget() {
+        BackoffRetryPolicy policy = new BackoffRetryPolicy(3, 1, 10, 1);
+        assertEquals(-1, policy.getRetryDelay("create", 1, Failure.INTERRUPTED, -1));
+        assertEquals(-1, policy.getRetryDelay("query", 4, Failure.REJECTED, -1));
+        assertEquals(1, policy.getRemainingBudget());
+    }
+
+    private static void assertBetween(long min, long max, long value) {
+        assertTrue(value + " not in [" + min + ", " + max + "]", value >= min && value <= max);
+    }
+}
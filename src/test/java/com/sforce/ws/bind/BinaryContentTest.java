@@ -0,0 +1,172 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.bind;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class BinaryContentTest {
+
+    private static final int THRESHOLD = 1024;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("binary-content", "");
+        assertTrue(directory.delete());
+        assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+        return data;
+    }
+
+    private int spooledFiles() {
+        return directory.listFiles().length;
+    }
+
+    private static byte[] read(BinaryContent content) throws IOException {
+        InputStream in = content.openStream();
+        try {
+            byte[] bytes = new byte[(int) content.length()];
+            int length = 0;
+            int read;
+            while (length < bytes.length && (read = in.read(bytes, length, bytes.length - length)) > 0) {
+                length += read;
+            }
+            assertEquals(-1, in.read());
+            return bytes;
+        } finally {
+            in.close();
+        }
+    }
+
+    @Test
+    public void testKeptInMemoryUpToTheThreshold() throws Exception {
+        byte[] data = data(THRESHOLD);
+        BinaryContent.Spool spool = new BinaryContent.Spool(THRESHOLD, directory);
+        spool.write(data, 0, 1000);
+        spool.write(data, 1000, THRESHOLD - 1000);
+        assertEquals(0, spooledFiles());
+
+        BinaryContent content = spool.toContent();
+        assertEquals(THRESHOLD, content.length());
+        assertArrayEquals(data, content.toByteArray());
+        assertArrayEquals(data, read(content));
+        content.close();
+    }
+
+    @Test
+    public void testSpooledToAFilePastTheThreshold() throws Exception {
+        byte[] data = data(THRESHOLD * 3);
+        BinaryContent.Spool spool = new BinaryContent.Spool(THRESHOLD, directory);
+        spool.write(data, 0, THRESHOLD);
+        assertEquals(0, spooledFiles());
+        // a single byte over the threshold moves what was kept in memory to the file
+        spool.write(data[THRESHOLD]);
+        assertEquals(1, spooledFiles());
+        spool.write(data, THRESHOLD + 1, data.length - THRESHOLD - 1);
+        assertEquals(1, spooledFiles());
+
+        BinaryContent content = spool.toContent();
+        assertEquals(data.length, content.length());
+        assertTrue(content.toString().contains(directory.getPath()));
+        // the content can be read any number of times until it is closed
+        assertArrayEquals(data, read(content));
+        assertArrayEquals(data, read(content));
+        assertArrayEquals(data, content.toByteArray());
+
+        content.close();
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    public void testLargeFirstWrite() throws Exception {
+        byte[] data = data(THRESHOLD + 1);
+        BinaryContent.Spool spool = new BinaryContent.Spool(THRESHOLD, directory);
+        spool.write(data, 0, data.length);
+        assertEquals(1, spooledFiles());
+
+        BinaryContent content = spool.toContent();
+        assertArrayEquals(data, content.toByteArray());
+        content.dispose();
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    public void testDiscardDeletesTheFile() throws Exception {
+        BinaryContent.Spool spool = new BinaryContent.Spool(THRESHOLD, directory);
+        spool.write(data(THRESHOLD * 2), 0, THRESHOLD * 2);
+        assertEquals(1, spooledFiles());
+        spool.discard();
+        assertEquals(0, spooledFiles());
+
+        spool = new BinaryContent.Spool(THRESHOLD, directory);
+        spool.write(data(10), 0, 10);
+        spool.discard();
+        assertEquals(0, spooledFiles());
+    }
+
+    @Test
+    public void testUserFileIsNotDeleted() throws Exception {
+        File file = new File(directory, "upload.bin");
+        OutputStream out = new FileOutputStream(file);
+        out.write(data(THRESHOLD * 2));
+        out.close();
+
+        BinaryContent content = new BinaryContent(file);
+        assertArrayEquals(data(THRESHOLD * 2), content.toByteArray());
+        content.close();
+        assertTrue(file.exists());
+    }
+}
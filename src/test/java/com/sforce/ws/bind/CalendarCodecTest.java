@@ -0,0 +1,158 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.bind;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class CalendarCodecTest {
+
+    private final CalendarCodec codec = new CalendarCodec();
+
+    private static SimpleDateFormat reference() {
+        SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss.SSS'Z'");
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        return format;
+    }
+
+    private static long millis(String value) throws Exception {
+        return reference().parse(value).getTime();
+    }
+
+    @Test
+    public void testFormatAroundRangeLimits() throws Exception {
+        String[] values = {
+                "1582-12-31T23:59:59.999Z", "1583-01-01T00:00:00.000Z", "1583-01-01T00:00:00.001Z",
+                "1970-01-01T00:00:00.000Z", "1969-12-31T23:59:59.999Z", "2000-02-29T12:34:56.789Z",
+                "2100-03-01T00:00:00.000Z", "9999-12-31T23:59:59.999Z", "10000-01-01T00:00:00.000Z"};
+        for (String value : values) {
+            long millis = millis(value);
+            assertEquals(value, codec.getValueAsString(new Date(millis)));
+            assertEquals(value, reference().format(new Date(millis)));
+
+            Calendar calendar = Calendar.getInstance(TimeZone.getTimeZone("PST"));
+            calendar.setTimeInMillis(millis);
+            assertEquals(value, codec.getValueAsString(calendar));
+        }
+    }
+
+    @Test
+    public void testFormatMatchesSimpleDateFormat() throws Exception {
+        long min = millis("1500-01-01T00:00:00.000Z");
+        long max = millis("10100-01-01T00:00:00.000Z");
+        Random random = new Random(42);
+        SimpleDateFormat reference = reference();
+        for (int i = 0; i < 10000; i++) {
+            Date date = new Date(min + (long) (random.nextDouble() * (max - min)));
+            assertEquals(reference.format(date), codec.getValueAsString(date));
+        }
+    }
+
+    @Test
+    public void testParseAroundRangeLimits() throws Exception {
+        String[] values = {
+                "1582-12-31T23:59:59.999Z", "1583-01-01T00:00:00.000Z", "1600-02-29T00:00:00.000Z",
+                "1969-12-31T23:59:59.999Z", "9999-12-31T23:59:59.999Z"};
+        for (String value : values) {
+            Calendar calendar = codec.deserialize(value);
+            assertEquals(value, millis(value), calendar.getTimeInMillis());
+            assertEquals(value, codec.getValueAsString(calendar));
+        }
+    }
+
+    @Test
+    public void testParseOutOfRangeFieldsLikeSimpleDateFormat() throws Exception {
+        // lenient like SimpleDateFormat, the fast path leaves these to it
+        assertEquals(millis("1583-03-01T00:00:00.000Z"), codec.deserialize("1583-02-29T00:00:00Z").getTimeInMillis());
+        assertEquals(millis("2014-01-02T00:00:00.000Z"), codec.deserialize("2014-01-01T24:00:00Z").getTimeInMillis());
+    }
+
+    @Test
+    public void testParseTimeZones() throws Exception {
+        long utc = millis("2014-03-05T08:15:30.000Z");
+        assertEquals(utc, codec.deserialize("2014-03-05T08:15:30Z").getTimeInMillis());
+        assertEquals(utc, codec.deserialize("2014-03-05T10:15:30+02:00").getTimeInMillis());
+        assertEquals(utc, codec.deserialize("2014-03-05T02:45:30-05:30").getTimeInMillis());
+        assertEquals(utc, codec.deserialize("2014-03-05T08:15:30+00:00").getTimeInMillis());
+        assertEquals(utc, codec.deserialize("2014-03-05T10:15:30.000+02:00").getTimeInMillis());
+        // across the start of the range
+        assertEquals(millis("1582-12-31T23:00:00.000Z"), codec.deserialize("1583-01-01T00:00:00+01:00").getTimeInMillis());
+
+        assertEquals(TimeZone.getTimeZone("GMT"), codec.deserialize("2014-03-05T08:15:30Z").getTimeZone());
+    }
+
+    @Test
+    public void testParseFractionalSeconds() throws Exception {
+        long base = millis("2014-03-05T08:15:30.000Z");
+        assertEquals(base, codec.deserialize("2014-03-05T08:15:30Z").getTimeInMillis());
+        assertEquals(base, codec.deserialize("2014-03-05T08:15:30.Z").getTimeInMillis());
+        assertEquals(base + 500, codec.deserialize("2014-03-05T08:15:30.5Z").getTimeInMillis());
+        assertEquals(base + 50, codec.deserialize("2014-03-05T08:15:30.05Z").getTimeInMillis());
+        assertEquals(base + 123, codec.deserialize("2014-03-05T08:15:30.123Z").getTimeInMillis());
+        assertEquals(base + 123, codec.deserialize("2014-03-05T08:15:30.1234Z").getTimeInMillis());
+        assertEquals(base + 124, codec.deserialize("2014-03-05T08:15:30.1235Z").getTimeInMillis());
+        assertEquals(base + 500 - 2 * 60 * 60 * 1000, codec.deserialize("2014-03-05T08:15:30.5+02:00").getTimeInMillis());
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        long[] values = {
+                millis("1582-12-31T23:59:59.999Z"), millis("1583-01-01T00:00:00.000Z"), 0, -1, 1,
+                millis("9999-12-31T23:59:59.999Z"), System.currentTimeMillis()};
+        for (long value : values) {
+            assertEquals(value, codec.deserialize(codec.getValueAsString(new Date(value))).getTimeInMillis());
+        }
+    }
+
+    @Test
+    public void testBeforeChristianEra() throws Exception {
+        Calendar calendar = codec.deserialize("-0044-03-15T12:00:00Z");
+        assertEquals(GregorianCalendar.BC, calendar.get(Calendar.ERA));
+    }
+
+    @Test
+    public void testInvalidValues() {
+        String[] values = {"", "2014-03-05", "2014/03/05T08:15:30Z", "2014-03-05T08-15-30Z",
+                "2014-03-05T08:15:30X", "2014-03-05T08:15:30+2:00"};
+        for (String value : values) {
+            try {
+                codec.deserialize(value);
+                fail("NumberFormatException should have been thrown for " + value);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.bind;
+
+import org.junit.Test;
+
+import java.text.SimpleDateFormat;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.GregorianCalendar;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class DateCodecTest {
+
+    private final DateCodec codec = new DateCodec();
+
+    // same format as the codec, in the default time zone
+    private static SimpleDateFormat reference() {
+        return new SimpleDateFormat("yyyy-MM-dd");
+    }
+
+    @Test
+    public void testFormatAroundRangeLimits() throws Exception {
+        String[] values = {"0001-01-01", "1582-10-04", "1582-10-15", "1583-01-01", "1970-01-01", "2000-02-29",
+                "9999-12-31", "10000-01-01"};
+        for (String value : values) {
+            Date date = reference().parse(value);
+            assertEquals(value, codec.getValueAsString(date));
+
+            Calendar calendar = Calendar.getInstance();
+            calendar.setTime(date);
+            assertEquals(value, codec.getValueAsString(calendar));
+        }
+    }
+
+    @Test
+    public void testFormatMatchesSimpleDateFormat() throws Exception {
+        long min = reference().parse("1500-01-01").getTime();
+        long max = reference().parse("10100-01-01").getTime();
+        Random random = new Random(42);
+        SimpleDateFormat reference = reference();
+        for (int i = 0; i < 10000; i++) {
+            Date date = new Date(min + (long) (random.nextDouble() * (max - min)));
+            assertEquals(reference.format(date), codec.getValueAsString(date));
+        }
+    }
+
+    @Test
+    public void testParseAroundRangeLimits() throws Exception {
+        String[] values = {"0001-01-01", "1582-10-04", "1582-10-15", "1583-01-01", "1600-02-29", "1969-12-31",
+                "9999-12-31"};
+        for (String value : values) {
+            Calendar calendar = codec.deserialize(value);
+            assertEquals(value, reference().parse(value).getTime(), calendar.getTimeInMillis());
+            assertEquals(value, codec.getValueAsString(calendar));
+        }
+    }
+
+    @Test
+    public void testParseLenientLikeSimpleDateFormat() throws Exception {
+        assertEquals(reference().parse("2014-03-01").getTime(), codec.deserialize("2014-02-29").getTimeInMillis());
+        assertEquals(reference().parse("2014-12-31").getTime(), codec.deserialize("2015-01-00").getTimeInMillis());
+    }
+
+    @Test
+    public void testParseIgnoresTrailingText() throws Exception {
+        assertEquals(reference().parse("2014-03-05").getTime(), codec.deserialize("2014-03-05Z").getTimeInMillis());
+    }
+
+    @Test
+    public void testBeforeChristianEra() {
+        Calendar calendar = codec.deserialize("-0044-03-15");
+        assertEquals(GregorianCalendar.BC, calendar.get(Calendar.ERA));
+    }
+
+    @Test
+    public void testInvalidValues() {
+        String[] values = {"2014-3-5", "2014/03/05", "20140305xx"};
+        for (String value : values) {
+            try {
+                codec.deserialize(value);
+                fail("NumberFormatException should have been thrown for " + value);
+            } catch (NumberFormatException e) {
+                // expected
+            }
+        }
+    }
+}
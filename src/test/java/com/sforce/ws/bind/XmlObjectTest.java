@@ -0,0 +1,187 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.bind;
+
+import org.junit.Test;
+
+import java.util.Iterator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class XmlObjectTest {
+
+    /**
+     * Sizes below, at and above the number of children from which lookups go through a name index.
+     */
+    private static final int MIN_SIZE = 4;
+    private static final int MAX_SIZE = 12;
+
+    /**
+     * @return an object with size children, every third one named Name and the others Field1, Field2...
+     *         each holding "value " and its position
+     */
+    private static XmlObject object(int size) {
+        XmlObject object = new XmlObject();
+        for (int i = 0; i < size; i++) {
+            object.addField(i % 3 == 0 ? "Name" : "Field" + i, "value " + i);
+        }
+        return object;
+    }
+
+    /**
+     * @return the value of the last child named Name among the first size children
+     */
+    private static String lastName(int size) {
+        return size <= 0 ? null : "value " + ((size - 1) / 3 * 3);
+    }
+
+    private static int count(XmlObject object) {
+        int count = 0;
+        for (Iterator<XmlObject> it = object.getChildren(); it.hasNext(); it.next()) {
+            count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void testLastDuplicateIsFound() {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            XmlObject object = object(size);
+            assertEquals(lastName(size), object.getField("Name"));
+            assertEquals("value 1", object.getField("Field1"));
+            assertEquals("value 2", object.getChild("Field2").getValue());
+            assertNull(object.getField("Missing"));
+            assertFalse(object.removeField("Missing"));
+        }
+    }
+
+    @Test
+    public void testAddAfterLookup() {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            XmlObject object = object(size);
+            assertEquals(lastName(size), object.getField("Name"));
+            object.addField("Name", "added");
+            object.addField("New", "new");
+            assertEquals("added", object.getField("Name"));
+            assertEquals("new", object.getField("New"));
+        }
+    }
+
+    @Test
+    public void testLookupsWhileGrowingPastTheThreshold() {
+        XmlObject object = new XmlObject();
+        for (int i = 0; i < MAX_SIZE; i++) {
+            object.addField(i % 3 == 0 ? "Name" : "Field" + i, "value " + i);
+            assertEquals(lastName(i + 1), object.getField("Name"));
+            assertEquals("value " + i, object.getField(i % 3 == 0 ? "Name" : "Field" + i));
+        }
+    }
+
+    @Test
+    public void testSetFieldUpdatesTheLastDuplicate() {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            XmlObject object = object(size);
+            object.setField("Name", "updated");
+            object.setField("New", "new");
+            assertEquals(size + 1, count(object));
+            assertEquals("updated", object.getField("Name"));
+            assertEquals("new", object.getField("New"));
+        }
+    }
+
+    @Test
+    public void testRemoveFieldFallsBackToThePreviousDuplicate() {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            XmlObject object = object(size);
+            assertEquals(lastName(size), object.getField("Name"));
+            int remaining = size;
+            int names = (size + 2) / 3;
+            for (int removed = 1; removed <= names; removed++) {
+                assertTrue(object.removeField("Name"));
+                assertEquals(--remaining, count(object));
+                // the previous child named Name is found again, through the index or not
+                assertEquals(removed < names ? "value " + (names - removed - 1) * 3 : null, object.getField("Name"));
+            }
+            assertFalse(object.removeField("Name"));
+            assertEquals("value 1", object.getField("Field1"));
+        }
+    }
+
+    @Test
+    public void testRemoveFieldBelowTheThreshold() {
+        XmlObject object = object(8);
+        assertEquals("value 6", object.getField("Name"));
+        assertTrue(object.removeField("Field7"));
+        assertTrue(object.removeField("Name"));
+        // down to 6 children, the index built at 8 is kept up to date
+        assertEquals("value 3", object.getField("Name"));
+        assertNull(object.getField("Field7"));
+        object.addField("Name", "added");
+        assertEquals("added", object.getField("Name"));
+        assertTrue(object.removeField("Name"));
+        assertEquals("value 3", object.getField("Name"));
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        for (int size = MIN_SIZE; size <= MAX_SIZE; size++) {
+            XmlObject object = object(size);
+            assertEquals(lastName(size), object.getField("Name"));
+            assertEquals("value 1", object.getField("Field1"));
+
+            Iterator<XmlObject> it = object.getChildren();
+            while (it.hasNext()) {
+                Object value = it.next().getValue();
+                if (value.equals(lastName(size)) || value.equals("value 1")) {
+                    it.remove();
+                }
+            }
+            assertEquals(size - 2, count(object));
+            assertEquals(lastName(size - 3), object.getField("Name"));
+            assertNull(object.getField("Field1"));
+
+            object.addField("Field1", "added");
+            assertEquals("added", object.getField("Field1"));
+            assertTrue(object.removeField("Name"));
+            assertEquals(lastName(size - 6), object.getField("Name"));
+        }
+    }
+
+    @Test
+    public void testChildObjects() {
+        XmlObject object = object(MAX_SIZE);
+        XmlObject owner = new XmlObject();
+        owner.addField("Email", "a@example.com");
+        object.addField("Owner", owner);
+        assertSame(owner, object.getField("Owner"));
+        assertSame(owner, object.getChild("Owner"));
+        assertEquals("a@example.com", owner.getField("Email"));
+    }
+}
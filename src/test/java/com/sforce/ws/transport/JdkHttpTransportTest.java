@@ -0,0 +1,196 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sforce.ws.MessageHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class JdkHttpTransportTest {
+
+    private static final int RESPONSE_SIZE = 20000;
+
+    private HttpServer server;
+    private String endpoint;
+    private byte[] response;
+    private ConnectorConfig config;
+    private final List<byte[]> handled = new ArrayList<byte[]>();
+
+    @Before
+    public void setUp() throws Exception {
+        response = new byte[RESPONSE_SIZE];
+        for (int i = 0; i < response.length; i++) {
+            response[i] = (byte) ('a' + i % 26);
+        }
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream request = exchange.getRequestBody();
+                while (request.read() != -1) {
+                    // the request is not looked at
+                }
+                exchange.sendResponseHeaders(200, response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.close();
+            }
+        });
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort() + "/services/Soap/u/30.0";
+
+        config = new ConnectorConfig();
+        config.addMessageHandler(new MessageHandler() {
+            @Override
+            public void handleRequest(URL endpoint, byte[] request) {
+            }
+
+            @Override
+            public void handleResponse(URL endpoint, byte[] response) {
+                handled.add(response);
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        server.stop(0);
+    }
+
+    private InputStream post() throws IOException {
+        JdkHttpTransport transport = new JdkHttpTransport(config);
+        OutputStream out = transport.connect(endpoint, "");
+        out.write("<request/>".getBytes("UTF-8"));
+        out.close();
+        return transport.getContent();
+    }
+
+    private static byte[] readFully(InputStream in) throws IOException {
+        byte[] content = new byte[RESPONSE_SIZE * 2];
+        int length = 0;
+        int read;
+        while ((read = in.read(content, length, Math.min(1000, content.length - length))) != -1) {
+            length += read;
+        }
+        return Arrays.copyOf(content, length);
+    }
+
+    @Test
+    public void testResponseReadBeforeParsing() throws Exception {
+        InputStream in = post();
+        assertTrue(in instanceof ByteArrayInputStream);
+        assertEquals(1, handled.size());
+        assertArrayEquals(response, handled.get(0));
+        assertArrayEquals(response, readFully(in));
+        in.close();
+        assertEquals(1, handled.size());
+    }
+
+    @Test
+    public void testStreamedResponsePrefix() throws Exception {
+        config.setStreamResponseToMessageHandlers(true);
+        config.setMaxMessageHandlerResponseSize(12345);
+        InputStream in = post();
+        assertTrue(in instanceof JdkHttpTransport.MessageHandlerInputStream);
+        assertTrue(handled.isEmpty());
+
+        assertArrayEquals(response, readFully(in));
+        assertEquals(1, handled.size());
+        assertArrayEquals(Arrays.copyOf(response, 12345), handled.get(0));
+        in.close();
+        assertEquals(1, handled.size());
+    }
+
+    @Test
+    public void testStreamedResponseWithoutLimit() throws Exception {
+        config.setStreamResponseToMessageHandlers(true);
+        config.setMaxMessageHandlerResponseSize(0);
+        InputStream in = post();
+        assertTrue(in instanceof JdkHttpTransport.MessageHandlerInputStream);
+
+        assertArrayEquals(response, readFully(in));
+        in.close();
+        assertEquals(1, handled.size());
+        assertArrayEquals(response, handled.get(0));
+    }
+
+    @Test
+    public void testStreamedResponseClosedEarly() throws Exception {
+        config.setStreamResponseToMessageHandlers(true);
+        config.setMaxMessageHandlerResponseSize(12345);
+        InputStream in = post();
+        byte[] start = new byte[100];
+        assertEquals(100, in.read(start));
+        assertEquals(response[100], (byte) in.read());
+        assertEquals(50, in.skip(50));
+        assertTrue(handled.isEmpty());
+
+        // handlers get what has been read by the time the response is closed
+        in.close();
+        assertEquals(1, handled.size());
+        assertArrayEquals(Arrays.copyOf(response, 151), handled.get(0));
+    }
+
+    @Test
+    public void testPrefixCapturedOneByteAtATime() throws Exception {
+        JdkHttpTransport transport = new JdkHttpTransport(config);
+        for (int maxSize : new int[]{1, 10, 8192, 10000, RESPONSE_SIZE, RESPONSE_SIZE + 1, 0, -1}) {
+            handled.clear();
+            InputStream in = transport.new MessageHandlerInputStream(new ByteArrayInputStream(response), maxSize);
+            for (int i = 0; i < response.length; i++) {
+                assertEquals(response[i], (byte) in.read());
+            }
+            assertFalse(in.markSupported());
+            assertEquals(-1, in.read());
+            assertEquals(-1, in.read());
+            in.close();
+            assertEquals(1, handled.size());
+            int expected = maxSize > 0 ? Math.min(maxSize, RESPONSE_SIZE) : RESPONSE_SIZE;
+            assertArrayEquals("max size " + maxSize, Arrays.copyOf(response, expected), handled.get(0));
+        }
+    }
+}
@@ -0,0 +1,398 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import com.sforce.ws.ConnectorConfig;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Proxy;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class PooledHttpTransportTest {
+
+    private HttpServer server;
+    private HttpConnectionPool pool;
+    private ConnectorConfig config;
+    private String endpoint;
+    private final AtomicInteger resets = new AtomicInteger();
+
+    @Before
+    public void setUp() throws Exception {
+        server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+        server.createContext("/", new HttpHandler() {
+            @Override
+            public void handle(HttpExchange exchange) throws IOException {
+                InputStream request = exchange.getRequestBody();
+                ByteArrayOutputStream body = new ByteArrayOutputStream();
+                int b;
+                while ((b = request.read()) != -1) {
+                    body.write(b);
+                }
+                String path = exchange.getRequestURI().getPath();
+                if (path.endsWith("/reset")) {
+                    resets.incrementAndGet();
+                    // the connection is closed without a response once the request has been read
+                    throw new IOException("reset");
+                } else if (path.endsWith("/chunked")) {
+                    exchange.sendResponseHeaders(200, 0);
+                    OutputStream out = exchange.getResponseBody();
+                    for (int i = 0; i < 100; i++) {
+                        out.write(("line " + i + "\n").getBytes("UTF-8"));
+                        out.flush();
+                    }
+                    out.close();
+                } else if (path.endsWith("/close")) {
+                    exchange.getResponseHeaders().set("Connection", "close");
+                    respond(exchange, "closing".getBytes("UTF-8"));
+                } else if (path.endsWith("/large")) {
+                    respond(exchange, new byte[256 * 1024]);
+                } else if (path.endsWith("/echo")) {
+                    respond(exchange, body.toByteArray());
+                } else {
+                    respond(exchange, "ok".getBytes("UTF-8"));
+                }
+            }
+        });
+        server.start();
+        endpoint = "http://localhost:" + server.getAddress().getPort();
+
+        pool = new HttpConnectionPool(2);
+        pool.setLeaseTimeout(2000);
+        config = new ConnectorConfig();
+        config.setTransport(PooledHttpTransport.class);
+        config.setConnectionPool(pool);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdown();
+        server.stop(0);
+    }
+
+    private static void respond(HttpExchange exchange, byte[] body) throws IOException {
+        exchange.sendResponseHeaders(200, body.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(body);
+        out.close();
+    }
+
+    private String get(String path) throws IOException {
+        InputStream in = new PooledHttpTransport(config).get(endpoint + path, new HashMap<String, String>(), false);
+        try {
+            return read(in);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static String read(InputStream in) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1000];
+        int count;
+        while ((count = in.read(buffer)) != -1) {
+            out.write(buffer, 0, count);
+        }
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testKeepAliveReusesConnection() throws Exception {
+        for (int i = 0; i < 5; i++) {
+            assertEquals("ok", get("/ok"));
+        }
+        PoolStatistics statistics = pool.getStatistics();
+        assertEquals(1, statistics.getCreated());
+        assertEquals(4, statistics.getReused());
+        assertEquals(0, statistics.getLeased());
+        assertEquals(1, statistics.getAvailable());
+    }
+
+    @Test
+    public void testPostBody() throws Exception {
+        PooledHttpTransport transport = new PooledHttpTransport(config);
+        OutputStream out = transport.connect(endpoint + "/echo", new HashMap<String, String>(), false);
+        out.write("hello".getBytes("UTF-8"));
+        out.close();
+        InputStream in = transport.getContent();
+        assertEquals("hello", read(in));
+        assertEquals(200, transport.getResponseCode());
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testChunkedResponse() throws Exception {
+        StringBuilder expected = new StringBuilder();
+        for (int i = 0; i < 100; i++) {
+            expected.append("line ").append(i).append('\n');
+        }
+        assertEquals(expected.toString(), get("/chunked"));
+        assertEquals(expected.toString(), get("/chunked"));
+        // the end of the chunked body is found without the server closing the connection
+        assertEquals(1, pool.getStatistics().getCreated());
+    }
+
+    @Test
+    public void testConnectionCloseIsNotReused() throws Exception {
+        assertEquals("closing", get("/close"));
+        assertEquals("closing", get("/close"));
+        PoolStatistics statistics = pool.getStatistics();
+        assertEquals(2, statistics.getCreated());
+        assertEquals(0, statistics.getReused());
+        assertEquals(0, statistics.getAvailable());
+    }
+
+    @Test
+    public void testSmallAbandonedBodyIsDrained() throws Exception {
+        InputStream in = new PooledHttpTransport(config).get(endpoint + "/echo", new HashMap<String, String>(), false);
+        in.close();
+        in = new PooledHttpTransport(config).get(endpoint + "/chunked", new HashMap<String, String>(), false);
+        in.read();
+        in.close();
+        assertEquals("ok", get("/ok"));
+        assertEquals(1, pool.getStatistics().getCreated());
+    }
+
+    @Test
+    public void testLargeAbandonedBodyClosesConnection() throws Exception {
+        InputStream in = new PooledHttpTransport(config).get(endpoint + "/large", new HashMap<String, String>(), false);
+        in.read();
+        in.close();
+        assertEquals(0, pool.getStatistics().getLeased());
+        assertEquals(0, pool.getStatistics().getAvailable());
+        assertEquals("ok", get("/ok"));
+        assertEquals(2, pool.getStatistics().getCreated());
+    }
+
+    @Test
+    public void testRequestNotSentAgainAfterReset() throws Exception {
+        // makes the next request go out on a reused connection
+        assertEquals("ok", get("/ok"));
+
+        PooledHttpTransport transport = new PooledHttpTransport(config);
+        OutputStream out = transport.connect(endpoint + "/reset", new HashMap<String, String>(), false);
+        out.write("<create/>".getBytes("UTF-8"));
+        out.close();
+        try {
+            transport.getContent();
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            // the server may have processed the request, the retry policy of the caller decides
+        }
+        assertEquals(1, resets.get());
+        assertEquals(1, pool.getStatistics().getCreated());
+        assertEquals(0, pool.getStatistics().getLeased());
+    }
+
+    @Test
+    public void testLeaseTimeout() throws Exception {
+        HttpConnectionPool single = new HttpConnectionPool(1);
+        single.setLeaseTimeout(100);
+        URL url = new URL(endpoint + "/ok");
+        PooledConnection connection = single.lease(url, config);
+        try {
+            single.lease(url, config);
+            fail("IOException should have been thrown");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("Timed out"));
+        }
+        single.release(connection, true);
+        single.release(single.lease(url, config), true);
+        assertEquals(1, single.getStatistics().getCreated());
+        assertEquals(1, single.getStatistics().getReused());
+        single.shutdown();
+    }
+
+    @Test
+    public void testStaleConnection() throws Exception {
+        ServerSocket listener = new ServerSocket(0);
+        try {
+            URL url = new URL("http://localhost:" + listener.getLocalPort() + "/");
+            String route = PooledConnection.routeOf(url, Proxy.NO_PROXY);
+
+            PooledConnection connection = PooledConnection.open(route, url, config);
+            Socket accepted = listener.accept();
+            assertFalse(connection.isStale());
+
+            accepted.close();
+            Thread.sleep(100);
+            assertTrue(connection.isStale());
+            connection.close();
+        } finally {
+            listener.close();
+        }
+    }
+
+    @Test
+    public void testStaleIdleConnectionIsReplaced() throws Exception {
+        final ServerSocket listener = new ServerSocket(0);
+        Thread serverThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 2; i++) {
+                        Socket socket = listener.accept();
+                        InputStream in = socket.getInputStream();
+                        String line;
+                        while ((line = PooledConnection.readLine(in)) != null && line.length() > 0) {
+                            // the request has no body
+                        }
+                        OutputStream out = socket.getOutputStream();
+                        out.write("HTTP/1.1 200 OK\r\nContent-Length: 2\r\n\r\nok".getBytes("ISO-8859-1"));
+                        out.flush();
+                        // the server drops the connection once it is idle
+                        socket.close();
+                    }
+                } catch (IOException e) {
+                    // reported by the assertions
+                }
+            }
+        };
+        serverThread.start();
+        try {
+            pool.setValidateAfterInactivity(0);
+            endpoint = "http://localhost:" + listener.getLocalPort();
+            assertEquals("ok", get("/"));
+            assertEquals(1, pool.getStatistics().getAvailable());
+            Thread.sleep(100);
+            assertEquals("ok", get("/"));
+            serverThread.join(5000);
+        } finally {
+            listener.close();
+        }
+        PoolStatistics statistics = pool.getStatistics();
+        assertEquals(2, statistics.getCreated());
+        assertEquals(1, statistics.getInvalidated());
+        assertEquals(0, statistics.getReused());
+    }
+
+    @Test
+    public void testTunnelThroughProxy() throws Exception {
+        final ServerSocket proxy = new ServerSocket(0);
+        final StringBuilder connectRequest = new StringBuilder();
+        final int[] firstTunnelledByte = {-1};
+        Thread proxyThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = proxy.accept();
+                    InputStream in = socket.getInputStream();
+                    String line;
+                    while ((line = PooledConnection.readLine(in)) != null && line.length() > 0) {
+                        connectRequest.append(line).append('\n');
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 200 Connection established\r\n\r\n".getBytes("ISO-8859-1"));
+                    out.flush();
+                    // the tls handshake starts inside the tunnel
+                    firstTunnelledByte[0] = in.read();
+                    socket.close();
+                } catch (IOException e) {
+                    // reported by the assertions
+                }
+            }
+        };
+        proxyThread.start();
+        try {
+            config.setProxy("localhost", proxy.getLocalPort());
+            config.setProxyUsername("user");
+            config.setProxyPassword("secret");
+            URL url = new URL("https://login.example.com/services/Soap/u/26.0");
+            try {
+                PooledConnection.open(PooledConnection.routeOf(url, config.getProxy()), url, config).close();
+                fail("the handshake should have failed");
+            } catch (IOException e) {
+                assertFalse(e.getMessage(), e.getMessage() != null && e.getMessage().contains("Unable to tunnel"));
+            }
+            proxyThread.join(5000);
+        } finally {
+            proxy.close();
+        }
+        assertTrue(connectRequest.toString(), connectRequest.toString().startsWith(
+                "CONNECT login.example.com:443 HTTP/1.1\nHost: login.example.com:443\n"));
+        assertTrue(connectRequest.toString(), connectRequest.toString().contains("Proxy-Authorization: Basic dXNlcjpzZWNyZXQ="));
+        // a tls record of the handshake type
+        assertEquals(0x16, firstTunnelledByte[0]);
+    }
+
+    @Test
+    public void testTunnelRefused() throws Exception {
+        final ServerSocket proxy = new ServerSocket(0);
+        Thread proxyThread = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    Socket socket = proxy.accept();
+                    InputStream in = socket.getInputStream();
+                    String line;
+                    while ((line = PooledConnection.readLine(in)) != null && line.length() > 0) {
+                        // the CONNECT request
+                    }
+                    OutputStream out = socket.getOutputStream();
+                    out.write("HTTP/1.1 407 Proxy Authentication Required\r\nContent-Length: 0\r\n\r\n"
+                            .getBytes("ISO-8859-1"));
+                    out.flush();
+                    socket.close();
+                } catch (IOException e) {
+                    // reported by the assertions
+                }
+            }
+        };
+        proxyThread.start();
+        try {
+            config.setProxy("localhost", proxy.getLocalPort());
+            URL url = new URL("https://login.example.com/services/Soap/u/26.0");
+            try {
+                PooledConnection.open(PooledConnection.routeOf(url, config.getProxy()), url, config).close();
+                fail("IOException should have been thrown");
+            } catch (IOException e) {
+                assertTrue(e.getMessage(), e.getMessage().contains("Unable to tunnel"));
+                assertTrue(e.getMessage(), e.getMessage().contains("407"));
+            }
+            proxyThread.join(5000);
+        } finally {
+            proxy.close();
+        }
+    }
+}
@@ -0,0 +1,137 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.transport;
+
+import com.sforce.ws.ConnectionException;
+import com.sforce.ws.RetryPolicy.Failure;
+import com.sforce.ws.SoapFaultException;
+import org.junit.Test;
+
+import javax.xml.namespace.QName;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ConnectException;
+import java.net.SocketException;
+import java.net.SocketTimeoutException;
+import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Locale;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class RetryHelperTest {
+
+    private static final String FAULT_NS = "urn:fault.partner.soap.sforce.com";
+
+    @Test
+    public void testClassifyIOException() {
+        assertEquals(Failure.CONNECT_FAILED, RetryHelper.classify(new ConnectException(), false));
+        assertEquals(Failure.CONNECT_FAILED, RetryHelper.classify(new ConnectException(), true));
+        assertEquals(Failure.CONNECT_FAILED, RetryHelper.classify(new UnknownHostException(), true));
+        assertEquals(Failure.CONNECT_FAILED, RetryHelper.classify(new SocketTimeoutException(), false));
+        assertEquals(Failure.INTERRUPTED, RetryHelper.classify(new SocketTimeoutException(), true));
+        assertEquals(Failure.CONNECT_FAILED, RetryHelper.classify(new SocketException("Connection reset"), false));
+        assertEquals(Failure.INTERRUPTED, RetryHelper.classify(new SocketException("Connection reset"), true));
+        assertEquals(Failure.INTERRUPTED, RetryHelper.classify(new IOException("closed without a response"), true));
+        assertNull(RetryHelper.classify(new InterruptedIOException(), false));
+        assertNull(RetryHelper.classify(new InterruptedIOException(), true));
+    }
+
+    @Test
+    public void testClassifyResponseCode() {
+        assertEquals(Failure.REJECTED, RetryHelper.classify(429));
+        assertEquals(Failure.REJECTED, RetryHelper.classify(503));
+        assertEquals(Failure.INTERRUPTED, RetryHelper.classify(502));
+        assertEquals(Failure.INTERRUPTED, RetryHelper.classify(504));
+        assertNull(RetryHelper.classify(200));
+        assertNull(RetryHelper.classify(400));
+        assertNull(RetryHelper.classify(500));
+    }
+
+    @Test
+    public void testIsRejected() {
+        assertTrue(RetryHelper.isRejected(fault("REQUEST_LIMIT_EXCEEDED",
+                "ConcurrentPerOrgLongTxn Limit exceeded.")));
+        assertTrue(RetryHelper.isRejected(fault("REQUEST_LIMIT_EXCEEDED", null)));
+        assertTrue(RetryHelper.isRejected(fault("SERVER_UNAVAILABLE", "server unavailable")));
+        assertTrue(RetryHelper.isRejected(fault("UNABLE_TO_LOCK_ROW", "unable to obtain exclusive access")));
+    }
+
+    @Test
+    public void testIsRejectedExcludesDailyLimit() {
+        assertFalse(RetryHelper.isRejected(fault("REQUEST_LIMIT_EXCEEDED",
+                "TotalRequests Limit exceeded.")));
+    }
+
+    @Test
+    public void testIsRejectedIgnoresOtherFailures() {
+        assertFalse(RetryHelper.isRejected(fault("INVALID_SESSION_ID", "Invalid Session ID")));
+        assertFalse(RetryHelper.isRejected(new SoapFaultException()));
+        assertFalse(RetryHelper.isRejected(new ConnectionException("SERVER_UNAVAILABLE")));
+    }
+
+    @Test
+    public void testRetryAfterSeconds() {
+        assertEquals(120000, RetryHelper.getRetryAfter(transport(" 120 ")));
+        assertEquals(0, RetryHelper.getRetryAfter(transport("0")));
+    }
+
+    @Test
+    public void testRetryAfterDate() {
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+
+        long delay = RetryHelper.getRetryAfter(transport(format.format(new Date(System.currentTimeMillis() + 120000))));
+        // the date has a precision of one second
+        assertTrue(String.valueOf(delay), delay > 110000 && delay <= 120000);
+
+        assertEquals(0, RetryHelper.getRetryAfter(transport(format.format(new Date(System.currentTimeMillis() - 60000)))));
+    }
+
+    @Test
+    public void testRetryAfterMissingOrInvalid() {
+        assertEquals(-1, RetryHelper.getRetryAfter(transport(null)));
+        assertEquals(-1, RetryHelper.getRetryAfter(transport("soon")));
+    }
+
+    private static SoapFaultException fault(String code, String message) {
+        return new SoapFaultException(new QName(FAULT_NS, code), message);
+    }
+
+    private static JdkHttpTransport transport(final String retryAfter) {
+        return new JdkHttpTransport() {
+            @Override
+            public String getHeaderField(String name) {
+                return "Retry-After".equalsIgnoreCase(name) ? retryAfter : null;
+            }
+        };
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Copyright (c) 2005, salesforce.com, inc.
+ * All rights reserved.
+ *
+ * Redistribution and use in source and binary forms, with or without modification, are permitted provided
+ * that the following conditions are met:
+ *
+ *    Redistributions of source code must retain the above copyright notice, this list of conditions and the
+ *    following disclaimer.
+ *
+ *    Redistributions in binary form must reproduce the above copyright notice, this list of conditions and
+ *    the following disclaimer in the documentation and/or other materials provided with the distribution.
+ *
+ *    Neither the name of salesforce.com, inc. nor the names of its contributors may be used to endorse or
+ *    promote products derived from this software without specific prior written permission.
+ *
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS" AND ANY EXPRESS OR IMPLIED
+ * WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A
+ * PARTICULAR PURPOSE ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT OWNER OR CONTRIBUTORS BE LIABLE FOR
+ * ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED
+ * TO, PROCUREMENT OF SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS INTERRUPTION)
+ * HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING
+ * NEGLIGENCE OR OTHERWISE) ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ */
+package com.sforce.ws.util;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class Base64DecoderTest {
+
+    private static byte[] data(int length) {
+        byte[] data = new byte[length];
+        new Random(length).nextBytes(data);
+        return data;
+    }
+
+    private static String encode(byte[] data) {
+        return new String(Base64.encode(data));
+    }
+
+    private static byte[] decode(String text, int... splits) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Base64.Decoder decoder = new Base64.Decoder(out);
+        char[] chars = text.toCharArray();
+        int offset = 0;
+        for (int split : splits) {
+            decoder.decode(chars, offset, split - offset);
+            offset = split;
+        }
+        decoder.decode(chars, offset, chars.length - offset);
+        decoder.finish();
+        return out.toByteArray();
+    }
+
+    private static void assertInvalid(String text) {
+        try {
+            decode(text);
+            fail("Decoded " + text);
+        } catch (IOException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testSplitAtEveryOffset() throws Exception {
+        // lengths 30, 31 and 32 end with two, one and no padding characters
+        for (int length = 30; length <= 32; length++) {
+            byte[] data = data(length);
+            String text = encode(data);
+            for (int split = 0; split <= text.length(); split++) {
+                assertArrayEquals("split at " + split, data, decode(text, split));
+            }
+            for (int first = 0; first < 4; first++) {
+                for (int second = first; second <= first + 4; second++) {
+                    assertArrayEquals("split at " + first + " and " + second, data, decode(text, first, second));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testOneCharacterAtATime() throws Exception {
+        byte[] data = data(100);
+        String text = encode(data);
+        int[] splits = new int[text.length()];
+        for (int i = 0; i < splits.length; i++) {
+            splits[i] = i;
+        }
+        assertArrayEquals(data, decode(text, splits));
+    }
+
+    @Test
+    public void testWhiteSpace() throws Exception {
+        assertArrayEquals("Man".getBytes("US-ASCII"), decode(" T W\nF u \r\n"));
+        assertArrayEquals("Ma".getBytes("US-ASCII"), decode("\tTW\r\nE =\n"));
+
+        byte[] data = data(1000);
+        String text = encode(data);
+        StringBuilder wrapped = new StringBuilder();
+        for (int i = 0; i < text.length(); i += 76) {
+            wrapped.append(text, i, Math.min(text.length(), i + 76)).append("\r\n");
+        }
+        assertArrayEquals(data, decode(wrapped.toString(), 76, 77, 78, 100));
+    }
+
+    @Test
+    public void testPadding() throws Exception {
+        assertArrayEquals("M".getBytes("US-ASCII"), decode("TQ=="));
+        assertArrayEquals("Ma".getBytes("US-ASCII"), decode("TWE="));
+        assertArrayEquals("Man".getBytes("US-ASCII"), decode("TWFu"));
+        assertArrayEquals("M".getBytes("US-ASCII"), decode("TQ==", 3));
+        assertArrayEquals(new byte[0], decode(""));
+        assertArrayEquals(new byte[0], decode(" \r\n"));
+    }
+
+    @Test
+    public void testInvalidText() throws Exception {
+        // truncated groups
+        assertInvalid("T");
+        assertInvalid("TWF");
+        assertInvalid("TQ=");
+        // padding too early or in the middle of the text
+        assertInvalid("T===");
+        assertInvalid("====");
+        assertInvalid("TQ==TWFu");
+        assertInvalid("TQ=u");
+        // characters outside of the alphabet
+        assertInvalid("TW-u");
+        assertInvalid("TW\u00e9u");
+    }
+
+    @Test
+    public void testLargerThanTheBuffer() throws Exception {
+        byte[] data = data(10000);
+        String text = encode(data);
+        assertArrayEquals(data, decode(text, 1, 4095, 4097, 8191));
+        assertEquals(data.length, decode(text).length);
+    }
+}
@@ -0,0 +1,135 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.FieldType;
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.ws.ConnectorConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class DescribeCacheTest {
+
+    private PartnerConnection connection;
+    private ExecutorService executor;
+    private File directory;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = mockConnection("00D300000000001!AQoAQH1");
+        executor = Executors.newCachedThreadPool();
+        directory = File.createTempFile("describe-cache", "");
+        directory.delete();
+    }
+
+    private static PartnerConnection mockConnection(String sessionId) throws Exception {
+        ConnectorConfig config = new ConnectorConfig();
+        config.setServiceEndpoint("https://na1.salesforce.com/services/Soap/u/26.0");
+        config.setSessionId(sessionId);
+        PartnerConnection connection = Mockito.mock(PartnerConnection.class);
+        when(connection.getConfig()).thenReturn(config);
+        when(connection.describeSObject(anyString())).thenAnswer(new Answer<DescribeSObjectResult>() {
+            @Override
+            public DescribeSObjectResult answer(InvocationOnMock invocation) throws Throwable {
+                Field field = new Field();
+                field.setName("Name");
+                field.setType(FieldType.string);
+                DescribeSObjectResult result = new DescribeSObjectResult();
+                result.setName((String) invocation.getArguments()[0]);
+                result.setFields(new Field[]{field});
+                return result;
+            }
+        });
+        return connection;
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testHitAndMiss() throws Exception {
+        DescribeCache cache = new DescribeCache(60000, 10, executor, null);
+
+        DescribeSObjectResult first = cache.describeSObject(connection, "Account");
+        DescribeSObjectResult second = cache.describeSObject(connection, "Account");
+
+        assertSame(first, second);
+        assertEquals(1, cache.getHitCount());
+        assertEquals(1, cache.getMissCount());
+        verify(connection, times(1)).describeSObject("Account");
+    }
+
+    @Test
+    public void testKeyedByOrganization() throws Exception {
+        DescribeCache cache = new DescribeCache(60000, 10, executor, null);
+        PartnerConnection sameOrganization = mockConnection("00D300000000001!AQoAQH2");
+        PartnerConnection otherOrganization = mockConnection("00D300000000002!AQoAQH3");
+
+        DescribeSObjectResult first = cache.describeSObject(connection, "Account");
+        assertSame(first, cache.describeSObject(sameOrganization, "Account"));
+        assertNotSame(first, cache.describeSObject(otherOrganization, "Account"));
+
+        verify(sameOrganization, times(0)).describeSObject("Account");
+        verify(otherOrganization, times(1)).describeSObject("Account");
+    }
+
+    @Test
+    public void testEviction() throws Exception {
+        DescribeCache cache = new DescribeCache(60000, 2, executor, null);
+
+        cache.describeSObject(connection, "Account");
+        cache.describeSObject(connection, "Contact");
+        cache.describeSObject(connection, "Lead");
+
+        assertEquals(2, cache.getSize());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    public void testSnapshotWarmStart() throws Exception {
+        new DescribeCache(60000, 10, executor, directory).describeSObject(connection, "Account");
+
+        DescribeCache cache = new DescribeCache(60000, 10, executor, directory);
+        DescribeSObjectResult result = cache.describeSObject(connection, "Account");
+
+        assertEquals("Account", result.getName());
+        assertEquals(FieldType.string, result.getFields()[0].getType());
+        assertEquals(1, cache.getSnapshotLoadCount());
+        verify(connection, times(1)).describeSObject("Account");
+    }
+}
@@ -0,0 +1,76 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class IdRangeQuerySplitterTest {
+
+    @Test
+    public void testGetObjectName() {
+        assertEquals("Account", IdRangeQuerySplitter.getObjectName("SELECT Id, (SELECT Id FROM Contacts) FROM Account WHERE Name = 'from x'"));
+    }
+
+    @Test
+    public void testSplitIdRange() {
+        List<String> boundaries = IdRangeQuerySplitter.splitIdRange("001300000000001AAA", "001300000zzzzzzAAA", 4);
+        assertEquals(Arrays.asList("001300000FV0000", "001300000V00000", "001300000kUzzzz"), boundaries);
+        for (int i = 1; i < boundaries.size(); i++) {
+            assertTrue(boundaries.get(i - 1).compareTo(boundaries.get(i)) < 0);
+        }
+    }
+
+    @Test
+    public void testSplitNarrowIdRange() {
+        assertEquals(Arrays.asList("001300000000002"), IdRangeQuerySplitter.splitIdRange("001300000000001", "001300000000003", 5));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSplitIdRangeOfDifferentObjects() {
+        IdRangeQuerySplitter.splitIdRange("001300000000001", "003300000000003", 2);
+    }
+
+    @Test
+    public void testToChunkQueries() {
+        List<String> queries = IdRangeQuerySplitter.toChunkQueries("SELECT Id FROM Account", Arrays.asList("001300000FV0000", "001300000V00000"));
+        assertEquals(Arrays.asList(
+                "SELECT Id FROM Account WHERE Id < '001300000FV0000'",
+                "SELECT Id FROM Account WHERE Id >= '001300000FV0000' AND Id < '001300000V00000'",
+                "SELECT Id FROM Account WHERE Id >= '001300000V00000'"), queries);
+    }
+
+    @Test
+    public void testGetConditions() {
+        assertEquals("Name = 'a ORDER BY' OR (Type = 'b')",
+                IdRangeQuerySplitter.getConditions("SELECT Id FROM Account WHERE Name = 'a ORDER BY' OR (Type = 'b') ORDER BY Name LIMIT 5"));
+        assertNull(IdRangeQuerySplitter.getConditions("SELECT Id, (SELECT Id FROM Contacts WHERE Email = null) FROM Account LIMIT 5"));
+    }
+
+    @Test
+    public void testRestrictWhereClause() {
+        assertEquals("SELECT Id FROM Account WHERE Id < 'x' AND (Name = 'a ORDER BY' OR (Type = 'b')) ORDER BY Name LIMIT 5",
+                IdRangeQuerySplitter.restrict("SELECT Id FROM Account WHERE Name = 'a ORDER BY' OR (Type = 'b') ORDER BY Name LIMIT 5", "Id < 'x'"));
+    }
+
+    @Test
+    public void testRestrictWithoutWhereClause() {
+        assertEquals("SELECT Id FROM Order WHERE Id < 'x'", IdRangeQuerySplitter.restrict("SELECT Id FROM Order", "Id < 'x'"));
+        assertEquals("SELECT Id FROM Account USING SCOPE Mine WHERE Id < 'x' LIMIT 3",
+                IdRangeQuerySplitter.restrict("SELECT Id FROM Account USING SCOPE Mine LIMIT 3", "Id < 'x'"));
+    }
+}
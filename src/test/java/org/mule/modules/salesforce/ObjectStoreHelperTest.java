@@ -121,6 +121,14 @@ public class ObjectStoreHelperTest {
         assertFalse(objectStore.contains(lastUpdateTimeBackupKey()));
     }
 
+    @Test
+    public void testReplayId() throws Exception {
+        assertNull(objectStoreHelper.getReplayId("/topic/AccountUpdates"));
+        objectStoreHelper.updateReplayId("/topic/AccountUpdates", 10);
+        objectStoreHelper.updateReplayId("/topic/AccountUpdates", 11);
+        assertEquals(Long.valueOf(11), objectStoreHelper.getReplayId("/topic/AccountUpdates"));
+    }
+
     private void assertLastUpdateTimeIs(Calendar timestamp) throws ObjectStoreException {
         assertEquals(timestamp, objectStore.retrieve(lastUpdateTimeKey()));
     }
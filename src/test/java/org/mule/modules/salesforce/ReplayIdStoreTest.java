@@ -0,0 +1,95 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.mule.api.store.ObjectStore;
+import org.mule.util.store.SimpleMemoryObjectStore;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class ReplayIdStoreTest {
+
+    private static final String CHANNEL = "/topic/AccountUpdates";
+    private ObjectStoreHelper objectStoreHelper;
+
+    @Before
+    public void setUp() throws Exception {
+        ObjectStore objectStore = new SimpleMemoryObjectStore();
+        objectStoreHelper = new ObjectStoreHelper("myPrefix", objectStore);
+    }
+
+    @Test
+    public void testNewEventsWhenNothingProcessed() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 10, Long.MAX_VALUE, 0);
+        assertEquals(ReplayIdStore.NEW_EVENTS, store.getReplayId(CHANNEL));
+    }
+
+    @Test
+    public void testReplayIdsWrittenInBatches() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 3, Long.MAX_VALUE, 0);
+        store.processed(CHANNEL, 1);
+        store.processed(CHANNEL, 2);
+        assertNull(objectStoreHelper.getReplayId(CHANNEL));
+        assertEquals(2, store.getReplayId(CHANNEL));
+
+        store.processed(CHANNEL, 3);
+        assertEquals(Long.valueOf(3), objectStoreHelper.getReplayId(CHANNEL));
+    }
+
+    @Test
+    public void testFlush() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 100, Long.MAX_VALUE, 0);
+        store.processed(CHANNEL, 7);
+        store.flush();
+        assertEquals(Long.valueOf(7), objectStoreHelper.getReplayId(CHANNEL));
+    }
+
+    @Test
+    public void testResumeFromStoredReplayId() throws Exception {
+        objectStoreHelper.updateReplayId(CHANNEL, 42);
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 100, Long.MAX_VALUE, 0);
+        assertEquals(42, store.getReplayId(CHANNEL));
+    }
+
+    @Test
+    public void testReplayIdNotMovedBack() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 100, Long.MAX_VALUE, 0);
+        store.processed(CHANNEL, 5);
+        store.processed(CHANNEL, 4);
+        assertEquals(5, store.getReplayId(CHANNEL));
+    }
+
+    @Test
+    public void testDeduplicationWindow() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 100, Long.MAX_VALUE, 2);
+        store.processed(CHANNEL, 1);
+        store.processed(CHANNEL, 2);
+        assertTrue(store.isDuplicate(CHANNEL, 1));
+        assertTrue(store.isDuplicate(CHANNEL, 2));
+        assertFalse(store.isDuplicate("/topic/Other", 2));
+
+        store.processed(CHANNEL, 3);
+        assertFalse(store.isDuplicate(CHANNEL, 1));
+        assertTrue(store.isDuplicate(CHANNEL, 3));
+    }
+
+    @Test
+    public void testNoDeduplicationByDefault() throws Exception {
+        ReplayIdStore store = new ReplayIdStore(objectStoreHelper, 100, Long.MAX_VALUE, 0);
+        store.processed(CHANNEL, 1);
+        assertFalse(store.isDuplicate(CHANNEL, 1));
+    }
+}
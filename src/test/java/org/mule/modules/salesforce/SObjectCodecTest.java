@@ -0,0 +1,121 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.DescribeSObjectResult;
+import com.sforce.soap.partner.Field;
+import com.sforce.soap.partner.FieldType;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+import java.util.Calendar;
+import java.util.TimeZone;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class SObjectCodecTest {
+
+    private SObjectCodec codec;
+
+    @Before
+    public void setUp() {
+        DescribeSObjectResult describe = new DescribeSObjectResult();
+        describe.setName("Opportunity");
+        describe.setFields(new Field[]{
+                field("Name", FieldType.string),
+                field("CloseDate", FieldType.date),
+                field("Amount", FieldType.currency),
+                field("IsPrivate", FieldType._boolean),
+                field("TotalOpportunityQuantity", FieldType._int),
+                field("Tags__c", FieldType.multipicklist),
+                field("LastActivity__c", FieldType.datetime)});
+        codec = SObjectCodec.compile(describe);
+    }
+
+    @Test
+    public void testSoapValues() {
+        Calendar closeDate = (Calendar) codec.toSoapValue("CloseDate", "2011-12-13");
+        assertEquals(TimeZone.getTimeZone("GMT"), closeDate.getTimeZone());
+        assertEquals(2011, closeDate.get(Calendar.YEAR));
+        assertEquals(Calendar.DECEMBER, closeDate.get(Calendar.MONTH));
+        assertEquals(13, closeDate.get(Calendar.DAY_OF_MONTH));
+        assertEquals(Boolean.TRUE, codec.toSoapValue("isprivate", "TRUE"));
+        assertEquals(5, codec.toSoapValue("TotalOpportunityQuantity", 5L));
+        assertEquals(12.5, codec.toSoapValue("Amount", "12.5"));
+        assertEquals("3", codec.toSoapValue("Name", 3));
+    }
+
+    @Test
+    public void testBulkValues() {
+        assertEquals("2011-12-13", codec.toBulkValue("CloseDate", "2011-12-13"));
+        assertEquals("12.50", codec.toBulkValue("Amount", new BigDecimal("12.50")));
+        assertEquals("10000000", codec.toBulkValue("Amount", 1e7));
+        assertEquals("a;b", codec.toBulkValue("Tags__c", Arrays.asList("a", "b")));
+        assertEquals("2011-12-13T10:00:00.000Z", codec.toBulkValue("LastActivity__c", "2011-12-13T10:00:00Z"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidDate() {
+        codec.toSoapValue("CloseDate", "2011-13-40");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testInvalidBoolean() {
+        codec.toSoapValue("IsPrivate", "yes");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testFractionForInt() {
+        codec.toSoapValue("TotalOpportunityQuantity", 1.5);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testUnknownField() {
+        codec.toSoapValue("Nope", "x");
+    }
+
+    @Test
+    public void testUnknownFieldMakesTheCodecStale() {
+        assertFalse(codec.isStale());
+        codec.toSoapValue("Name", "x");
+        assertFalse(codec.isStale());
+        try {
+            codec.toBulkValue("Nope", "x");
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertEquals("No such field Opportunity.Nope", e.getMessage());
+        }
+        assertTrue(codec.isStale());
+    }
+
+    @Test
+    public void testRelationshipFieldsPassedThrough() {
+        Object value = new Object();
+        assertSame(value, codec.toSoapValue("Account.External_Id__c", value));
+        assertEquals("yes", codec.toSoapValue("Owner.Email", "yes"));
+        assertEquals("2011-12-13T", codec.toBulkValue("Account.External_Id__c", "2011-12-13T"));
+        assertEquals("42", codec.toBulkValue("Owner:User.Employee_Number__c", 42));
+        assertFalse(codec.isStale());
+    }
+
+    private static Field field(String name, FieldType type) {
+        Field field = new Field();
+        field.setName(name);
+        field.setType(type);
+        return field;
+    }
+}
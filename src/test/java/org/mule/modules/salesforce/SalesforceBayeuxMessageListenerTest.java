@@ -20,10 +20,12 @@ import org.mule.api.callback.SourceCallback;
 import java.util.HashMap;
 import java.util.Map;
 
+import static org.junit.Assert.assertEquals;
 import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.atLeast;
 import static org.mockito.Mockito.atLeastOnce;
 import static org.mockito.Mockito.doReturn;
+import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
@@ -61,4 +63,55 @@ public class SalesforceBayeuxMessageListenerTest {
         
         verify(callback, atLeastOnce()).process(any(Map.class), any(Map.class));
     }
+
+    @Test
+    public void testOnRedeliveredMessage() throws Exception {
+        SourceCallback callback = Mockito.mock(SourceCallback.class);
+        ClientSessionChannel clientSessionChannel = Mockito.mock(ClientSessionChannel.class);
+        HashMapMessage message = Mockito.mock(HashMapMessage.class);
+        HashMap data = Mockito.mock(HashMap.class);
+        Map sObject = Mockito.mock(Map.class);
+        Map event = new HashMap();
+        event.put("replayId", 5L);
+        doReturn("/topic/channel").when(message).getChannel();
+        doReturn(true).when(message).containsKey("channel");
+        doReturn("/topic/channel").when(message).get("channel");
+        doReturn(true).when(message).containsKey("data");
+        doReturn(data).when(message).get("data");
+        doReturn(sObject).when(data).get("sobject");
+        doReturn(event).when(data).get("event");
+        ReplayIdStore replayIdStore = new ReplayIdStore(Mockito.mock(ObjectStoreHelper.class), 100, Long.MAX_VALUE, 10);
+
+        SalesforceBayeuxMessageListener messageListener = new SalesforceBayeuxMessageListener(callback, replayIdStore);
+        messageListener.onMessage(clientSessionChannel, message);
+        messageListener.onMessage(clientSessionChannel, message);
+
+        verify(callback, times(1)).process(any(Map.class), any(Map.class));
+        assertEquals(5, replayIdStore.getReplayId("/topic/channel"));
+    }
+
+    @Test
+    public void testOnDispatchedMessage() throws Exception {
+        SourceCallback callback = Mockito.mock(SourceCallback.class);
+        ClientSessionChannel clientSessionChannel = Mockito.mock(ClientSessionChannel.class);
+        HashMapMessage message = Mockito.mock(HashMapMessage.class);
+        HashMap data = new HashMap();
+        data.put("sobject", new HashMap());
+        data.put("event", new HashMap());
+        doReturn("/topic/channel").when(message).getChannel();
+        doReturn(true).when(message).containsKey("channel");
+        doReturn("/topic/channel").when(message).get("channel");
+        doReturn(true).when(message).containsKey("data");
+        doReturn(data).when(message).get("data");
+        StreamingEventDispatcher dispatcher = new StreamingEventDispatcher(1, 10, EventOverflowPolicy.BLOCK, null);
+
+        SalesforceBayeuxMessageListener messageListener = new SalesforceBayeuxMessageListener(callback, null, dispatcher);
+        messageListener.onMessage(clientSessionChannel, message);
+
+        for (int i = 0; i < 100 && dispatcher.getProcessedCount() == 0; i++) {
+            Thread.sleep(50);
+        }
+        dispatcher.shutdown();
+        verify(callback, times(1)).process(any(Map.class), any(Map.class));
+    }
 }
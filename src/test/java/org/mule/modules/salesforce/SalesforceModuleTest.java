@@ -12,9 +12,11 @@ package org.mule.modules.salesforce;
 
 import static junit.framework.Assert.assertEquals;
 import static junit.framework.Assert.assertFalse;
+import static junit.framework.Assert.assertNotNull;
 import static junit.framework.Assert.assertNull;
 import static junit.framework.Assert.assertSame;
 import static junit.framework.Assert.assertTrue;
+import static junit.framework.Assert.fail;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.anyString;
 import static org.mockito.Matchers.argThat;
@@ -36,6 +38,8 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.xml.namespace.QName;
+
 import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.junit.Before;
@@ -53,8 +57,11 @@ import org.mule.streaming.PagingDelegate;
 import com.sforce.async.AsyncApiException;
 import com.sforce.async.AsyncExceptionCode;
 import com.sforce.async.BatchInfo;
+import com.sforce.async.BatchInfoList;
 import com.sforce.async.BatchRequest;
+import com.sforce.async.BatchStateEnum;
 import com.sforce.async.BulkConnection;
+import com.sforce.async.BulkJobHandle;
 import com.sforce.async.ContentType;
 import com.sforce.async.JobInfo;
 import com.sforce.async.OperationEnum;
@@ -72,6 +79,8 @@ import com.sforce.soap.partner.LoginResult;
 import com.sforce.soap.partner.PartnerConnection;
 import com.sforce.soap.partner.QueryResult;
 import com.sforce.soap.partner.SaveResult;
+import com.sforce.soap.partner.fault.ExceptionCode;
+import com.sforce.soap.partner.fault.UnexpectedErrorFault;
 import com.sforce.soap.partner.sobject.SObject;
 import com.sforce.ws.ConnectionException;
 import com.sforce.ws.ConnectorConfig;
@@ -132,6 +141,47 @@ public class SalesforceModuleTest {
         assertEquals(actualJobInfo.getContentType(), expectedJobInfo.getValue().getContentType());
     }
 
+    @Test
+    public void testCreateBulkJob() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        BulkConnection bulkConnection = Mockito.mock(BulkConnection.class);
+        connector.setBulkConnection(bulkConnection);
+
+        Mockito.when(bulkConnection.createJob(Mockito.isA(JobInfo.class))).thenAnswer(new Answer<JobInfo>() {
+            @Override
+            public JobInfo answer(InvocationOnMock invocation) throws Throwable {
+                JobInfo jobInfo = (JobInfo) invocation.getArguments()[0];
+                jobInfo.setId("750000000000001");
+                return jobInfo;
+            }
+        });
+        Mockito.when(bulkConnection.createBatchFromStream(Mockito.isA(JobInfo.class),
+                Mockito.isA(InputStream.class))).thenAnswer(new Answer<BatchInfo>() {
+            @Override
+            public BatchInfo answer(InvocationOnMock invocation) throws Throwable {
+                return new BatchInfo();
+            }
+        });
+        JobInfo closedJobInfo = new JobInfo();
+        Mockito.when(bulkConnection.closeJob("750000000000001")).thenReturn(closedJobInfo);
+
+        List<Map<String, Object>> objects = new ArrayList<Map<String, Object>>();
+        for (int i = 0; i < 5; i++) {
+            Map<String, Object> account = new HashMap<String, Object>();
+            account.put("Name", "Account " + i);
+            objects.add(account);
+        }
+
+        BulkJobHandle handle = connector.createBulkJob(OperationEnum.insert, "Account", null, null, 2, objects);
+
+        Mockito.verify(bulkConnection, Mockito.times(3)).createBatchFromStream(Mockito.isA(JobInfo.class),
+                Mockito.isA(InputStream.class));
+        Mockito.verify(bulkConnection).closeJob("750000000000001");
+        assertSame(closedJobInfo, handle.getJobInfo());
+        assertEquals(3, handle.getBatchCount());
+        assertEquals(5, handle.getRecordsSubmitted());
+    }
+
     @Test
     public void testCloseJob() throws Exception {
         SalesforceConnector connector = new SalesforceConnector();
@@ -160,6 +210,30 @@ public class SalesforceModuleTest {
         assertEquals(expectedJobInfo, actualJobInfo);
     }
 
+    @Test
+    public void testAwaitBatchCompletion() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        BulkConnection bulkConnection = Mockito.mock(BulkConnection.class);
+        connector.setBulkConnection(bulkConnection);
+        String jobId = "uVsd234k23neasd";
+
+        BatchInfo submittedBatchInfo = new BatchInfo();
+        submittedBatchInfo.setJobId(jobId);
+        submittedBatchInfo.setId("751000000000001");
+        BatchInfo completedBatchInfo = new BatchInfo();
+        completedBatchInfo.setJobId(jobId);
+        completedBatchInfo.setId("751000000000001");
+        completedBatchInfo.setState(BatchStateEnum.Completed);
+        BatchInfoList batchInfoList = new BatchInfoList();
+        batchInfoList.setBatchInfo(new BatchInfo[]{completedBatchInfo});
+
+        Mockito.when(bulkConnection.getBatchInfoList(jobId)).thenReturn(batchInfoList);
+        BatchInfo actualBatchInfo = connector.awaitBatchCompletion(submittedBatchInfo, 10000);
+
+        assertSame(completedBatchInfo, actualBatchInfo);
+        Mockito.verify(bulkConnection, Mockito.never()).getBatchInfo(anyString(), anyString());
+    }
+
     @Test
     public void testAbortJob() throws Exception {
         SalesforceConnector connector = new SalesforceConnector();
@@ -428,6 +502,112 @@ public class SalesforceModuleTest {
         assertEquals(2, result.size());
     }
 
+    @Test
+    public void testRetrieveInChunks() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        PartnerConnection partnerConnection = Mockito.mock(PartnerConnection.class);
+        connector.setConnection(partnerConnection);
+        connector.setRetrieveParallelism(2);
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 4500; i++) {
+            ids.add("id" + i);
+        }
+        when(partnerConnection.retrieve(eq("Id"), eq("Account"), any(String[].class))).thenAnswer(new Answer<SObject[]>() {
+            @Override
+            public SObject[] answer(InvocationOnMock invocation) throws Throwable {
+                String[] chunk = (String[]) invocation.getArguments()[2];
+                SObject[] sObjects = new SObject[chunk.length];
+                for (int i = 0; i < chunk.length; i++) {
+                    sObjects[i] = new SObject();
+                    sObjects[i].setId(chunk[i]);
+                }
+                return sObjects;
+            }
+        });
+
+        List<Map<String, Object>> result = connector.retrieve("Account", ids, Arrays.asList("Id"));
+
+        assertEquals(4500, result.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), result.get(i).get("Id"));
+        }
+        verify(partnerConnection, Mockito.times(3)).retrieve(eq("Id"), eq("Account"), any(String[].class));
+    }
+
+    @Test
+    public void testDeleteInChunks() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        PartnerConnection partnerConnection = Mockito.mock(PartnerConnection.class);
+        connector.setConnection(partnerConnection);
+        connector.setSaveParallelism(2);
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 450; i++) {
+            ids.add("id" + i);
+        }
+        when(partnerConnection.delete(any(String[].class))).thenAnswer(new Answer<DeleteResult[]>() {
+            @Override
+            public DeleteResult[] answer(InvocationOnMock invocation) throws Throwable {
+                String[] chunk = (String[]) invocation.getArguments()[0];
+                if (chunk[0].equals("id200")) {
+                    throw new ConnectionException("Read timed out");
+                }
+                DeleteResult[] results = new DeleteResult[chunk.length];
+                for (int i = 0; i < chunk.length; i++) {
+                    results[i] = new DeleteResult();
+                    results[i].setId(chunk[i]);
+                    results[i].setSuccess(true);
+                }
+                return results;
+            }
+        });
+
+        List<DeleteResult> results = connector.delete(ids);
+
+        assertEquals(450, results.size());
+        for (int i = 0; i < ids.size(); i++) {
+            assertEquals(ids.get(i), results.get(i).getId());
+            assertEquals(i < 200 || i >= 400, results.get(i).getSuccess());
+        }
+        assertEquals("Read timed out", results.get(200).getErrors()[0].getMessage());
+        verify(partnerConnection, Mockito.times(3)).delete(any(String[].class));
+    }
+
+    @Test
+    public void testDeleteInChunksSessionFailure() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        PartnerConnection partnerConnection = Mockito.mock(PartnerConnection.class);
+        connector.setConnection(partnerConnection);
+        connector.setSaveParallelism(1);
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < 450; i++) {
+            ids.add("id" + i);
+        }
+        final UnexpectedErrorFault fault = new UnexpectedErrorFault();
+        fault.setExceptionCode(ExceptionCode.INVALID_SESSION_ID);
+        fault.setFaultCode(new QName("urn:fault.partner.soap.sforce.com", "INVALID_SESSION_ID"));
+        when(partnerConnection.delete(any(String[].class))).thenAnswer(new Answer<DeleteResult[]>() {
+            @Override
+            public DeleteResult[] answer(InvocationOnMock invocation) throws Throwable {
+                String[] chunk = (String[]) invocation.getArguments()[0];
+                if (chunk[0].equals("id200")) {
+                    throw fault;
+                }
+                return new DeleteResult[chunk.length];
+            }
+        });
+
+        try {
+            connector.delete(ids);
+            fail("the session failure should be thrown");
+        } catch (UnexpectedErrorFault e) {
+            assertSame(fault, e);
+        }
+        verify(partnerConnection, Mockito.times(2)).delete(any(String[].class));
+    }
+
     @Test
     public void testQuery() throws Exception {
         SalesforceConnector connector = new SalesforceConnector();
@@ -480,6 +660,59 @@ public class SalesforceModuleTest {
         assertNull(delegate.getPage());
     }
 
+    @Test
+    public void testQueryWithPrefetch() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        connector.setQueryPrefetchDepth(2);
+        PartnerConnection partnerConnection = Mockito.mock(PartnerConnection.class);
+        connector.setConnection(partnerConnection);
+
+        QueryResult page1 = mockQueryResult("001", new SObject(), new SObject());
+        QueryResult page2 = mockQueryResult("002", new SObject());
+        QueryResult page3 = mockQueryResult(null, new SObject(), new SObject(), new SObject());
+        when(partnerConnection.queryAll(eq(MOCK_QUERY))).thenReturn(page1);
+        when(partnerConnection.queryMore("001")).thenReturn(page2);
+        when(partnerConnection.queryMore("002")).thenReturn(page3);
+
+        PagingDelegate<Map<String, Object>> delegate = connector.queryAll(MOCK_QUERY, new PagingConfiguration(1));
+        assertEquals(2, delegate.getPage().size());
+        assertEquals(1, delegate.getPage().size());
+        assertEquals(3, delegate.getPage().size());
+        assertNull(delegate.getPage());
+
+        verify(partnerConnection).queryMore("001");
+        verify(partnerConnection).queryMore("002");
+    }
+
+    @Test(timeout = 10000)
+    public void testQueryWithPrefetchFailure() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        connector.setQueryPrefetchDepth(2);
+        PartnerConnection partnerConnection = Mockito.mock(PartnerConnection.class);
+        connector.setConnection(partnerConnection);
+
+        QueryResult page1 = mockQueryResult("001", new SObject());
+        when(partnerConnection.queryAll(eq(MOCK_QUERY))).thenReturn(page1);
+        when(partnerConnection.queryMore("001")).thenThrow(new IllegalStateException("boom"));
+
+        PagingDelegate<Map<String, Object>> delegate = connector.queryAll(MOCK_QUERY, new PagingConfiguration(1));
+        assertEquals(1, delegate.getPage().size());
+        try {
+            delegate.getPage();
+            fail("the prefetch failure should be rethrown");
+        } catch (IllegalStateException e) {
+            assertEquals("boom", e.getMessage());
+        }
+    }
+
+    private QueryResult mockQueryResult(String queryLocator, SObject... records) {
+        QueryResult queryResult = Mockito.mock(QueryResult.class);
+        when(queryResult.getRecords()).thenReturn(records);
+        when(queryResult.isDone()).thenReturn(queryLocator == null);
+        when(queryResult.getQueryLocator()).thenReturn(queryLocator);
+        return queryResult;
+    }
+
     @Test
     public void testQuerySingle() throws Exception {
         SalesforceConnector connector = new SalesforceConnector();
@@ -684,6 +917,52 @@ public class SalesforceModuleTest {
         assertEquals(null, actualIs);
     }
 
+    @Test
+    public void testQueryJobResultStream() throws Exception {
+        SalesforceConnector connector = new SalesforceConnector();
+        BulkConnection bulkConnection = Mockito.mock(BulkConnection.class);
+        connector.setBulkConnection(bulkConnection);
+        String jobId = "750000000000001";
+
+        JobInfo jobInfo = new JobInfo();
+        jobInfo.setId(jobId);
+        jobInfo.setContentType(ContentType.CSV);
+        BatchInfo originalBatch = new BatchInfo();
+        originalBatch.setId("751000000000000");
+        originalBatch.setState(BatchStateEnum.NotProcessed);
+        BatchInfo firstBatch = new BatchInfo();
+        firstBatch.setId("751000000000001");
+        firstBatch.setState(BatchStateEnum.Completed);
+        BatchInfo secondBatch = new BatchInfo();
+        secondBatch.setId("751000000000002");
+        secondBatch.setState(BatchStateEnum.Completed);
+        BatchInfoList batchInfoList = new BatchInfoList();
+        batchInfoList.setBatchInfo(new BatchInfo[]{originalBatch, firstBatch, secondBatch});
+        QueryResultList firstResults = new QueryResultList();
+        firstResults.setResult(new String[]{"752000000000001", "752000000000002"});
+        QueryResultList secondResults = new QueryResultList();
+        secondResults.setResult(new String[]{"752000000000003"});
+
+        when(bulkConnection.getJobStatus(jobId)).thenReturn(jobInfo);
+        when(bulkConnection.getBatchInfoList(jobId)).thenReturn(batchInfoList);
+        when(bulkConnection.getQueryResultList(jobId, firstBatch.getId())).thenReturn(firstResults);
+        when(bulkConnection.getQueryResultList(jobId, secondBatch.getId())).thenReturn(secondResults);
+        when(bulkConnection.getQueryResultStream(jobId, firstBatch.getId(), "752000000000001")).thenReturn(new ByteArrayInputStream("\"Id\"\n\"1\"\n".getBytes()));
+        when(bulkConnection.getQueryResultStream(jobId, firstBatch.getId(), "752000000000002")).thenReturn(new ByteArrayInputStream("\"Id\"\n\"2\"\n".getBytes()));
+        when(bulkConnection.getQueryResultStream(jobId, secondBatch.getId(), "752000000000003")).thenReturn(new ByteArrayInputStream("\"Id\"\n\"3\"\n".getBytes()));
+
+        InputStream actualIs = connector.queryJobResultStream(jobId, 2, true);
+        StringBuilder actual = new StringBuilder();
+        int c;
+        while ((c = actualIs.read()) != -1) {
+            actual.append((char) c);
+        }
+        actualIs.close();
+
+        assertEquals("\"Id\"\n\"1\"\n\"2\"\n\"3\"\n", actual.toString());
+        verify(bulkConnection, Mockito.never()).getQueryResultList(jobId, originalBatch.getId());
+    }
+
     @Test
     public void testBatchResultsStream() throws Exception {
         SalesforceConnector connector = new SalesforceConnector();
@@ -1067,6 +1346,31 @@ public class SalesforceModuleTest {
         return calendar;
     }
 
+    @Test
+    public void testApiGovernorSharedByOrganization() throws Exception {
+        PartnerConnection connection1 = mockGovernedConnection("00D300000000001!AQoAQH1");
+        PartnerConnection connection2 = mockGovernedConnection("00D300000000001!AQoAQH2");
+        PartnerConnection connection3 = mockGovernedConnection("00D300000000002!AQoAQH3");
+
+        for (PartnerConnection connection : Arrays.asList(connection1, connection2, connection3)) {
+            SalesforceConnector connector = new SalesforceConnector();
+            connector.setMaxConcurrentCalls(5);
+            connector.applyOrganizationPolicies(connection);
+        }
+
+        assertNotNull(connection1.getConfig().getApiGovernor());
+        assertSame(connection1.getConfig().getApiGovernor(), connection2.getConfig().getApiGovernor());
+        assertFalse(connection1.getConfig().getApiGovernor() == connection3.getConfig().getApiGovernor());
+    }
+
+    private PartnerConnection mockGovernedConnection(String sessionId) {
+        ConnectorConfig connectorConfig = new ConnectorConfig();
+        connectorConfig.setSessionId(sessionId);
+        PartnerConnection connection = Mockito.mock(PartnerConnection.class);
+        when(connection.getConfig()).thenReturn(connectorConfig);
+        return connection;
+    }
+
     private ConnectorConfig createConnectorConfig(String username) {
         ConnectorConfig connectorConfig = new ConnectorConfig();
         connectorConfig.setUsername(username);
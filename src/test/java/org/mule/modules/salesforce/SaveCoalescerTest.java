@@ -0,0 +1,160 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import com.sforce.soap.partner.PartnerConnection;
+import com.sforce.soap.partner.SaveResult;
+import com.sforce.soap.partner.sobject.SObject;
+import com.sforce.ws.ConnectionException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.mockito.Mockito;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+public class SaveCoalescerTest {
+
+    private PartnerConnection connection;
+    private ExecutorService executor;
+
+    @Before
+    public void setUp() throws Exception {
+        connection = Mockito.mock(PartnerConnection.class);
+        executor = Executors.newCachedThreadPool();
+        when(connection.create(any(SObject[].class))).thenAnswer(new Answer<SaveResult[]>() {
+            @Override
+            public SaveResult[] answer(InvocationOnMock invocation) throws Throwable {
+                SObject[] objects = (SObject[]) invocation.getArguments()[0];
+                SaveResult[] results = new SaveResult[objects.length];
+                for (int i = 0; i < objects.length; i++) {
+                    results[i] = new SaveResult();
+                    results[i].setId((String) objects[i].getField("Name"));
+                    results[i].setSuccess(true);
+                }
+                return results;
+            }
+        });
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void testCallMadeWhenMaxRecordsReached() throws Exception {
+        SaveCoalescer coalescer = new SaveCoalescer(3, 60000, executor);
+
+        Future<SaveResult> first = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("a"));
+        Future<SaveResult> second = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("b"));
+        Future<SaveResult> third = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("c"));
+
+        assertEquals("a", first.get(1, TimeUnit.SECONDS).getId());
+        assertEquals("b", second.get(1, TimeUnit.SECONDS).getId());
+        assertEquals("c", third.get(1, TimeUnit.SECONDS).getId());
+        verify(connection, times(1)).create(any(SObject[].class));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testCallMadeAfterMaxDelay() throws Exception {
+        SaveCoalescer coalescer = new SaveCoalescer(200, 10, executor);
+
+        Future<SaveResult> first = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("a"));
+        Future<SaveResult> second = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("b"));
+
+        assertEquals("a", first.get(5, TimeUnit.SECONDS).getId());
+        assertEquals("b", second.get(5, TimeUnit.SECONDS).getId());
+        verify(connection, times(1)).create(any(SObject[].class));
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testFailedCallFailsEveryRecord() throws Exception {
+        ConnectionException error = new ConnectionException("Read timed out");
+        when(connection.update(any(SObject[].class))).thenThrow(error);
+        SaveCoalescer coalescer = new SaveCoalescer(2, 60000, executor);
+
+        Future<SaveResult> first = coalescer.submit(connection, SaveCoalescer.Operation.UPDATE, account("a"));
+        Future<SaveResult> second = coalescer.submit(connection, SaveCoalescer.Operation.UPDATE, account("b"));
+
+        for (Future<SaveResult> save : new Future[]{first, second}) {
+            try {
+                save.get(1, TimeUnit.SECONDS);
+                fail();
+            } catch (ExecutionException e) {
+                assertSame(error, e.getCause());
+            }
+        }
+        coalescer.shutdown();
+    }
+
+    @Test
+    public void testShutdownSavesWaitingRecords() throws Exception {
+        SaveCoalescer coalescer = new SaveCoalescer(200, 60000, executor);
+
+        Future<SaveResult> save = coalescer.submit(connection, SaveCoalescer.Operation.CREATE, account("a"));
+        coalescer.shutdown();
+
+        assertEquals("a", save.get(1, TimeUnit.SECONDS).getId());
+    }
+
+    @Test
+    public void testAcquiredCoalescerSharedByScope() throws Exception {
+        PartnerConnection otherConnection = Mockito.mock(PartnerConnection.class);
+        SaveCoalescer first = SaveCoalescer.acquire("00D300000000001/user", 2, 60000);
+        SaveCoalescer second = SaveCoalescer.acquire("00D300000000001/user", 2, 60000);
+        SaveCoalescer other = SaveCoalescer.acquire("00D300000000001/other", 2, 60000);
+        assertSame(first, second);
+        assertNotSame(first, other);
+
+        Future<SaveResult> save1 = first.submit(connection, SaveCoalescer.Operation.CREATE, account("a"));
+        Future<SaveResult> save2 = second.submit(otherConnection, SaveCoalescer.Operation.CREATE, account("b"));
+        assertEquals("a", save1.get(1, TimeUnit.SECONDS).getId());
+        assertEquals("b", save2.get(1, TimeUnit.SECONDS).getId());
+        verify(connection, times(1)).create(any(SObject[].class));
+
+        SaveCoalescer.release(other);
+        SaveCoalescer.release(first);
+        Future<SaveResult> save3 = second.submit(connection, SaveCoalescer.Operation.CREATE, account("c"));
+        SaveCoalescer.release(second);
+        assertEquals("c", save3.get(1, TimeUnit.SECONDS).getId());
+        try {
+            second.submit(connection, SaveCoalescer.Operation.CREATE, account("d"));
+            fail();
+        } catch (IllegalStateException e) {
+            // the last release shuts the coalescer down
+        }
+    }
+
+    private static SObject account(String name) {
+        SObject sObject = new SObject();
+        sObject.setType("Account");
+        sObject.setField("Name", name);
+        return sObject;
+    }
+}
@@ -0,0 +1,181 @@
+/**
+ * Mule Salesforce Connector
+ *
+ * Copyright (c) MuleSoft, Inc.  All rights reserved.  http://www.mulesoft.com
+ *
+ * The software in this package is published under the terms of the CPAL v1.0
+ * license, a copy of which has been included with this distribution in the
+ * LICENSE.txt file.
+ */
+
+package org.mule.modules.salesforce;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class StreamingEventDispatcherTest {
+
+    private StreamingEventDispatcher dispatcher;
+
+    @After
+    public void tearDown() {
+        if (dispatcher != null) {
+            dispatcher.shutdown();
+        }
+    }
+
+    @Test
+    public void testEventsOfChannelProcessedInOrder() throws Exception {
+        dispatcher = new StreamingEventDispatcher(4, 5, EventOverflowPolicy.BLOCK, null);
+        RecordingHandler first = new RecordingHandler(100, 1);
+        RecordingHandler second = new RecordingHandler(100, 1);
+        for (int i = 0; i < 100; i++) {
+            dispatcher.dispatch("/topic/first", i, first);
+            dispatcher.dispatch("/topic/second", i, second);
+        }
+
+        assertTrue(first.await());
+        assertTrue(second.await());
+        assertInOrder(first.events, 100);
+        assertInOrder(second.events, 100);
+        assertEquals(200, dispatcher.getProcessedCount());
+    }
+
+    @Test
+    public void testSlowHandlerDoesNotHoldDispatch() throws Exception {
+        dispatcher = new StreamingEventDispatcher(1, 10, EventOverflowPolicy.BLOCK, null);
+        RecordingHandler handler = new RecordingHandler(5, 200);
+
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch("/topic/slow", i, handler);
+        }
+
+        assertTrue(System.currentTimeMillis() - start < 200);
+        assertTrue(handler.await());
+        assertTrue(dispatcher.getMaxLatencyMillis() >= 200);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        dispatcher = new StreamingEventDispatcher(1, 2, EventOverflowPolicy.DROP_OLDEST, null);
+        RecordingHandler blocking = new RecordingHandler(1, 500);
+        dispatcher.dispatch("/topic/events", -1, blocking);
+        Thread.sleep(100);
+
+        RecordingHandler handler = new RecordingHandler(2, 0);
+        for (int i = 0; i < 5; i++) {
+            dispatcher.dispatch("/topic/events", i, handler);
+        }
+
+        assertTrue(handler.await());
+        assertEquals(3, dispatcher.getDroppedCount());
+        assertEquals(2, handler.events.size());
+        assertEquals(3, handler.events.get(0));
+        assertEquals(4, handler.events.get(1));
+    }
+
+    @Test
+    public void testSpill() throws Exception {
+        dispatcher = new StreamingEventDispatcher(1, 2, EventOverflowPolicy.SPILL, null);
+        RecordingHandler handler = new RecordingHandler(50, 5);
+        for (int i = 0; i < 50; i++) {
+            dispatcher.dispatch("/topic/events", i, handler);
+        }
+
+        assertTrue(handler.await());
+        assertInOrder(handler.events, 50);
+        assertTrue(dispatcher.getSpilledCount() > 0);
+        assertEquals(0, dispatcher.getDroppedCount());
+        assertEquals(0, dispatcher.getQueueDepth());
+    }
+
+    @Test
+    public void testFailedEventCounted() throws Exception {
+        dispatcher = new StreamingEventDispatcher(1, 10, EventOverflowPolicy.BLOCK, null);
+        final CountDownLatch done = new CountDownLatch(2);
+        StreamingEventDispatcher.Handler handler = new StreamingEventDispatcher.Handler() {
+            @Override
+            public void handle(String channel, Serializable event) throws Exception {
+                done.countDown();
+                if (event.equals(0)) {
+                    throw new IllegalStateException("failed");
+                }
+            }
+        };
+        dispatcher.dispatch("/topic/events", 0, handler);
+        dispatcher.dispatch("/topic/events", 1, handler);
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        Thread.sleep(50);
+        assertEquals(1, dispatcher.getFailedCount());
+        assertEquals(1, dispatcher.getProcessedCount());
+    }
+
+    @Test
+    public void testShutdownDeletesSpool() throws Exception {
+        File directory = File.createTempFile("event-spool", "");
+        directory.delete();
+        directory.mkdir();
+        try {
+            dispatcher = new StreamingEventDispatcher(1, 1, EventOverflowPolicy.SPILL, directory);
+            RecordingHandler handler = new RecordingHandler(10, 500);
+            for (int i = 0; i < 10; i++) {
+                dispatcher.dispatch("/topic/events", i, handler);
+            }
+            assertEquals(1, directory.listFiles().length);
+
+            dispatcher.shutdown();
+            assertEquals(0, directory.listFiles().length);
+            assertEquals(0, dispatcher.getQueueDepth());
+
+            dispatcher.dispatch("/topic/events", 10, handler);
+            assertEquals(1, dispatcher.getDroppedCount());
+        } finally {
+            for (File file : directory.listFiles()) {
+                file.delete();
+            }
+            directory.delete();
+        }
+    }
+
+    private static void assertInOrder(List<Object> events, int count) {
+        assertEquals(count, events.size());
+        for (int i = 0; i < count; i++) {
+            assertEquals(i, events.get(i));
+        }
+    }
+
+    private static class RecordingHandler implements StreamingEventDispatcher.Handler {
+        private final List<Object> events = Collections.synchronizedList(new ArrayList<Object>());
+        private final CountDownLatch done;
+        private final long delay;
+
+        RecordingHandler(int expected, long delay) {
+            this.done = new CountDownLatch(expected);
+            this.delay = delay;
+        }
+
+        @Override
+        public void handle(String channel, Serializable event) throws Exception {
+            Thread.sleep(delay);
+            events.add(event);
+            done.countDown();
+        }
+
+        boolean await() throws InterruptedException {
+            return done.await(10, TimeUnit.SECONDS);
+        }
+    }
+}